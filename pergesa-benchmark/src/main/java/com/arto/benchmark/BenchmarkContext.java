@@ -0,0 +1,44 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.benchmark;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * 基准测试使用的Spring容器(配置读取、内嵌H2)，每个JVM只启动一次
+ *
+ * Created by xiong.j on 2017/4/24.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class BenchmarkContext {
+
+    private static volatile ClassPathXmlApplicationContext context;
+
+    public static ClassPathXmlApplicationContext get() {
+        if (context == null) {
+            synchronized (BenchmarkContext.class) {
+                if (context == null) {
+                    context = new ClassPathXmlApplicationContext("pergesa-benchmark.xml");
+                    context.registerShutdownHook();
+                }
+            }
+        }
+        return context;
+    }
+
+    public static <T> T getBean(Class<T> clazz) {
+        return get().getBean(clazz);
+    }
+}
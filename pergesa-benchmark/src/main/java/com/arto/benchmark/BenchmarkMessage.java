@@ -0,0 +1,69 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.benchmark;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 基准测试用的消息体，字段构成与业务订单消息相近
+ *
+ * Created by xiong.j on 2017/4/24.
+ */
+@Getter
+@Setter
+@ToString
+public class BenchmarkMessage {
+
+    private long id;
+
+    private String orderNo;
+
+    private String buyer;
+
+    private long amount;
+
+    private int status;
+
+    private Date created;
+
+    private List<String> items;
+
+    /**
+     * 生成一条测试消息
+     *
+     * @param id
+     * @param itemCount 明细条数，用于调整消息大小
+     * @return
+     */
+    public static BenchmarkMessage create(long id, int itemCount) {
+        BenchmarkMessage message = new BenchmarkMessage();
+        message.setId(id);
+        message.setOrderNo("ORDER-" + id);
+        message.setBuyer("buyer-" + (id % 1000));
+        message.setAmount(id * 100);
+        message.setStatus(1);
+        message.setCreated(new Date(1490000000000L));
+        List<String> items = new ArrayList<String>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            items.add("sku-" + i + "-" + id);
+        }
+        message.setItems(items);
+        return message;
+    }
+}
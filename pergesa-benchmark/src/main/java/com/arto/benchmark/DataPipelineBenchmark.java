@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.benchmark;
+
+import com.arto.core.common.DataPipeline;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发送管道的多生产者单消费者吞吐
+ *
+ * Created by xiong.j on 2017/4/24.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class DataPipelineBenchmark {
+
+    private static final int BATCH_SIZE = 32;
+
+    @Param({"1024", "8192"})
+    public int size;
+
+    private DataPipeline<Object> pipeline;
+
+    private List<Object> batch;
+
+    private Object element;
+
+    @Setup
+    public void setup() {
+        pipeline = new DataPipeline<Object>(size);
+        element = new Object();
+        batch = new ArrayList<Object>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(element);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void clear() {
+        pipeline.clear();
+    }
+
+    @Benchmark
+    @Group("single")
+    @GroupThreads(3)
+    public boolean offer() {
+        return pipeline.offer(element);
+    }
+
+    @Benchmark
+    @Group("single")
+    @GroupThreads(1)
+    public Object poll() {
+        return pipeline.poll();
+    }
+
+    @Benchmark
+    @Group("batch")
+    @GroupThreads(3)
+    public int offerBatch() {
+        return pipeline.offerBatch(batch);
+    }
+
+    @Benchmark
+    @Group("batch")
+    @GroupThreads(1)
+    public int drainTo(DrainState state, Blackhole bh) {
+        int n = pipeline.drainTo(state.buffer, BATCH_SIZE * 3);
+        bh.consume(state.buffer);
+        state.buffer.clear();
+        return n;
+    }
+
+    @State(Scope.Thread)
+    public static class DrainState {
+
+        final List<Object> buffer = new ArrayList<Object>(BATCH_SIZE * 3);
+    }
+}
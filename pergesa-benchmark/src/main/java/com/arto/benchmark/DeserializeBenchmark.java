@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.arto.core.codec.BinaryMessageCodec;
+import com.arto.core.codec.MessageCodecFactory;
+import com.arto.core.common.MessageRecord;
+import com.arto.core.consumer.ConsumerConfig;
+import com.arto.core.consumer.MessageDeserializePlan;
+import com.arto.core.consumer.MqListener;
+import com.arto.core.consumer.strategy.AbstractConsumerStrategy;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消费路径上的反序列化开销，对比字符串解析与编码器字节解析，
+ * 以原消费路径(TypeReferenceUtil按方法名取类型后fastjson解析字符串)为基准
+ *
+ * Created by xiong.j on 2017/4/24.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeserializeBenchmark {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** 消息明细条数，控制消息大小 */
+    @Param({"1", "20", "200"})
+    public int itemCount;
+
+    private ConsumerConfig config;
+
+    private BenchmarkStrategy strategy;
+
+    private String json;
+
+    private byte[] jsonBytes;
+
+    private byte[] binaryBytes;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        // 编码器配置从容器加载
+        BenchmarkContext.get();
+        config = new ConsumerConfig();
+        config.setDestination("benchmark");
+        config.setListener(new BenchmarkListener());
+        config.setDeserializePlan(MessageDeserializePlan.create(config));
+        strategy = new BenchmarkStrategy();
+
+        MessageRecord record = new MessageRecord(BenchmarkMessage.create(1L, itemCount));
+        jsonBytes = MessageCodecFactory.encode(record);
+        json = new String(jsonBytes, UTF8);
+        binaryBytes = MessageCodecFactory.encode(MessageCodecFactory.getCodec(BinaryMessageCodec.NAME), true, record);
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public MessageRecord typeReferenceBaseline() {
+        // 不导入已废弃的类，导入语句上的废弃警告无法抑制(Java 8及以前)
+        return JSON.parseObject(json, com.arto.event.util.TypeReferenceUtil.getType(config.getListener()));
+    }
+
+    @Benchmark
+    public MessageRecord fromString() {
+        return strategy.deserialize(config, json);
+    }
+
+    @Benchmark
+    public MessageRecord fromJsonBytes() {
+        return strategy.deserialize(config, jsonBytes);
+    }
+
+    @Benchmark
+    public MessageRecord fromBinaryBytes() {
+        return strategy.deserialize(config, binaryBytes);
+    }
+
+    /** 暴露消费策略中的反序列化方法 */
+    private static class BenchmarkStrategy extends AbstractConsumerStrategy {
+
+        MessageRecord deserialize(ConsumerConfig config, String payload) {
+            return deserializerMessage(config, payload);
+        }
+
+        MessageRecord deserialize(ConsumerConfig config, byte[] payload) {
+            return deserializerMessage(config, payload);
+        }
+    }
+
+    private static class BenchmarkListener implements MqListener<BenchmarkMessage> {
+
+        @Override
+        public void onMessage(MessageRecord<BenchmarkMessage> record) {
+        }
+
+        @Override
+        public boolean checkRedeliver(MessageRecord<BenchmarkMessage> record) {
+            return false;
+        }
+    }
+}
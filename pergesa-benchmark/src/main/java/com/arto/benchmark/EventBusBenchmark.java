@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.benchmark;
+
+import com.arto.event.bootstrap.Event;
+import com.arto.event.bootstrap.EventBusFactory;
+import com.arto.event.bootstrap.EventListener;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 事件总线分发开销(按监听器数量)
+ *
+ * Created by xiong.j on 2017/4/24.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventBusBenchmark {
+
+    @Param({"1", "4"})
+    public int listeners;
+
+    private final AtomicLong received = new AtomicLong();
+
+    private BenchmarkEvent event;
+
+    @Setup
+    public void setup() {
+        EventBusFactory.getInstance().clearListeners(BenchmarkEvent.class);
+        for (int i = 0; i < listeners; i++) {
+            EventBusFactory.getInstance().register(BenchmarkEvent.class, new CountingListener("benchmark-" + i, received));
+        }
+        event = new BenchmarkEvent();
+        event.setPayload(BenchmarkMessage.create(1L, 1));
+    }
+
+    @TearDown
+    public void tearDown() {
+        EventBusFactory.getInstance().clearListeners(BenchmarkEvent.class);
+    }
+
+    @Benchmark
+    public void post() {
+        EventBusFactory.getInstance().post(event);
+    }
+
+    /** 只计数的监听器 */
+    public static class CountingListener implements EventListener<Event<BenchmarkMessage>> {
+
+        private final String identity;
+
+        private final AtomicLong received;
+
+        CountingListener(String identity, AtomicLong received) {
+            this.identity = identity;
+            this.received = received;
+        }
+
+        @Subscribe
+        @AllowConcurrentEvents
+        @Override
+        public void listen(Event<BenchmarkMessage> event) {
+            received.incrementAndGet();
+        }
+
+        @Override
+        public String getIdentity() {
+            return identity;
+        }
+    }
+}
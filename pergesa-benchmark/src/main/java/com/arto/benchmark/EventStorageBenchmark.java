@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.arto.event.common.EventStatusEnum;
+import com.arto.event.storage.EventInfo;
+import com.arto.event.storage.EventStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 事件持久化开销(内嵌H2，PostgreSQL兼容模式)，用于对比单条与多行插入，不代表真实数据库的绝对耗时
+ *
+ * Created by xiong.j on 2017/4/24.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventStorageBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    private EventStorage storage;
+
+    private String payload;
+
+    private EventInfo updateInfo;
+
+    @Setup
+    public void setup() throws Exception {
+        storage = BenchmarkContext.getBean(EventStorage.class);
+        payload = JSON.toJSONString(BenchmarkMessage.create(1L, 20));
+        // 预先插入一条用于更新
+        List<EventInfo> list = new ArrayList<EventInfo>(1);
+        list.add(newEventInfo());
+        insert(list);
+        updateInfo = new EventInfo();
+        updateInfo.setId(list.get(0).getId());
+        updateInfo.setStatus(EventStatusEnum.PROCESSING.getCode());
+    }
+
+    @Benchmark
+    public int insertOne() {
+        List<EventInfo> list = new ArrayList<EventInfo>(1);
+        list.add(newEventInfo());
+        return insert(list);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int insertBatch() {
+        List<EventInfo> list = new ArrayList<EventInfo>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            list.add(newEventInfo());
+        }
+        return insert(list);
+    }
+
+    @Benchmark
+    public int update() {
+        return storage.update(updateInfo);
+    }
+
+    private int insert(List<EventInfo> list) {
+        // 与PersistentEventService.persistPrepared相同，ID从序列分配
+        List<Long> ids = storage.nextIds(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            list.get(i).setId(ids.get(i));
+        }
+        return storage.batchInsert(list);
+    }
+
+    private EventInfo newEventInfo() {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        EventInfo eventInfo = new EventInfo();
+        eventInfo.setTag(0);
+        eventInfo.setSystemId("benchmark");
+        eventInfo.setBusinessType("benchmark");
+        eventInfo.setEventType(BenchmarkEvent.class.getName());
+        eventInfo.setStatus(EventStatusEnum.WAIT.getCode());
+        eventInfo.setPayload(payload);
+        eventInfo.setDefaultRetriedCount(3);
+        eventInfo.setGmtCreated(now);
+        eventInfo.setGmtModified(now);
+        return eventInfo;
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.benchmark;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.h2.tools.SimpleResultSet;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * 内嵌H2缺少的PostgreSQL函数，由benchmark-tables.sql注册
+ *
+ * Created by xiong.j on 2017/4/24.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class H2Functions {
+
+    /**
+     * generate_series(start, stop)，返回start到stop(含)的整数
+     *
+     * @param connection
+     * @param start
+     * @param stop
+     * @return
+     * @throws SQLException
+     */
+    public static ResultSet generateSeries(Connection connection, int start, int stop) throws SQLException {
+        SimpleResultSet rs = new SimpleResultSet();
+        rs.addColumn("GENERATE_SERIES", Types.INTEGER, 10, 0);
+        // H2解析语句时会先调用一次以获取列信息
+        if ("jdbc:columnlist:connection".equals(connection.getMetaData().getURL())) {
+            return rs;
+        }
+        for (int i = start; i <= stop; i++) {
+            rs.addRow(i);
+        }
+        return rs;
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.arto.event.bootstrap.EventBusFactory;
+import com.arto.event.router.PersistentEventRouter;
+import com.arto.event.router.PersistentEventRouterFactory;
+import com.arto.event.storage.EventInfo;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 持久化事件恢复路由开销: 代理查找、反序列化及分发
+ *
+ * Created by xiong.j on 2017/4/24.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RouterBenchmark {
+
+    @Param({"1", "20"})
+    public int itemCount;
+
+    private final AtomicLong received = new AtomicLong();
+
+    private EventInfo eventInfo;
+
+    @Setup
+    public void setup() {
+        EventBusFactory.getInstance().clearListeners(BenchmarkEvent.class);
+        EventBusFactory.getInstance().register(BenchmarkEvent.class,
+                new EventBusBenchmark.CountingListener("router", received));
+        BenchmarkEvent event = new BenchmarkEvent();
+        event.setPayload(BenchmarkMessage.create(1L, itemCount));
+        eventInfo = new EventInfo();
+        eventInfo.setId(1L);
+        eventInfo.setEventType(BenchmarkEvent.class.getName());
+        eventInfo.setPayload(JSON.toJSONString(event));
+    }
+
+    @TearDown
+    public void tearDown() {
+        EventBusFactory.getInstance().clearListeners(BenchmarkEvent.class);
+    }
+
+    @Benchmark
+    public Object getProxy() throws Throwable {
+        return PersistentEventRouterFactory.getProxy(eventInfo);
+    }
+
+    @Benchmark
+    public void router() throws Throwable {
+        PersistentEventRouter router = PersistentEventRouterFactory.getProxy(eventInfo);
+        router.router(eventInfo);
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.benchmark;
+
+import com.arto.event.serialization.JsonSerializer;
+import com.arto.event.util.StringUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发送路径上的序列化开销: 持久化序列化和消息大小检查
+ *
+ * Created by xiong.j on 2017/4/24.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializerBenchmark {
+
+    /** 消息明细条数，控制消息大小 */
+    @Param({"1", "20", "200"})
+    public int itemCount;
+
+    private JsonSerializer serializer;
+
+    private BenchmarkMessage message;
+
+    @Setup
+    public void setup() {
+        serializer = new JsonSerializer(null, -1);
+        message = BenchmarkMessage.create(1L, itemCount);
+    }
+
+    @Benchmark
+    public String serialize() throws Exception {
+        return serializer.serializer(message);
+    }
+
+    @Benchmark
+    public String checkSize() throws Exception {
+        return StringUtil.checkSize(message, 1048576);
+    }
+}
@@ -0,0 +1,28 @@
+-- H2(PostgreSQL兼容模式)，与pergesa-doc/dbscripts/tables.sql的结构一致
+-- bigserial对应的序列，EventRdbStorage.nextIds从该序列分配ID
+CREATE SEQUENCE IF NOT EXISTS event_storage_id_seq;
+
+-- H2没有generate_series，用Java函数实现
+CREATE ALIAS IF NOT EXISTS generate_series FOR "com.arto.benchmark.H2Functions.generateSeries";
+
+CREATE TABLE IF NOT EXISTS event_storage
+(
+  id bigint DEFAULT NEXT VALUE FOR event_storage_id_seq,
+  tag smallint,
+  system_id varchar(64),
+  business_id varchar(64),
+  business_type varchar(64),
+  event_type varchar(128),
+  status smallint,
+  payload text,
+  retried_count_d smallint,
+  retried_count_c smallint,
+  next_retry_time timestamp,
+  memo text,
+  gmt_created timestamp,
+  gmt_modified timestamp,
+  CONSTRAINT event_storage_pkey PRIMARY KEY (id, tag, system_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_event_storage_ts ON event_storage(status);
+CREATE INDEX IF NOT EXISTS idx_event_storage_gm ON event_storage(gmt_modified);
@@ -21,4 +21,26 @@ CREATE TABLE event_storage
 create index idx_event_storage_ts on event_storage(status);
 create index idx_event_storage_gm on event_storage(gmt_modified);
 
+-- 消费去重记录(mq.dedup.persist=true时使用)
+CREATE TABLE consumer_dedup
+(
+  destination character varying(128),
+  dedup_key character varying(160),
+  gmt_created timestamp without time zone,
+  CONSTRAINT consumer_dedup_pkey PRIMARY KEY (destination, dedup_key)
+);
+
+create index idx_consumer_dedup_gc on consumer_dedup(gmt_created);
+
+-- Kafka事务消费位置(@Consumer(exactlyOnce = true)时使用)
+CREATE TABLE consumer_offset
+(
+  group_id character varying(128),
+  topic character varying(128),
+  partition_id integer,
+  next_offset bigint,
+  gmt_modified timestamp without time zone,
+  CONSTRAINT consumer_offset_pkey PRIMARY KEY (group_id, topic, partition_id)
+);
+
 commit;
\ No newline at end of file
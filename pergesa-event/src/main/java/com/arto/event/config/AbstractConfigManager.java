@@ -0,0 +1,199 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.event.config;
+
+import com.arto.event.util.PropertiesResolve;
+import com.arto.event.util.PropertiesUtil;
+import com.arto.event.util.SpringContextHolder;
+import com.google.common.base.Strings;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 配置管理基类，配置项首次读取后缓存，之后的读取不再经过Spring解析和配置文件，
+ * 按config.refresh.interval(秒，默认60，小于等于0不刷新)定时调用refresh重新加载并通知监听者
+ *
+ * Created by xiong.j on 2017/4/18.
+ */
+@Slf4j
+public abstract class AbstractConfigManager {
+
+    /** 缓存中表示配置项不存在 */
+    private static final String ABSENT = "";
+
+    /** 定时刷新间隔的配置项(秒) */
+    private static final String REFRESH_INTERVAL = "config.refresh.interval";
+
+    /** 定时刷新线程，所有配置管理共用 */
+    private static final ScheduledExecutorService REFRESHER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ConfigRefresher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final PropertiesResolve propertiesResolve;
+
+    private final String defaultFile;
+
+    private volatile Properties properties;
+
+    /** 已读取的配置项 */
+    private volatile ConcurrentMap<String, String> values = new ConcurrentHashMap<String, String>();
+
+    private final List<ConfigChangeListener> listeners = new CopyOnWriteArrayList<ConfigChangeListener>();
+
+    protected AbstractConfigManager(String defaultFile){
+        this.defaultFile = defaultFile;
+        this.propertiesResolve = SpringContextHolder.getBean(PropertiesResolve.class);
+        this.properties = load();
+        scheduleRefresh(getIntValue(REFRESH_INTERVAL, 60), TimeUnit.SECONDS);
+    }
+
+    protected int getIntValue(String name, int value){
+        String val = getValue(name);
+        return Strings.isNullOrEmpty(val) ? value : Integer.parseInt(val);
+    }
+
+    protected String getStringValue(String name, String value){
+        String val = getValue(name);
+        return Strings.isNullOrEmpty(val) ? value : val;
+    }
+
+    protected boolean getBooleanValue(String name, boolean value){
+        String val = getValue(name);
+        return Strings.isNullOrEmpty(val) ? value : Boolean.valueOf(val);
+    }
+
+    /**
+     * 重新加载配置文件，并重新解析已读取过的配置项，有变化时通知监听者
+     */
+    public synchronized void refresh(){
+        properties = load();
+        ConcurrentMap<String, String> refreshed = new ConcurrentHashMap<String, String>();
+        Set<String> changedKeys = new HashSet<String>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            String value = resolve(entry.getKey());
+            refreshed.put(entry.getKey(), value);
+            if (!value.equals(entry.getValue())) {
+                changedKeys.add(entry.getKey());
+                log.info("Reload property '" + entry.getKey() + "' = " + value);
+            }
+        }
+        values = refreshed;
+        onRefresh(changedKeys);
+        if (changedKeys.isEmpty()) {
+            return;
+        }
+        for (ConfigChangeListener listener : listeners) {
+            try {
+                listener.onChange(changedKeys);
+            } catch (Throwable t) {
+                log.warn("Config change listener failed:" + listener, t);
+            }
+        }
+    }
+
+    /**
+     * 按间隔定时刷新配置，间隔小于等于0时不刷新
+     *
+     * @param interval
+     * @param unit
+     * @return 定时任务，不刷新时返回null
+     */
+    ScheduledFuture<?> scheduleRefresh(long interval, TimeUnit unit){
+        if (interval <= 0) {
+            log.info("Config refresh disabled, file:" + defaultFile);
+            return null;
+        }
+        return REFRESHER.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refresh();
+                } catch (Throwable t) {
+                    // 异常不能抛出，否则后续不再执行
+                    log.warn("Refresh config failed, file:" + defaultFile, t);
+                }
+            }
+        }, interval, interval, unit);
+    }
+
+    public void addListener(ConfigChangeListener listener){
+        listeners.add(listener);
+    }
+
+    public void removeListener(ConfigChangeListener listener){
+        listeners.remove(listener);
+    }
+
+    /**
+     * 刷新后、通知监听者前调用，子类可在此重建配置快照
+     *
+     * @param changedKeys
+     */
+    protected void onRefresh(Set<String> changedKeys){
+    }
+
+    private String getValue(String name){
+        String value = values.get(name);
+        if (value == null) {
+            value = resolve(name);
+            // 只在首次读取时输出日志
+            if (values.putIfAbsent(name, value) == null) {
+                log.info("Load property '" + name + "' = " + value);
+            }
+        }
+        return value;
+    }
+
+    private String resolve(String name){
+        String value = null;
+        try {
+            value = propertiesResolve.getPropertiesValue(name);
+        } catch (IllegalArgumentException e) {
+            log.debug("Failed load property '" + name + "' from spring");
+        }
+
+        if (Strings.isNullOrEmpty(value) && properties != null) {
+            value = properties.getProperty(name);
+        }
+        return value == null ? ABSENT : value;
+    }
+
+    private Properties load(){
+        Properties properties = null;
+        try {
+            properties = PropertiesUtil.loadProperties(ConfigManager.class, defaultFile);
+        } catch (Exception e) {
+            log.warn("Failed load property file:" + defaultFile);
+        }
+        return properties;
+    }
+}
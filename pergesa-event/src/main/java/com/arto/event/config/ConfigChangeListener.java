@@ -0,0 +1,30 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.event.config;
+
+import java.util.Set;
+
+/**
+ * 配置变更监听，配置刷新后有值变化时回调
+ *
+ * Created by xiong.j on 2017/4/18.
+ */
+public interface ConfigChangeListener {
+
+    /**
+     * 配置刷新后回调(在调用refresh的线程中执行)
+     *
+     * @param changedKeys 值发生变化的配置项
+     */
+    void onChange(Set<String> changedKeys);
+}
@@ -12,29 +12,18 @@
  */
 package com.arto.event.config;
 
-import com.arto.event.util.PropertiesResolve;
-import com.arto.event.util.PropertiesUtil;
-import com.arto.event.util.SpringContextHolder;
-import com.google.common.base.Strings;
-import lombok.extern.slf4j.Slf4j;
-
-import java.util.Properties;
+import java.util.Set;
 
 /**
  * Created by xiong.j on 2017/2/8.
  */
-@Slf4j
-public class ConfigManager {
-
-    private final PropertiesResolve propertiesResolve;
-
-    private final String defaultFile = "pergesa-event.properties";
+public class ConfigManager extends AbstractConfigManager {
 
-    private final Properties properties;
+    /** 事件持久化配置快照 */
+    private volatile EventConfig eventConfig;
 
     private ConfigManager(){
-        propertiesResolve = SpringContextHolder.getBean(PropertiesResolve.class);
-        properties = init();
+        super("pergesa-event.properties");
     }
 
     private static class ConfigHolder{
@@ -46,55 +35,35 @@ public class ConfigManager {
     }
 
     public static int getInt(String name, int value){
-        String val = ConfigManager.getInstance().getValue(name);
-        int result = value;
-        if (!Strings.isNullOrEmpty(val)) {
-            result = Integer.parseInt(val);
-        }
-        log.debug("Load property '" + name + "' = " + result);
-        return result;
+        return ConfigManager.getInstance().getIntValue(name, value);
     }
 
     public static String getString(String name, String value){
-        String result = ConfigManager.getInstance().getValue(name);
-        if (Strings.isNullOrEmpty(result)) {
-            result = value;
-        }
-        log.debug("Load property '" + name + "' = " + result);
-        return result;
+        return ConfigManager.getInstance().getStringValue(name, value);
     }
 
     public static boolean getBoolean(String name, boolean value){
-        String val = ConfigManager.getInstance().getValue(name);
-        boolean result = value;
-        if (!Strings.isNullOrEmpty(val)) {
-            result = Boolean.valueOf(val);
-        }
-        log.debug("Load property '" + name + "' = " + result);
-        return result;
+        return ConfigManager.getInstance().getBooleanValue(name, value);
     }
 
-    private String getValue(String name){
-        String value = null;
-        try {
-            value = propertiesResolve.getPropertiesValue(name);
-        } catch (IllegalArgumentException e) {
-            log.debug("Failed load property '" + name + "' from spring");
-        }
-
-        if (Strings.isNullOrEmpty(value)) {
-            return properties.getProperty(name);
+    /**
+     * 获取事件持久化配置快照
+     *
+     * @return
+     */
+    public static EventConfig getEventConfig(){
+        ConfigManager manager = ConfigManager.getInstance();
+        EventConfig config = manager.eventConfig;
+        if (config == null) {
+            // 并发初始化时多创建一次无副作用
+            config = new EventConfig(manager);
+            manager.eventConfig = config;
         }
-        return value;
+        return config;
     }
 
-    private Properties init(){
-        Properties properties = null;
-        try {
-            properties = PropertiesUtil.loadProperties(ConfigManager.class, defaultFile);
-        } catch (Exception e) {
-            log.warn("Failed load property file:" + defaultFile);
-        }
-        return properties;
+    @Override
+    protected void onRefresh(Set<String> changedKeys) {
+        eventConfig = new EventConfig(this);
     }
 }
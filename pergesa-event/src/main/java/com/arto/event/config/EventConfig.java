@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.event.config;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 事件持久化配置快照(不可变)，热点路径直接读取字段，刷新配置时整体替换
+ *
+ * Created by xiong.j on 2017/4/18.
+ */
+@Getter
+@ToString
+public final class EventConfig {
+
+    /** 应用名称 */
+    private final String systemId;
+
+    /** 分片标签数 */
+    private final int storageTag;
+
+    /** 默认重试次数 */
+    private final int retryTimes;
+
+    /** 无限重试时的重试间隔(秒) */
+    private final int infiniteRetryInterval;
+
+    /** 是否使用乐观锁 */
+    private final boolean lockOptimistic;
+
+    /** 多行插入时每条SQL的最大行数 */
+    private final int insertBatchSize;
+
+    /** 恢复调度查询的起始天数 */
+    private final int recoveryStartDay;
+
+    /** 恢复调度延迟秒数 */
+    private final int recoveryDelaySecond;
+
+    /** 恢复调度每次查询条数 */
+    private final int recoveryLimit;
+
+    EventConfig(ConfigManager manager) {
+        systemId = manager.getStringValue("sar.name", "webapp");
+        storageTag = manager.getIntValue("event.storage.tag", 10);
+        retryTimes = manager.getIntValue("event.retry.times", 5);
+        infiniteRetryInterval = manager.getIntValue("event.infinite.retry.interval", 600);
+        lockOptimistic = manager.getBooleanValue("event.persistent.lock.optimistic", false);
+        insertBatchSize = manager.getIntValue("event.persistent.insert.batchSize", 500);
+        recoveryStartDay = manager.getIntValue("event.recovery.start.day", 7);
+        recoveryDelaySecond = manager.getIntValue("event.recovery.delay.second", 600);
+        recoveryLimit = manager.getIntValue("event.recovery.limit", 1000);
+    }
+}
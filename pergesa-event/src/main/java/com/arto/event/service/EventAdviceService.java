@@ -14,6 +14,8 @@ package com.arto.event.service;
 
 import com.arto.event.bootstrap.Event;
 
+import java.util.List;
+
 /**
  * Created by xiong.j on 2017/1/4.
  */
@@ -28,6 +30,15 @@ public interface EventAdviceService {
      */
     public Event before(Event event) throws Exception;
 
+    /**
+     * Event批量处理前时的处理
+     *
+     * @param events
+     * @return 可以继续处理的Event
+     * @throws
+     */
+    public <T extends Event> List<T> before(List<T> events) throws Exception;
+
     /**
      * Event处理后时的处理
      *
@@ -35,6 +46,13 @@ public interface EventAdviceService {
      */
     public void after(Event event);
 
+    /**
+     * Event批量处理后时的处理
+     *
+     * @param events
+     */
+    public void after(List<? extends Event> events);
+
     /**
      * Event处理失败时的处理
      *
@@ -43,4 +61,12 @@ public interface EventAdviceService {
      */
     public void fail(Event event, Throwable throwable);
 
+    /**
+     * Event暂不处理，持久化Event延后到指定秒数后由调度任务处理(不计入重试次数)
+     *
+     * @param events
+     * @param delaySeconds
+     */
+    public void park(List<? extends Event> events, int delaySeconds);
+
 }
@@ -19,6 +19,12 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Created by xiong.j on 2017/1/4.
  */
@@ -47,6 +53,51 @@ public class EventAdviceServiceImpl implements EventAdviceService {
         return event;
     }
 
+    /**
+     * Event批量处理前的处理，持久化Event批量加锁，未取到锁记录的Event不再处理
+     *
+     * @param events
+     * @return
+     * @throws
+     */
+    @Override
+    public <T extends Event> List<T> before(List<T> events) throws Exception{
+        List<EventInfo> eventInfos = new ArrayList<EventInfo>(events.size());
+        for (T event : events) {
+            if (isPersistentEvent(event)) {
+                eventInfos.add(event.getEventContext().getEventInfo());
+            }
+        }
+        if (eventInfos.isEmpty()) {
+            return events;
+        }
+
+        List<EventInfo> lockedInfos = persistentEventService.lock(eventInfos);
+        if (lockedInfos == null) {
+            // 乐观锁
+            return events;
+        }
+        Map<Long, EventInfo> lockedMap = new HashMap<Long, EventInfo>(lockedInfos.size() * 2);
+        for (EventInfo eventInfo : lockedInfos) {
+            lockedMap.put(eventInfo.getId(), eventInfo);
+        }
+        List<T> result = new ArrayList<T>(events.size());
+        for (T event : events) {
+            if (!isPersistentEvent(event)) {
+                result.add(event);
+                continue;
+            }
+            EventInfo eventInfo = lockedMap.get(event.getEventContext().getEventInfo().getId());
+            if (eventInfo != null) {
+                event.getEventContext().setEventInfo(eventInfo);
+                result.add(event);
+            } else {
+                log.warn("Persistent event not found, skip it. Event:" + event);
+            }
+        }
+        return result;
+    }
+
     /**
      * Event处理后的处理
      *
@@ -60,6 +111,23 @@ public class EventAdviceServiceImpl implements EventAdviceService {
         }
     }
 
+    /**
+     * Event批量处理后的处理
+     *
+     * @param events
+     */
+    @Override
+    public void after(List<? extends Event> events){
+        List<EventInfo> eventInfos = new ArrayList<EventInfo>(events.size());
+        for (Event event : events) {
+            log.debug("Process event successful. Event:" + event);
+            if (isPersistentEvent(event)) {
+                eventInfos.add(event.getEventContext().getEventInfo());
+            }
+        }
+        persistentEventService.finish(eventInfos);
+    }
+
     /**
      * Event处理失败时的处理
      *
@@ -75,6 +143,28 @@ public class EventAdviceServiceImpl implements EventAdviceService {
         }
     }
 
+    /**
+     * Event暂不处理，持久化Event延后到指定秒数后由调度任务处理，非持久化Event直接丢弃
+     *
+     * @param events
+     * @param delaySeconds
+     */
+    @Override
+    public void park(List<? extends Event> events, int delaySeconds){
+        List<EventInfo> eventInfos = new ArrayList<EventInfo>(events.size());
+        for (Event event : events) {
+            if (isPersistentEvent(event)) {
+                eventInfos.add(event.getEventContext().getEventInfo());
+            } else {
+                log.warn("Discard non-persistent event. Event:" + event);
+            }
+        }
+        if (!eventInfos.isEmpty()) {
+            persistentEventService.park(eventInfos, new Timestamp(System.currentTimeMillis() + delaySeconds * 1000L));
+            log.info("Park persistent events, size:" + eventInfos.size() + ", delaySeconds:" + delaySeconds);
+        }
+    }
+
     private boolean isPersistentEvent(Event event) {
         if (event.getEventContext() != null) {
             if (event.getEventContext().getEventInfo() != null) {
@@ -13,6 +13,7 @@
 package com.arto.event.service;
 
 import com.arto.event.config.ConfigManager;
+import com.arto.event.config.EventConfig;
 import com.arto.event.router.PersistentEventDispatch;
 import com.arto.event.storage.EventInfo;
 import com.arto.event.storage.EventStorage;
@@ -42,11 +43,12 @@ public class EventRecoveryServiceImpl implements EventRecoveryService {
     @Override
     public List<EventInfo> fetchData(List<Integer> tags) {
         // id 升序(默认恢复7天前的数据，新事件默认延迟10分钟, 一次默认取1000条)
-        return eventStorage.findSince(ConfigManager.getString("sar.name", "webapp")
+        EventConfig config = ConfigManager.getEventConfig();
+        return eventStorage.findSince(config.getSystemId()
                 , tags
-                , DateUtil.getPrevDayTimestamp(ConfigManager.getInt("event.recovery.start.day", 7))
-                , DateUtil.getPrevSecTimestamp(ConfigManager.getInt("event.recovery.delay.second", 600))
-                , ConfigManager.getInt("event.recovery.limit", 1000));
+                , DateUtil.getPrevDayTimestamp(config.getRecoveryStartDay())
+                , DateUtil.getPrevSecTimestamp(config.getRecoveryDelaySecond())
+                , config.getRecoveryLimit());
     }
 
     public int execute(List<EventInfo> infos) {
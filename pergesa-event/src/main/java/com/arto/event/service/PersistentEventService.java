@@ -17,6 +17,9 @@ import com.arto.event.exception.EventException;
 import com.arto.event.serialization.Serializer;
 import com.arto.event.storage.EventInfo;
 
+import java.sql.Timestamp;
+import java.util.List;
+
 /**
  * Created by xiong.j on 2017/1/4.
  */
@@ -32,6 +35,35 @@ public interface PersistentEventService {
      */
     public void persist(Event event, Serializer serializer, String type) throws EventException;
 
+    /**
+     * 批量持久化Event(同一事务内一次批量插入)
+     *
+     * @param events
+     * @param serializer
+     * @param type
+     * @throws EventException
+     */
+    public void persist(List<? extends Event> events, Serializer serializer, String type) throws EventException;
+
+    /**
+     * 准备延迟持久化的Event并设置事件上下文，不访问数据库，ID在插入时从ID序列分配
+     *
+     * @param event
+     * @param serializer
+     * @param type
+     * @return 待插入的记录
+     * @throws EventException
+     */
+    public EventInfo prepare(Event event, Serializer serializer, String type) throws EventException;
+
+    /**
+     * 从ID序列分配ID后一次多行插入已准备的记录(需在准备时所在的事务中调用)
+     *
+     * @param eventInfos
+     * @throws EventException
+     */
+    public void persistPrepared(List<EventInfo> eventInfos) throws EventException;
+
     /**
      * 对持久化Event加锁(JDBC时有效)
      *
@@ -41,6 +73,15 @@ public interface PersistentEventService {
      */
     public EventInfo lock(EventInfo eventInfo) throws EventException;
 
+    /**
+     * 对持久化Event批量加锁(JDBC时有效)
+     *
+     * @param eventInfos
+     * @return 加锁成功的记录，乐观锁时返回null
+     * @throws EventException
+     */
+    public List<EventInfo> lock(List<EventInfo> eventInfos) throws EventException;
+
     /**
      * 持久化Event处理失败时的处理
      *
@@ -55,4 +96,19 @@ public interface PersistentEventService {
      */
     public void finish(EventInfo eventInfo);
 
+    /**
+     * 持久化Event批量处理成功时的处理
+     *
+     * @param eventInfos
+     */
+    public void finish(List<EventInfo> eventInfos);
+
+    /**
+     * 持久化Event延后处理(不计入重试次数)，到达重试时间后由调度任务处理
+     *
+     * @param eventInfos
+     * @param nextRetryTime 下次重试时间
+     */
+    public void park(List<EventInfo> eventInfos, Timestamp nextRetryTime);
+
 }
@@ -18,6 +18,7 @@ import com.arto.event.bootstrap.EventContext;
 import com.arto.event.common.Constants;
 import com.arto.event.common.EventStatusEnum;
 import com.arto.event.config.ConfigManager;
+import com.arto.event.config.EventConfig;
 import com.arto.event.exception.EventException;
 import com.arto.event.exception.PersistentEventLockException;
 import com.arto.event.serialization.Serializer;
@@ -31,6 +32,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -75,6 +78,97 @@ public class PersistentEventServiceImpl implements PersistentEventService {
         }
     }
 
+    /**
+     * 批量持久化Event
+     *
+     * @param events
+     * @param serializer
+     * @param type
+     * @throws
+     */
+    @Transactional
+    @Override
+    public void persist(List<? extends Event> events, Serializer serializer, String type) throws EventException {
+        if (Strings.isNullOrEmpty(type)) {
+            throw new EventException("'eventType' can't be null or blank.");
+        }
+        for (Event event : events) {
+            if (Strings.isNullOrEmpty(event.getBusinessId()) || Strings.isNullOrEmpty(event.getBusinessType())) {
+                throw new EventException("'businessId' and 'businessType' can't be null or blank.");
+            }
+        }
+
+        try {
+            List<EventInfo> eventInfos = new ArrayList<EventInfo>(events.size());
+            for (Event event : events) {
+                eventInfos.add(event2Info(event, serializer, type));
+            }
+            eventStorage.batchCreate(eventInfos);
+            for (int i = 0; i < events.size(); i++) {
+                events.get(i).setEventContext(new EventContext(eventInfos.get(i)));
+            }
+        } catch (Exception e) {
+            throw new EventException("Persist event failed.", e);
+        }
+    }
+
+    /**
+     * 准备延迟持久化的Event
+     *
+     * @param event
+     * @param serializer
+     * @param type
+     * @return
+     * @throws
+     */
+    @Override
+    public EventInfo prepare(Event event, Serializer serializer, String type) throws EventException {
+        if (Strings.isNullOrEmpty(event.getBusinessId()) || Strings.isNullOrEmpty(event.getBusinessType())) {
+            throw new EventException("'businessId' and 'businessType' can't be null or blank.");
+        }
+        if (Strings.isNullOrEmpty(type)) {
+            throw new EventException("'eventType' can't be null or blank.");
+        }
+
+        try {
+            EventInfo eventInfo = event2Info(event, serializer, type);
+            // 与数据库current_timestamp(0)保持相同精度，乐观锁更新时使用
+            Timestamp now = new Timestamp(System.currentTimeMillis() / 1000 * 1000);
+            eventInfo.setGmtCreated(now);
+            eventInfo.setGmtModified(now);
+            event.setEventContext(new EventContext(eventInfo));
+            return eventInfo;
+        } catch (Exception e) {
+            throw new EventException("Prepare event failed.", e);
+        }
+    }
+
+    /**
+     * 从ID序列分配ID后多行插入已准备的记录
+     *
+     * @param eventInfos
+     * @throws
+     */
+    @Transactional
+    @Override
+    public void persistPrepared(List<EventInfo> eventInfos) throws EventException {
+        int batchSize = ConfigManager.getEventConfig().getInsertBatchSize();
+        try {
+            List<EventInfo> chunk;
+            for (int from = 0; from < eventInfos.size(); from += batchSize) {
+                chunk = eventInfos.subList(from, Math.min(from + batchSize, eventInfos.size()));
+                // 与立即持久化使用同一ID序列，插入时不需要取回生成的主键
+                List<Long> ids = eventStorage.nextIds(chunk.size());
+                for (int i = 0; i < chunk.size(); i++) {
+                    chunk.get(i).setId(ids.get(i));
+                }
+                eventStorage.batchInsert(chunk);
+            }
+        } catch (Exception e) {
+            throw new EventException("Persist prepared events failed.", e);
+        }
+    }
+
     /**
      * 对持久化Event加锁
      *
@@ -84,7 +178,7 @@ public class PersistentEventServiceImpl implements PersistentEventService {
      */
     @Override
     public EventInfo lock(EventInfo eventInfo) throws EventException {
-        if (ConfigManager.getBoolean("event.persistent.lock.optimistic", false)) {
+        if (ConfigManager.getEventConfig().isLockOptimistic()) {
             // 乐观锁直接返回
             return null;
         } else {
@@ -94,13 +188,29 @@ public class PersistentEventServiceImpl implements PersistentEventService {
                 /** } catch (EmptyResultDataAccessException empty) {
                 ThreadUtil.sleep(100); */
             } catch (Exception e) {
-                if (e.getMessage().contains("ORA-00054")
-                        || e.getMessage().contains("could not obtain lock")) {
-                    // Oracle和Postgresql环境下获取锁失败Exception
-                    throw new PersistentEventLockException(e);
-                }
-                // 其它Exception
-                throw new EventException("Lock persistent event failed.", e);
+                throw convertLockException(e);
+            }
+        }
+    }
+
+    /**
+     * 对持久化Event批量加锁
+     *
+     * @param eventInfos
+     * @return
+     * @throws
+     */
+    @Override
+    public List<EventInfo> lock(List<EventInfo> eventInfos) throws EventException {
+        if (ConfigManager.getEventConfig().isLockOptimistic()) {
+            // 乐观锁直接返回
+            return null;
+        } else {
+            try {
+                // 手动加锁
+                return eventStorage.lockByIds(getIds(eventInfos));
+            } catch (Exception e) {
+                throw convertLockException(e);
             }
         }
     }
@@ -147,6 +257,42 @@ public class PersistentEventServiceImpl implements PersistentEventService {
         update(updInfo);
     }
 
+    /**
+     * 持久化Event批量处理成功时的处理
+     *
+     * @param eventInfos
+     */
+    @Override
+    public void finish(List<EventInfo> eventInfos){
+        if (eventInfos == null || eventInfos.isEmpty()) {
+            return;
+        }
+        if (ConfigManager.getEventConfig().isLockOptimistic()) {
+            // 乐观锁需要逐条比较更新时间
+            for (EventInfo eventInfo : eventInfos) {
+                finish(eventInfo);
+            }
+        } else {
+            // 更新处理状态为 "2:处理成功"
+            eventStorage.updateStatus(getIds(eventInfos), EventStatusEnum.SUCCESS.getCode());
+        }
+    }
+
+    /**
+     * 持久化Event延后处理(不计入重试次数)，到达重试时间后由调度任务处理
+     *
+     * @param eventInfos
+     * @param nextRetryTime 下次重试时间
+     */
+    @Override
+    public void park(List<EventInfo> eventInfos, Timestamp nextRetryTime){
+        if (eventInfos == null || eventInfos.isEmpty()) {
+            return;
+        }
+        // 更新状态为 "1:处理中"，调度任务按重试时间抓取
+        eventStorage.updateRetryTime(getIds(eventInfos), EventStatusEnum.PROCESSING.getCode(), nextRetryTime);
+    }
+
     private void retry(EventInfo eventInfo){
         EventInfo updInfo = new EventInfo();
         updInfo.setId(eventInfo.getId());
@@ -158,7 +304,7 @@ public class PersistentEventServiceImpl implements PersistentEventService {
         updInfo.setCurrentRetriedCount(eventInfo.getCurrentRetriedCount() + 1);
         if (eventInfo.getDefaultRetriedCount() == -1) {
             // 无限重试时(默认间隔为10分钟)
-            updInfo.setNextRetryTime(DateUtil.getPrevSecTimestamp(ConfigManager.getInt("event.infinite.retry.interval", 600)));
+            updInfo.setNextRetryTime(DateUtil.getPrevSecTimestamp(ConfigManager.getEventConfig().getInfiniteRetryInterval()));
         } else {
             // 设置有重试次数时
             updInfo.setNextRetryTime(getNextRetryTime(updInfo.getCurrentRetriedCount()));
@@ -168,7 +314,7 @@ public class PersistentEventServiceImpl implements PersistentEventService {
     }
 
     private void update(EventInfo updInfo) {
-        if (ConfigManager.getBoolean("event.persistent.lock.optimistic", false)) {
+        if (ConfigManager.getEventConfig().isLockOptimistic()) {
             // 采用乐观锁时更新操作
             eventStorage.optimisticUpdate(updInfo);
         } else {
@@ -189,17 +335,18 @@ public class PersistentEventServiceImpl implements PersistentEventService {
             // 报告失败更新重试时间，避免调度任务立即抓取
             EventInfo updInfo = new EventInfo();
             updInfo.setId(eventInfo.getId());
-            updInfo.setNextRetryTime(DateUtil.getPrevSecTimestamp(ConfigManager.getInt("event.infinite.retry.interval", 600)));
+            updInfo.setNextRetryTime(DateUtil.getPrevSecTimestamp(ConfigManager.getEventConfig().getInfiniteRetryInterval()));
             update(updInfo);
         }
     }
 
     private EventInfo event2Info(Event event, Serializer serializer, String type) throws Exception {
+        EventConfig config = ConfigManager.getEventConfig();
         EventInfo info = new EventInfo();
         // Tag(事件分片数)
-        info.setTag(random.nextInt(ConfigManager.getInt("event.storage.tag", 10)));
+        info.setTag(random.nextInt(config.getStorageTag()));
         // 系统名
-        info.setSystemId(ConfigManager.getString("sar.name", "webapp"));
+        info.setSystemId(config.getSystemId());
         // 业务流水号
         info.setBusinessId(event.getBusinessId());
         // 业务类型
@@ -213,13 +360,31 @@ public class PersistentEventServiceImpl implements PersistentEventService {
         // 重试次数
         if (event.isPersistent() && event.getRetry() == 0) {
             // 持久化事件且没有设定重试次数的情况下，使用默认次数
-            info.setDefaultRetriedCount(ConfigManager.getInt("event.retry.times", 5));
+            info.setDefaultRetriedCount(config.getRetryTimes());
         } else {
             info.setDefaultRetriedCount(event.getRetry());
         }
         return info;
     }
 
+    private EventException convertLockException(Exception e) {
+        if (e.getMessage() != null && (e.getMessage().contains("ORA-00054")
+                || e.getMessage().contains("could not obtain lock"))) {
+            // Oracle和Postgresql环境下获取锁失败Exception
+            return new PersistentEventLockException(e);
+        }
+        // 其它Exception
+        return new EventException("Lock persistent event failed.", e);
+    }
+
+    private List<Long> getIds(List<EventInfo> eventInfos) {
+        List<Long> ids = new ArrayList<Long>(eventInfos.size());
+        for (EventInfo eventInfo : eventInfos) {
+            ids.add(eventInfo.getId());
+        }
+        return ids;
+    }
+
     private Timestamp getNextRetryTime(int currentRetriedCount){
         long delayMsec = 600 * 1000; // 10分钟
         switch (currentRetriedCount){
@@ -23,6 +23,15 @@ public interface EventStorage {
 
     EventInfo create(EventInfo eventInfo) throws SQLException;
 
+    /** 批量插入(一次JDBC批处理)，ID预先从序列分配，插入后回填ID和更新时间 */
+    List<EventInfo> batchCreate(List<EventInfo> eventInfos) throws SQLException;
+
+    /** 从ID序列一次分配多个ID */
+    List<Long> nextIds(int count);
+
+    /** 多行插入，ID和时间已由客户端预先设置，不返回生成的主键 */
+    int batchInsert(List<EventInfo> eventInfos);
+
     /** 普通更新操作 */
     int update(EventInfo eventInfo);
 
@@ -35,6 +44,15 @@ public interface EventStorage {
 
     EventInfo lockById(long id);
 
+    /** 批量加锁，返回加锁成功的记录 */
+    List<EventInfo> lockByIds(List<Long> ids);
+
+    /** 批量更新处理状态 */
+    int updateStatus(List<Long> ids, int status);
+
+    /** 批量更新处理状态和下次重试时间，不改变重试次数 */
+    int updateRetryTime(List<Long> ids, int status, Timestamp nextRetryTime);
+
     @Deprecated
     List<EventInfo> lock(EventInfo eventInfo);
 
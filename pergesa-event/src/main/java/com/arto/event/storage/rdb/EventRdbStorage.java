@@ -19,6 +19,8 @@ import com.arto.event.storage.EventStorage;
 import com.arto.event.util.StringUtil;
 import com.google.common.base.Strings;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.BeanPropertySqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
@@ -26,6 +28,7 @@ import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
@@ -47,6 +50,9 @@ public class EventRdbStorage implements EventStorage {
 
 	private static final String EVENT_SQL = " SELECT " + EVENT_COLUMN + " FROM EVENT_STORAGE E ";
 
+	/** ID序列(ID列为bigserial) */
+	private static final String ID_SEQUENCE = "event_storage_id_seq";
+
     @Autowired
 	private NamedParameterJdbcTemplate npJdbcTemplate;
 
@@ -68,6 +74,95 @@ public class EventRdbStorage implements EventStorage {
 		return eventInfo;
 	}
 
+	@Override
+	public List<EventInfo> batchCreate(final List<EventInfo> eventInfos) {
+		if (eventInfos.isEmpty()) {
+			return eventInfos;
+		}
+		// 预先从序列分配ID，批处理不依赖驱动返回生成的主键(部分驱动批处理时不返回或只返回最后一个)
+		List<Long> ids = nextIds(eventInfos.size());
+		for (int i = 0; i < eventInfos.size(); i++) {
+			eventInfos.get(i).setId(ids.get(i));
+		}
+
+		String sql = (" INSERT INTO EVENT_STORAGE(ID, TAG, SYSTEM_ID, BUSINESS_ID, BUSINESS_TYPE, "
+				+ " EVENT_TYPE, STATUS, PAYLOAD, RETRIED_COUNT_D, GMT_CREATED, GMT_MODIFIED) VALUES ("
+				+ " ?, ?, ?, ?, ?, ?, ?, ?, ?,"
+				+ Constants.PG_DATE_SQL + "," + Constants.PG_DATE_SQL + " ) ");
+		npJdbcTemplate.getJdbcOperations().batchUpdate(sql, new BatchPreparedStatementSetter() {
+			@Override
+			public void setValues(PreparedStatement ps, int i) throws SQLException {
+				EventInfo eventInfo = eventInfos.get(i);
+				ps.setLong(1, eventInfo.getId());
+				ps.setInt(2, eventInfo.getTag());
+				ps.setString(3, eventInfo.getSystemId());
+				ps.setString(4, eventInfo.getBusinessId());
+				ps.setString(5, eventInfo.getBusinessType());
+				ps.setString(6, eventInfo.getEventType());
+				ps.setInt(7, eventInfo.getStatus());
+				ps.setString(8, eventInfo.getPayload());
+				ps.setInt(9, eventInfo.getDefaultRetriedCount());
+			}
+
+			@Override
+			public int getBatchSize() {
+				return eventInfos.size();
+			}
+		});
+
+		// 回填数据库生成的更新时间(乐观锁更新时使用)
+		String query = "SELECT ID, GMT_MODIFIED FROM EVENT_STORAGE WHERE ID IN (:ids)";
+		Map<String, Object> paramMap = new HashMap<String, Object>();
+		paramMap.put("ids", ids);
+		final Map<Long, Timestamp> modified = new HashMap<Long, Timestamp>(ids.size() * 2);
+		npJdbcTemplate.query(query, paramMap, new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet rs) throws SQLException {
+				modified.put(rs.getLong("ID"), rs.getTimestamp("GMT_MODIFIED"));
+			}
+		});
+		for (EventInfo eventInfo : eventInfos) {
+			eventInfo.setGmtModified(modified.get(eventInfo.getId()));
+		}
+		return eventInfos;
+	}
+
+	@Override
+	public List<Long> nextIds(int count) {
+		String sql = "SELECT nextval('" + ID_SEQUENCE + "') FROM generate_series(1, ?)";
+		return npJdbcTemplate.getJdbcOperations().queryForList(sql, Long.class, count);
+	}
+
+	@Override
+	public int batchInsert(List<EventInfo> eventInfos) {
+		if (eventInfos.isEmpty()) {
+			return 0;
+		}
+		StringBuilder builder = new StringBuilder();
+		builder.append(" INSERT INTO EVENT_STORAGE(ID, TAG, SYSTEM_ID, BUSINESS_ID, BUSINESS_TYPE, ");
+		builder.append(" EVENT_TYPE, STATUS, PAYLOAD, RETRIED_COUNT_D, GMT_CREATED, GMT_MODIFIED) VALUES ");
+		Object[] args = new Object[eventInfos.size() * 11];
+		int i = 0;
+		for (EventInfo eventInfo : eventInfos) {
+			if (i > 0) {
+				builder.append(",");
+			}
+			builder.append("(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+			args[i++] = eventInfo.getId();
+			args[i++] = eventInfo.getTag();
+			args[i++] = eventInfo.getSystemId();
+			args[i++] = eventInfo.getBusinessId();
+			args[i++] = eventInfo.getBusinessType();
+			args[i++] = eventInfo.getEventType();
+			args[i++] = eventInfo.getStatus();
+			args[i++] = eventInfo.getPayload();
+			args[i++] = eventInfo.getDefaultRetriedCount();
+			args[i++] = eventInfo.getGmtCreated();
+			args[i++] = eventInfo.getGmtModified();
+		}
+		return npJdbcTemplate.getJdbcOperations().update(builder.toString(), args);
+	}
+
 	@Override
 	public int update(EventInfo eventInfo) {
 		StringBuilder builder = new StringBuilder();
@@ -129,6 +224,35 @@ public class EventRdbStorage implements EventStorage {
 		return npJdbcTemplate.queryForObject(sql, paramMap, new EventRowMapper());
 	}
 
+	@Override
+	public List<EventInfo> lockByIds(List<Long> ids) {
+		String sql = EVENT_SQL + " WHERE ID IN (:ids) FOR UPDATE NOWAIT";
+		Map<String, Object> paramMap = new HashMap<String, Object>();
+		paramMap.put("ids", ids);
+		return npJdbcTemplate.query(sql, paramMap, new EventRowMapper());
+	}
+
+	@Override
+	public int updateStatus(List<Long> ids, int status) {
+		String sql = "UPDATE EVENT_STORAGE SET STATUS = :status, GMT_MODIFIED = " + Constants.PG_DATE_SQL
+				+ " WHERE ID IN (:ids)";
+		Map<String, Object> paramMap = new HashMap<String, Object>();
+		paramMap.put("status", status);
+		paramMap.put("ids", ids);
+		return npJdbcTemplate.update(sql, paramMap);
+	}
+
+	@Override
+	public int updateRetryTime(List<Long> ids, int status, Timestamp nextRetryTime) {
+		String sql = "UPDATE EVENT_STORAGE SET STATUS = :status, NEXT_RETRY_TIME = :nextRetryTime, GMT_MODIFIED = "
+				+ Constants.PG_DATE_SQL + " WHERE ID IN (:ids)";
+		Map<String, Object> paramMap = new HashMap<String, Object>();
+		paramMap.put("status", status);
+		paramMap.put("nextRetryTime", nextRetryTime);
+		paramMap.put("ids", ids);
+		return npJdbcTemplate.update(sql, paramMap);
+	}
+
 	@Override
 	public List<EventInfo> lock(EventInfo eventInfo) {
 		return null;
@@ -20,9 +20,11 @@ import java.util.concurrent.ConcurrentMap;
 
 /**
  * 参照com.alibaba.fastjson.TypeReference
+ * 注: 类型只按方法名缓存，不同类的同名方法会相互覆盖，消费者已改用MessageDeserializePlan
  *
  * Created by xiong.j on 2017/1/25.
  */
+@Deprecated
 public class TypeReferenceUtil {
 
     private static final String defaultMethodName = "onMessage";
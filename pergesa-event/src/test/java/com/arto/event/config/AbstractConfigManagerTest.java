@@ -0,0 +1,89 @@
+package com.arto.event.config;
+
+import com.arto.event.util.PropertiesResolve;
+import com.arto.event.util.SpringContextHolder;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Created by xiong.j on 2017/4/30.
+ */
+public class AbstractConfigManagerTest {
+
+    /** Spring中的配置项，刷新线程会并发读取 */
+    private final ConcurrentMap<String, String> springValues = new ConcurrentHashMap<String, String>();
+
+    @Before
+    public void setUp() {
+        ConfigurableListableBeanFactory beanFactory = Mockito.mock(ConfigurableListableBeanFactory.class);
+        Mockito.when(beanFactory.getBean(PropertiesResolve.class)).thenReturn(new PropertiesResolve() {
+            @Override
+            public String getPropertiesValue(String name) {
+                return springValues.get(name);
+            }
+        });
+        new SpringContextHolder().postProcessBeanFactory(beanFactory);
+        // 构造时不开启定时刷新，由测试指定间隔
+        springValues.put("config.refresh.interval", "0");
+    }
+
+    @Test
+    public void testScheduledRefresh() throws Exception {
+        springValues.put("test.pool.size", "3");
+        TestConfigManager manager = new TestConfigManager();
+        Assert.assertEquals(3, manager.getIntValue("test.pool.size", 1));
+
+        final CountDownLatch changed = new CountDownLatch(1);
+        final AtomicReference<Set<String>> changedKeys = new AtomicReference<Set<String>>();
+        manager.addListener(new ConfigChangeListener() {
+            @Override
+            public void onChange(Set<String> keys) {
+                changedKeys.set(keys);
+                changed.countDown();
+            }
+        });
+        ScheduledFuture<?> future = manager.scheduleRefresh(20, TimeUnit.MILLISECONDS);
+        try {
+            springValues.put("test.pool.size", "5");
+            // 无需调用refresh，定时任务重新加载后通知监听者
+            Assert.assertTrue(changed.await(5, TimeUnit.SECONDS));
+            Assert.assertTrue(changedKeys.get().contains("test.pool.size"));
+            Assert.assertEquals(5, manager.getIntValue("test.pool.size", 1));
+            Assert.assertEquals(1, manager.refreshed);
+        } finally {
+            future.cancel(false);
+        }
+    }
+
+    @Test
+    public void testRefreshDisabled() {
+        Assert.assertNull(new TestConfigManager().scheduleRefresh(0, TimeUnit.SECONDS));
+    }
+
+    private static class TestConfigManager extends AbstractConfigManager {
+
+        private volatile int refreshed;
+
+        TestConfigManager() {
+            super("pergesa-event.properties");
+        }
+
+        @Override
+        protected void onRefresh(Set<String> changedKeys) {
+            if (!changedKeys.isEmpty()) {
+                refreshed++;
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.arto.event.service;
+
+import com.arto.event.storage.EventInfo;
+import com.arto.event.storage.EventStorage;
+import com.arto.event.util.PropertiesResolve;
+import com.arto.event.util.SpringContextHolder;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Created by xiong.j on 2017/4/30.
+ */
+public class PersistentEventServiceImplTest {
+
+    @BeforeClass
+    public static void setUpConfig() {
+        // 配置只从配置文件读取
+        ConfigurableListableBeanFactory beanFactory = Mockito.mock(ConfigurableListableBeanFactory.class);
+        Mockito.when(beanFactory.getBean(PropertiesResolve.class)).thenReturn(Mockito.mock(PropertiesResolve.class));
+        new SpringContextHolder().postProcessBeanFactory(beanFactory);
+    }
+
+    @Test
+    public void testPersistPreparedUseSequenceIds() throws Exception {
+        EventStorage eventStorage = Mockito.mock(EventStorage.class);
+        Mockito.when(eventStorage.nextIds(2)).thenReturn(Arrays.asList(21L, 22L));
+        PersistentEventServiceImpl service = new PersistentEventServiceImpl();
+        ReflectionTestUtils.setField(service, "eventStorage", eventStorage);
+
+        List<EventInfo> eventInfos = new ArrayList<EventInfo>();
+        eventInfos.add(new EventInfo());
+        eventInfos.add(new EventInfo());
+        service.persistPrepared(eventInfos);
+
+        // 与立即持久化使用同一ID序列，分配后再插入
+        Assert.assertEquals(21L, eventInfos.get(0).getId());
+        Assert.assertEquals(22L, eventInfos.get(1).getId());
+        InOrder inOrder = Mockito.inOrder(eventStorage);
+        inOrder.verify(eventStorage).nextIds(2);
+        inOrder.verify(eventStorage).batchInsert(eventInfos);
+    }
+}
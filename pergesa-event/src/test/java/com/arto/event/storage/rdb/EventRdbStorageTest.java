@@ -0,0 +1,105 @@
+package com.arto.event.storage.rdb;
+
+import com.arto.event.storage.EventInfo;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created by xiong.j on 2017/4/30.
+ */
+public class EventRdbStorageTest {
+
+    private JdbcOperations jdbcOperations;
+
+    private NamedParameterJdbcTemplate npJdbcTemplate;
+
+    private EventRdbStorage storage;
+
+    @Before
+    public void setUp() throws Exception {
+        jdbcOperations = Mockito.mock(JdbcOperations.class);
+        npJdbcTemplate = Mockito.mock(NamedParameterJdbcTemplate.class);
+        Mockito.when(npJdbcTemplate.getJdbcOperations()).thenReturn(jdbcOperations);
+        storage = new EventRdbStorage();
+        ReflectionTestUtils.setField(storage, "npJdbcTemplate", npJdbcTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBatchCreateWithPreallocatedIds() throws Exception {
+        // 序列一次分配3个ID
+        Mockito.when(jdbcOperations.queryForList(Matchers.contains("nextval('event_storage_id_seq')")
+                , Matchers.eq(Long.class), Matchers.<Object>anyVararg())).thenReturn(Arrays.asList(11L, 12L, 13L));
+        final Timestamp modified = new Timestamp(System.currentTimeMillis() / 1000 * 1000);
+        Mockito.doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                List<Long> ids = (List<Long>) ((Map<String, Object>) invocation.getArguments()[1]).get("ids");
+                RowCallbackHandler handler = (RowCallbackHandler) invocation.getArguments()[2];
+                for (Long id : ids) {
+                    ResultSet rs = Mockito.mock(ResultSet.class);
+                    Mockito.when(rs.getLong("ID")).thenReturn(id);
+                    Mockito.when(rs.getTimestamp("GMT_MODIFIED")).thenReturn(modified);
+                    handler.processRow(rs);
+                }
+                return null;
+            }
+        }).when(npJdbcTemplate).query(Matchers.anyString(), Matchers.anyMap(), Matchers.any(RowCallbackHandler.class));
+
+        List<EventInfo> eventInfos = new ArrayList<EventInfo>();
+        for (int i = 0; i < 3; i++) {
+            EventInfo eventInfo = new EventInfo();
+            eventInfo.setBusinessId("b" + i);
+            eventInfo.setBusinessType("t");
+            eventInfos.add(eventInfo);
+        }
+        storage.batchCreate(eventInfos);
+
+        // ID按顺序回填，更新时间取自数据库
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(11L + i, eventInfos.get(i).getId());
+            Assert.assertEquals(modified, eventInfos.get(i).getGmtModified());
+        }
+
+        // 一次JDBC批处理，ID显式插入
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<BatchPreparedStatementSetter> setter = ArgumentCaptor.forClass(BatchPreparedStatementSetter.class);
+        Mockito.verify(jdbcOperations).batchUpdate(sql.capture(), setter.capture());
+        Assert.assertTrue(sql.getValue().contains("INSERT INTO EVENT_STORAGE(ID,"));
+        Assert.assertEquals(3, setter.getValue().getBatchSize());
+        PreparedStatement ps = Mockito.mock(PreparedStatement.class);
+        setter.getValue().setValues(ps, 1);
+        Mockito.verify(ps).setLong(1, 12L);
+        Mockito.verify(ps).setString(3, "b1");
+
+        // 不依赖驱动返回批处理生成的主键
+        Mockito.verify(jdbcOperations, Mockito.never()).execute(Matchers.any(ConnectionCallback.class));
+    }
+
+    @Test
+    public void testBatchCreateEmpty() throws Exception {
+        List<EventInfo> eventInfos = new ArrayList<EventInfo>();
+        Assert.assertSame(eventInfos, storage.batchCreate(eventInfos));
+        Mockito.verifyZeroInteractions(jdbcOperations);
+    }
+}
@@ -12,9 +12,14 @@
  */
 package com.arto.amq.bootstrap;
 
+import org.apache.activemq.ActiveMQMessageProducer;
+import org.apache.activemq.ActiveMQSession;
+import org.apache.activemq.AsyncCallback;
+import org.apache.activemq.jms.pool.PooledSession;
 import org.springframework.jms.JmsException;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.core.MessageCreator;
+import org.springframework.jms.core.ProducerCallback;
 import org.springframework.jms.core.SessionCallback;
 import org.springframework.jms.support.JmsUtils;
 import org.springframework.util.Assert;
@@ -75,6 +80,78 @@ public class AmqJmsTemplate extends JmsTemplate {
         }, false);
     }
 
+    /**
+     * Send message asynchronously with ActiveMQ's AsyncCallback, the callback is invoked
+     * when the broker acknowledges the message or the send fails.
+     *
+     * @param destinationName
+     * @param messageCreator
+     * @param deliveryMode
+     * @param priority
+     * @param timeToLive
+     * @param callback
+     * @throws JmsException
+     */
+    public void sendAsync(final String destinationName, final MessageCreator messageCreator
+            , final int deliveryMode, final int priority, final long timeToLive
+            , final AsyncCallback callback) throws JmsException {
+        Assert.notNull(messageCreator, "MessageCreator must not be null");
+        Assert.notNull(callback, "AsyncCallback must not be null");
+        execute(new SessionCallback<Object>() {
+            public Object doInJms(Session session) throws JMSException {
+                // 连接池的Producer为包装类，回调发送需要ActiveMQ原生的Session和Producer
+                Session target = session instanceof PooledSession ? ((PooledSession) session).getInternalSession() : session;
+                if (!(target instanceof ActiveMQSession)) {
+                    throw new IllegalStateException("Async send with callback requires an ActiveMQ session, session=" + target);
+                }
+                Destination destination = resolveDestinationName(target, destinationName);
+                ActiveMQMessageProducer producer = (ActiveMQMessageProducer) target.createProducer(null);
+                try {
+                    Message message = messageCreator.createMessage(target);
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Sending created message asynchronously: " + message);
+                    }
+                    producer.send(destination, message
+                            , deliveryMode != -1 ? deliveryMode : producer.getDeliveryMode()
+                            , priority != -1 ? priority : producer.getPriority()
+                            , timeToLive != -1 ? timeToLive : producer.getTimeToLive(), callback);
+                } finally {
+                    // 关闭Producer不影响已发出消息的回调
+                    JmsUtils.closeMessageProducer(producer);
+                }
+                return null;
+            }
+        }, false);
+    }
+
+    /**
+     * Execute the action with one session and producer, used for sending messages in batch.
+     *
+     * @param destinationName
+     * @param action
+     * @return
+     * @throws JmsException
+     */
+    public <T> T execute(final String destinationName, final ProducerCallback<T> action) throws JmsException {
+        return execute(new SessionCallback<T>() {
+            public T doInJms(Session session) throws JMSException {
+                Destination destination = resolveDestinationName(session, destinationName);
+                MessageProducer producer = createProducer(session, destination);
+                try {
+                    T result = action.doInJms(session, producer);
+                    // Check commit - avoid commit call within a JTA transaction.
+                    if (session.getTransacted() && isSessionLocallyTransacted(session)) {
+                        JmsUtils.commitIfNecessary(session);
+                    }
+                    return result;
+                }
+                finally {
+                    JmsUtils.closeMessageProducer(producer);
+                }
+            }
+        }, false);
+    }
+
     /**
      * Send the given JMS message.
      *
@@ -96,7 +173,7 @@ public class AmqJmsTemplate extends JmsTemplate {
             if (logger.isDebugEnabled()) {
                 logger.debug("Sending created message: " + message);
             }
-            doSend(producer, message, deliveryMode, priority, timeToLive);
+            send(producer, message, deliveryMode, priority, timeToLive);
             // Check commit - avoid commit call within a JTA transaction.
             if (session.getTransacted() && isSessionLocallyTransacted(session)) {
                 // Transacted session created by this template -> commit.
@@ -118,7 +195,7 @@ public class AmqJmsTemplate extends JmsTemplate {
      * @param timeToLive
      * @throws JMSException
      */
-    private void doSend(MessageProducer producer, Message message
+    public void send(MessageProducer producer, Message message
             , int deliveryMode, int priority, long timeToLive) throws JMSException {
         if (deliveryMode != -1 || priority != -1 || timeToLive != -1) {
             producer.send(message, deliveryMode, priority, timeToLive);
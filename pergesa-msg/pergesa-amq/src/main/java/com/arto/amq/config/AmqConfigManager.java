@@ -12,30 +12,15 @@
  */
 package com.arto.amq.config;
 
-import com.arto.event.config.ConfigManager;
-import com.arto.event.util.PropertiesResolve;
-import com.arto.event.util.PropertiesUtil;
-import com.arto.event.util.SpringContextHolder;
-import com.google.common.base.Strings;
-import lombok.extern.slf4j.Slf4j;
-
-import java.util.Properties;
+import com.arto.event.config.AbstractConfigManager;
 
 /**
  * Created by xiong.j on 2017/3/21.
  */
-@Slf4j
-public class AmqConfigManager {
-
-    private final PropertiesResolve propertiesResolve;
-
-    private final String defaultFile = "pergesa-activemq.properties";
-
-    private final Properties properties;
+public class AmqConfigManager extends AbstractConfigManager {
 
     private AmqConfigManager(){
-        propertiesResolve = SpringContextHolder.getBean(PropertiesResolve.class);
-        properties = init();
+        super("pergesa-activemq.properties");
     }
 
     private static class AmqConfigHolder{
@@ -47,54 +32,14 @@ public class AmqConfigManager {
     }
 
     public static int getInt(String name, int value){
-        String val = AmqConfigManager.getInstance().getValue(name);
-        int result = value;
-        if (!Strings.isNullOrEmpty(val)) {
-            result = Integer.parseInt(val);
-        }
-        log.debug("Load property '" + name + "' = " + result);
-        return result;
+        return AmqConfigManager.getInstance().getIntValue(name, value);
     }
 
     public static String getString(String name, String value){
-        String result = AmqConfigManager.getInstance().getValue(name);
-        if (Strings.isNullOrEmpty(result)) {
-            result = value;
-        }
-        log.debug("Load property '" + name + "' = " + result);
-        return result;
+        return AmqConfigManager.getInstance().getStringValue(name, value);
     }
 
     public static boolean getBoolean(String name, boolean value){
-        String val = AmqConfigManager.getInstance().getValue(name);
-        boolean result = value;
-        if (!Strings.isNullOrEmpty(val)) {
-            result = Boolean.valueOf(val);
-        }
-        log.debug("Load property '" + name + "' = " + result);
-        return result;
-    }
-
-    private String getValue(String name){
-        String value = null;
-        try {
-            value = propertiesResolve.getPropertiesValue(name);
-            if (Strings.isNullOrEmpty(value)) {
-                return properties.getProperty(name);
-            }
-        } catch (IllegalArgumentException e) {
-            log.debug("Failed load property '" + name + "' from spring");
-        }
-        return value;
-    }
-
-    private Properties init(){
-        Properties properties = null;
-        try {
-            properties = PropertiesUtil.loadProperties(ConfigManager.class, defaultFile);
-        } catch (Exception e) {
-            log.warn("Failed load property file:" + defaultFile);
-        }
-        return properties;
+        return AmqConfigManager.getInstance().getBooleanValue(name, value);
     }
 }
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.amq.consumer;
+
+import com.arto.amq.config.AmqConfigManager;
+import com.arto.amq.consumer.binding.AmqConsumerConfig;
+import com.arto.amq.consumer.strategy.AmqConsumerStrategyFactory;
+import com.arto.event.common.Destroyable;
+import com.arto.event.util.SpringContextHolder;
+import com.arto.event.util.ThreadUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.ActiveMQSession;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量消费接收线程，消费策略逐条确认处理完成的消息，需要重发的消息通过Session恢复等待AMQ重发
+ * 注:Spring的监听容器在回调返回时即确认消息，无法攒批，因此批量消费自行维护接收循环
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+@Slf4j
+class AmqBatchMessageReceiver implements Runnable, Destroyable {
+
+    /** 消费配置 */
+    private final AmqConsumerConfig config;
+
+    /** 目的地 */
+    private final Destination destination;
+
+    /** 首条消息的等待时间 */
+    private final long receiveTimeout;
+
+    private volatile boolean closeFlag = false;
+
+    private Connection connection;
+
+    private Session session;
+
+    private MessageConsumer consumer;
+
+    AmqBatchMessageReceiver(AmqConsumerConfig config, Destination destination) {
+        this.config = config;
+        this.destination = destination;
+        this.receiveTimeout = AmqConfigManager.getInt("activemq.receiveTimeout", 1000);
+    }
+
+    @Override
+    public void run() {
+        List<Message> messages = new ArrayList<Message>(config.getMaxBatch());
+        while (!closeFlag) {
+            try {
+                if (consumer == null) {
+                    connect();
+                }
+                messages.clear();
+                receive(messages);
+                if (!messages.isEmpty()) {
+                    consume(messages);
+                }
+            } catch (JMSException e) {
+                if (closeFlag) {
+                    break;
+                }
+                log.error("Batch receive message failed, reconnect after 5 seconds. destination:"
+                        + config.getDestination(), e);
+                disconnect();
+                ThreadUtil.sleep(5000, log);
+            } catch (Throwable e) {
+                log.error("Batch consume message failed. destination:" + config.getDestination(), e);
+                recover();
+            }
+        }
+        disconnect();
+    }
+
+    /**
+     * 停止接收
+     */
+    @Override
+    public void destroy() {
+        closeFlag = true;
+    }
+
+    private void connect() throws JMSException {
+        ConnectionFactory connectionFactory = SpringContextHolder.getBean("amqConnectionFactory");
+        connection = connectionFactory.createConnection();
+        // 逐条确认，只确认消费成功的消息
+        session = connection.createSession(false, ActiveMQSession.INDIVIDUAL_ACKNOWLEDGE);
+        consumer = session.createConsumer(destination);
+        connection.start();
+    }
+
+    private void disconnect() {
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+        } catch (JMSException e) {
+            log.warn("Close connection failed. destination:" + config.getDestination(), e);
+        } finally {
+            connection = null;
+            session = null;
+            consumer = null;
+        }
+    }
+
+    private void recover() {
+        try {
+            if (session != null) {
+                session.recover();
+            }
+        } catch (JMSException e) {
+            log.warn("Recover session failed. destination:" + config.getDestination(), e);
+        }
+    }
+
+    /**
+     * 阻塞等待第一条消息，之后在maxWaitMs内攒满maxBatch条
+     */
+    private void receive(List<Message> messages) throws JMSException {
+        Message message = consumer.receive(receiveTimeout);
+        if (message == null) {
+            return;
+        }
+        messages.add(message);
+
+        long deadline = System.currentTimeMillis() + config.getMaxWaitMs();
+        while (messages.size() < config.getMaxBatch() && !closeFlag) {
+            long remaining = deadline - System.currentTimeMillis();
+            message = remaining > 0 ? consumer.receive(remaining) : consumer.receiveNoWait();
+            if (message == null) {
+                break;
+            }
+            messages.add(message);
+        }
+    }
+
+    private void consume(List<Message> messages) throws JMSException {
+        List<Message> redeliver = AmqConsumerStrategyFactory.getInstance()
+                .getStrategy(config.getPriority()).onMessages(config, messages);
+        if (!redeliver.isEmpty()) {
+            // 未确认的消息重新投递
+            session.recover();
+        }
+    }
+}
@@ -20,8 +20,10 @@ import com.arto.amq.util.AmqUtil;
 import com.arto.core.common.MessagePriorityEnum;
 import com.arto.core.exception.MqClientException;
 import com.arto.event.util.SpringContextHolder;
+import com.arto.event.util.SpringDestroyableUtil;
 import com.arto.event.util.SpringThreadPoolUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.ActiveMQSession;
 import org.apache.activemq.command.ActiveMQQueue;
 import org.apache.activemq.command.ActiveMQTopic;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
@@ -79,6 +81,12 @@ public class AmqMessageConsumer {
 
         BeanDefinitionRegistry registry = (BeanDefinitionRegistry) SpringContextHolder.getBeanFactory();
 
+        if (config.isBatch()) {
+            /** 批量消费，自行维护接收线程 */
+            startBatchReceivers(config, registerDestination(registry, config, isPubSubDomain), isPubSubDomain);
+            return;
+        }
+
         /** 注册MessageListener */
         String messageListener = registerMessageListener(registry);
 
@@ -123,7 +131,11 @@ public class AmqMessageConsumer {
                 builder = BeanDefinitionBuilder.genericBeanDefinition(ActiveMQTopic.class);
             } else {
                 builder = BeanDefinitionBuilder.genericBeanDefinition(ActiveMQQueue.class);
-                if (config.getPriority() != MessagePriorityEnum.HIGH.getCode()) {
+                if (config.isBatch()) {
+                    // 批量消费按批大小预取
+                    config.setDestination(AmqUtil.addParamToDest(config.getDestination()
+                            , "consumer.prefetchSize=" + config.getMaxBatch()));
+                } else if (config.getPriority() != MessagePriorityEnum.HIGH.getCode()) {
                     // 中低优先级消息批量消费批量确认
                     config.setDestination(AmqUtil.addParamToDest(config.getDestination()
                             , "consumer.prefetchSize=" + config.getBatchSize()));
@@ -139,6 +151,20 @@ public class AmqMessageConsumer {
         return destName;
     }
 
+    private void startBatchReceivers(AmqConsumerConfig config, String destination, boolean isPubSubDomain) {
+        // TOPIC只启动一个接收线程，避免重复消费
+        int numThreads = isPubSubDomain ? 1 : config.getNumThreads();
+        Destination dest = SpringContextHolder.getBean(destination);
+        for (int i = 0; i < numThreads; i++) {
+            String name = "AmqBatchReceiver_" + destination + "_" + i;
+            AmqBatchMessageReceiver receiver = new AmqBatchMessageReceiver(config, dest);
+            SpringDestroyableUtil.add(name, receiver);
+            Thread thread = new Thread(receiver, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
     private String registerMessageListenerContainer(BeanDefinitionRegistry registry, AmqConsumerConfig config
             , String messageListenerAdapter, String destination, boolean isPubSubDomain){
         String beanName = "amqMessageListenerContainer" + configMap.size();
@@ -159,8 +185,9 @@ public class AmqMessageConsumer {
                     , null);
             builder.addPropertyValue("concurrentConsumers", 1);
             if (!isPubSubDomain) {
-                builder.addPropertyValue("sessionTransacted", true );
-                builder.addPropertyValue("SessionAcknowledgeMode", Session.SESSION_TRANSACTED);
+                // 逐条确认，转入重试的消息处理结束后再确认，未确认前Session继续处理后续消息
+                builder.addPropertyValue("sessionTransacted", false);
+                builder.addPropertyValue("SessionAcknowledgeMode", ActiveMQSession.INDIVIDUAL_ACKNOWLEDGE);
             }
         } else {
             // 中低优先级QUEUE消息批量消费批量确认
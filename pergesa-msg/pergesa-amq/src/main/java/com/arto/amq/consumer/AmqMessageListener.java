@@ -19,7 +19,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.activemq.command.ActiveMQDestination;
 
 import javax.jms.JMSException;
-import javax.jms.TextMessage;
+import javax.jms.Message;
 
 /**
  * Created by xiong.j on 2017/3/28.
@@ -36,7 +36,7 @@ public class AmqMessageListener {
      * @param message
      * @throws Exception
      */
-    public void handleMessage(TextMessage message) throws Exception{
+    public void handleMessage(Message message) throws Exception{
         try {
             // 获取目的地名
             String destName = ((ActiveMQDestination)message.getJMSDestination()).getPhysicalName();
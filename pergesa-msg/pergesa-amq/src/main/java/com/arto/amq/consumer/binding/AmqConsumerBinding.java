@@ -13,8 +13,11 @@
 package com.arto.amq.consumer.binding;
 
 import com.arto.amq.consumer.AmqMessageConsumer;
+import com.arto.core.consumer.MessageDeserializePlan;
+import com.arto.core.consumer.MqBatchListener;
 import com.arto.core.consumer.MqConsumer;
 import com.arto.core.consumer.MqListener;
+import com.arto.core.exception.MqClientException;
 import com.arto.event.util.SpringContextHolder;
 import lombok.extern.slf4j.Slf4j;
 
@@ -33,7 +36,10 @@ public class AmqConsumerBinding implements MqConsumer {
     public AmqConsumerBinding(AmqConsumerConfig config) {
         this.config = config;
         this.consumer = SpringContextHolder.getBean("amqMessageConsumer");
-        consumer.subscribe(this);
+        if (config.hasReceiver()) {
+            // 未设置监听器时推迟到receive/receiveBatch订阅
+            consumer.subscribe(this);
+        }
     }
 
     @Override
@@ -51,6 +57,18 @@ public class AmqConsumerBinding implements MqConsumer {
         consumer.subscribe(this);
     }
 
+    @Override
+    public void receiveBatch(int maxBatch, MqBatchListener listener) {
+        if (config.hasReceiver()) {
+            throw new MqClientException("Consumer already subscribed, build it without listener before receiveBatch. config:" + config);
+        }
+        config.setBatch(true);
+        config.setMaxBatch(maxBatch);
+        config.setBatchListener(listener);
+        config.setDeserializePlan(MessageDeserializePlan.create(config));
+        consumer.subscribe(this);
+    }
+
     public void close(){}
 
     /**
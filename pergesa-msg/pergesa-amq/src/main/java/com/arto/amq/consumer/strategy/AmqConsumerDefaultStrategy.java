@@ -12,130 +12,257 @@
  */
 package com.arto.amq.consumer.strategy;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
 import com.arto.amq.common.AmqConstants;
 import com.arto.amq.consumer.binding.AmqConsumerConfig;
 import com.arto.amq.event.AmqConsumeEvent;
+import com.arto.amq.util.AmqUtil;
+import com.arto.core.codec.MessageCodecFactory;
 import com.arto.core.common.MessageRecord;
 import com.arto.core.common.MqTypeEnum;
+import com.arto.core.consumer.dlq.DeadLetterCallback;
+import com.arto.core.consumer.dlq.DeadLetterRecord;
+import com.arto.core.consumer.retry.ConsumeRetryTask;
+import com.arto.core.consumer.retry.RetryPolicy;
+import com.arto.core.consumer.retry.RetryScheduler;
 import com.arto.core.consumer.strategy.AbstractConsumerStrategy;
-import com.arto.core.exception.MqClientException;
 import com.arto.event.bootstrap.Event;
-import com.arto.event.common.Destroyable;
 import com.arto.event.serialization.JsonSerializer;
 import com.arto.event.service.PersistentEventService;
 import com.arto.event.util.SpringContextHolder;
-import com.arto.event.util.SpringDestroyableUtil;
-import com.arto.event.util.ThreadUtil;
 import com.google.common.base.Strings;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.activemq.command.ActiveMQDestination;
 
 import javax.jms.JMSException;
-import javax.jms.TextMessage;
-import java.util.concurrent.atomic.AtomicBoolean;
+import javax.jms.Message;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 /**
  * 默认消费模式，适合重要消息
- * (单条消息处理完成后消费标识同步提交，为了避免阻塞后续消息，消息处理出错 > 3次后该消息入库，等待调度任务重试处理)
+ * (消息处理出错后转入重试调度器按退避时间重试，Session继续处理后续消息；出错 >= 3次后该消息写入死信队列(开启时)或入库，等待调度任务重试处理)
+ * 消息逐条确认(INDIVIDUAL_ACKNOWLEDGE)，转入重试的消息在处理结束(消费成功、写入死信或入库)后才确认，服务停止时未确认的消息由AMQ重发
  *
  * Created by xiong.j on 2017/3/29.
  */
 @Slf4j
-class AmqConsumerDefaultStrategy extends AbstractConsumerStrategy implements AmqConsumerStrategy, Destroyable {
+class AmqConsumerDefaultStrategy extends AbstractConsumerStrategy implements AmqConsumerStrategy {
 
     private final PersistentEventService service;
 
-    /** 消息拉取线程关闭Flag */
-    private final AtomicBoolean closeFlag = new AtomicBoolean(false);
-
     /** 序列化类 */
     private final JsonSerializer serializer;
 
     AmqConsumerDefaultStrategy(){
         this.service = SpringContextHolder.getBean("persistentEventService");
-        // 注册勾子
-        SpringDestroyableUtil.add("amqConsumerDefaultStrategy", this);
         serializer = new JsonSerializer();
     }
 
     @Override
-    public void onMessage(final AmqConsumerConfig config, final TextMessage message) throws JMSException {
-        tryConsume(config, message);
+    public void onMessage(final AmqConsumerConfig config, final Message message) throws JMSException {
+        if (tryConsume(config, message)) {
+            AmqUtil.acknowledge(message);
+        }
     }
 
-    /**
-     * 销毁
-     */
     @Override
-    public void destroy() {
-        closeFlag.set(true);
-        log.info("Destroy amqConsumerDefaultStrategy successful.");
+    public List<Message> onMessages(final AmqConsumerConfig config, final List<Message> messages) {
+        // 整批消费，失败的消息再逐条重试，超过三次持久化
+        Set<Message> failed = Collections.newSetFromMap(new IdentityHashMap<Message, Boolean>());
+        failed.addAll(onMessages(config, messages, AmqMessageAccessor.INSTANCE));
+        for (Message message : messages) {
+            if (!failed.contains(message)) {
+                AmqUtil.acknowledge(message);
+                continue;
+            }
+            try {
+                if (tryConsume(config, message)) {
+                    AmqUtil.acknowledge(message);
+                }
+            } catch (Throwable e) {
+                // Session恢复会重发重试中的消息，读取失败的消息暂不确认，连接重建后由AMQ重发
+                log.error("Read message failed, waiting for activemq redeliver. message:" + message, e);
+            }
+        }
+        return Collections.emptyList();
     }
 
+    /**
+     * @return 是否已处理完成(可以确认)，转入重试的消息返回false，由重试任务处理结束后确认
+     */
     @SuppressWarnings("unchecked")
-    private void tryConsume(AmqConsumerConfig config, TextMessage textMessage) throws JMSException {
+    private boolean tryConsume(AmqConsumerConfig config, Message jmsMessage) throws JMSException {
         MessageRecord message = null;
+        // 按消息Id检测重复消费，重复时不再反序列化
+        if (isDuplicate(config, jmsMessage.getJMSMessageID(), jmsMessage.getJMSRedelivered())) {
+            log.info("Duplicate message, discard this message:" + jmsMessage.getJMSMessageID());
+            return true;
+        }
+        // 消息体只读取一次，解析失败时用于死信或持久化
+        byte[] body = AmqUtil.getBody(jmsMessage);
+        Throwable error;
+        int attempts;
         try {
             // 反序列化消息
-            message = deserializerMessage(config, textMessage.getText());
+            message = deserializerMessage(config, body);
+            // 生成消息ID
+            message.setMessageId(jmsMessage.getJMSMessageID());
+            error = consume(config, jmsMessage, message);
+            if (error == null) {
+                return true;
+            }
+            attempts = 1;
         } catch (Throwable e) {
-            log.warn("Deserializer record failed, message:" + textMessage, e);
-            // 持久化消息，以便重试
-            infiniteRetry(textMessage, null);
+            log.warn("Deserializer record failed, message:" + jmsMessage, e);
+            // 不再重试消费，直接进入死信或持久化
+            error = e;
+            attempts = 0;
         }
+        // 如果消费出错，转入重试调度器重试，超过次数写入死信或持久化后由调度任务再重试，Session继续处理后续消息
+        new MessageRetryTask(config, jmsMessage, body, message, attempts, error).start();
+        return false;
+    }
 
-        // 如果消费出错，重试消费3次，超过三次持久化后由调度任务再重试
-        for (int i = 1; i <= 3; i++) {
-            try {
-                // 重复消费检测
-                if (!checkRedeliver(config, message)) {
-                    // 消费消息
-                    onMessage(config, message);
-                } else {
-                    log.info("Check redeliver is true, discard this message:" + message);
-                }
-                break;
-            } catch (Throwable e) {
-                log.warn("Receive message failed, waiting for retry. record:" + textMessage, e);
-                if (i == 3) {
-                    // 持久化消息，以便重试
-                    infiniteRetry(textMessage, message);
-                } else {
-                    // 消息处理错误，暂停处理一小会
-                    ThreadUtil.sleep(5000, log);
-                }
+    /**
+     * @return 消费出错时返回异常，成功返回null
+     */
+    @SuppressWarnings("unchecked")
+    private Throwable consume(final AmqConsumerConfig config, final Message jmsMessage, final MessageRecord message) {
+        try {
+            // 重复消费检测
+            if (!checkRedeliver(config, message)) {
+                // 消费消息
+                onMessage(config, message);
+            } else {
+                log.info("Check redeliver is true, discard this message:" + message);
             }
+            return null;
+        } catch (Throwable e) {
+            log.warn("Receive message failed, waiting for retry. record:" + jmsMessage, e);
+            return e;
         }
     }
 
-    private void infiniteRetry(final TextMessage textMessage
-            , MessageRecord message) throws JMSException {
-        boolean failed = true;
-        // 转换为事件
-        Event event = buildEvent(textMessage, message);
-        // 无限重试直到持久化成功
-        while (!closeFlag.get()){
-            try {
-                service.persist(event, serializer, AmqConstants.A_CONSUME_EVENT_BEAN);
-                failed = false;
-                break;
-            } catch (Throwable e) {
-                log.warn("Persist message failed, waiting for retry. message:" + textMessage, e);
+    private boolean persist(final Message jmsMessage, final byte[] body, MessageRecord message) {
+        try {
+            service.persist(buildEvent(jmsMessage, body, message), serializer, AmqConstants.A_CONSUME_EVENT_BEAN);
+            log.warn("Persisted message to db waiting for retry. message:" + jmsMessage);
+            return true;
+        } catch (Throwable e) {
+            log.warn("Persist message failed, waiting for retry. message:" + jmsMessage, e);
+            return false;
+        }
+    }
+
+    /**
+     * 消息重试任务，超过次数后写入死信，未开启死信或死信写入失败时持久化，持久化失败时继续重试直到成功，
+     * 消费成功、死信写入成功或持久化成功后确认消息
+     */
+    private class MessageRetryTask extends ConsumeRetryTask implements DeadLetterCallback {
+
+        private final AmqConsumerConfig config;
+
+        private final Message jmsMessage;
+
+        private final byte[] body;
+
+        private final MessageRecord message;
+
+        /** 实际消费次数 */
+        private int consumed;
+
+        /** 最后一次失败的异常 */
+        private Throwable error;
+
+        /** 是否尝试死信 */
+        private volatile boolean deadLetter = true;
+
+        /** 已放入死信队列，等待写入结果后再确认 */
+        private volatile boolean deadLettering = false;
+
+        MessageRetryTask(AmqConsumerConfig config, Message jmsMessage, byte[] body, MessageRecord message
+                , int consumed, Throwable error) {
+            // 反序列化失败的消息不再重试消费
+            super(RetryScheduler.getInstance(), RetryPolicy.of(config.getDestination())
+                    , consumed == 0 ? Integer.MAX_VALUE : consumed);
+            this.config = config;
+            this.jmsMessage = jmsMessage;
+            this.body = body;
+            this.message = message;
+            this.consumed = consumed;
+            this.error = error;
+        }
+
+        @Override
+        protected boolean consume() {
+            consumed++;
+            error = AmqConsumerDefaultStrategy.this.consume(config, jmsMessage, message);
+            return error == null;
+        }
+
+        @Override
+        protected boolean giveUp() {
+            if (deadLetter) {
+                deadLettering = true;
+                if (routeDeadLetter()) {
+                    return true;
+                }
+                deadLettering = false;
             }
-            // 持久化消息错误，暂停处理一小会
-            ThreadUtil.sleep(5000, log);
+            // 持久化消息，以便重试
+            if (persist(jmsMessage, body, message)) {
+                countPersisted(config);
+                return true;
+            }
+            return false;
         }
-        if (failed) {
-            throw new MqClientException("Persist message failed when stop server.");
-        } else {
-            log.warn("Persisted message to db waiting for retry. message:" + textMessage);
+
+        @Override
+        protected void onResolved() {
+            if (!deadLettering) {
+                AmqUtil.acknowledge(jmsMessage);
+            }
+        }
+
+        @Override
+        protected void onRetry() {
+            countRetry(config);
+        }
+
+        @Override
+        public void onShutdown() {
+            // 消息未确认，连接关闭后由AMQ重发
+            log.warn("Retry scheduler closed, message not acknowledged and waiting for activemq redeliver. message:"
+                    + jmsMessage);
+        }
+
+        @Override
+        public void onSent(DeadLetterRecord deadLetter) {
+            AmqUtil.acknowledge(jmsMessage);
+        }
+
+        @Override
+        public void onFailed(DeadLetterRecord deadLetter, Throwable t) {
+            // 死信写入失败，改为持久化
+            this.deadLetter = false;
+            this.deadLettering = false;
+            start();
+        }
+
+        private boolean routeDeadLetter() {
+            try {
+                return deadLetter(AmqUtil.buildDeadLetter(jmsMessage, body, error, consumed), this);
+            } catch (Throwable t) {
+                log.warn("Build dead letter failed, message:" + jmsMessage, t);
+                return false;
+            }
         }
     }
 
     @SuppressWarnings("unchecked")
-    private Event buildEvent(final TextMessage textMessage, MessageRecord message) throws JMSException {
+    private Event buildEvent(final Message jmsMessage, final byte[] body, MessageRecord message) throws JMSException {
         // 生成事件
         AmqConsumeEvent event = new AmqConsumeEvent();
         // 事件分组
@@ -143,28 +270,29 @@ class AmqConsumerDefaultStrategy extends AbstractConsumerStrategy implements Amq
         // 默认业务类型
         event.setBusinessType(AmqConstants.A_CONSUME);
         // 消息ID
-        event.setMessageId(textMessage.getJMSMessageID());
+        event.setMessageId(jmsMessage.getJMSMessageID());
         // 消息
         event.setPayload(message);
         // 目的地
-        event.setDestination(((ActiveMQDestination)textMessage.getJMSDestination()).getPhysicalName());
+        event.setDestination(((ActiveMQDestination)jmsMessage.getJMSDestination()).getPhysicalName());
         // 消息类型
         event.setType(MqTypeEnum.ACTIVEMQ.getMemo());
         // 是否持久化
         event.setPersistent(true);
         if (message == null) {
-            JSONObject jsonObject = JSON.parseObject(textMessage.getText());
-            if (!Strings.isNullOrEmpty(jsonObject.getString("businessId"))) {
+            // 只按原始类型解析一次，消息内容为JSON对象
+            MessageRecord rawMessage = MessageCodecFactory.decodeRaw(body);
+            if (!Strings.isNullOrEmpty(rawMessage.getBusinessId())) {
                 // 消息自带业务流水号
-                event.setBusinessId(jsonObject.getString("businessId"));
+                event.setBusinessId(rawMessage.getBusinessId());
                 // 消息自带业务类型
-                event.setBusinessType(jsonObject.getString("businessType"));
+                event.setBusinessType(rawMessage.getBusinessType());
             } else {
                 // 业务流水号为消息ID
                 event.setBusinessId(event.getMessageId());
             }
-            // 消息解析出错时消息设为json对象
-            event.setPayload(jsonObject);
+            // 消息解析出错时消息内容保留为JSON对象
+            event.setPayload(rawMessage);
         } else {
             if (Strings.isNullOrEmpty(message.getBusinessId())) {
                 // 以非事务消息发送时业务流水号为消息ID
@@ -13,14 +13,18 @@
 package com.arto.amq.consumer.strategy;
 
 import com.arto.amq.consumer.binding.AmqConsumerConfig;
+import com.arto.amq.util.AmqUtil;
 import com.arto.core.common.MessageRecord;
+import com.arto.core.consumer.dlq.DeadLetterRouter;
 import com.arto.core.consumer.strategy.AbstractConsumerStrategy;
 import lombok.extern.slf4j.Slf4j;
 
-import javax.jms.TextMessage;
+import javax.jms.Message;
+import java.util.Collections;
+import java.util.List;
 
 /**
- * 低优先级消费模式，消息出错直接丢弃，适合容忍消息丢失的非重要消息
+ * 低优先级消费模式，消息出错直接丢弃(开启死信时写入死信队列)，适合容忍消息丢失的非重要消息
  *
  * Created by xiong.j on 2017/3/29.
  */
@@ -28,17 +32,34 @@ import javax.jms.TextMessage;
 class AmqConsumerLowPriorityStrategy extends AbstractConsumerStrategy implements AmqConsumerStrategy {
 
     @Override
-    public void onMessage(final AmqConsumerConfig config, final TextMessage message) {
+    public void onMessage(final AmqConsumerConfig config, final Message message) {
         tryConsume(config, message);
     }
 
+    @Override
+    public List<Message> onMessages(final AmqConsumerConfig config, final List<Message> messages) {
+        // 整批消费，失败的消息再逐条处理，出错丢弃
+        for (Message message : onMessages(config, messages, AmqMessageAccessor.INSTANCE)) {
+            tryConsume(config, message);
+        }
+        for (Message message : messages) {
+            AmqUtil.acknowledge(message);
+        }
+        return Collections.emptyList();
+    }
+
     @SuppressWarnings("unchecked")
-    private void tryConsume(final AmqConsumerConfig config, final TextMessage textMessage) {
+    private void tryConsume(final AmqConsumerConfig config, final Message jmsMessage) {
         try {
+            // 按消息Id检测重复消费，重复时不再反序列化
+            if (isDuplicate(config, jmsMessage.getJMSMessageID(), jmsMessage.getJMSRedelivered())) {
+                log.info("Duplicate message, discard this message:" + jmsMessage.getJMSMessageID());
+                return;
+            }
             // 反序列化消息
-            MessageRecord message = deserializerMessage(config, textMessage.getText());
+            MessageRecord message = deserializerMessage(config, AmqUtil.getBody(jmsMessage));
             // 生成消息ID
-            message.setMessageId(textMessage.getJMSMessageID());
+            message.setMessageId(jmsMessage.getJMSMessageID());
             // 重复消费检测
             if (!checkRedeliver(config, message)) {
                 // 消费消息
@@ -47,7 +68,20 @@ class AmqConsumerLowPriorityStrategy extends AbstractConsumerStrategy implements
                 log.info("Check redeliver is true, discard this message:" + message);
             }
         } catch (Throwable e) {
-            log.warn("Receive message failed. message:" + textMessage, e);
+            log.warn("Receive message failed. message:" + jmsMessage, e);
+            // 开启死信时写入死信队列，不等待结果
+            deadLetter(config, jmsMessage, e);
+        }
+    }
+
+    private void deadLetter(final AmqConsumerConfig config, final Message jmsMessage, final Throwable error) {
+        if (!DeadLetterRouter.isEnabled(AmqUtil.getDestName(config.getDestination()))) {
+            return;
+        }
+        try {
+            deadLetter(AmqUtil.buildDeadLetter(jmsMessage, AmqUtil.getBody(jmsMessage), error, 1), null);
+        } catch (Throwable t) {
+            log.warn("Route dead letter failed, message:" + jmsMessage, t);
         }
     }
 }
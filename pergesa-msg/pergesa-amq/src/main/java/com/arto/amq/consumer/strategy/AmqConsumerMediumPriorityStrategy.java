@@ -13,15 +13,23 @@
 package com.arto.amq.consumer.strategy;
 
 import com.arto.amq.consumer.binding.AmqConsumerConfig;
+import com.arto.amq.util.AmqUtil;
 import com.arto.core.common.MessageRecord;
+import com.arto.core.consumer.dlq.DeadLetterRouter;
+import com.arto.core.consumer.retry.RetryPolicy;
 import com.arto.core.consumer.strategy.AbstractConsumerStrategy;
 import com.arto.core.exception.MqClientException;
 import lombok.extern.slf4j.Slf4j;
 
-import javax.jms.TextMessage;
+import javax.jms.Message;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 /**
- * 普通消费模式，消息消费失败会抛出错误，等待AMQ重发，超过重发次数丢弃消息。适合容忍消息丢失的普通消息
+ * 普通消费模式，消息消费失败会抛出错误，等待AMQ重发，超过重发次数丢弃消息(开启死信时达到最大消费次数后写入死信队列)。适合容忍消息丢失的普通消息
  *
  * Created by xiong.j on 2017/1/20.
  */
@@ -29,20 +37,51 @@ import javax.jms.TextMessage;
 class AmqConsumerMediumPriorityStrategy extends AbstractConsumerStrategy implements AmqConsumerStrategy {
 
     @Override
-    public void onMessage(final AmqConsumerConfig config, final TextMessage textMessage) {
-        tryConsume(config, textMessage);
+    public void onMessage(final AmqConsumerConfig config, final Message jmsMessage) {
+        tryConsume(config, jmsMessage);
+    }
+
+    @Override
+    public List<Message> onMessages(final AmqConsumerConfig config, final List<Message> messages) {
+        List<Message> redeliver = new ArrayList<Message>();
+        // 整批消费，失败的消息再逐条处理，失败时等待AMQ重发
+        for (Message message : onMessages(config, messages, AmqMessageAccessor.INSTANCE)) {
+            try {
+                tryConsume(config, message);
+            } catch (Throwable e) {
+                redeliver.add(message);
+            }
+        }
+        Set<Message> failed = Collections.newSetFromMap(new IdentityHashMap<Message, Boolean>());
+        failed.addAll(redeliver);
+        for (Message message : messages) {
+            if (!failed.contains(message)) {
+                AmqUtil.acknowledge(message);
+            }
+        }
+        return redeliver;
     }
 
     @SuppressWarnings("unchecked")
-    private void tryConsume(final AmqConsumerConfig config, final TextMessage textMessage) {
+    private void tryConsume(final AmqConsumerConfig config, final Message jmsMessage) {
         MessageRecord message = null;
+        byte[] body = null;
         try {
+            // 按消息Id检测重复消费，重复时不再反序列化
+            if (isDuplicate(config, jmsMessage.getJMSMessageID(), jmsMessage.getJMSRedelivered())) {
+                log.info("Duplicate message, discard this message:" + jmsMessage.getJMSMessageID());
+                return;
+            }
+            body = AmqUtil.getBody(jmsMessage);
             // 反序列化消息
-            message = deserializerMessage(config, textMessage.getText());
+            message = deserializerMessage(config, body);
             // 生成消息ID
-            message.setMessageId(textMessage.getJMSMessageID());
+            message.setMessageId(jmsMessage.getJMSMessageID());
         } catch (Throwable e) {
-            log.warn("Deserializer record failed, waiting for activemq redeliver. message:" + textMessage, e);
+            if (deadLetter(config, jmsMessage, body, e)) {
+                return;
+            }
+            log.warn("Deserializer record failed, waiting for activemq redeliver. message:" + jmsMessage, e);
             throw new MqClientException("Deserializer record failed.", e);
         }
 
@@ -55,8 +94,37 @@ class AmqConsumerMediumPriorityStrategy extends AbstractConsumerStrategy impleme
                 log.info("Check redeliver is true, discard this message:" + message);
             }
         } catch (Throwable e) {
+            if (deadLetter(config, jmsMessage, body, e)) {
+                return;
+            }
             log.warn("Receive message failed, waiting for activemq redeliver. message:" + message, e);
             throw new MqClientException("Receive message failed.", e);
         }
     }
+
+    /**
+     * 开启死信且已达到最大消费次数时写入死信队列，消息正常确认不再由AMQ重发
+     *
+     * @return 是否已放入死信队列
+     */
+    private boolean deadLetter(final AmqConsumerConfig config, final Message jmsMessage, final byte[] body
+            , final Throwable error) {
+        try {
+            if (body == null || !DeadLetterRouter.isEnabled(AmqUtil.getDestName(config.getDestination()))) {
+                return false;
+            }
+            int deliveryCount = jmsMessage.getIntProperty("JMSXDeliveryCount");
+            if (deliveryCount < RetryPolicy.of(config.getDestination()).getMaxAttempts()) {
+                return false;
+            }
+            if (deadLetter(AmqUtil.buildDeadLetter(jmsMessage, body, error, deliveryCount), null)) {
+                log.warn("Receive message failed " + deliveryCount + " times, routed to dead letter queue. message:"
+                        + jmsMessage, error);
+                return true;
+            }
+        } catch (Throwable t) {
+            log.warn("Route dead letter failed, message:" + jmsMessage, t);
+        }
+        return false;
+    }
 }
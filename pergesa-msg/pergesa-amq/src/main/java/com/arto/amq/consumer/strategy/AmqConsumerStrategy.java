@@ -15,7 +15,8 @@ package com.arto.amq.consumer.strategy;
 import com.arto.amq.consumer.binding.AmqConsumerConfig;
 
 import javax.jms.JMSException;
-import javax.jms.TextMessage;
+import javax.jms.Message;
+import java.util.List;
 
 /**
  * Amq消费策略接口
@@ -30,6 +31,15 @@ public interface AmqConsumerStrategy {
      * @param config
      * @param message
      */
-    void onMessage(final AmqConsumerConfig config, final TextMessage message) throws JMSException;
+    void onMessage(final AmqConsumerConfig config, final Message message) throws JMSException;
+
+    /**
+     * 批量消费消息，失败的消息按单条消息的方式重试，处理完成的消息由策略逐条确认
+     *
+     * @param config
+     * @param messages
+     * @return 需要AMQ重发的消息(未确认)
+     */
+    List<Message> onMessages(final AmqConsumerConfig config, final List<Message> messages);
 
 }
@@ -12,6 +12,9 @@
  */
 package com.arto.amq.consumer.strategy;
 
+import com.arto.amq.dlq.AmqDeadLetterSender;
+import com.arto.core.common.MqTypeEnum;
+import com.arto.core.consumer.dlq.DeadLetterRouter;
 import com.arto.event.bootstrap.EventBusFactory;
 
 import java.lang.ref.SoftReference;
@@ -30,6 +33,11 @@ public class AmqConsumerStrategyFactory {
     private final ConcurrentMap<Integer, SoftReference<AmqConsumerStrategy>> strategyMap
             = new ConcurrentHashMap<Integer, SoftReference<AmqConsumerStrategy>>(3);
 
+    private AmqConsumerStrategyFactory() {
+        // 注册AMQ死信发送器
+        DeadLetterRouter.register(MqTypeEnum.ACTIVEMQ.getMemo(), new AmqDeadLetterSender());
+    }
+
     public static AmqConsumerStrategyFactory getInstance(){
         if (null == instance) {
             synchronized (EventBusFactory.class) {
@@ -0,0 +1,39 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.amq.consumer.strategy;
+
+import com.arto.amq.util.AmqUtil;
+import com.arto.core.consumer.RawMessageAccessor;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+/**
+ * 批量消费时读取AMQ消息的消息ID与消息体
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+class AmqMessageAccessor implements RawMessageAccessor<Message> {
+
+    static final AmqMessageAccessor INSTANCE = new AmqMessageAccessor();
+
+    @Override
+    public String getMessageId(Message message) throws JMSException {
+        return message.getJMSMessageID();
+    }
+
+    @Override
+    public byte[] getPayload(Message message) throws JMSException {
+        return AmqUtil.getBody(message);
+    }
+}
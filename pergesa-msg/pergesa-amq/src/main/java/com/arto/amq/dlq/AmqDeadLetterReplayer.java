@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.amq.dlq;
+
+import com.arto.amq.config.AmqConfigManager;
+import com.arto.amq.util.AmqUtil;
+import com.arto.core.exception.MqClientException;
+import com.arto.event.util.SpringContextHolder;
+import com.google.common.util.concurrent.RateLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jms.support.JmsUtils;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.DeliveryMode;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.Enumeration;
+
+/**
+ * ActiveMQ死信重放工具，按指定速率把死信队列中的消息重新发送到原目的地(消息属性dlq_destination)
+ * 接收与发送在同一个事务中，每批提交一次，失败时回滚，死信留在队列中
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+@Slf4j
+public class AmqDeadLetterReplayer {
+
+    /** 死信队列 */
+    private final String deadLetterQueue;
+
+    public AmqDeadLetterReplayer(String deadLetterQueue) {
+        this.deadLetterQueue = deadLetterQueue;
+    }
+
+    /**
+     * 重放死信
+     *
+     * @param rate 每秒重放条数
+     * @param maxRecords 最多重放条数，小于等于0时重放到死信队列为空
+     * @return 重放条数
+     * @throws MqClientException
+     */
+    public int replay(double rate, int maxRecords) throws MqClientException {
+        if (rate <= 0) {
+            throw new MqClientException("Replay rate must be positive:" + rate);
+        }
+        RateLimiter limiter = RateLimiter.create(rate);
+        int batchSize = AmqConfigManager.getInt("activemq.dlq.replay.batch", 100);
+        int replayed = 0;
+        Connection connection = null;
+        Session session = null;
+        try {
+            ConnectionFactory connectionFactory = SpringContextHolder.getBean("amqConnectionFactory");
+            connection = connectionFactory.createConnection();
+            connection.start();
+            session = connection.createSession(true, Session.SESSION_TRANSACTED);
+            MessageConsumer consumer = session.createConsumer(session.createQueue(deadLetterQueue));
+            // 不指定目的地，发送时按原目的地发送
+            MessageProducer producer = session.createProducer(null);
+
+            int uncommitted = 0;
+            while (maxRecords <= 0 || replayed + uncommitted < maxRecords) {
+                Message message = consumer.receive(1000);
+                if (message == null) {
+                    break;
+                }
+                limiter.acquire();
+                String destName = message.getStringProperty(AmqDeadLetterSender.P_DESTINATION);
+                producer.send(getDestination(session, destName), copyMessage(session, message)
+                        , DeliveryMode.PERSISTENT, message.getJMSPriority(), 0);
+                if (++uncommitted >= batchSize) {
+                    session.commit();
+                    replayed += uncommitted;
+                    uncommitted = 0;
+                    log.info("Replayed dead letters:" + replayed + ", queue:" + deadLetterQueue);
+                }
+            }
+            if (uncommitted > 0) {
+                session.commit();
+                replayed += uncommitted;
+            }
+            log.info("Replayed dead letters:" + replayed + ", queue:" + deadLetterQueue);
+        } catch (Throwable t) {
+            if (session != null) {
+                try {
+                    session.rollback();
+                } catch (Throwable e) {
+                    log.warn("Rollback replay session failed.", e);
+                }
+            }
+            throw new MqClientException("Replay dead letters failed, replayed:" + replayed + ", queue:" + deadLetterQueue, t);
+        } finally {
+            JmsUtils.closeSession(session);
+            JmsUtils.closeConnection(connection);
+        }
+        return replayed;
+    }
+
+    private Destination getDestination(Session session, String destName) throws JMSException {
+        if (destName == null) {
+            throw new MqClientException("Dead letter has no original destination, queue:" + deadLetterQueue);
+        }
+        if (AmqUtil.isPubSubDomain(destName)) {
+            return session.createTopic(destName);
+        }
+        return session.createQueue(destName);
+    }
+
+    /**
+     * 复制原消息体与业务属性，去掉死信属性
+     */
+    @SuppressWarnings("unchecked")
+    private Message copyMessage(Session session, Message message) throws JMSException {
+        BytesMessage copy = session.createBytesMessage();
+        byte[] body = AmqUtil.getBody(message);
+        if (body != null) {
+            copy.writeBytes(body);
+        }
+        Enumeration<String> names = message.getPropertyNames();
+        while (names.hasMoreElements()) {
+            String name = names.nextElement();
+            if (!name.startsWith("dlq_") && !name.startsWith("JMSX")) {
+                copy.setObjectProperty(name, message.getObjectProperty(name));
+            }
+        }
+        return copy;
+    }
+}
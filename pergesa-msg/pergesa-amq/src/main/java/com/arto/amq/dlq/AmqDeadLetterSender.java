@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.amq.dlq;
+
+import com.arto.amq.bootstrap.AmqJmsTemplate;
+import com.arto.core.consumer.dlq.DeadLetterRecord;
+import com.arto.core.consumer.dlq.DeadLetterSender;
+import com.arto.event.util.SpringContextHolder;
+import org.springframework.jms.core.SessionCallback;
+import org.springframework.jms.support.JmsUtils;
+
+import javax.jms.BytesMessage;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ActiveMQ死信发送，原消息体不变，失败信息写入消息属性，默认死信队列为"Q.DLQ.原目的地"
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+public class AmqDeadLetterSender implements DeadLetterSender {
+
+    /** 原目的地 */
+    public static final String P_DESTINATION = "dlq_destination";
+
+    /** 原消息Id */
+    public static final String P_MESSAGE_ID = "dlq_message_id";
+
+    /** 消费次数 */
+    public static final String P_ATTEMPTS = "dlq_attempts";
+
+    /** 最后一次异常 */
+    public static final String P_EXCEPTION = "dlq_exception";
+
+    /** 进入死信的时间 */
+    public static final String P_TIMESTAMP = "dlq_timestamp";
+
+    /** 死信优先级，与普通消息一致 */
+    private static final int PRIORITY = 4;
+
+    private volatile AmqJmsTemplate jmsTemplate;
+
+    @Override
+    public String getDefaultName(String destination) {
+        return "Q.DLQ." + destination;
+    }
+
+    @Override
+    public Throwable[] send(final List<DeadLetterRecord> records) throws Exception {
+        final Throwable[] results = new Throwable[records.size()];
+        // 按死信队列分组，同一队列使用同一个Session和Producer发送
+        Map<String, List<Integer>> groups = new LinkedHashMap<String, List<Integer>>();
+        for (int i = 0; i < records.size(); i++) {
+            String name = records.get(i).getDeadLetterDestination();
+            List<Integer> group = groups.get(name);
+            if (group == null) {
+                group = new ArrayList<Integer>();
+                groups.put(name, group);
+            }
+            group.add(i);
+        }
+
+        for (final Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+            try {
+                getJmsTemplate().execute(new SessionCallback<Object>() {
+                    @Override
+                    public Object doInJms(Session session) throws JMSException {
+                        MessageProducer producer = session.createProducer(session.createQueue(group.getKey()));
+                        try {
+                            for (int i : group.getValue()) {
+                                try {
+                                    producer.send(buildMessage(session, records.get(i))
+                                            , DeliveryMode.PERSISTENT, PRIORITY, 0);
+                                } catch (Throwable t) {
+                                    results[i] = t;
+                                }
+                            }
+                        } finally {
+                            JmsUtils.closeMessageProducer(producer);
+                        }
+                        return null;
+                    }
+                }, false);
+            } catch (Throwable t) {
+                for (int i : group.getValue()) {
+                    results[i] = t;
+                }
+            }
+        }
+        return results;
+    }
+
+    private Message buildMessage(Session session, DeadLetterRecord record) throws JMSException {
+        BytesMessage message = session.createBytesMessage();
+        if (record.getPayload() != null) {
+            message.writeBytes(record.getPayload());
+        }
+        message.setStringProperty(P_DESTINATION, record.getDestination());
+        if (record.getMessageId() != null) {
+            message.setStringProperty(P_MESSAGE_ID, record.getMessageId());
+        }
+        message.setIntProperty(P_ATTEMPTS, record.getAttempts());
+        if (record.getException() != null) {
+            message.setStringProperty(P_EXCEPTION, record.getException());
+        }
+        message.setLongProperty(P_TIMESTAMP, record.getTimestamp());
+        return message;
+    }
+
+    private AmqJmsTemplate getJmsTemplate() {
+        if (jmsTemplate == null) {
+            jmsTemplate = SpringContextHolder.getBean("amqJmsTemplate");
+        }
+        return jmsTemplate;
+    }
+}
@@ -17,20 +17,35 @@ import com.arto.amq.bootstrap.AmqSpringRegister;
 import com.arto.amq.config.AmqConfigManager;
 import com.arto.amq.event.AmqProduceEvent;
 import com.arto.amq.util.AmqUtil;
+import com.arto.core.codec.MessageCodecFactory;
+import com.arto.core.common.MessageRecord;
+import com.arto.core.common.MqTypeEnum;
 import com.arto.core.exception.MqClientException;
+import com.arto.core.metrics.MqMetrics;
+import com.arto.core.producer.breaker.SendCircuitBreakerManager;
+import com.arto.core.producer.limit.SendRateLimiterManager;
+import com.arto.event.config.ConfigChangeListener;
 import com.arto.event.util.SpringThreadPoolUtil;
-import com.arto.event.util.StringUtil;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.AsyncCallback;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jms.core.MessageCreator;
+import org.springframework.jms.core.ProducerCallback;
 import org.springframework.stereotype.Component;
 
+import javax.jms.BytesMessage;
 import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
+import javax.jms.MessageProducer;
 import javax.jms.Session;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * Created by xiong.j on 2017/3/22.
@@ -70,7 +85,97 @@ public class AmqMessageProducer {
         innerSend(destination, event);
     }
 
+    /**
+     * 异步发送消息，使用ActiveMQ原生的AsyncCallback，不占用发送线程，返回的Future在Broker确认后完成，结果为JMS消息Id
+     *
+     * @param event
+     * @return
+     * @throws MqClientException
+     */
+    public ListenableFuture<String> sendAsync(final AmqProduceEvent event) throws MqClientException {
+        final SettableFuture<String> future = SettableFuture.create();
+        checkSend(event);
+        acquire(event);
+        final long start = System.nanoTime();
+        try {
+            final PayloadMessageCreator messageCreator = new PayloadMessageCreator(MessageCodecFactory.encode(event.getPayload()));
+            jmsTemplate.sendAsync(AmqUtil.getDestName(event.getDestination()), messageCreator
+                    , event.getDeliveryMode(), AmqUtil.convert2AmqPriority(event.getPriority()), event.getTimeToLive()
+                    , new AsyncCallback() {
+                        @Override
+                        public void onSuccess() {
+                            recordSend(event, start, null);
+                            try {
+                                String messageId = messageCreator.getMessageId();
+                                if (event.getPayload() instanceof MessageRecord) {
+                                    ((MessageRecord) event.getPayload()).setMessageId(messageId);
+                                }
+                                future.set(messageId);
+                            } catch (Throwable e) {
+                                future.setException(e);
+                            }
+                        }
+
+                        @Override
+                        public void onException(JMSException e) {
+                            recordSend(event, start, e);
+                            future.setException(e);
+                        }
+                    });
+        } catch (Throwable e) {
+            // 未能交给Broker(连接异常等)，不会再有回调
+            recordSend(event, start, e);
+            future.setException(new MqClientException("Send message failed. message event=" + event, e));
+        }
+        return future;
+    }
+
+    /**
+     * 使用同一个Session和Producer批量发送同一目的地的消息
+     *
+     * @param destination
+     * @param events
+     * @return 与消息一一对应的发送结果，成功为null，失败为异常
+     * @throws MqClientException
+     */
+    public Throwable[] sendBatch(final String destination, final List<AmqProduceEvent> events) throws MqClientException {
+        try {
+            return jmsTemplate.execute(AmqUtil.getDestName(destination), new ProducerCallback<Throwable[]>() {
+                @Override
+                public Throwable[] doInJms(Session session, MessageProducer producer) throws JMSException {
+                    Throwable[] results = new Throwable[events.size()];
+                    AmqProduceEvent event;
+                    for (int i = 0; i < events.size(); i++) {
+                        event = events.get(i);
+                        try {
+                            checkSend(event);
+                        } catch (Throwable t) {
+                            results[i] = t;
+                            continue;
+                        }
+                        acquire(event);
+                        long start = System.nanoTime();
+                        try {
+                            Message message = createMessage(session, MessageCodecFactory.encode(event.getPayload()));
+                            jmsTemplate.send(producer, message, event.getDeliveryMode()
+                                    , AmqUtil.convert2AmqPriority(event.getPriority()), event.getTimeToLive());
+                        } catch (Throwable t) {
+                            results[i] = t;
+                        }
+                        recordSend(event, start, results[i]);
+                    }
+                    return results;
+                }
+            });
+        } catch (Throwable e) {
+            throw new MqClientException(e);
+        }
+    }
+
     private void innerSend(final Destination destination, final AmqProduceEvent event) throws MqClientException {
+        // 在调用线程中熔断和限流，避免低优先级消息堆积在发送线程池
+        checkSend(event);
+        acquire(event);
         if (event.getPriority() == 3) {
             // 异步发送, 被SpingJMS封装，无法使用回调(AsyncCallback)
             getExecutor().execute(new Runnable() {
@@ -89,34 +194,79 @@ public class AmqMessageProducer {
         }
     }
 
-    private void doSend(final Destination destination, final AmqProduceEvent event){
+    private String doSend(final Destination destination, final AmqProduceEvent event){
+        long start = System.nanoTime();
         try {
-            final String message = StringUtil.checkSize(event.getPayload(), -1);
+            final PayloadMessageCreator messageCreator = new PayloadMessageCreator(MessageCodecFactory.encode(event.getPayload()));
 
             int priority = AmqUtil.convert2AmqPriority(event.getPriority());
             if (destination != null) {
-                jmsTemplate.send(destination, new TextMessage(message)
+                jmsTemplate.send(destination, messageCreator
                         , event.getDeliveryMode(), priority, event.getTimeToLive());
             } else {
                 jmsTemplate.send(AmqUtil.getDestName(event.getDestination())
-                        , new TextMessage(message), event.getDeliveryMode(), priority, event.getTimeToLive());
+                        , messageCreator, event.getDeliveryMode(), priority, event.getTimeToLive());
             }
+            recordSend(event, start, null);
+            return messageCreator.getMessageId();
         } catch (Throwable e) {
+            recordSend(event, start, e);
             throw new MqClientException(e);
         }
     }
 
-    private class TextMessage implements MessageCreator {
+    private void checkSend(final AmqProduceEvent event) {
+        // 熔断中直接失败，不等待发送超时
+        SendCircuitBreakerManager.checkSend(MqTypeEnum.ACTIVEMQ.getMemo(), event.getDestination());
+    }
+
+    private void acquire(final AmqProduceEvent event) {
+        // 按目的地和优先级限流，超过速率时阻塞调用线程
+        SendRateLimiterManager.acquire(MqTypeEnum.ACTIVEMQ.getMemo(), event.getDestination(), event.getPriority());
+    }
 
-        private String message;
+    private void recordSend(final AmqProduceEvent event, long start, Throwable error) {
+        MqMetrics.recordSend(MqTypeEnum.ACTIVEMQ.getMemo(), event.getDestination(), event.getPriority(), start, error);
+        SendRateLimiterManager.onSend(MqTypeEnum.ACTIVEMQ.getMemo(), event.getDestination(), event.getPriority(), start, error);
+        SendCircuitBreakerManager.onSend(MqTypeEnum.ACTIVEMQ.getMemo(), event.getDestination(), start, error);
+    }
 
-        public TextMessage(final String message) {
+    /**
+     * JSON编码且不写消息头时发送TextMessage(与未升级的消费端兼容)，其它编码发送BytesMessage
+     *
+     * @param session
+     * @param body 编码后的消息
+     * @return
+     * @throws JMSException
+     */
+    private static Message createMessage(Session session, byte[] body) throws JMSException {
+        if (MessageCodecFactory.isTextEncoding()) {
+            return session.createTextMessage(new String(body, AmqUtil.UTF8));
+        }
+        BytesMessage bytesMessage = session.createBytesMessage();
+        bytesMessage.writeBytes(body);
+        return bytesMessage;
+    }
+
+    private class PayloadMessageCreator implements MessageCreator {
+
+        private byte[] message;
+
+        /** 发送后由Producer设置JMS消息Id */
+        private Message createdMessage;
+
+        public PayloadMessageCreator(final byte[] message) {
             this.message = message;
         }
 
         @Override
         public Message createMessage(Session session) throws JMSException {
-            return session.createTextMessage(message);
+            createdMessage = AmqMessageProducer.createMessage(session, message);
+            return createdMessage;
+        }
+
+        public String getMessageId() throws JMSException {
+            return createdMessage == null ? null : createdMessage.getJMSMessageID();
         }
     }
 
@@ -124,15 +274,40 @@ public class AmqMessageProducer {
         if (executor == null){
             synchronized (AmqMessageProducer.class){
                 if (executor == null) {
-                    executor = SpringThreadPoolUtil.getNewPool("AmqAsyncSend"
+                    final ThreadPoolExecutor pool = SpringThreadPoolUtil.getNewPool("AmqAsyncSend"
                             , AmqConfigManager.getInt("amq.producer.pool.coreSize", 3)
                             , AmqConfigManager.getInt("amq.producer.pool.maxSize", 6)
                             , AmqConfigManager.getInt("amq.producer.pool.queueCapacity", 999)
                             , null).getThreadPoolExecutor();
+                    // 配置刷新时调整线程数
+                    AmqConfigManager.getInstance().addListener(new ConfigChangeListener() {
+                        @Override
+                        public void onChange(Set<String> changedKeys) {
+                            resizePool(pool);
+                        }
+                    });
+                    executor = pool;
                 }
                 return executor;
             }
         }
         return executor;
     }
+
+    private static void resizePool(ThreadPoolExecutor pool){
+        int coreSize = AmqConfigManager.getInt("amq.producer.pool.coreSize", 3);
+        int maxSize = AmqConfigManager.getInt("amq.producer.pool.maxSize", 6);
+        if (coreSize > maxSize) {
+            log.warn("Ignore invalid pool size, coreSize=" + coreSize + ", maxSize=" + maxSize);
+            return;
+        }
+        // 先调大的一侧，避免出现core大于max的中间状态
+        if (maxSize >= pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(maxSize);
+            pool.setCorePoolSize(coreSize);
+        } else {
+            pool.setCorePoolSize(coreSize);
+            pool.setMaximumPoolSize(maxSize);
+        }
+    }
 }
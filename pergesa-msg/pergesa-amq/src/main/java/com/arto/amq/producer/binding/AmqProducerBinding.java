@@ -16,27 +16,27 @@ import com.alibaba.fastjson.serializer.PropertyFilter;
 import com.arto.amq.common.AmqConstants;
 import com.arto.amq.config.AmqConfigManager;
 import com.arto.amq.event.AmqProduceEvent;
+import com.arto.amq.producer.AmqMessageProducer;
 import com.arto.amq.util.AmqUtil;
-import com.arto.core.bootstrap.MqClient;
-import com.arto.core.common.DataPipeline;
 import com.arto.core.common.MessageRecord;
-import com.arto.core.common.MqTypeEnum;
-import com.arto.core.event.MqEvent;
+import com.arto.core.config.MqConfigManager;
 import com.arto.core.exception.MqClientException;
-import com.arto.core.intercepter.TxMessageContextHolder;
+import com.arto.core.intercepter.TxMessageSynchronization;
 import com.arto.core.producer.MqProducer;
 import com.arto.event.bootstrap.EventBusFactory;
 import com.arto.event.serialization.JsonSerializer;
 import com.arto.event.service.PersistentEventService;
 import com.arto.event.util.SpringContextHolder;
 import com.arto.event.util.StringUtil;
+import com.google.common.util.concurrent.ListenableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.activemq.command.ActiveMQQueue;
 import org.apache.activemq.command.ActiveMQTopic;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
 
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -45,10 +45,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * Created by xiong.j on 2017/1/12.
  */
 @Slf4j
-public class AmqProducerBinding implements MqProducer {
+public class AmqProducerBinding<T> implements MqProducer<T> {
 
     private static final AtomicBoolean closeFlag = new AtomicBoolean(false);
 
+    /** 事务消息发送器 */
+    private static final AmqTxMessageSender txMessageSender = new AmqTxMessageSender();
+
     /** Kafka生产者配置 */
     private final AmqProducerConfig config;
 
@@ -61,9 +64,15 @@ public class AmqProducerBinding implements MqProducer {
     /** 序列化类 */
     private final JsonSerializer serializer;
 
+    /** 事务消息延迟到事务提交前批量持久化 */
+    private final boolean deferredPersist;
+
+    /** 异步发送时使用的生产者 */
+    private volatile AmqMessageProducer producer;
+
     static {
-        // 注册事务消息发送线程
-        new Thread(new AmqTxMessageSendThread(), "AmqTxMessageSendThread").start();
+        // 启动事务消息发送通道
+        txMessageSender.start();
     }
 
     public AmqProducerBinding(AmqProducerConfig config) {
@@ -75,6 +84,8 @@ public class AmqProducerBinding implements MqProducer {
         // 默认1M
         maxSize = AmqConfigManager.getInt("activemq.message.maxsize", 1048576);
         serializer = new JsonSerializer(new AmqProduceMsgPropertyFilter(), -1);
+        // 默认关闭，开启后同一事务中的消息在提交前一次批量插入
+        deferredPersist = MqConfigManager.getBoolean("mq.tx.persist.deferred", false);
     }
 
     /**
@@ -85,7 +96,7 @@ public class AmqProducerBinding implements MqProducer {
      */
     @Override
     @SuppressWarnings("unchecked")
-    public void send(Object message) throws MqClientException {
+    public void send(T message) throws MqClientException {
         innerSend(new MessageRecord(message), false);
     }
 
@@ -101,6 +112,42 @@ public class AmqProducerBinding implements MqProducer {
         innerSend(record, config.isTransaction());
     }
 
+    /**
+     * 异步发送消息(简化方法)
+     *
+     * @param message
+     * @return
+     * @throws MqClientException
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public ListenableFuture<String> sendAsync(T message) throws MqClientException {
+        return innerSendAsync(new MessageRecord(message));
+    }
+
+    /**
+     * 异步发送消息，消息不持久化，返回的Future完成时为消息Id
+     *
+     * @param record
+     * @return
+     * @throws MqClientException
+     */
+    @Override
+    public ListenableFuture<String> sendAsync(MessageRecord record) throws MqClientException {
+        return innerSendAsync(record);
+    }
+
+    /**
+     * 批量发送消息，事务消息在同一事务中批量持久化，事务提交后批量发送
+     *
+     * @param records
+     * @throws MqClientException
+     */
+    @Override
+    public void sendBatch(List<MessageRecord<T>> records) throws MqClientException {
+        innerSendBatch(records, config.isTransaction());
+    }
+
     /**
      * 发送非事务消息(开启事务发送后，可使用此方法发送非事务消息)
      *
@@ -122,6 +169,13 @@ public class AmqProducerBinding implements MqProducer {
         return config;
     }
 
+    private AmqMessageProducer getProducer() {
+        if (producer == null) {
+            producer = SpringContextHolder.getBean(AmqMessageProducer.class);
+        }
+        return producer;
+    }
+
     /**
      * 销毁线程
      */
@@ -130,6 +184,7 @@ public class AmqProducerBinding implements MqProducer {
             synchronized (AmqProducerBinding.class) {
                 if (!closeFlag.get()) {
                     closeFlag.set(true);
+                    txMessageSender.close();
                 }
             }
         }
@@ -162,10 +217,19 @@ public class AmqProducerBinding implements MqProducer {
             // 转换为事件
             AmqProduceEvent event = buildEvent(record, isTransaction);
             if (event.isPersistent()) {
-                // 持久化消息直接持久化(模拟客户端两阶段提交)
-                service.persist(event, serializer, AmqConstants.AMQ_EVENT_BEAN);
-                // 加入线程上下文，等待事务正常结束后加入发送Queue处理(避免定时调度的延迟，调度默认10分钟执行一次)
-                TxMessageContextHolder.setTxMessage(event);
+                TxMessageSynchronization synchronization = TxMessageSynchronization.register();
+                if (deferredPersist && synchronization != null) {
+                    // 延迟持久化，事务提交前与同事务的其它消息一次插入
+                    service.prepare(event, serializer, AmqConstants.AMQ_EVENT_BEAN);
+                    synchronization.addPendingMessage(event);
+                } else {
+                    // 持久化消息直接持久化(模拟客户端两阶段提交)
+                    service.persist(event, serializer, AmqConstants.AMQ_EVENT_BEAN);
+                    if (synchronization != null) {
+                        // 加入当前事务，等待事务正常结束后加入发送Queue处理(避免定时调度的延迟，调度默认10分钟执行一次)
+                        synchronization.addMessage(event);
+                    }
+                }
             } else {
                 // 非持久化消息直接发送
                 EventBusFactory.getInstance().post(event);
@@ -175,6 +239,66 @@ public class AmqProducerBinding implements MqProducer {
         }
     }
 
+    private ListenableFuture<String> innerSendAsync(MessageRecord record) throws MqClientException {
+        if (record == null || record.getMessage() == null) {
+            throw new MqClientException("Message can't be null or blank");
+        }
+
+        try {
+            // 检查消息大小
+            StringUtil.checkSize(record, maxSize);
+            // 转换为事件，直接交给生产者异步发送
+            return getProducer().sendAsync(buildEvent(record, false));
+        } catch (MqClientException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new MqClientException("Send message failed. message:" + record, t);
+        }
+    }
+
+    private void innerSendBatch(List<? extends MessageRecord> records, boolean isTransaction) throws MqClientException {
+        if (records == null || records.isEmpty()) {
+            throw new MqClientException("Messages can't be null or empty");
+        }
+
+        try {
+            List<AmqProduceEvent> events = new ArrayList<AmqProduceEvent>(records.size());
+            for (MessageRecord record : records) {
+                if (record == null || record.getMessage() == null) {
+                    throw new MqClientException("Message can't be null or blank");
+                }
+                // 检查消息大小
+                StringUtil.checkSize(record, maxSize);
+                // 转换为事件
+                events.add(buildEvent(record, isTransaction));
+            }
+            if (isTransaction) {
+                TxMessageSynchronization synchronization = TxMessageSynchronization.register();
+                if (deferredPersist && synchronization != null) {
+                    // 延迟持久化，事务提交前一次插入
+                    for (AmqProduceEvent event : events) {
+                        service.prepare(event, serializer, AmqConstants.AMQ_EVENT_BEAN);
+                    }
+                    synchronization.addPendingMessages(events);
+                } else {
+                    // 同一事务中批量持久化
+                    service.persist(events, serializer, AmqConstants.AMQ_EVENT_BEAN);
+                    if (synchronization != null) {
+                        // 一次加入当前事务，事务提交后一起加入发送Queue
+                        synchronization.addMessages(events);
+                    }
+                }
+            } else {
+                // 非持久化消息直接发送
+                for (AmqProduceEvent event : events) {
+                    EventBusFactory.getInstance().post(event);
+                }
+            }
+        } catch (Throwable t) {
+            throw new MqClientException("Send messages failed. size:" + records.size(), t);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private AmqProduceEvent buildEvent(MessageRecord record, boolean isTransaction){
         AmqProduceEvent event = new AmqProduceEvent();
@@ -195,32 +319,6 @@ public class AmqProducerBinding implements MqProducer {
         return event;
     }
 
-    /**
-     * 持久化消息存储后，直接扔Queue里在此线程处理
-     */
-    private static class AmqTxMessageSendThread implements Runnable{
-
-        private final DataPipeline<MqEvent> dataPipeline;
-
-        private AmqTxMessageSendThread() {
-            dataPipeline = MqClient.getPipeline(MqTypeEnum.ACTIVEMQ.getMemo());
-        }
-
-        @Override
-        public void run() {
-            while (!closeFlag.get()) {
-                try {
-                    AmqProduceEvent event = (AmqProduceEvent)dataPipeline.poll(300, TimeUnit.MILLISECONDS);
-                    if (event != null) {
-                        EventBusFactory.getInstance().post(event);
-                    }
-                } catch (Throwable t) {
-                    log.warn("Send message failed.", t);
-                }
-            }
-        }
-    }
-
     private static class AmqProduceMsgPropertyFilter implements PropertyFilter {
 
         @Override
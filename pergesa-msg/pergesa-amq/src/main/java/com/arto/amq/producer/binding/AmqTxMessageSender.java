@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.amq.producer.binding;
+
+import com.arto.amq.config.AmqConfigManager;
+import com.arto.amq.event.AmqProduceEvent;
+import com.arto.amq.producer.AmqMessageProducer;
+import com.arto.core.common.MqTypeEnum;
+import com.arto.core.event.MqEvent;
+import com.arto.core.producer.AbstractTxMessageSender;
+import com.arto.event.util.SpringContextHolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Activemq事务消息发送器，同一批消息使用同一个Session和Producer发送
+ * (开启activemq.useAsyncSend时消息发送可重叠进行)
+ *
+ * Created by xiong.j on 2017/3/24.
+ */
+class AmqTxMessageSender extends AbstractTxMessageSender {
+
+    private volatile AmqMessageProducer producer;
+
+    AmqTxMessageSender() {
+        super("AmqTxMessageSend", MqTypeEnum.ACTIVEMQ.getMemo()
+                , AmqConfigManager.getInt("amq.producer.tx.lanes", 2)
+                , AmqConfigManager.getInt("amq.producer.tx.batchSize", 100));
+    }
+
+    @Override
+    protected Throwable[] send(String destination, List<MqEvent> events) {
+        List<AmqProduceEvent> amqEvents = new ArrayList<AmqProduceEvent>(events.size());
+        for (MqEvent event : events) {
+            amqEvents.add((AmqProduceEvent) event);
+        }
+        return getProducer().sendBatch(destination, amqEvents);
+    }
+
+    private AmqMessageProducer getProducer() {
+        if (producer == null) {
+            producer = SpringContextHolder.getBean(AmqMessageProducer.class);
+        }
+        return producer;
+    }
+}
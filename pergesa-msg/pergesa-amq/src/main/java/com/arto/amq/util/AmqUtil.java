@@ -1,15 +1,28 @@
 package com.arto.amq.util;
 
+import com.arto.core.common.MqTypeEnum;
+import com.arto.core.consumer.dlq.DeadLetterRecord;
 import com.arto.core.exception.MqClientException;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.command.ActiveMQDestination;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.TextMessage;
+import java.nio.charset.Charset;
 
 /**
  * Created by xiong.j on 2017/3/29.
  */
+@Slf4j
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class AmqUtil {
 
+    public static final Charset UTF8 = Charset.forName("UTF-8");
+
     public static String getDestName(String dest){
         if (destHasParam(dest)) {
             return dest.substring(0, dest.indexOf("?"));
@@ -48,4 +61,57 @@ public class AmqUtil {
             throw new MqClientException("Activemq's destination name must start with 'T' or 'Q'. destination:" + dest);
         }
     }
+
+    /**
+     * 获取消息体，BytesMessage为编码后的消息，TextMessage为旧版本的JSON消息
+     *
+     * @param message
+     * @return
+     * @throws JMSException
+     */
+    public static byte[] getBody(Message message) throws JMSException {
+        if (message instanceof BytesMessage) {
+            BytesMessage bytesMessage = (BytesMessage) message;
+            byte[] body = new byte[(int) bytesMessage.getBodyLength()];
+            bytesMessage.reset();
+            bytesMessage.readBytes(body);
+            return body;
+        } else if (message instanceof TextMessage) {
+            String text = ((TextMessage) message).getText();
+            return text == null ? null : text.getBytes(UTF8);
+        } else {
+            throw new MqClientException("Unsupported message type:" + message.getClass().getName());
+        }
+    }
+
+    /**
+     * 生成死信，保留原消息体与消息ID
+     *
+     * @param message
+     * @param body 原消息体
+     * @param error 最后一次失败的异常
+     * @param attempts 消费次数
+     * @return
+     * @throws JMSException
+     */
+    public static DeadLetterRecord buildDeadLetter(Message message, byte[] body, Throwable error, int attempts)
+            throws JMSException {
+        return new DeadLetterRecord(MqTypeEnum.ACTIVEMQ.getMemo()
+                , ((ActiveMQDestination) message.getJMSDestination()).getPhysicalName()
+                , message.getJMSMessageID(), body, error, attempts);
+    }
+
+    /**
+     * 确认消息，INDIVIDUAL_ACKNOWLEDGE时只确认该条消息，自动确认或事务Session中无效果.
+     * 确认失败时不抛出异常，消息由AMQ重发
+     *
+     * @param message
+     */
+    public static void acknowledge(Message message) {
+        try {
+            message.acknowledge();
+        } catch (JMSException e) {
+            log.warn("Acknowledge message failed, waiting for activemq redeliver. message:" + message, e);
+        }
+    }
 }
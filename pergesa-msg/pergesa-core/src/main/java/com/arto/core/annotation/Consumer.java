@@ -48,4 +48,19 @@ public @interface Consumer {
     // 批量消费标识大小
     int batchSize() default 5;
 
+    // 分区内按Key并行消费，同一Key的消息保持顺序(仅Kafka)
+    boolean keyOrdered() default false;
+
+    // 批量消费，方法参数为List<MessageRecord<T>>，去重方法参数与返回值为List<MessageRecord<T>>(Kafka、ActiveMQ)
+    boolean batch() default false;
+
+    // 批量消费时单批最大消息数
+    int maxBatch() default 100;
+
+    // 批量消费时凑批的最大等待时间(毫秒，仅ActiveMQ，Kafka按拉取到的分区消息分批)
+    int maxWaitMs() default 50;
+
+    // 事务消费，消费方法与分区消费位置在同一数据库事务中提交，分区分配后从数据库记录的位置继续消费(仅Kafka)
+    boolean exactlyOnce() default false;
+
 }
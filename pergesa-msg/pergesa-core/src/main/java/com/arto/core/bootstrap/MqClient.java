@@ -14,11 +14,18 @@ package com.arto.core.bootstrap;
 
 import com.arto.core.common.DataPipeline;
 import com.arto.core.common.MessagePriorityEnum;
+import com.arto.core.common.PipelineOverflowEnum;
+import com.arto.core.common.PipelineSpillSegment;
 import com.arto.core.config.MqConfigManager;
 import com.arto.core.consumer.ConsumerConfig;
+import com.arto.core.consumer.MessageDeserializePlan;
 import com.arto.core.consumer.MqConsumer;
 import com.arto.core.event.MqEvent;
+import com.arto.core.event.MqEventPipeline;
+import com.arto.core.event.MqEventSpillCodec;
 import com.arto.core.exception.MqClientException;
+import com.arto.core.metrics.Gauge;
+import com.arto.core.metrics.MqMetrics;
 import com.arto.core.producer.MqProducer;
 import com.arto.core.producer.ProducerConfig;
 import com.arto.event.common.Destroyable;
@@ -26,7 +33,10 @@ import com.arto.event.util.SpringDestroyableUtil;
 import com.google.common.base.Strings;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.ServiceLoader;
@@ -34,10 +44,11 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 /**
- * 消息中间件客户端入口，可灵活配备不同的消息中间件，默认实现了Kafka和ActiveMq。
+ * 消息中间件客户端入口，可灵活配备不同的消息中间件，默认实现了Kafka、ActiveMq和进程内的Memory。
  *
  * Created by xiong.j on 2017/1/11.
  */
+@Slf4j
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class MqClient implements Destroyable{
 
@@ -46,8 +57,8 @@ public class MqClient implements Destroyable{
     private static final ConcurrentMap<String, MqFactory> factoryMap
             = new ConcurrentHashMap<String, MqFactory>(2);
 
-    private static final ConcurrentMap<String, DataPipeline<MqEvent>> pipelineMap
-            = new ConcurrentHashMap<String, DataPipeline<MqEvent>>(2);
+    private static final ConcurrentMap<String, MqEventPipeline> pipelineMap
+            = new ConcurrentHashMap<String, MqEventPipeline>(2);
 
     static {
         // 初始化
@@ -67,13 +78,95 @@ public class MqClient implements Destroyable{
             factoryMap.put(mqFactory.getMqType(), mqFactory);
 
             // 加载消息队列
-            DataPipeline<MqEvent> dataPipeline = new DataPipeline<MqEvent>(MqConfigManager.getInt("mq.pipeline.size", 30000));
-            pipelineMap.put(mqFactory.getMqType(), dataPipeline);
+            pipelineMap.put(mqFactory.getMqType(), buildPipeline(mqFactory.getMqType()));
         }
         // 注册勾子
         SpringDestroyableUtil.add("mqClient", instance);
     }
 
+    /**
+     * 根据配置生成按优先级分通道的数据管道
+     *
+     * @param mqType
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private static MqEventPipeline buildPipeline(String mqType) {
+        MessagePriorityEnum[] priorities = {MessagePriorityEnum.HIGH, MessagePriorityEnum.MEDIUM, MessagePriorityEnum.LOW};
+        // 默认权重8:4:1，每批至少取出1条低优先级消息
+        int[] defaultWeights = {8, 4, 1};
+        DataPipeline<MqEvent>[] lanes = new DataPipeline[priorities.length];
+        int[] weights = new int[priorities.length];
+        for (int i = 0; i < priorities.length; i++) {
+            String lane = priorities[i].name().toLowerCase();
+            lanes[i] = buildLane(mqType, lane);
+            weights[i] = MqConfigManager.getInt("mq.pipeline.weight." + lane, defaultWeights[i]);
+            registerMetrics(mqType, lane, lanes[i]);
+        }
+        return new MqEventPipeline(lanes, weights);
+    }
+
+    /**
+     * 根据配置生成单个优先级通道，通道容量可按优先级单独配置
+     *
+     * @param mqType
+     * @param lane
+     * @return
+     */
+    private static DataPipeline<MqEvent> buildLane(String mqType, String lane) {
+        int size = MqConfigManager.getInt("mq.pipeline.size." + lane, MqConfigManager.getInt("mq.pipeline.size", 30000));
+        PipelineOverflowEnum policy = PipelineOverflowEnum.getEnum(MqConfigManager.getString("mq.pipeline.overflow.policy", "block"));
+        long blockTimeout = MqConfigManager.getInt("mq.pipeline.block.timeout", 100);
+        PipelineSpillSegment spillSegment = null;
+        if (policy == PipelineOverflowEnum.SPILL) {
+            String dir = MqConfigManager.getString("mq.pipeline.spill.dir",
+                    System.getProperty("java.io.tmpdir") + File.separator + "pergesa-pipeline");
+            long maxBytes = MqConfigManager.getInt("mq.pipeline.spill.maxsize", 67108864);
+            try {
+                spillSegment = PipelineSpillSegment.create(dir, mqType + "-" + lane, maxBytes);
+            } catch (IOException e) {
+                log.warn("Create spill segment failed, use fail_fast policy. mqType:" + mqType + ", lane:" + lane, e);
+                policy = PipelineOverflowEnum.FAIL_FAST;
+            }
+        }
+        return new DataPipeline<MqEvent>(size, policy, blockTimeout,
+                spillSegment, spillSegment == null ? null : new MqEventSpillCodec());
+    }
+
+    /**
+     * 注册数据管道通道的监控指标
+     *
+     * @param mqType
+     * @param lane
+     * @param pipeline
+     */
+    private static void registerMetrics(String mqType, String lane, final DataPipeline<MqEvent> pipeline) {
+        MqMetrics.gauge(new Gauge() {
+            @Override
+            public double getValue() {
+                return pipeline.size();
+            }
+        }, "mq_pipeline_depth", "type", mqType, "priority", lane);
+        MqMetrics.gauge(new Gauge() {
+            @Override
+            public double getValue() {
+                return pipeline.capacity();
+            }
+        }, "mq_pipeline_capacity", "type", mqType, "priority", lane);
+        MqMetrics.gauge(new Gauge() {
+            @Override
+            public double getValue() {
+                return pipeline.getRejectedCount();
+            }
+        }, "mq_pipeline_rejected_total", "type", mqType, "priority", lane);
+        MqMetrics.gauge(new Gauge() {
+            @Override
+            public double getValue() {
+                return pipeline.getSpilledCount();
+            }
+        }, "mq_pipeline_spilled_total", "type", mqType, "priority", lane);
+    }
+
     /**
      * 根据生产者配置文件生成一个新的生产者
      *
@@ -97,6 +190,10 @@ public class MqClient implements Destroyable{
      */
     public static MqConsumer buildConsumer(ConsumerConfig config){
         verifyConfig(config);
+        if (config.getDeserializePlan() == null && config.hasReceiver()) {
+            // 订阅时生成反序列化计划，未设置监听器时由receive/receiveBatch生成
+            config.setDeserializePlan(MessageDeserializePlan.create(config));
+        }
         if (factoryMap.containsKey(config.getType().getMemo())) {
             return factoryMap.get(config.getType().getMemo()).buildConsumer(config);
         } else {
@@ -129,7 +226,7 @@ public class MqClient implements Destroyable{
         return null;
     }
 
-    public static DataPipeline<MqEvent> getPipeline(String mqType){
+    public static MqEventPipeline getPipeline(String mqType){
         if (pipelineMap.containsKey(mqType)) {
             return pipelineMap.get(mqType);
         }
@@ -144,8 +241,8 @@ public class MqClient implements Destroyable{
         for(Map.Entry<String, MqFactory> entry : factoryMap.entrySet()){
             entry.getValue().destroy();
         }
-        for(Map.Entry<String, DataPipeline<MqEvent>> entry : pipelineMap.entrySet()){
-            entry.getValue().clear();
+        for(Map.Entry<String, MqEventPipeline> entry : pipelineMap.entrySet()){
+            entry.getValue().close();
         }
         factoryMap.clear(); // TODO 为避免启动时MQ连不上，这里可能不能清除
         pipelineMap.clear();
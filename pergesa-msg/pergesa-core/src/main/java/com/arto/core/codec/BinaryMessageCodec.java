@@ -0,0 +1,223 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.codec;
+
+import com.alibaba.fastjson.JSON;
+import com.arto.core.common.MessageRecord;
+import com.arto.core.config.MqConfigManager;
+import com.arto.core.consumer.MessageDeserializePlan;
+import com.arto.core.exception.MqClientException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 紧凑二进制编码
+ * <pre>
+ * | flags(1) | businessId | businessType | selectKey(可选) | properties | message |
+ * </pre>
+ * 字符串字段为 varint(长度 + 1) + UTF-8字节，长度0表示null；selectKey只在flags第1位为1时写入；
+ * properties为JSON字符串；message为消息内容的JSON，超过压缩阈值时使用Deflate压缩(flags第0位)。
+ *
+ * Created by xiong.j on 2017/4/10.
+ */
+public class BinaryMessageCodec implements MessageCodec {
+
+    public static final byte ID = 1;
+
+    public static final String NAME = "binary";
+
+    /** 消息内容已压缩 */
+    private static final int FLAG_COMPRESSED = 0x01;
+
+    /** 包含selectKey，不写该标识的消息与之前的格式一致 */
+    private static final int FLAG_SELECT_KEY = 0x02;
+
+    /** 压缩阈值(字节)，小于等于0时不压缩 */
+    private final int compressThreshold;
+
+    /** 消息内容超过该长度(字节)时直接从UTF-8字节流解析，小于0时始终先转为字符串 */
+    private final int streamThreshold;
+
+    public BinaryMessageCodec() {
+        this(MqConfigManager.getInt("mq.codec.compress.threshold", 4096));
+    }
+
+    public BinaryMessageCodec(int compressThreshold) {
+        this(compressThreshold, MqConfigManager.getInt("mq.codec.stream.threshold", 4096));
+    }
+
+    public BinaryMessageCodec(int compressThreshold, int streamThreshold) {
+        this.compressThreshold = compressThreshold;
+        this.streamThreshold = streamThreshold;
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encode(MessageRecord message) {
+        byte[] body = JSON.toJSONBytes(message.getMessage());
+        int flags = 0;
+        if (compressThreshold > 0 && body.length > compressThreshold) {
+            body = deflate(body);
+            flags |= FLAG_COMPRESSED;
+        }
+        if (message.getSelectKey() != null) {
+            flags |= FLAG_SELECT_KEY;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length + 64);
+        out.write(flags);
+        writeString(out, message.getBusinessId());
+        writeString(out, message.getBusinessType());
+        if ((flags & FLAG_SELECT_KEY) != 0) {
+            writeString(out, message.getSelectKey());
+        }
+        writeString(out, message.getProperties() == null ? null : JSON.toJSONString(message.getProperties()));
+        out.write(body, 0, body.length);
+        return out.toByteArray();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public MessageRecord decode(ByteBuffer buffer, MessageDeserializePlan plan) {
+        int flags = buffer.get();
+        MessageRecord messageRecord = new MessageRecord();
+        messageRecord.setBusinessId(readString(buffer));
+        messageRecord.setBusinessType(readString(buffer));
+        if ((flags & FLAG_SELECT_KEY) != 0) {
+            messageRecord.setSelectKey(readString(buffer));
+        }
+        String properties = readString(buffer);
+        if (properties != null) {
+            messageRecord.setProperties(JSON.parseObject(properties));
+        }
+
+        ByteBuffer body = buffer;
+        if ((flags & FLAG_COMPRESSED) != 0) {
+            body = ByteBuffer.wrap(inflate(buffer));
+        }
+        int length = body.remaining();
+        if (streamThreshold >= 0 && length > streamThreshold) {
+            // 大消息不生成完整的字符串，减少一次整体复制
+            messageRecord.setMessage(plan.deserializeMessage(CodecUtil.utf8Reader(body, length)));
+        } else {
+            messageRecord.setMessage(plan.deserializeMessage(CodecUtil.readUtf8(body, length)));
+        }
+        return messageRecord;
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(CodecUtil.UTF8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = readVarInt(buffer) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new MqClientException("Malformed binary message, field length:" + length
+                    + ", remaining:" + buffer.remaining());
+        }
+        return CodecUtil.readUtf8(buffer, length);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new MqClientException("Malformed binary message, varint too long.");
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+            byte[] buf = new byte[4096];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(ByteBuffer buffer) {
+        byte[] data;
+        int offset;
+        int length = buffer.remaining();
+        if (buffer.hasArray()) {
+            data = buffer.array();
+            offset = buffer.arrayOffset() + buffer.position();
+        } else {
+            data = new byte[length];
+            buffer.duplicate().get(data);
+            offset = 0;
+        }
+        buffer.position(buffer.limit());
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, length);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length * 3);
+            byte[] buf = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new MqClientException("Malformed binary message, truncated compressed body.");
+                }
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new MqClientException("Malformed binary message, inflate failed.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
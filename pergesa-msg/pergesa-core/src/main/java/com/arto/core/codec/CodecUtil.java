@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.codec;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * 编解码工具类
+ *
+ * Created by xiong.j on 2017/4/10.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+class CodecUtil {
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * 读取指定长度的UTF-8字符串，buffer的position后移
+     *
+     * @param buffer
+     * @param length
+     * @return
+     */
+    static String readUtf8(ByteBuffer buffer, int length) {
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, UTF8);
+        }
+        return value;
+    }
+
+    /**
+     * 指定长度的UTF-8字节按字符流读取，不生成完整的字符串，buffer的position后移
+     *
+     * @param buffer
+     * @param length
+     * @return
+     */
+    static Reader utf8Reader(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return new Utf8ByteBufferReader(slice);
+    }
+}
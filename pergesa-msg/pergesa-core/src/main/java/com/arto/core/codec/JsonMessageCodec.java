@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.codec;
+
+import com.alibaba.fastjson.JSON;
+import com.arto.core.common.MessageRecord;
+import com.arto.core.config.MqConfigManager;
+import com.arto.core.consumer.MessageDeserializePlan;
+
+import java.nio.ByteBuffer;
+
+/**
+ * JSON编码，消息体即MessageRecord的JSON，与旧版本客户端兼容(不写消息头时)
+ *
+ * Created by xiong.j on 2017/4/10.
+ */
+public class JsonMessageCodec implements MessageCodec {
+
+    public static final byte ID = 0;
+
+    public static final String NAME = "json";
+
+    /** 超过该长度(字节)的消息直接从UTF-8字节流解析，小于0时始终先转为字符串 */
+    private final int streamThreshold;
+
+    public JsonMessageCodec() {
+        this(MqConfigManager.getInt("mq.codec.stream.threshold", 4096));
+    }
+
+    public JsonMessageCodec(int streamThreshold) {
+        this.streamThreshold = streamThreshold;
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encode(MessageRecord message) {
+        return JSON.toJSONBytes(message);
+    }
+
+    @Override
+    public MessageRecord decode(ByteBuffer buffer, MessageDeserializePlan plan) {
+        int length = buffer.remaining();
+        if (streamThreshold >= 0 && length > streamThreshold) {
+            // 大消息不生成完整的字符串，减少一次整体复制
+            return plan.deserialize(CodecUtil.utf8Reader(buffer, length));
+        }
+        return plan.deserialize(CodecUtil.readUtf8(buffer, length));
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.codec;
+
+import com.arto.core.common.MessageRecord;
+import com.arto.core.consumer.MessageDeserializePlan;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 消息编解码接口，实现类通过SPI(META-INF/services/com.arto.core.codec.MessageCodec)加载
+ *
+ * Created by xiong.j on 2017/4/10.
+ */
+public interface MessageCodec {
+
+    /**
+     * 编码标识，写入消息头用于消费端选择解码器，各实现不能重复
+     *
+     * @return
+     */
+    byte getId();
+
+    /**
+     * 编码名称，用于配置(mq.codec)
+     *
+     * @return
+     */
+    String getName();
+
+    /**
+     * 编码消息体(不含消息头)
+     *
+     * @param message
+     * @return
+     */
+    byte[] encode(MessageRecord message);
+
+    /**
+     * 解码消息体(不含消息头)
+     *
+     * @param buffer 从position到limit为消息体
+     * @param plan   消费者的反序列化计划
+     * @return
+     */
+    MessageRecord decode(ByteBuffer buffer, MessageDeserializePlan plan);
+}
@@ -0,0 +1,239 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.codec;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.arto.core.common.MessageRecord;
+import com.arto.core.config.MqConfigManager;
+import com.arto.core.consumer.MessageDeserializePlan;
+import com.arto.core.exception.MqClientException;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * 消息编解码工厂，使用SPI加载编解码实现
+ * <pre>
+ * 消息格式: | MAGIC(1) | 编码标识(1) | 消息体 |
+ * </pre>
+ * 不以MAGIC开头的消息按旧版本的JSON消息处理；默认使用JSON编码且不写消息头(mq.codec.envelope=false)，
+ * 保证与未升级的消费端兼容。
+ *
+ * Created by xiong.j on 2017/4/10.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class MessageCodecFactory {
+
+    /** 消息头标识，JSON消息不会以该字节开头 */
+    public static final byte MAGIC = (byte) 0xC7;
+
+    /** 消息头长度 */
+    public static final int HEADER_LENGTH = 2;
+
+    private static final Map<Byte, MessageCodec> codecIdMap = new HashMap<Byte, MessageCodec>();
+
+    private static final Map<String, MessageCodec> codecNameMap = new HashMap<String, MessageCodec>();
+
+    /** 不区分消费者的反序列化计划，用于解析失败时还原原始消息 */
+    private static final MessageDeserializePlan rawPlan = MessageDeserializePlan.create(MessageRecord.class);
+
+    static {
+        init();
+    }
+
+    /**
+     *  使用SPI加载消息编解码实现
+     */
+    private static void init() {
+        ServiceLoader<MessageCodec> serviceLoader = ServiceLoader.load(MessageCodec.class);
+        Iterator<MessageCodec> codecs = serviceLoader.iterator();
+        MessageCodec codec;
+        while (codecs.hasNext()) {
+            codec = codecs.next();
+            if (codecIdMap.containsKey(codec.getId())) {
+                throw new MqClientException("Duplicated message codec id:" + codec.getId()
+                        + ", codec:" + codec.getClass().getName());
+            }
+            codecIdMap.put(codec.getId(), codec);
+            codecNameMap.put(codec.getName(), codec);
+            log.info("Load message codec '" + codec.getName() + "', id=" + codec.getId());
+        }
+        if (!codecIdMap.containsKey(JsonMessageCodec.ID)) {
+            // 兼容旧消息，JSON编码必须存在
+            MessageCodec json = new JsonMessageCodec();
+            codecIdMap.put(json.getId(), json);
+            codecNameMap.put(json.getName(), json);
+        }
+    }
+
+    private static class DefaultCodecHolder {
+        static final MessageCodec codec = getCodec(MqConfigManager.getString("mq.codec", JsonMessageCodec.NAME));
+        static final boolean envelope = MqConfigManager.getBoolean("mq.codec.envelope", false);
+    }
+
+    /**
+     * 根据名称获取编解码器
+     *
+     * @param name
+     * @return
+     */
+    public static MessageCodec getCodec(String name) {
+        MessageCodec codec = codecNameMap.get(name);
+        if (codec == null) {
+            throw new MqClientException("Unknown message codec:" + name);
+        }
+        return codec;
+    }
+
+    /**
+     * 根据编码标识获取编解码器
+     *
+     * @param id
+     * @return
+     */
+    public static MessageCodec getCodec(byte id) {
+        MessageCodec codec = codecIdMap.get(id);
+        if (codec == null) {
+            throw new MqClientException("Unknown message codec id:" + id);
+        }
+        return codec;
+    }
+
+    /**
+     * 使用配置的编码(mq.codec)编码消息
+     *
+     * @param payload
+     * @return
+     */
+    public static byte[] encode(Object payload) {
+        return encode(DefaultCodecHolder.codec, DefaultCodecHolder.envelope, payload);
+    }
+
+    /**
+     * 配置的编码是否为纯文本(JSON编码且不写消息头)，支持文本消息的中间件按文本发送，与未升级的消费端兼容
+     *
+     * @return
+     */
+    public static boolean isTextEncoding() {
+        return DefaultCodecHolder.codec.getId() == JsonMessageCodec.ID && !DefaultCodecHolder.envelope;
+    }
+
+    /**
+     * 编码消息
+     *
+     * @param codec
+     * @param envelope JSON编码时是否写消息头，其它编码始终写消息头
+     * @param payload MessageRecord，或从数据库恢复的JSON对象
+     * @return
+     */
+    public static byte[] encode(MessageCodec codec, boolean envelope, Object payload) {
+        byte[] body = codec.encode(toMessageRecord(payload));
+        if (codec.getId() == JsonMessageCodec.ID && !envelope) {
+            return body;
+        }
+        byte[] bytes = new byte[HEADER_LENGTH + body.length];
+        bytes[0] = MAGIC;
+        bytes[1] = codec.getId();
+        System.arraycopy(body, 0, bytes, HEADER_LENGTH, body.length);
+        return bytes;
+    }
+
+    /**
+     * 解码消息
+     *
+     * @param bytes
+     * @param plan
+     * @return
+     */
+    public static MessageRecord decode(byte[] bytes, MessageDeserializePlan plan) {
+        return decode(ByteBuffer.wrap(bytes), plan);
+    }
+
+    /**
+     * 解码消息
+     *
+     * @param buffer
+     * @param plan
+     * @return
+     */
+    public static MessageRecord decode(ByteBuffer buffer, MessageDeserializePlan plan) {
+        if (buffer.remaining() >= HEADER_LENGTH && buffer.get(buffer.position()) == MAGIC) {
+            MessageCodec codec = getCodec(buffer.get(buffer.position() + 1));
+            buffer.position(buffer.position() + HEADER_LENGTH);
+            return codec.decode(buffer, plan);
+        }
+        // 旧版本JSON消息
+        return codecIdMap.get(JsonMessageCodec.ID).decode(buffer, plan);
+    }
+
+    /**
+     * 解码消息，消息内容不按消费者类型转换(为JSON对象)，用于解析失败的消息持久化.
+     * 持久化的消息由调度任务按JSON文本重新消费，并以业务流水号判断重复，二进制编码的消息无法原样保存，
+     * 因此即使消费者已解析失败，也需要按原始类型再解析一次取出业务流水号和JSON形式的消息内容(只在失败时执行)
+     *
+     * @param bytes
+     * @return
+     */
+    public static MessageRecord decodeRaw(byte[] bytes) {
+        return decode(bytes, rawPlan);
+    }
+
+    /**
+     * 将消息还原为JSON对象(消息内容不按消费者类型转换)
+     *
+     * @param bytes
+     * @return
+     */
+    public static JSONObject decodeToJson(byte[] bytes) {
+        return (JSONObject) JSON.toJSON(decodeRaw(bytes));
+    }
+
+    /**
+     * 转换为可读字符串，用于日志
+     *
+     * @param bytes
+     * @return
+     */
+    public static String toString(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            return JSON.toJSONString(decode(bytes, rawPlan));
+        } catch (Throwable t) {
+            return "byte[" + bytes.length + "]";
+        }
+    }
+
+    private static MessageRecord toMessageRecord(Object payload) {
+        if (payload instanceof MessageRecord) {
+            return (MessageRecord) payload;
+        }
+        // 从数据库恢复的事件，消息为JSON对象或字符串
+        JSONObject jsonObject;
+        if (payload instanceof String) {
+            jsonObject = JSON.parseObject((String) payload);
+        } else {
+            jsonObject = (JSONObject) JSON.toJSON(payload);
+        }
+        return JSON.toJavaObject(jsonObject, MessageRecord.class);
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.codec;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * 直接从ByteBuffer按UTF-8解码的Reader，解码到调用方的字符缓冲区，不生成中间字符串.
+ * 非法字节按替换字符处理，与new String(bytes, UTF8)一致。
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+class Utf8ByteBufferReader extends Reader {
+
+    private final ByteBuffer buffer;
+
+    private final CharsetDecoder decoder;
+
+    /** 调用方缓冲区只剩一个字符时暂存代理对的低位字符 */
+    private final CharBuffer pending = CharBuffer.allocate(2);
+
+    private boolean flushed = false;
+
+    /**
+     * @param buffer 读取position到limit之间的字节，读取时position后移
+     */
+    Utf8ByteBufferReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.decoder = CodecUtil.UTF8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.pending.flip();
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        while (pending.hasRemaining() && n < len) {
+            cbuf[off + n++] = pending.get();
+        }
+        if (n == len) {
+            return n;
+        }
+        if (len - n == 1) {
+            // 剩余空间不足以放下代理对，先解码到暂存区
+            pending.clear();
+            decode(pending);
+            pending.flip();
+            if (pending.hasRemaining()) {
+                cbuf[off + n++] = pending.get();
+            }
+        } else {
+            CharBuffer out = CharBuffer.wrap(cbuf, off + n, len - n);
+            decode(out);
+            n = out.position() - off;
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void decode(CharBuffer out) {
+        if (flushed) {
+            return;
+        }
+        decoder.decode(buffer, out, true);
+        if (!buffer.hasRemaining() && decoder.flush(out).isUnderflow()) {
+            flushed = true;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.common;
+
+/**
+ * 发送熔断器状态
+ *
+ * Created by xiong.j on 2017/4/29.
+ */
+public enum CircuitStateEnum {
+    /** 正常发送 */
+    CLOSED(0, "closed"),
+
+    /** 熔断中，不发送 */
+    OPEN(1, "open"),
+
+    /** 半开，允许少量探测发送 */
+    HALF_OPEN(2, "half_open");
+
+    private int    code;
+
+    private String memo;
+
+    /**
+     * @param code
+     * @param memo
+     */
+    private CircuitStateEnum(int code, String memo) {
+        this.code = code;
+        this.memo = memo;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getMemo() {
+        return memo;
+    }
+}
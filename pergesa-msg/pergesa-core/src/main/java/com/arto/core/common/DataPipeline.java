@@ -12,24 +12,139 @@
  */
 package com.arto.core.common;
 
+import lombok.extern.slf4j.Slf4j;
+
 import java.util.Collection;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * 数据管道，基于预分配数组的无锁环形队列(多生产者，消费端同样可并发)，入队出队不产生额外对象。
+ * 容量会向上取整为2的幂(最小为2)，队列满时按{@link PipelineOverflowEnum}处理。
+ *
  * Created by xiong.j on 2017/3/3.
  */
+@Slf4j
 public class DataPipeline<T> {
 
-    private final BlockingQueue<T> pipeline;
+    /** 空闲时自旋次数 */
+    private static final int SPIN_TIMES = 64;
+
+    private final int mask;
+
+    /** 数据槽 */
+    private final AtomicReferenceArray<T> buffer;
+
+    /** 槽序号，用来判断槽是否可写/可读 */
+    private final AtomicLongArray sequences;
+
+    /** 写位置 */
+    private final AtomicLong tail = new AtomicLong(0);
+
+    /** 读位置 */
+    private final AtomicLong head = new AtomicLong(0);
+
+    /** 溢出策略 */
+    private final PipelineOverflowEnum overflowPolicy;
+
+    /** 阻塞策略的等待时间(毫秒) */
+    private final long blockTimeout;
+
+    /** 溢出段 */
+    private final PipelineSpillSegment spillSegment;
+
+    /** 溢出编解码 */
+    private final PipelineSpillCodec<T> spillCodec;
+
+    /** 等待中的消费者/生产者数量，没有等待者时不加锁 */
+    private final AtomicInteger takeWaiters = new AtomicInteger(0);
+
+    private final AtomicInteger putWaiters = new AtomicInteger(0);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Condition notFull = lock.newCondition();
+
+    /** 被拒绝的数据数量 */
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+
+    /** 溢出到磁盘的数据数量 */
+    private final AtomicLong spilledCount = new AtomicLong(0);
 
     public DataPipeline(int size) {
-        this.pipeline = new LinkedBlockingQueue<T>(size);
+        this(size, PipelineOverflowEnum.FAIL_FAST, 0, null, null);
     }
 
+    public DataPipeline(int size, PipelineOverflowEnum overflowPolicy, long blockTimeout,
+                        PipelineSpillSegment spillSegment, PipelineSpillCodec<T> spillCodec) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Pipeline size must be positive:" + size);
+        }
+        if (overflowPolicy == PipelineOverflowEnum.SPILL && (spillSegment == null || spillCodec == null)) {
+            throw new IllegalArgumentException("Spill policy need spill segment and codec");
+        }
+        // 序号算法要求容量至少为2
+        int capacity = 2;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        this.mask = capacity - 1;
+        this.buffer = new AtomicReferenceArray<T>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeout = blockTimeout;
+        this.spillSegment = spillSegment;
+        this.spillCodec = spillCodec;
+    }
+
+    /**
+     * 加入数据，队列满时按溢出策略处理，处理失败时返回false并计数
+     *
+     * @param t
+     * @return
+     */
     public boolean offer(T t) {
-        return pipeline.offer(t);
+        if (t == null) {
+            throw new NullPointerException();
+        }
+        if (isSpilling()) {
+            // 溢出段未读空前新数据继续写入溢出段，保证先进先出(读取时先读队列再读溢出段)
+            if (offerWithSpill(t)) {
+                return true;
+            }
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        if (tryOffer(t)) {
+            return true;
+        }
+        switch (overflowPolicy) {
+            case BLOCK:
+                if (offerWithBlock(t)) {
+                    return true;
+                }
+                break;
+            case SPILL:
+                if (offerWithSpill(t)) {
+                    return true;
+                }
+                break;
+            default:
+                break;
+        }
+        rejectedCount.incrementAndGet();
+        return false;
     }
 
     public boolean offerAll(Collection<T> c) {
@@ -41,15 +156,297 @@ public class DataPipeline<T> {
         return modified;
     }
 
+    /**
+     * 批量加入数据，有连续空槽时一次CAS占用多个槽；空间不足的部分逐条按溢出策略处理，
+     * 遇到第一条失败的数据即停止
+     *
+     * @param list
+     * @return 从头开始成功加入的数量
+     */
+    public int offerBatch(List<? extends T> list) {
+        int size = list.size();
+        for (int i = 0; i < size; i++) {
+            if (list.get(i) == null) {
+                throw new NullPointerException();
+            }
+        }
+        int offered = 0;
+        int n;
+        while (offered < size) {
+            n = isSpilling() ? 0 : tryOfferBatch(list, offered, size - offered);
+            if (n == 0) {
+                if (!offer(list.get(offered))) {
+                    return offered;
+                }
+                n = 1;
+            }
+            offered += n;
+        }
+        return offered;
+    }
+
+    /**
+     * 取出数据，没有数据时立即返回null
+     *
+     * @return
+     */
+    public T poll() {
+        T t = tryPoll();
+        if (t == null && spillSegment != null) {
+            t = pollFromSpill();
+        }
+        return t;
+    }
+
     public T poll(long timeout, TimeUnit unit) throws InterruptedException {
-        return pipeline.poll(timeout, unit);
+        T t = poll();
+        if (t != null) {
+            return t;
+        }
+        for (int i = 0; i < SPIN_TIMES; i++) {
+            t = poll();
+            if (t != null) {
+                return t;
+            }
+        }
+
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        takeWaiters.incrementAndGet();
+        try {
+            while ((t = poll()) == null) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return t;
+        } finally {
+            takeWaiters.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 批量取出数据，不阻塞
+     *
+     * @param c 存放取出的数据
+     * @param maxElements 最多取出的数量
+     * @return 取出的数量
+     */
+    public int drainTo(Collection<? super T> c, int maxElements) {
+        int n = 0;
+        T t;
+        while (n < maxElements && (t = poll()) != null) {
+            c.add(t);
+            n++;
+        }
+        return n;
     }
 
     public int size(){
-        return pipeline.size();
+        long size = tail.get() - head.get();
+        if (spillSegment != null) {
+            size += spillSegment.size();
+        }
+        return size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) Math.max(size, 0);
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    public PipelineOverflowEnum getOverflowPolicy() {
+        return overflowPolicy;
     }
 
     public void clear() {
-        pipeline.clear();
+        while (tryPoll() != null) {
+            // 丢弃
+        }
+        if (spillSegment != null) {
+            spillSegment.clear();
+        }
+    }
+
+    /**
+     * 清空并关闭溢出文件
+     */
+    public void close() {
+        clear();
+        if (spillSegment != null) {
+            spillSegment.close();
+        }
+    }
+
+    private boolean tryOffer(T t) {
+        long pos = tail.get();
+        int index;
+        for (;;) {
+            index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // 队列已满
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+        buffer.lazySet(index, t);
+        sequences.set(index, pos + 1);
+        if (takeWaiters.get() > 0) {
+            signal(notEmpty);
+        }
+        return true;
+    }
+
+    private int tryOfferBatch(List<? extends T> list, int from, int count) {
+        long pos;
+        int n;
+        for (;;) {
+            pos = tail.get();
+            // 写位置未变时，已空闲的槽不会再被占用，可一次占用连续空槽
+            n = 0;
+            while (n < count && sequences.get((int) ((pos + n) & mask)) == pos + n) {
+                n++;
+            }
+            if (n == 0) {
+                if (sequences.get((int) (pos & mask)) < pos) {
+                    // 队列已满
+                    return 0;
+                }
+                continue;
+            }
+            if (tail.compareAndSet(pos, pos + n)) {
+                break;
+            }
+        }
+        int index;
+        for (int i = 0; i < n; i++) {
+            index = (int) ((pos + i) & mask);
+            buffer.lazySet(index, list.get(from + i));
+            sequences.set(index, pos + i + 1);
+        }
+        if (takeWaiters.get() > 0) {
+            signalAll(notEmpty);
+        }
+        return n;
+    }
+
+    private T tryPoll() {
+        long pos = head.get();
+        int index;
+        for (;;) {
+            index = (int) (pos & mask);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                // 队列为空
+                return null;
+            } else {
+                pos = head.get();
+            }
+        }
+        T t = buffer.get(index);
+        buffer.lazySet(index, null);
+        sequences.set(index, pos + mask + 1);
+        if (putWaiters.get() > 0) {
+            signal(notFull);
+        }
+        return t;
+    }
+
+    private boolean offerWithBlock(T t) {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+        lock.lock();
+        putWaiters.incrementAndGet();
+        try {
+            while (!tryOffer(t)) {
+                if (nanos <= 0) {
+                    log.warn("Pipeline is full, wait " + blockTimeout + "ms timeout, capacity:" + capacity());
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            putWaiters.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 是否有数据溢出且未读空
+     *
+     * @return
+     */
+    private boolean isSpilling() {
+        return overflowPolicy == PipelineOverflowEnum.SPILL && !spillSegment.isEmpty();
+    }
+
+    private boolean offerWithSpill(T t) {
+        try {
+            byte[] bytes = spillCodec.encode(t);
+            if (bytes != null && spillSegment.append(bytes)) {
+                spilledCount.incrementAndGet();
+                if (takeWaiters.get() > 0) {
+                    signal(notEmpty);
+                }
+                return true;
+            }
+        } catch (Exception e) {
+            log.warn("Spill data failed:" + t, e);
+        }
+        return false;
+    }
+
+    private T pollFromSpill() {
+        byte[] bytes;
+        while ((bytes = spillSegment.read()) != null) {
+            try {
+                return spillCodec.decode(bytes);
+            } catch (Exception e) {
+                log.warn("Decode spill data failed, discard it.", e);
+            }
+        }
+        return null;
+    }
+
+    private void signal(Condition condition) {
+        lock.lock();
+        try {
+            condition.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void signalAll(Condition condition) {
+        lock.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 }
@@ -20,7 +20,9 @@ public enum MqTypeEnum {
 
     KAFKA(1, "kafka"),
 
-    ACTIVEMQ(2, "activemq");
+    ACTIVEMQ(2, "activemq"),
+
+    MEMORY(3, "memory");
 
     private int    code;
 
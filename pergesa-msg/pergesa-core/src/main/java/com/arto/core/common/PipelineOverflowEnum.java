@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.common;
+
+/**
+ * 数据管道满时的处理策略
+ *
+ * Created by xiong.j on 2017/3/20.
+ */
+public enum PipelineOverflowEnum {
+    /** 阻塞等待，超时后放弃 */
+    BLOCK(1, "block"),
+
+    /** 溢出到本地磁盘文件 */
+    SPILL(2, "spill"),
+
+    /** 立即失败，只记录计数 */
+    FAIL_FAST(3, "fail_fast");
+
+    private int    code;
+
+    private String memo;
+
+    /**
+     * @param code
+     * @param memo
+     */
+    private PipelineOverflowEnum(int code, String memo) {
+        this.code = code;
+        this.memo = memo;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getMemo() {
+        return memo;
+    }
+
+    public static PipelineOverflowEnum getEnum(String memo) {
+        for (PipelineOverflowEnum item : values()) {
+            //不区分大小写
+            if (item.getMemo().equalsIgnoreCase(memo) || item.name().equalsIgnoreCase(memo)) {
+                return item;
+            }
+        }
+        return BLOCK;
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.common;
+
+/**
+ * 数据管道溢出到磁盘时使用的编解码接口
+ *
+ * Created by xiong.j on 2017/3/20.
+ */
+public interface PipelineSpillCodec<T> {
+
+    /**
+     * 编码，返回null时表示该数据不支持溢出
+     *
+     * @param t
+     * @return
+     * @throws Exception
+     */
+    byte[] encode(T t) throws Exception;
+
+    /**
+     * 解码
+     *
+     * @param bytes
+     * @return
+     * @throws Exception
+     */
+    T decode(byte[] bytes) throws Exception;
+}
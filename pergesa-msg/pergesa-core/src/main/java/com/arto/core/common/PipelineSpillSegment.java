@@ -0,0 +1,200 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.common;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+
+/**
+ * 有界的磁盘溢出段，数据管道满时临时存放数据，格式为[长度(int)][内容]的顺序追加文件。
+ * 读空后文件自动截断，重启时丢弃旧文件(事务消息已持久化，可由调度任务恢复)。
+ * 文件使用期间持有文件锁，同一目录下的其它进程不会截断或写入正在使用的文件。
+ *
+ * Created by xiong.j on 2017/3/20.
+ */
+@Slf4j
+public class PipelineSpillSegment {
+
+    private final File file;
+
+    private final RandomAccessFile raf;
+
+    /** 文件锁，关闭文件时释放 */
+    private final FileLock lock;
+
+    /** 文件最大字节数 */
+    private final long maxBytes;
+
+    private long readPos;
+
+    private long writePos;
+
+    /** 条数，写入和读取加锁，判断是否为空时不加锁 */
+    private volatile int count;
+
+    public PipelineSpillSegment(File file, long maxBytes) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Can't create spill directory:" + dir);
+        }
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.raf = new RandomAccessFile(file, "rw");
+        // 先加锁再截断，避免清空其它进程正在使用的文件
+        FileLock fileLock;
+        try {
+            fileLock = raf.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            fileLock = null;
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+        if (fileLock == null) {
+            raf.close();
+            throw new LockedException("Spill file is used by another process:" + file);
+        }
+        this.lock = fileLock;
+        this.raf.setLength(0);
+    }
+
+    /**
+     * 在指定目录创建溢出段，默认文件已被其它进程使用(同机多实例共用目录)时使用带进程号的文件
+     *
+     * @param dir 目录
+     * @param name 文件名(不含扩展名)
+     * @param maxBytes 文件最大字节数
+     * @return
+     * @throws IOException
+     */
+    public static PipelineSpillSegment create(String dir, String name, long maxBytes) throws IOException {
+        try {
+            return new PipelineSpillSegment(new File(dir, name + ".spill"), maxBytes);
+        } catch (LockedException e) {
+            File file = new File(dir, name + "-" + getPid() + ".spill");
+            log.info(e.getMessage() + ", use " + file);
+            return new PipelineSpillSegment(file, maxBytes);
+        }
+    }
+
+    /**
+     * 追加一条数据，超出容量时返回false
+     *
+     * @param bytes
+     * @return
+     */
+    public synchronized boolean append(byte[] bytes) {
+        if (writePos + 4 + bytes.length > maxBytes) {
+            return false;
+        }
+        try {
+            raf.seek(writePos);
+            raf.writeInt(bytes.length);
+            raf.write(bytes);
+            writePos += 4 + bytes.length;
+            count++;
+            return true;
+        } catch (IOException e) {
+            log.warn("Append to spill file failed:" + file, e);
+            return false;
+        }
+    }
+
+    /**
+     * 读取一条数据，没有数据时返回null
+     *
+     * @return
+     */
+    public synchronized byte[] read() {
+        if (count == 0) {
+            return null;
+        }
+        try {
+            raf.seek(readPos);
+            byte[] bytes = new byte[raf.readInt()];
+            raf.readFully(bytes);
+            readPos += 4 + bytes.length;
+            if (--count == 0) {
+                reset();
+            }
+            return bytes;
+        } catch (IOException e) {
+            log.warn("Read from spill file failed, discard " + count + " records:" + file, e);
+            reset();
+            return null;
+        }
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * 是否为空，不加锁
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public synchronized void clear() {
+        reset();
+    }
+
+    public synchronized void close() {
+        try {
+            // 关闭文件时同时释放文件锁
+            raf.close();
+        } catch (IOException e) {
+            log.warn("Close spill file failed:" + file, e);
+        }
+        if (!file.delete()) {
+            log.debug("Delete spill file failed:" + file);
+        }
+    }
+
+    private void reset() {
+        readPos = 0;
+        writePos = 0;
+        count = 0;
+        try {
+            raf.setLength(0);
+        } catch (IOException e) {
+            log.warn("Truncate spill file failed:" + file, e);
+        }
+    }
+
+    private static String getPid() {
+        // 格式为 pid@hostname
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        int index = name.indexOf('@');
+        return index > 0 ? name.substring(0, index) : name;
+    }
+
+    /**
+     * 文件已被其它进程锁定
+     */
+    private static class LockedException extends IOException {
+
+        LockedException(String message) {
+            super(message);
+        }
+    }
+}
@@ -49,7 +49,43 @@ public class ConsumerConfig extends MqConfig{
     /** 去重方法名(使用注解时代替MqListener) */
     private String checkRedeliver;
 
+    /** 注解消费方法调用器(使用注解时代替MqListener) */
+    private ConsumerInvoker invoker;
+
+    /** 去重方法调用器(使用注解时代替MqListener) */
+    private ConsumerInvoker redeliverInvoker;
+
+    /** 消息反序列化计划(订阅时生成) */
+    private MessageDeserializePlan deserializePlan;
+
     /** 并发线程数量 */
     private int numThreads = 2;
 
+    /** 是否批量消费 */
+    private boolean batch = false;
+
+    /** 批量消费时单批最大消息数 */
+    private int maxBatch = 100;
+
+    /** 批量消费时凑批的最大等待时间(毫秒) */
+    private int maxWaitMs = 50;
+
+    /** 批量消息处理类 */
+    private MqBatchListener batchListener;
+
+    /** 注解批量消费方法调用器(使用注解时代替MqBatchListener) */
+    private ConsumerBatchInvoker batchInvoker;
+
+    /** 批量去重方法调用器(使用注解时代替MqBatchListener) */
+    private ConsumerBatchInvoker batchRedeliverInvoker;
+
+    /**
+     * 是否已设置消费方式(监听器或注解方法)，未设置时订阅推迟到receive/receiveBatch
+     *
+     * @return
+     */
+    public boolean hasReceiver() {
+        return listener != null || method != null || batchListener != null;
+    }
+
 }
@@ -0,0 +1,33 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.consumer;
+
+import com.arto.core.common.MessageRecord;
+
+/**
+ * 注解消费方法的调用器，启动时生成，消费时直接调用目标方法(不再使用反射)
+ *
+ * Created by xiong.j on 2017/4/5.
+ */
+public interface ConsumerInvoker {
+
+    /**
+     * 调用目标方法
+     *
+     * @param bean 注解所在类实例
+     * @param message 消息
+     * @return 目标方法返回值(void方法返回null)
+     * @throws Throwable
+     */
+    Object invoke(Object bean, MessageRecord message) throws Throwable;
+}
@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.consumer;
+
+import com.arto.core.common.MessageRecord;
+import com.arto.core.exception.MqClientException;
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 根据注解消费方法生成对应的调用器，生成的类与目标类同包同ClassLoader，可以调用非private方法
+ *
+ * Created by xiong.j on 2017/4/5.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class ConsumerInvokerFactory {
+
+    private static final ConcurrentMap<String, Object> INSTANCES = new ConcurrentHashMap<String, Object>();
+
+    private static final String INVOKER_PREFIX = "$$ConsumerInvoker$";
+
+    private static final String BATCH_INVOKER_PREFIX = "$$ConsumerBatchInvoker$";
+
+    /**
+     * 获取消费方法调用器
+     *
+     * @param method 消费方法
+     * @return
+     */
+    public static ConsumerInvoker getInvoker(Method method) {
+        checkParameter(method);
+        return getInstance(method, ConsumerInvoker.class);
+    }
+
+    /**
+     * 获取批量消费方法调用器
+     *
+     * @param method 批量消费方法，参数为List&lt;MessageRecord&lt;?&gt;&gt;
+     * @return
+     */
+    public static ConsumerBatchInvoker getBatchInvoker(Method method) {
+        checkBatchParameter(method);
+        return getInstance(method, ConsumerBatchInvoker.class);
+    }
+
+    /**
+     * 获取去重检测方法调用器
+     *
+     * @param bean 注解所在类实例
+     * @param methodName 去重方法名
+     * @return
+     */
+    public static ConsumerInvoker getRedeliverInvoker(Object bean, String methodName) {
+        Method method = ReflectionUtils.findMethod(bean.getClass(), methodName, MessageRecord.class);
+        if (method == null) {
+            throw new MqClientException("@Consumer's [checkRedeliver] method '" + methodName + "(MessageRecord)' not found in " + bean.getClass());
+        }
+        if (!boolean.class.equals(method.getReturnType()) && !Boolean.class.equals(method.getReturnType())) {
+            throw new MqClientException("@Consumer's [checkRedeliver] method [" + method + "] should return boolean");
+        }
+        return getInstance(method, ConsumerInvoker.class);
+    }
+
+    /**
+     * 获取批量去重方法调用器
+     *
+     * @param bean 注解所在类实例
+     * @param methodName 批量去重方法名，参数与返回值为List&lt;MessageRecord&lt;?&gt;&gt;(返回仍需处理的消息)
+     * @return
+     */
+    public static ConsumerBatchInvoker getBatchRedeliverInvoker(Object bean, String methodName) {
+        Method method = ReflectionUtils.findMethod(bean.getClass(), methodName, List.class);
+        if (method == null) {
+            throw new MqClientException("@Consumer's [checkRedeliver] method '" + methodName + "(List)' not found in " + bean.getClass());
+        }
+        if (!List.class.isAssignableFrom(method.getReturnType())) {
+            throw new MqClientException("@Consumer's [checkRedeliver] method [" + method + "] should return List<MessageRecord<?>>");
+        }
+        return getInstance(method, ConsumerBatchInvoker.class);
+    }
+
+    private static <T> T getInstance(Method method, Class<T> invokerType) {
+        String className = getClassName(method, invokerType);
+        Object invoker = INSTANCES.get(className);
+        if (invoker == null) {
+            synchronized (ConsumerInvokerFactory.class) {
+                invoker = INSTANCES.get(className);
+                if (invoker == null) {
+                    invoker = createInvoker(method, className, invokerType);
+                    INSTANCES.put(className, invoker);
+                }
+            }
+        }
+        return invokerType.cast(invoker);
+    }
+
+    private static Object createInvoker(Method method, String className, Class<?> invokerType) {
+        if (Modifier.isPrivate(method.getModifiers()) || Modifier.isPrivate(method.getDeclaringClass().getModifiers())) {
+            // private方法无法直接调用
+            log.warn("Consumer method is private, use reflection to invoke it. method:" + method);
+            return new ReflectionInvoker(method);
+        }
+
+        try {
+            Class<?> declaringClass = method.getDeclaringClass();
+            ClassPool pool = new ClassPool(true);
+            pool.appendClassPath(new ClassClassPath(declaringClass));
+            pool.appendClassPath(new LoaderClassPath(getClassloader(declaringClass)));
+            CtClass cc = pool.makeClass(className);
+            cc.addInterface(pool.get(invokerType.getName()));
+
+            String target = declaringClass.getName();
+            // 批量调用器的参数为List
+            String parameterType = ConsumerBatchInvoker.class.equals(invokerType)
+                    ? List.class.getName() : MessageRecord.class.getName();
+            StringBuilder sb = new StringBuilder();
+            sb.append("public Object invoke(Object bean, ").append(parameterType).append(" message) throws Throwable { ");
+            String call = "((" + target + ")bean)." + method.getName() + "(message)";
+            if (void.class.equals(method.getReturnType())) {
+                sb.append(call).append("; return null; }");
+            } else if (method.getReturnType().isPrimitive()) {
+                // 基本类型装箱
+                sb.append("return ").append(getWrapperName(method.getReturnType())).append(".valueOf(").append(call).append("); }");
+            } else {
+                sb.append("return ").append(call).append("; }");
+            }
+
+            String methodStr = sb.toString();
+            log.info("Create method source:" + methodStr);
+            CtMethod mthd = CtNewMethod.make(methodStr, cc);
+            cc.addMethod(mthd);
+
+            // 生成Class
+            Class<?> newCls = cc.toClass(getClassloader(declaringClass), declaringClass.getProtectionDomain());
+            cc.detach();
+            return newCls.newInstance();
+        } catch (Throwable t) {
+            log.warn("Create consumer invoker failed, use reflection to invoke it. method:" + method, t);
+            return new ReflectionInvoker(method);
+        }
+    }
+
+    private static void checkParameter(Method method) {
+        Class<?>[] types = method.getParameterTypes();
+        if (types.length != 1 || !types[0].equals(MessageRecord.class)) {
+            throw new MqClientException("@Consumer's method [" + method + "] should only have 1 parameter and which type supposed to be MessageRecord<?>");
+        }
+    }
+
+    private static void checkBatchParameter(Method method) {
+        Class<?>[] types = method.getParameterTypes();
+        if (types.length != 1 || !types[0].equals(List.class)) {
+            throw new MqClientException("@Consumer(batch = true)'s method [" + method + "] should only have 1 parameter and which type supposed to be List<MessageRecord<?>>");
+        }
+    }
+
+    private static String getWrapperName(Class<?> primitive) {
+        if (boolean.class.equals(primitive)) return "Boolean";
+        if (int.class.equals(primitive)) return "Integer";
+        if (long.class.equals(primitive)) return "Long";
+        if (short.class.equals(primitive)) return "Short";
+        if (byte.class.equals(primitive)) return "Byte";
+        if (char.class.equals(primitive)) return "Character";
+        if (float.class.equals(primitive)) return "Float";
+        return "Double";
+    }
+
+    private static ClassLoader getClassloader(Class<?> clazz) {
+        ClassLoader classLoader = clazz.getClassLoader();
+        if (classLoader == null) classLoader = Thread.currentThread().getContextClassLoader();
+        return classLoader;
+    }
+
+    private static String getClassName(Method method, Class<?> invokerType) {
+        String prefix = ConsumerBatchInvoker.class.equals(invokerType) ? BATCH_INVOKER_PREFIX : INVOKER_PREFIX;
+        return method.getDeclaringClass().getName() + prefix + method.getName();
+    }
+
+    /**
+     * 无法生成调用器时使用反射调用(只在启动时查找方法)
+     */
+    private static class ReflectionInvoker implements ConsumerInvoker, ConsumerBatchInvoker {
+
+        private final Method method;
+
+        private ReflectionInvoker(Method method) {
+            ReflectionUtils.makeAccessible(method);
+            this.method = method;
+        }
+
+        @Override
+        public Object invoke(Object bean, MessageRecord message) throws Throwable {
+            return invoke0(bean, message);
+        }
+
+        @Override
+        public Object invoke(Object bean, List messages) throws Throwable {
+            return invoke0(bean, messages);
+        }
+
+        private Object invoke0(Object bean, Object argument) throws Throwable {
+            try {
+                return method.invoke(bean, argument);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
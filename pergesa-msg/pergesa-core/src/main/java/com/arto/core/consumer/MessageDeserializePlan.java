@@ -0,0 +1,211 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.consumer;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.parser.DefaultJSONParser;
+import com.alibaba.fastjson.parser.JSONReaderScanner;
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.parser.deserializer.ObjectDeserializer;
+import com.arto.core.common.MessageRecord;
+import com.arto.core.exception.MqClientException;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.io.Reader;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * 消息反序列化计划，订阅时按消费类和方法解析出MessageRecord&lt;T&gt;的实际类型并预先生成fastjson反序列化器，
+ * 每条消息直接使用，不再查找类型缓存。
+ *
+ * Created by xiong.j on 2017/4/6.
+ */
+@Getter
+@ToString(of = "type")
+public class MessageDeserializePlan {
+
+    private static final String LISTENER_METHOD = "onMessage";
+
+    private static final String BATCH_LISTENER_METHOD = "onMessages";
+
+    /** MessageRecord的泛型类型 */
+    private final Type type;
+
+    /** 解析配置 */
+    private final ParserConfig parserConfig;
+
+    /** 预先生成的反序列化器 */
+    private final ObjectDeserializer deserializer;
+
+    /** 消息内容(MessageRecord.message)的类型 */
+    private final Type messageType;
+
+    /** 消息内容的反序列化器，用于消息头与内容分开编码的格式 */
+    private final ObjectDeserializer messageDeserializer;
+
+    private MessageDeserializePlan(Type type, ParserConfig parserConfig) {
+        this.type = type;
+        this.parserConfig = parserConfig;
+        this.deserializer = parserConfig.getDeserializer(type);
+        this.messageType = getMessageType(type);
+        this.messageDeserializer = parserConfig.getDeserializer(messageType);
+    }
+
+    /**
+     * 根据消费者配置生成反序列化计划
+     *
+     * @param config
+     * @return
+     */
+    public static MessageDeserializePlan create(ConsumerConfig config) {
+        Type type;
+        if (config.getBatchListener() != null) {
+            // 通过接口批量消费消息，取List的元素类型
+            type = getElementType(getListenerType(config.getBatchListener().getClass(), BATCH_LISTENER_METHOD, List.class));
+        } else if (config.getListener() != null) {
+            // 通过接口消费消息
+            type = getListenerType(config.getListener().getClass(), LISTENER_METHOD, MessageRecord.class);
+        } else if (config.getMethod() != null) {
+            // 通过注解消费消息，批量消费时取List的元素类型
+            type = config.getMethod().getGenericParameterTypes()[0];
+            if (config.isBatch()) {
+                type = getElementType(type);
+            }
+        } else {
+            throw new MqClientException("Consumer's listener or method is required. config:" + config);
+        }
+        return create(type);
+    }
+
+    /**
+     * 根据MessageRecord的泛型类型生成反序列化计划
+     *
+     * @param type
+     * @return
+     */
+    public static MessageDeserializePlan create(Type type) {
+        return new MessageDeserializePlan(type, ParserConfig.getGlobalInstance());
+    }
+
+    /**
+     * 反序列化消息
+     *
+     * @param payload
+     * @return
+     */
+    public MessageRecord deserialize(String payload) {
+        DefaultJSONParser parser = new DefaultJSONParser(payload, parserConfig, JSON.DEFAULT_PARSER_FEATURE);
+        try {
+            MessageRecord messageRecord = deserializer.deserialze(parser, type, null);
+            parser.handleResovleTask(messageRecord);
+            return messageRecord;
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * 从字符流反序列化消息，使用fastjson的流式词法分析器(线程复用字符缓冲区)，不生成完整的字符串
+     *
+     * @param reader
+     * @return
+     */
+    public MessageRecord deserialize(Reader reader) {
+        DefaultJSONParser parser = new DefaultJSONParser(new JSONReaderScanner(reader, JSON.DEFAULT_PARSER_FEATURE)
+                , parserConfig);
+        try {
+            MessageRecord messageRecord = deserializer.deserialze(parser, type, null);
+            parser.handleResovleTask(messageRecord);
+            return messageRecord;
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * 反序列化消息内容
+     *
+     * @param payload
+     * @return
+     */
+    public Object deserializeMessage(String payload) {
+        DefaultJSONParser parser = new DefaultJSONParser(payload, parserConfig, JSON.DEFAULT_PARSER_FEATURE);
+        try {
+            Object message = messageDeserializer.deserialze(parser, messageType, null);
+            parser.handleResovleTask(message);
+            return message;
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * 从字符流反序列化消息内容
+     *
+     * @param reader
+     * @return
+     */
+    public Object deserializeMessage(Reader reader) {
+        DefaultJSONParser parser = new DefaultJSONParser(new JSONReaderScanner(reader, JSON.DEFAULT_PARSER_FEATURE)
+                , parserConfig);
+        try {
+            Object message = messageDeserializer.deserialze(parser, messageType, null);
+            parser.handleResovleTask(message);
+            return message;
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static Type getMessageType(Type type) {
+        if (type instanceof ParameterizedType) {
+            Type messageType = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (messageType instanceof Class || messageType instanceof ParameterizedType
+                    || messageType instanceof GenericArrayType) {
+                return messageType;
+            }
+        }
+        // 未指定或无法确定的泛型按JSON对象处理
+        return Object.class;
+    }
+
+    private static Type getListenerType(Class<?> listenerClass, String methodName, Class<?> parameterType) {
+        Type type = parameterType;
+        for (Method method : listenerClass.getMethods()) {
+            // 跳过泛型擦除后生成的桥接方法
+            if (methodName.equals(method.getName()) && !method.isBridge()
+                    && method.getParameterTypes().length == 1
+                    && parameterType.equals(method.getParameterTypes()[0])) {
+                type = method.getGenericParameterTypes()[0];
+            }
+        }
+        return type;
+    }
+
+    private static Type getElementType(Type listType) {
+        if (listType instanceof ParameterizedType) {
+            Type elementType = ((ParameterizedType) listType).getActualTypeArguments()[0];
+            if (elementType instanceof ParameterizedType
+                    && MessageRecord.class.equals(((ParameterizedType) elementType).getRawType())) {
+                return elementType;
+            }
+        }
+        // 未指定泛型时按MessageRecord处理
+        return MessageRecord.class;
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.consumer;
+
+import com.arto.core.common.MessageRecord;
+
+import java.util.List;
+
+/**
+ * 批量消息监听器，消费者配置batch=true时使用.
+ * 一批消息处理失败时框架会将其拆分后重试，直到定位出失败的消息，失败的消息再按消费优先级逐条重试或持久化，
+ * 因此单次onMessages调用应当是原子的(如在同一事务中批量写库).
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+public interface MqBatchListener<T> {
+
+    /**
+     * 批量处理消息
+     *
+     * @param records
+     */
+    void onMessages(List<MessageRecord<T>> records);
+
+    /**
+     * 批量去重
+     *
+     * @param records
+     * @return 仍需处理的消息，返回null时不过滤
+     */
+    List<MessageRecord<T>> filterRedelivered(List<MessageRecord<T>> records);
+
+}
@@ -43,4 +43,14 @@ public interface MqConsumer {
     @Deprecated
     void receiveWithParallel(final Class type, final int numThreads, final MqListener listener);
 
+    /**
+     * 批量消息模式，消费者配置中未设置监听器时使用
+     * Kafka: 按分区(开启keyOrdered时按Key分片)拉取到的消息批量消费
+     * ActiveMq: 每个消费线程最多等待maxWaitMs毫秒攒满maxBatch条消息后批量消费
+     *
+     * @param maxBatch 单批最大消息数
+     * @param listener 批量消息监听者，框架按其泛型类型反序列化消息
+     */
+    void receiveBatch(final int maxBatch, final MqBatchListener listener);
+
 }
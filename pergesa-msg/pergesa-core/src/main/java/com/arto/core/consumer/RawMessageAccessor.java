@@ -0,0 +1,39 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.consumer;
+
+/**
+ * 批量消费时读取各消息中间件原始消息的消息ID与消息体
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+public interface RawMessageAccessor<R> {
+
+    /**
+     * 获取消息ID
+     *
+     * @param raw 原始消息
+     * @return
+     * @throws Exception
+     */
+    String getMessageId(R raw) throws Exception;
+
+    /**
+     * 获取编码后的消息体
+     *
+     * @param raw 原始消息
+     * @return
+     * @throws Exception
+     */
+    byte[] getPayload(R raw) throws Exception;
+}
@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.consumer.dedup;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 基于long数组的布隆过滤器，以64位哈希值为Key(双重哈希生成k个位置)，写入无锁，不产生额外对象
+ *
+ * Created by xiong.j on 2017/4/27.
+ */
+public class DedupBloomFilter {
+
+    /** 位数组 */
+    private final AtomicLongArray bits;
+
+    /** 位数量 */
+    private final long bitSize;
+
+    /** 哈希函数个数 */
+    private final int numHashes;
+
+    /**
+     * @param expected 预计元素数量
+     * @param fpp 期望误判率
+     */
+    public DedupBloomFilter(int expected, double fpp) {
+        if (expected <= 0) {
+            throw new IllegalArgumentException("Expected size must be positive:" + expected);
+        }
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("False positive probability must be in (0, 1):" + fpp);
+        }
+        // m = -n*ln(p)/(ln2)^2, k = m/n*ln2
+        long m = (long) Math.ceil(-expected * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int words = (int) ((Math.max(m, 64) + 63) >>> 6);
+        this.bits = new AtomicLongArray(words);
+        this.bitSize = (long) words << 6;
+        this.numHashes = Math.max(1, (int) Math.round((double) bitSize / expected * Math.log(2)));
+    }
+
+    /**
+     * 加入元素
+     *
+     * @param hash 元素的64位哈希值
+     */
+    public void put(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            long index = index(h1 + i * h2);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long value;
+            do {
+                value = bits.get(word);
+                if ((value & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, value, value | mask));
+        }
+    }
+
+    /**
+     * 元素是否可能存在，返回false时一定不存在
+     *
+     * @param hash 元素的64位哈希值
+     * @return
+     */
+    public boolean mightContain(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            long index = index(h1 + i * h2);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long bitSize() {
+        return bitSize;
+    }
+
+    public int numHashes() {
+        return numHashes;
+    }
+
+    private long index(int combined) {
+        // 负数取反，保证下标非负
+        return (combined < 0 ? ~combined : combined) % bitSize;
+    }
+
+    /**
+     * 字符串的64位哈希(FNV-1a，再经过murmur3的fmix64打散)
+     *
+     * @param key
+     * @return
+     */
+    public static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.consumer.dedup;
+
+import com.arto.core.common.MessageRecord;
+import com.arto.core.config.MqConfigManager;
+import com.arto.core.consumer.ConsumerConfig;
+import com.arto.event.util.SpringContextHolder;
+import com.google.common.base.Strings;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 消费去重管理，按MQ类型+目的地维护去重存储，默认关闭
+ * mq.dedup.enable=true 全部开启，mq.dedup.enable.{destination}=true/false 按目的地开启或关闭
+ *
+ * Created by xiong.j on 2017/4/27.
+ */
+@Slf4j
+public class DedupManager {
+
+    /** 未开启去重的目的地占位 */
+    private static final DedupStore DISABLED = new DedupStore("", 0, 1, 0.5, 0, null);
+
+    private static final ConcurrentMap<String, DedupStore> stores = new ConcurrentHashMap<String, DedupStore>();
+
+    private static volatile DedupRepository repository;
+
+    private DedupManager() {
+    }
+
+    /**
+     * 获取目的地对应的去重存储
+     *
+     * @param config
+     * @return 未开启去重时返回null
+     */
+    public static DedupStore getStore(ConsumerConfig config) {
+        String name = config.getType().getMemo() + ":" + config.getDestination();
+        DedupStore store = stores.get(name);
+        if (store == null) {
+            store = createStore(config.getDestination());
+            DedupStore exists = stores.putIfAbsent(name, store);
+            if (exists != null) {
+                store = exists;
+            }
+        }
+        return store == DISABLED ? null : store;
+    }
+
+    /**
+     * 消息Id对应的去重标识
+     *
+     * @param messageId
+     * @return
+     */
+    public static String messageKey(String messageId) {
+        return Strings.isNullOrEmpty(messageId) ? null : "m:" + messageId;
+    }
+
+    /**
+     * 业务流水号+业务类型对应的去重标识
+     *
+     * @param record
+     * @return
+     */
+    public static String businessKey(MessageRecord record) {
+        if (record == null || Strings.isNullOrEmpty(record.getBusinessId())) {
+            return null;
+        }
+        return "b:" + record.getBusinessType() + ":" + record.getBusinessId();
+    }
+
+    /**
+     * 设置持久化存储(未设置且开启持久化时使用{@link DedupRdbRepository})
+     *
+     * @param dedupRepository
+     */
+    public static void setRepository(DedupRepository dedupRepository) {
+        repository = dedupRepository;
+    }
+
+    private static DedupStore createStore(String destination) {
+        boolean enable = MqConfigManager.getBoolean("mq.dedup.enable." + destination
+                , MqConfigManager.getBoolean("mq.dedup.enable", false));
+        if (!enable) {
+            return DISABLED;
+        }
+
+        // 默认1天
+        long ttl = MqConfigManager.getInt("mq.dedup.ttl." + destination
+                , MqConfigManager.getInt("mq.dedup.ttl", 86400)) * 1000L;
+        int expected = MqConfigManager.getInt("mq.dedup.expected.size", 100000);
+        double fpp = Double.parseDouble(MqConfigManager.getString("mq.dedup.fpp", "0.01"));
+        int lruSize = MqConfigManager.getInt("mq.dedup.lru.size", 10000);
+        DedupRepository dedupRepository = null;
+        if (MqConfigManager.getBoolean("mq.dedup.persist", false)) {
+            dedupRepository = getRepository();
+        }
+        log.info("Consumer dedup enabled, destination:" + destination + ", ttl:" + ttl + ", expected:" + expected
+                + ", fpp:" + fpp + ", lruSize:" + lruSize + ", persist:" + (dedupRepository != null));
+        return new DedupStore(destination, ttl, expected, fpp, lruSize, dedupRepository);
+    }
+
+    private static DedupRepository getRepository() {
+        if (repository == null) {
+            synchronized (DedupManager.class) {
+                if (repository == null) {
+                    // 暂时依赖Spring获取
+                    repository = new DedupRdbRepository(SpringContextHolder.getBean(NamedParameterJdbcTemplate.class));
+                }
+            }
+        }
+        return repository;
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.consumer.dedup;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 基于关系数据库的消费记录存储(表CONSUMER_DEDUP)
+ *
+ * Created by xiong.j on 2017/4/27.
+ */
+public class DedupRdbRepository implements DedupRepository {
+
+    private final NamedParameterJdbcTemplate npJdbcTemplate;
+
+    public DedupRdbRepository(NamedParameterJdbcTemplate npJdbcTemplate) {
+        this.npJdbcTemplate = npJdbcTemplate;
+    }
+
+    @Override
+    public boolean exists(String destination, String key, Timestamp since) {
+        String sql = "SELECT COUNT(1) FROM CONSUMER_DEDUP WHERE DESTINATION = :destination"
+                + " AND DEDUP_KEY = :dedupKey AND GMT_CREATED >= :since";
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue("destination", destination);
+        params.addValue("dedupKey", key);
+        params.addValue("since", since);
+        return npJdbcTemplate.queryForObject(sql, params, Integer.class) > 0;
+    }
+
+    @Override
+    public int load(String destination, Timestamp since, final KeyHandler handler) {
+        String sql = "SELECT DEDUP_KEY FROM CONSUMER_DEDUP WHERE DESTINATION = :destination AND GMT_CREATED >= :since";
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue("destination", destination);
+        params.addValue("since", since);
+        final int[] count = new int[1];
+        npJdbcTemplate.query(sql, params, new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                handler.handle(rs.getString(1));
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    @Override
+    public void save(String destination, List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        // 多行一次写入
+        StringBuilder sql = new StringBuilder("INSERT INTO CONSUMER_DEDUP(DESTINATION, DEDUP_KEY, GMT_CREATED) VALUES ");
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue("destination", destination);
+        params.addValue("gmtCreated", new Timestamp(System.currentTimeMillis()));
+        for (int i = 0; i < keys.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append("(:destination, :dedupKey").append(i).append(", :gmtCreated)");
+            params.addValue("dedupKey" + i, keys.get(i));
+        }
+        try {
+            npJdbcTemplate.update(sql.toString(), params);
+        } catch (DataIntegrityViolationException e) {
+            // 部分已存在，整条语句失败，逐条补写其余标识
+            if (keys.size() > 1) {
+                for (String key : keys) {
+                    save(destination, Collections.singletonList(key));
+                }
+            }
+        }
+    }
+
+    @Override
+    public int deleteBefore(String destination, Timestamp before) {
+        String sql = "DELETE FROM CONSUMER_DEDUP WHERE DESTINATION = :destination AND GMT_CREATED < :before";
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue("destination", destination);
+        params.addValue("before", before);
+        return npJdbcTemplate.update(sql, params);
+    }
+}
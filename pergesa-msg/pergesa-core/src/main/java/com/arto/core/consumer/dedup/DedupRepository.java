@@ -0,0 +1,69 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.consumer.dedup;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * 已消费消息标识的持久化存储，内存中无法确认时查询
+ *
+ * Created by xiong.j on 2017/4/27.
+ */
+public interface DedupRepository {
+
+    /**
+     * 是否存在指定时间之后的消费记录
+     *
+     * @param destination 目的地
+     * @param key 去重标识
+     * @param since 起始时间
+     * @return
+     */
+    boolean exists(String destination, String key, Timestamp since);
+
+    /**
+     * 逐条读取指定时间之后的消费记录，用于预热本地状态
+     *
+     * @param destination 目的地
+     * @param since 起始时间
+     * @param handler 标识处理
+     * @return 读取数量
+     */
+    int load(String destination, Timestamp since, KeyHandler handler);
+
+    /**
+     * 保存消费记录(同一次写入)，已存在的忽略
+     *
+     * @param destination 目的地
+     * @param keys 去重标识
+     */
+    void save(String destination, List<String> keys);
+
+    /**
+     * 删除过期的消费记录
+     *
+     * @param destination 目的地
+     * @param before 截止时间
+     * @return 删除数量
+     */
+    int deleteBefore(String destination, Timestamp before);
+
+    /**
+     * 消费记录标识处理
+     */
+    interface KeyHandler {
+
+        void handle(String key);
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.consumer.dedup;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单个目的地的消费去重存储
+ * 布隆过滤器命中时由有限容量的LRU确认，本地无法确认时查询持久化存储(可选)
+ * 开启持久化时首次检测前从持久化存储预热TTL内的全部标识到布隆过滤器，预热后布隆过滤器未命中即确认未消费，
+ * 只有布隆过滤器命中但LRU已淘汰、预热失败或需要校验(如重投递)时才查询持久化存储
+ * 分区重新分配等本地状态不可信的场景通过{@link #reload()}重新预热
+ * 布隆过滤器分新旧两代，每个TTL周期轮换一次，保证过期标识最多保留两个周期
+ *
+ * Created by xiong.j on 2017/4/27.
+ */
+@Slf4j
+public class DedupStore {
+
+    /** 预热失败后的重试间隔(毫秒) */
+    private static final long WARM_UP_RETRY_INTERVAL = 60 * 1000L;
+
+    /** 目的地 */
+    private final String destination;
+
+    /** 去重有效时间(毫秒) */
+    private final long ttl;
+
+    /** 布隆过滤器预计元素数量 */
+    private final int expected;
+
+    /** 布隆过滤器误判率 */
+    private final double fpp;
+
+    /** 持久化存储，为空时不持久化 */
+    private final DedupRepository repository;
+
+    /** 已消费标识的哈希值 -> 消费时间 */
+    private final Map<Long, Long> confirmed;
+
+    /** 当前代布隆过滤器 */
+    private volatile DedupBloomFilter current;
+
+    /** 上一代布隆过滤器 */
+    private volatile DedupBloomFilter previous;
+
+    /** 当前代创建时间 */
+    private volatile long generationStart;
+
+    /** 是否已从持久化存储预热 */
+    private volatile boolean warmed;
+
+    /** 下次允许预热的时间 */
+    private volatile long nextWarmUp;
+
+    public DedupStore(String destination, long ttl, int expected, double fpp, final int lruSize
+            , DedupRepository repository) {
+        this.destination = destination;
+        this.ttl = ttl;
+        this.expected = expected;
+        this.fpp = fpp;
+        this.repository = repository;
+        this.confirmed = new LinkedHashMap<Long, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                return size() > lruSize;
+            }
+        };
+        this.current = new DedupBloomFilter(expected, fpp);
+        this.previous = new DedupBloomFilter(expected, fpp);
+        this.generationStart = System.currentTimeMillis();
+    }
+
+    /**
+     * 是否已消费过
+     *
+     * @param key 去重标识
+     * @return
+     */
+    public boolean isDuplicate(String key) {
+        return isDuplicate(key, false);
+    }
+
+    /**
+     * 是否已消费过
+     *
+     * @param key 去重标识
+     * @param verify 本地未命中时是否以持久化存储为准(如重投递的消息可能已被其它实例消费)
+     * @return
+     */
+    public boolean isDuplicate(String key, boolean verify) {
+        if (key == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        rotateIfExpired(now);
+
+        // 预热后布隆过滤器包含持久化存储中的全部标识
+        boolean warm = repository != null && warmUp(now);
+        long hash = DedupBloomFilter.hash(key);
+        boolean mightContain = current.mightContain(hash) || previous.mightContain(hash);
+        if (mightContain) {
+            // 布隆过滤器未命中时本地一定没有记录，不需要查询LRU
+            Long consumedAt;
+            synchronized (confirmed) {
+                consumedAt = confirmed.get(hash);
+            }
+            if (consumedAt != null) {
+                return now - consumedAt <= ttl;
+            }
+        }
+
+        if (repository == null) {
+            // 没有持久化存储，本地无记录按未消费处理
+            return false;
+        }
+        if (!mightContain && warm && !verify) {
+            // 已预热的布隆过滤器未命中即未消费
+            return false;
+        }
+        // 布隆过滤器命中但LRU已淘汰、未能预热或需要校验，以持久化存储为准
+        try {
+            return repository.exists(destination, key, new Timestamp(now - ttl));
+        } catch (Throwable t) {
+            log.warn("Query dedup repository failed, destination:" + destination + ", key:" + key, t);
+        }
+        return false;
+    }
+
+    /**
+     * 标记为已消费，多个标识在同一次持久化中写入
+     *
+     * @param keys 去重标识，为空的忽略
+     */
+    public void markConsumed(String... keys) {
+        List<String> saved = new ArrayList<String>(keys.length);
+        for (String key : keys) {
+            if (key != null) {
+                saved.add(key);
+            }
+        }
+        if (saved.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        rotateIfExpired(now);
+
+        for (String key : saved) {
+            long hash = DedupBloomFilter.hash(key);
+            current.put(hash);
+            synchronized (confirmed) {
+                confirmed.put(hash, now);
+            }
+        }
+
+        if (repository != null) {
+            try {
+                repository.save(destination, saved);
+            } catch (Throwable t) {
+                log.warn("Save dedup keys failed, destination:" + destination + ", keys:" + saved, t);
+            }
+        }
+    }
+
+    /**
+     * 本地状态不可信(如分区重新分配)时调用，下次检测前重新从持久化存储预热
+     */
+    public void reload() {
+        if (repository == null) {
+            return;
+        }
+        warmed = false;
+        nextWarmUp = 0;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public int size() {
+        synchronized (confirmed) {
+            return confirmed.size();
+        }
+    }
+
+    /**
+     * 从持久化存储加载TTL内的标识到布隆过滤器，失败时间隔一段时间后重试，期间逐条查询持久化存储
+     *
+     * @param now
+     * @return 是否已预热
+     */
+    private boolean warmUp(long now) {
+        if (warmed) {
+            return true;
+        }
+        if (now < nextWarmUp) {
+            return false;
+        }
+        synchronized (this) {
+            if (warmed || now < nextWarmUp) {
+                return warmed;
+            }
+            final DedupBloomFilter filter = current;
+            try {
+                int count = repository.load(destination, new Timestamp(now - ttl), new DedupRepository.KeyHandler() {
+                    @Override
+                    public void handle(String key) {
+                        filter.put(DedupBloomFilter.hash(key));
+                    }
+                });
+                warmed = true;
+                log.info("Dedup store warmed up, destination:" + destination + ", count:" + count);
+            } catch (Throwable t) {
+                nextWarmUp = now + WARM_UP_RETRY_INTERVAL;
+                log.warn("Warm up dedup store failed, destination:" + destination, t);
+            }
+        }
+        return warmed;
+    }
+
+    private void rotateIfExpired(long now) {
+        if (now - generationStart < ttl) {
+            return;
+        }
+        synchronized (this) {
+            if (now - generationStart < ttl) {
+                return;
+            }
+            previous = current;
+            current = new DedupBloomFilter(expected, fpp);
+            generationStart = now;
+        }
+
+        if (repository != null) {
+            try {
+                int count = repository.deleteBefore(destination, new Timestamp(now - ttl));
+                if (log.isDebugEnabled()) {
+                    log.debug("Delete expired dedup keys, destination:" + destination + ", count:" + count);
+                }
+            } catch (Throwable t) {
+                log.warn("Delete expired dedup keys failed, destination:" + destination, t);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.consumer.dlq;
+
+/**
+ * 死信发送结果回调，在死信路由线程中执行
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+public interface DeadLetterCallback {
+
+    /**
+     * 写入死信目的地成功
+     *
+     * @param record
+     */
+    void onSent(DeadLetterRecord record);
+
+    /**
+     * 重试后仍写入失败，由调用方按原方式持久化或丢弃
+     *
+     * @param record
+     * @param error
+     */
+    void onFailed(DeadLetterRecord record, Throwable error);
+}
@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.consumer.dlq;
+
+import com.alibaba.fastjson.JSON;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * 死信消息，保留原始消息体与失败信息，用于排查与重放
+ * Kafka(0.10无消息头)以JSON信封写入死信Topic，AMQ以消息属性 + 原始消息体写入死信队列
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+@Getter
+@Setter
+@ToString(exclude = "payload")
+public class DeadLetterRecord {
+
+    /** MQ类型 */
+    private String type;
+
+    /** 原目的地 */
+    private String destination;
+
+    /** 死信目的地 */
+    private String deadLetterDestination;
+
+    /** 原消息ID */
+    private String messageId;
+
+    /** 原消息Key(Kafka) */
+    private String key;
+
+    /** 原分区(Kafka)，未知时为-1 */
+    private int partition = -1;
+
+    /** 原位置(Kafka)，未知时为-1 */
+    private long offset = -1;
+
+    /** 消费次数 */
+    private int attempts;
+
+    /** 最后一次失败的异常 */
+    private String exception;
+
+    /** 进入死信的时间 */
+    private long timestamp;
+
+    /** 原始消息体 */
+    private byte[] payload;
+
+    public DeadLetterRecord() {
+    }
+
+    public DeadLetterRecord(String type, String destination, String messageId, byte[] payload
+            , Throwable error, int attempts) {
+        this.type = type;
+        this.destination = destination;
+        this.messageId = messageId;
+        this.payload = payload;
+        this.exception = error == null ? null : error.getClass().getName() + ": " + error.getMessage();
+        this.attempts = attempts;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * 编码为JSON信封(消息体为Base64)
+     *
+     * @return
+     */
+    public byte[] encode() {
+        return JSON.toJSONBytes(this);
+    }
+
+    /**
+     * 解码JSON信封
+     *
+     * @param bytes
+     * @return
+     */
+    public static DeadLetterRecord decode(byte[] bytes) {
+        return JSON.parseObject(bytes, DeadLetterRecord.class);
+    }
+}
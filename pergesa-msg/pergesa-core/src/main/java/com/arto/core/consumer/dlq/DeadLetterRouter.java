@@ -0,0 +1,299 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.consumer.dlq;
+
+import com.arto.core.common.DataPipeline;
+import com.arto.core.config.MqConfigManager;
+import com.arto.core.metrics.Gauge;
+import com.arto.core.metrics.MqMetrics;
+import com.arto.event.common.Destroyable;
+import com.arto.event.util.SpringDestroyableUtil;
+import com.arto.event.util.ThreadUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 死信路由，消费线程只把死信放入队列，由路由线程按批异步写入死信目的地
+ * 按目的地开启，配置刷新后立即生效：mq.consumer.dlq.{destination}.enabled > mq.consumer.dlq.enabled(默认false)
+ * 死信目的地名：mq.consumer.dlq.{destination}.name，默认由各MQ的发送实现决定
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+@Slf4j
+public class DeadLetterRouter implements Destroyable {
+
+    private static volatile DeadLetterRouter instance;
+
+    /** MQ类型 -> 死信发送实现 */
+    private static final ConcurrentMap<String, DeadLetterSender> senders
+            = new ConcurrentHashMap<String, DeadLetterSender>();
+
+    /** 待发送的死信 */
+    private final DataPipeline<Entry> pipeline;
+
+    /** 每批最多发送条数 */
+    private final int batchSize;
+
+    /** 攒批的最长等待时间(毫秒) */
+    private final long lingerMs;
+
+    /** 发送失败的重试次数 */
+    private final int retries;
+
+    private final Thread worker;
+
+    private volatile boolean closed = false;
+
+    public DeadLetterRouter(int capacity, int batchSize, long lingerMs, int retries) {
+        this.pipeline = new DataPipeline<Entry>(capacity);
+        this.batchSize = Math.max(batchSize, 1);
+        this.lingerMs = Math.max(lingerMs, 0);
+        this.retries = Math.max(retries, 0);
+        this.worker = new Thread(new Worker(), "MqDeadLetterRouter");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 获取全局死信路由
+     * mq.consumer.dlq.capacity 队列容量(默认10000)，mq.consumer.dlq.batch 每批条数(默认100)，
+     * mq.consumer.dlq.linger 攒批等待毫秒(默认50)，mq.consumer.dlq.retries 发送失败重试次数(默认3)
+     *
+     * @return
+     */
+    public static DeadLetterRouter getInstance() {
+        if (null == instance) {
+            synchronized (DeadLetterRouter.class) {
+                if (null == instance) {
+                    final DeadLetterRouter router = new DeadLetterRouter(MqConfigManager.getInt("mq.consumer.dlq.capacity", 10000)
+                            , MqConfigManager.getInt("mq.consumer.dlq.batch", 100)
+                            , MqConfigManager.getInt("mq.consumer.dlq.linger", 50)
+                            , MqConfigManager.getInt("mq.consumer.dlq.retries", 3));
+                    MqMetrics.gauge(new Gauge() {
+                        @Override
+                        public double getValue() {
+                            return router.getPendingCount();
+                        }
+                    }, "mq_dlq_pending");
+                    SpringDestroyableUtil.add("mqDeadLetterRouter", router);
+                    instance = router;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 注册MQ的死信发送实现
+     *
+     * @param type MQ类型
+     * @param sender
+     */
+    public static void register(String type, DeadLetterSender sender) {
+        senders.putIfAbsent(type, sender);
+    }
+
+    /**
+     * 目的地是否开启死信路由
+     *
+     * @param destination
+     * @return
+     */
+    public static boolean isEnabled(String destination) {
+        return MqConfigManager.getBoolean("mq.consumer.dlq." + destination + ".enabled"
+                , MqConfigManager.getBoolean("mq.consumer.dlq.enabled", false));
+    }
+
+    /**
+     * 死信放入发送队列
+     *
+     * @param record 需设置MQ类型与原目的地
+     * @param callback 发送结果回调，可为null
+     * @return 未注册发送实现、已关闭或队列已满时返回false，由调用方按原方式持久化或丢弃
+     */
+    public boolean route(DeadLetterRecord record, DeadLetterCallback callback) {
+        DeadLetterSender sender = senders.get(record.getType());
+        if (sender == null || closed) {
+            return false;
+        }
+        record.setDeadLetterDestination(MqConfigManager.getString("mq.consumer.dlq." + record.getDestination() + ".name"
+                , sender.getDefaultName(record.getDestination())));
+        if (!pipeline.offer(new Entry(record, callback))) {
+            log.warn("Dead letter queue is full, record:" + record);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 待发送的死信数
+     *
+     * @return
+     */
+    public int getPendingCount() {
+        return pipeline.size();
+    }
+
+    /**
+     * 停止接收死信，发送完队列中剩余的死信后退出
+     */
+    @Override
+    public void destroy() {
+        closed = true;
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            log.warn("Waiting dead letter router close interrupted.", e);
+        }
+        log.info("Destroy dead letter router successful.");
+    }
+
+    private List<Entry> nextBatch() throws InterruptedException {
+        Entry entry = pipeline.poll(closed ? 0 : 1000, TimeUnit.MILLISECONDS);
+        if (entry == null) {
+            return null;
+        }
+        List<Entry> batch = new ArrayList<Entry>(batchSize);
+        batch.add(entry);
+        long deadline = System.currentTimeMillis() + lingerMs;
+        while (batch.size() < batchSize) {
+            long remaining = deadline - System.currentTimeMillis();
+            entry = remaining > 0 ? pipeline.poll(remaining, TimeUnit.MILLISECONDS) : pipeline.poll();
+            if (entry == null) {
+                break;
+            }
+            batch.add(entry);
+            pipeline.drainTo(batch, batchSize - batch.size());
+        }
+        return batch;
+    }
+
+    private void send(String type, List<Entry> entries) {
+        DeadLetterSender sender = senders.get(type);
+        List<Entry> pending = entries;
+        Throwable error = null;
+        for (int i = 0; i <= retries && !pending.isEmpty(); i++) {
+            if (i > 0) {
+                // 发送失败，退避后重试
+                ThreadUtil.sleep(100L << Math.min(i, 6), log);
+            }
+            List<DeadLetterRecord> records = new ArrayList<DeadLetterRecord>(pending.size());
+            for (Entry entry : pending) {
+                records.add(entry.record);
+            }
+            Throwable[] results;
+            try {
+                results = sender.send(records);
+            } catch (Throwable t) {
+                results = new Throwable[pending.size()];
+                for (int j = 0; j < results.length; j++) {
+                    results[j] = t;
+                }
+            }
+            List<Entry> failed = new ArrayList<Entry>();
+            for (int j = 0; j < pending.size(); j++) {
+                Entry entry = pending.get(j);
+                if (results[j] == null) {
+                    count("mq_dlq_routed_total", entry.record);
+                    onSent(entry);
+                } else {
+                    error = results[j];
+                    failed.add(entry);
+                }
+            }
+            pending = failed;
+        }
+        for (Entry entry : pending) {
+            log.warn("Send dead letter failed, record:" + entry.record, error);
+            count("mq_dlq_failed_total", entry.record);
+            onFailed(entry, error);
+        }
+    }
+
+    private void onSent(Entry entry) {
+        if (entry.callback == null) {
+            return;
+        }
+        try {
+            entry.callback.onSent(entry.record);
+        } catch (Throwable t) {
+            log.warn("Dead letter callback failed, record:" + entry.record, t);
+        }
+    }
+
+    private void onFailed(Entry entry, Throwable error) {
+        if (entry.callback == null) {
+            return;
+        }
+        try {
+            entry.callback.onFailed(entry.record, error);
+        } catch (Throwable t) {
+            log.warn("Dead letter callback failed, record:" + entry.record, t);
+        }
+    }
+
+    private void count(String name, DeadLetterRecord record) {
+        MqMetrics.destination(record.getType(), record.getDestination()).counter(name).inc();
+    }
+
+    private class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            while (!closed || pipeline.size() > 0) {
+                try {
+                    List<Entry> batch = nextBatch();
+                    if (batch == null) {
+                        continue;
+                    }
+                    // 按MQ类型分组发送
+                    Map<String, List<Entry>> groups = new LinkedHashMap<String, List<Entry>>();
+                    for (Entry entry : batch) {
+                        List<Entry> group = groups.get(entry.record.getType());
+                        if (group == null) {
+                            group = new ArrayList<Entry>();
+                            groups.put(entry.record.getType(), group);
+                        }
+                        group.add(entry);
+                    }
+                    for (Map.Entry<String, List<Entry>> group : groups.entrySet()) {
+                        send(group.getKey(), group.getValue());
+                    }
+                } catch (InterruptedException e) {
+                    log.warn("Dead letter router interrupted.", e);
+                } catch (Throwable t) {
+                    log.error("Dead letter router failed.", t);
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final DeadLetterRecord record;
+
+        private final DeadLetterCallback callback;
+
+        Entry(DeadLetterRecord record, DeadLetterCallback callback) {
+            this.record = record;
+            this.callback = callback;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.consumer.dlq;
+
+import java.util.List;
+
+/**
+ * 死信发送接口，由各MQ实现并注册到{@link DeadLetterRouter}
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+public interface DeadLetterSender {
+
+    /**
+     * 默认的死信目的地名
+     *
+     * @param destination 原目的地
+     * @return
+     */
+    String getDefaultName(String destination);
+
+    /**
+     * 批量发送死信
+     *
+     * @param records
+     * @return 与消息一一对应的发送结果，成功为null，失败为异常
+     * @throws Exception 整批失败
+     */
+    Throwable[] send(List<DeadLetterRecord> records) throws Exception;
+}
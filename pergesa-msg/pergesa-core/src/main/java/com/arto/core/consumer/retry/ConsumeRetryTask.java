@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.consumer.retry;
+
+import com.arto.event.util.ThreadUtil;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 单条消息的消费重试任务：按退避策略重试消费，超过次数后转入放弃处理(持久化或丢弃)，放弃处理失败时继续退避重试.
+ * 调度器已满时退回到调用线程等待重试，调度器关闭后回调{@link #onShutdown()}.
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+@Slf4j
+public abstract class ConsumeRetryTask implements RetryTask {
+
+    private final RetryScheduler scheduler;
+
+    private final RetryPolicy policy;
+
+    /** 已失败的次数 */
+    private int attempts;
+
+    /** 是否已超过重试次数 */
+    private boolean exhausted;
+
+    /**
+     * @param scheduler
+     * @param policy
+     * @param attempts 已失败的消费次数，大于等于最大次数时直接进入放弃处理
+     */
+    protected ConsumeRetryTask(RetryScheduler scheduler, RetryPolicy policy, int attempts) {
+        this.scheduler = scheduler;
+        this.policy = policy;
+        this.attempts = attempts;
+        this.exhausted = attempts >= policy.getMaxAttempts();
+    }
+
+    /**
+     * 按退避时间调度下一次重试，超过最大次数时立即放弃处理
+     */
+    public final void start() {
+        retryLater(exhausted ? next() : policy.nextDelay(attempts), false);
+    }
+
+    /**
+     * 在当前线程等待并重试直到处理结束，用于需要保证顺序的消费
+     */
+    public final void startInline() {
+        retryLater(exhausted ? next() : policy.nextDelay(attempts), true);
+    }
+
+    @Override
+    public final void run() {
+        long delay = next();
+        if (delay >= 0) {
+            retryLater(delay, false);
+        }
+    }
+
+    /**
+     * 消费一次
+     *
+     * @return 是否成功(含重复消息被过滤)
+     */
+    protected abstract boolean consume();
+
+    /**
+     * 超过重试次数后的处理(持久化或丢弃)
+     *
+     * @return 是否成功，失败时继续退避重试
+     */
+    protected abstract boolean giveUp();
+
+    /**
+     * 消息处理结束(消费成功或放弃处理成功)
+     */
+    protected abstract void onResolved();
+
+    /**
+     * @return 最大消费次数
+     */
+    protected int getMaxAttempts() {
+        return policy.getMaxAttempts();
+    }
+
+    /**
+     * 一次重试准备执行前的回调，用于记录指标
+     */
+    protected void onRetry() {
+    }
+
+    /**
+     * @return 下一次重试的等待时间，已结束时返回-1
+     */
+    private long next() {
+        if (!exhausted) {
+            onRetry();
+            if (consume()) {
+                onResolved();
+                return -1;
+            }
+            attempts++;
+            if (attempts < policy.getMaxAttempts()) {
+                return policy.nextDelay(attempts);
+            }
+            exhausted = true;
+        }
+        if (giveUp()) {
+            onResolved();
+            return -1;
+        }
+        if (attempts < Integer.MAX_VALUE) {
+            attempts++;
+        }
+        return policy.nextDelay(attempts);
+    }
+
+    private void retryLater(long delay, boolean inline) {
+        while (delay >= 0 && (inline || !scheduler.schedule(this, delay))) {
+            if (scheduler.isClosed()) {
+                onShutdown();
+                return;
+            }
+            // 重试任务已满或需要保证顺序，在当前线程等待重试
+            ThreadUtil.sleep(delay, log);
+            delay = next();
+        }
+    }
+}
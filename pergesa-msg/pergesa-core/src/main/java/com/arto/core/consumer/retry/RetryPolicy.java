@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.consumer.retry;
+
+import com.arto.core.config.MqConfigManager;
+import com.arto.event.config.ConfigChangeListener;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 消费重试退避策略：第n次重试前等待 initial * multiplier^(n-1)，不超过max，并按jitter百分比随机抖动
+ * 参数按以下顺序读取，配置刷新后立即生效：
+ * mq.consumer.retry.{destination}.{initial|multiplier|max|jitter|attempts} > mq.consumer.retry.{initial|multiplier|max|jitter|attempts}
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+public class RetryPolicy {
+
+    private static final ConcurrentMap<String, RetryPolicy> policies = new ConcurrentHashMap<String, RetryPolicy>();
+
+    private static final Random random = new Random();
+
+    static {
+        // 配置刷新时重新读取
+        MqConfigManager.getInstance().addListener(new ConfigChangeListener() {
+            @Override
+            public void onChange(Set<String> changedKeys) {
+                policies.clear();
+            }
+        });
+    }
+
+    /** 首次重试的等待时间(毫秒) */
+    private final long initialMs;
+
+    /** 退避倍数 */
+    private final double multiplier;
+
+    /** 最大等待时间(毫秒) */
+    private final long maxMs;
+
+    /** 随机抖动比例(0~1) */
+    private final double jitter;
+
+    /** 最大消费次数(含首次) */
+    private final int maxAttempts;
+
+    public RetryPolicy(long initialMs, double multiplier, long maxMs, double jitter, int maxAttempts) {
+        this.initialMs = Math.max(initialMs, 0);
+        this.multiplier = Math.max(multiplier, 1);
+        this.maxMs = Math.max(maxMs, this.initialMs);
+        this.jitter = Math.min(Math.max(jitter, 0), 1);
+        this.maxAttempts = Math.max(maxAttempts, 1);
+    }
+
+    /**
+     * 获取目的地的退避策略
+     *
+     * @param destination
+     * @return
+     */
+    public static RetryPolicy of(String destination) {
+        RetryPolicy policy = policies.get(destination);
+        if (policy == null) {
+            policy = new RetryPolicy(getInt(destination, "initial", 1000)
+                    , Double.parseDouble(getString(destination, "multiplier", "2"))
+                    , getInt(destination, "max", 30000)
+                    , getInt(destination, "jitter", 20) / 100.0
+                    , getInt(destination, "attempts", 3));
+            policies.put(destination, policy);
+        }
+        return policy;
+    }
+
+    /**
+     * 第attempt次失败后下一次重试前的等待时间
+     *
+     * @param attempt 已失败的次数，从1开始
+     * @return
+     */
+    public long nextDelay(int attempt) {
+        double delay = initialMs;
+        for (int i = 1; i < attempt && delay < maxMs; i++) {
+            delay *= multiplier;
+        }
+        delay = Math.min(delay, maxMs);
+        if (jitter > 0) {
+            // 避免同一时刻失败的消息同时重试
+            delay = delay * (1 - jitter + 2 * jitter * random.nextDouble());
+        }
+        return (long) delay;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    private static int getInt(String destination, String name, int value) {
+        return MqConfigManager.getInt("mq.consumer.retry." + destination + "." + name
+                , MqConfigManager.getInt("mq.consumer.retry." + name, value));
+    }
+
+    private static String getString(String destination, String name, String value) {
+        return MqConfigManager.getString("mq.consumer.retry." + destination + "." + name
+                , MqConfigManager.getString("mq.consumer.retry." + name, value));
+    }
+}
@@ -0,0 +1,280 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.consumer.retry;
+
+import com.arto.core.config.MqConfigManager;
+import com.arto.core.metrics.Gauge;
+import com.arto.core.metrics.MqMetrics;
+import com.arto.event.common.Destroyable;
+import com.arto.event.util.SpringDestroyableUtil;
+import com.arto.event.util.SpringThreadPoolUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 进程内消费重试调度器(哈希时间轮)
+ * 失败的消息放入时间轮后消费线程继续处理后续消息，到期的任务交给重试线程池执行，时间轮线程只负责计时，
+ * 重试线程池已满时到期任务放回时间轮下一格再提交，不在时间轮线程中执行.
+ * 待重试任务数超过上限时拒绝调度，由调用方退回到当前线程等待重试，避免内存无限增长.
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+@Slf4j
+public class RetryScheduler implements Destroyable {
+
+    private static volatile RetryScheduler instance;
+
+    /** 每格时间(毫秒) */
+    private final long tickMs;
+
+    /** 时间轮 */
+    private final LinkedList<Timeout>[] wheel;
+
+    private final int mask;
+
+    /** 新加入的任务，由时间轮线程放入对应的格 */
+    private final ConcurrentLinkedQueue<Timeout> newTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+    /** 待重试任务数 */
+    private final AtomicInteger pending = new AtomicInteger(0);
+
+    /** 待重试任务数上限 */
+    private final int maxPending;
+
+    /** 到期任务执行线程池 */
+    private final Executor executor;
+
+    private final Thread worker;
+
+    private final long startTime;
+
+    private volatile boolean closed = false;
+
+    /** 时间轮线程已走过的格数 */
+    private long tick = 0;
+
+    @SuppressWarnings("unchecked")
+    public RetryScheduler(long tickMs, int wheelSize, int maxPending, Executor executor) {
+        if (tickMs <= 0 || wheelSize <= 0 || maxPending <= 0) {
+            throw new IllegalArgumentException("Illegal retry scheduler arguments, tickMs:" + tickMs
+                    + ", wheelSize:" + wheelSize + ", maxPending:" + maxPending);
+        }
+        this.tickMs = tickMs;
+        // 格数取2的幂，用位运算定位
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.wheel = new LinkedList[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new LinkedList<Timeout>();
+        }
+        this.mask = size - 1;
+        this.maxPending = maxPending;
+        this.executor = executor;
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(new Worker(), "MqConsumerRetryWheel");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 获取全局重试调度器
+     * mq.consumer.retry.tick 每格时间(默认100毫秒)，mq.consumer.retry.wheel 格数(默认512)，
+     * mq.consumer.retry.pending 待重试任务上限(默认10000)，mq.consumer.retry.threads 重试线程数(默认4)
+     *
+     * @return
+     */
+    public static RetryScheduler getInstance() {
+        if (null == instance) {
+            synchronized (RetryScheduler.class) {
+                if (null == instance) {
+                    int threads = MqConfigManager.getInt("mq.consumer.retry.threads", 4);
+                    int maxPending = MqConfigManager.getInt("mq.consumer.retry.pending", 10000);
+                    final RetryScheduler scheduler = new RetryScheduler(MqConfigManager.getInt("mq.consumer.retry.tick", 100)
+                            , MqConfigManager.getInt("mq.consumer.retry.wheel", 512)
+                            , maxPending
+                            , SpringThreadPoolUtil.getNewPool("MqConsumerRetry", threads, threads, maxPending
+                                    , new ThreadPoolExecutor.AbortPolicy()));
+                    MqMetrics.gauge(new Gauge() {
+                        @Override
+                        public double getValue() {
+                            return scheduler.getPendingCount();
+                        }
+                    }, "mq_consume_retry_pending");
+                    SpringDestroyableUtil.add("mqConsumerRetryScheduler", scheduler);
+                    instance = scheduler;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 延迟执行重试任务
+     *
+     * @param task
+     * @param delayMs
+     * @return 调度器已关闭或待重试任务已满时返回false
+     */
+    public boolean schedule(RetryTask task, long delayMs) {
+        if (closed) {
+            return false;
+        }
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            return false;
+        }
+        newTimeouts.add(new Timeout(task, elapsedMs() + Math.max(delayMs, 0)));
+        return true;
+    }
+
+    /**
+     * 待重试的任务数
+     *
+     * @return
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 关闭调度器，未到期的任务回调{@link RetryTask#onShutdown()}
+     */
+    @Override
+    public void destroy() {
+        closed = true;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            log.warn("Waiting retry scheduler close interrupted.", e);
+        }
+        log.info("Destroy retry scheduler successful.");
+    }
+
+    private void transferTimeouts() {
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            long ticks = timeout.deadline / tickMs;
+            // 已过期的任务放入当前格
+            long index = Math.max(ticks, tick);
+            timeout.rounds = (index - tick) / wheel.length;
+            wheel[(int) (index & mask)].add(timeout);
+        }
+    }
+
+    private void expireTimeouts(LinkedList<Timeout> bucket) {
+        Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+                continue;
+            }
+            iterator.remove();
+            pending.decrementAndGet();
+            try {
+                executor.execute(timeout.task);
+            } catch (RejectedExecutionException e) {
+                // 重试线程池已满，放回时间轮下一格
+                pending.incrementAndGet();
+                newTimeouts.add(new Timeout(timeout.task, elapsedMs() + tickMs));
+            }
+        }
+    }
+
+    /**
+     * @return 调度器启动后经过的时间(毫秒)
+     */
+    private long elapsedMs() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+    private List<Timeout> unprocessedTimeouts() {
+        List<Timeout> timeouts = new ArrayList<Timeout>(pending.get());
+        for (LinkedList<Timeout> bucket : wheel) {
+            timeouts.addAll(bucket);
+            bucket.clear();
+        }
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            timeouts.add(timeout);
+        }
+        return timeouts;
+    }
+
+    private class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            while (!closed) {
+                long sleepMs = tickMs * (tick + 1) - elapsedMs();
+                if (sleepMs > 0) {
+                    try {
+                        Thread.sleep(sleepMs);
+                    } catch (InterruptedException e) {
+                        continue;
+                    }
+                }
+                try {
+                    transferTimeouts();
+                    expireTimeouts(wheel[(int) (tick & mask)]);
+                } catch (Throwable t) {
+                    log.error("Retry scheduler tick failed.", t);
+                }
+                tick++;
+            }
+
+            // 关闭时通知未到期的任务
+            for (Timeout timeout : unprocessedTimeouts()) {
+                pending.decrementAndGet();
+                try {
+                    timeout.task.onShutdown();
+                } catch (Throwable t) {
+                    log.warn("Retry task shutdown failed.", t);
+                }
+            }
+        }
+    }
+
+    private static class Timeout {
+
+        private final RetryTask task;
+
+        /** 到期时间(相对调度器启动时间，毫秒) */
+        private final long deadline;
+
+        /** 剩余轮数 */
+        private long rounds;
+
+        Timeout(RetryTask task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.consumer.retry;
+
+/**
+ * 消费重试任务，到期后由重试调度器在工作线程中执行
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+public interface RetryTask extends Runnable {
+
+    /**
+     * 调度器关闭时仍未到期的任务回调，由实现决定丢弃、持久化或等待MQ重发
+     */
+    void onShutdown();
+}
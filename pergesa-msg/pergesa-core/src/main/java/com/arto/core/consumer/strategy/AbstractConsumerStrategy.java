@@ -12,20 +12,34 @@
  */
 package com.arto.core.consumer.strategy;
 
-import com.alibaba.fastjson.JSON;
+import com.arto.core.codec.MessageCodecFactory;
 import com.arto.core.common.MessageRecord;
 import com.arto.core.consumer.ConsumerConfig;
+import com.arto.core.consumer.MessageDeserializePlan;
+import com.arto.core.consumer.RawMessageAccessor;
+import com.arto.core.consumer.dlq.DeadLetterCallback;
+import com.arto.core.consumer.dlq.DeadLetterRecord;
+import com.arto.core.consumer.dlq.DeadLetterRouter;
+import com.arto.core.consumer.dedup.DedupManager;
+import com.arto.core.consumer.dedup.DedupStore;
 import com.arto.core.exception.MqClientException;
-import com.arto.event.util.TypeReferenceUtil;
-import com.google.common.base.Strings;
+import com.arto.core.metrics.DestinationMetrics;
+import com.arto.core.metrics.MqMetrics;
+import lombok.extern.slf4j.Slf4j;
 
-import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
- * TODO 使用注解形式消费时用反射性能低下，需转成静态代理
+ * 消费策略基类，使用注解形式消费时通过启动时生成的{@link com.arto.core.consumer.ConsumerInvoker}调用
  *
  * Created by xiong.j on 2017/3/29.
  */
+@Slf4j
 public class AbstractConsumerStrategy {
 
     /**
@@ -38,13 +52,7 @@ public class AbstractConsumerStrategy {
     protected MessageRecord deserializerMessage(ConsumerConfig config, String payload) {
         MessageRecord messageRecord;
         try {
-            if (config.getListener() != null) {
-                // 通过接口消费消息
-                messageRecord = JSON.parseObject(payload, TypeReferenceUtil.getType(config.getListener()));
-            } else {
-                // 通过注解消费消息
-                messageRecord = JSON.parseObject(payload, TypeReferenceUtil.getType(config.getBean(), config.getMethod().getName()));
-            }
+            messageRecord = getDeserializePlan(config).deserialize(payload);
         } catch (Throwable t) {
             throw new MqClientException("Deserializer message failed, message:" + payload + ", config:" + config, t);
         }
@@ -55,6 +63,67 @@ public class AbstractConsumerStrategy {
         return messageRecord;
     }
 
+    /**
+     * 按消息头中的编码标识反序列化消息
+     *
+     * @param config
+     * @param payload
+     * @return
+     */
+    protected MessageRecord deserializerMessage(ConsumerConfig config, byte[] payload) {
+        MessageRecord messageRecord;
+        try {
+            messageRecord = MessageCodecFactory.decode(payload, getDeserializePlan(config));
+        } catch (Throwable t) {
+            throw new MqClientException("Deserializer message failed, message:" + MessageCodecFactory.toString(payload)
+                    + ", config:" + config, t);
+        }
+
+        if (messageRecord == null || messageRecord.getMessage() == null) {
+            throw new MqClientException("Deserializer message failed, message:" + MessageCodecFactory.toString(payload)
+                    + ", config:" + config);
+        }
+        return messageRecord;
+    }
+
+    /**
+     * 反序列化前按消息Id检测重复消费(需开启mq.dedup.enable)
+     *
+     * @param config
+     * @param messageId
+     * @return
+     */
+    protected boolean isDuplicate(ConsumerConfig config, String messageId) {
+        return isDuplicate(config, messageId, false);
+    }
+
+    /**
+     * 反序列化前按消息Id检测重复消费(需开启mq.dedup.enable)
+     *
+     * @param config
+     * @param messageId
+     * @param redelivered 是否重投递，重投递的消息可能已被其它实例消费，本地未命中时以持久化存储为准
+     * @return
+     */
+    protected boolean isDuplicate(ConsumerConfig config, String messageId, boolean redelivered) {
+        DedupStore store = DedupManager.getStore(config);
+        if (store != null && store.isDuplicate(DedupManager.messageKey(messageId), redelivered)) {
+            count("mq_consume_duplicates_total", config);
+            return true;
+        }
+        return false;
+    }
+
+    private MessageDeserializePlan getDeserializePlan(ConsumerConfig config) {
+        MessageDeserializePlan plan = config.getDeserializePlan();
+        if (plan == null) {
+            // 未经MqClient订阅的配置
+            plan = MessageDeserializePlan.create(config);
+            config.setDeserializePlan(plan);
+        }
+        return plan;
+    }
+
     /**
      * 重复消费检测
      *
@@ -64,17 +133,23 @@ public class AbstractConsumerStrategy {
      */
     @SuppressWarnings("unchecked")
     protected boolean checkRedeliver(ConsumerConfig config, MessageRecord message) {
+        DedupStore store = DedupManager.getStore(config);
+        // 消息Id已在反序列化前检测过，这里只检测业务标识
+        if (store != null && store.isDuplicate(DedupManager.businessKey(message))) {
+            count("mq_consume_duplicates_total", config);
+            return true;
+        }
+
         try {
-            if (config.getListener() != null) {
+            if (config.isBatch()) {
+                // 批量消费者逐条重试时按单条消息的批次去重
+                return invokeFilterRedelivered(config, Collections.singletonList(message)).isEmpty();
+            } else if (config.getListener() != null) {
                 // 通过接口消费消息
                 return config.getListener().checkRedeliver(message);
-            } else if (!Strings.isNullOrEmpty(config.getCheckRedeliver())) {
+            } else if (config.getRedeliverInvoker() != null) {
                 // 通过注解消费消息
-                Method method = config.getBean().getClass().getDeclaredMethod(config.getCheckRedeliver(), config.getMethod().getParameterTypes());
-                if (!method.getParameterTypes()[0].equals(MessageRecord.class)) {
-                    throw new MqClientException("@Consumer method [" + method + "] should only to be MessageRecord<?> ");
-                }
-                return (Boolean) method.invoke(config.getBean(), message);
+                return (Boolean) config.getRedeliverInvoker().invoke(config.getBean(), message);
             } else {
                 return false;
             }
@@ -91,16 +166,244 @@ public class AbstractConsumerStrategy {
      */
     @SuppressWarnings("unchecked")
     protected void onMessage(ConsumerConfig config, MessageRecord message){
+        long start = System.nanoTime();
         try {
-            if (config.getListener() != null) {
+            if (config.isBatch()) {
+                // 批量消费者逐条重试时按单条消息的批次消费
+                invokeBatch(config, Collections.singletonList(message));
+            } else if (config.getListener() != null) {
                 // 通过接口消费消息
                 config.getListener().onMessage(message);
             } else {
                 // 通过注解消费消息
-                config.getMethod().invoke(config.getBean(), message);
+                config.getInvoker().invoke(config.getBean(), message);
             }
+            markConsumed(config, message);
         } catch (Throwable t) {
+            count("mq_consume_errors_total", config);
             throw new MqClientException("Consume message failed, message:" + message, t);
+        } finally {
+            metrics(config).timer("mq_consume_latency_seconds").updateSince(start);
+        }
+    }
+
+    /**
+     * 批量消费：整批反序列化、去重后调用批量消费方法，一批失败时二分拆批重试以定位失败的消息
+     *
+     * @param config
+     * @param raws 原始消息
+     * @param accessor 原始消息的读取方式
+     * @return 反序列化或消费失败的原始消息(保持原有顺序)，由各消费策略按单条消息的方式重试或持久化
+     */
+    @SuppressWarnings("unchecked")
+    protected <R> List<R> onMessages(ConsumerConfig config, List<R> raws, RawMessageAccessor<R> accessor) {
+        List<MessageRecord> messages = new ArrayList<MessageRecord>(raws.size());
+        Map<MessageRecord, R> origins = new IdentityHashMap<MessageRecord, R>(raws.size());
+        Set<R> failed = Collections.newSetFromMap(new IdentityHashMap<R, Boolean>());
+        for (R raw : raws) {
+            try {
+                String messageId = accessor.getMessageId(raw);
+                // 按消息Id检测重复消费，重复时不再反序列化
+                if (isDuplicate(config, messageId)) {
+                    log.info("Duplicate message, discard this message:" + messageId);
+                    continue;
+                }
+                MessageRecord message = deserializerMessage(config, accessor.getPayload(raw));
+                message.setMessageId(messageId);
+                messages.add(message);
+                origins.put(message, raw);
+            } catch (Throwable t) {
+                log.warn("Deserializer message failed in batch, retry it alone. message:" + raw, t);
+                failed.add(raw);
+            }
         }
+
+        List<MessageRecord> pending;
+        try {
+            pending = filterRedelivered(config, messages);
+        } catch (Throwable t) {
+            // 批量去重失败时全部逐条处理
+            log.warn("Check redeliver failed in batch, retry them alone. size:" + messages.size(), t);
+            failed.addAll(origins.values());
+            pending = Collections.emptyList();
+        }
+
+        List<MessageRecord> errors = new ArrayList<MessageRecord>();
+        consumeBatch(config, pending, errors);
+        for (MessageRecord error : errors) {
+            failed.add(origins.get(error));
+        }
+
+        List<R> result = new ArrayList<R>(failed.size());
+        if (!failed.isEmpty()) {
+            for (R raw : raws) {
+                if (failed.contains(raw)) {
+                    result.add(raw);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量重复消费检测
+     *
+     * @param config
+     * @param messages
+     * @return 仍需处理的消息
+     */
+    protected List<MessageRecord> filterRedelivered(ConsumerConfig config, List<MessageRecord> messages) {
+        List<MessageRecord> result = messages;
+        DedupStore store = DedupManager.getStore(config);
+        if (store != null) {
+            result = new ArrayList<MessageRecord>(messages.size());
+            for (MessageRecord message : messages) {
+                if (store.isDuplicate(DedupManager.businessKey(message))) {
+                    count("mq_consume_duplicates_total", config);
+                } else {
+                    result.add(message);
+                }
+            }
+        }
+        if (result.isEmpty()) {
+            return result;
+        }
+
+        try {
+            return invokeFilterRedelivered(config, result);
+        } catch (Throwable t) {
+            throw new MqClientException("Check redeliver failed, size:" + result.size(), t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<MessageRecord> invokeFilterRedelivered(ConsumerConfig config, List<MessageRecord> messages) throws Throwable {
+        List<MessageRecord> result = null;
+        if (config.getBatchListener() != null) {
+            // 通过接口消费消息
+            result = config.getBatchListener().filterRedelivered(messages);
+        } else if (config.getBatchRedeliverInvoker() != null) {
+            // 通过注解消费消息
+            result = (List<MessageRecord>) config.getBatchRedeliverInvoker().invoke(config.getBean(), messages);
+        }
+        return result == null ? messages : result;
+    }
+
+    private void consumeBatch(ConsumerConfig config, List<MessageRecord> messages, List<MessageRecord> errors) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            invokeBatch(config, messages);
+            for (MessageRecord message : messages) {
+                markConsumed(config, message);
+            }
+        } catch (Throwable t) {
+            if (messages.size() == 1) {
+                log.warn("Consume message failed in batch, retry it alone. message:" + messages.get(0), t);
+                errors.add(messages.get(0));
+                return;
+            }
+            // 拆成两半分别重试，只有失败的消息进入逐条重试
+            log.warn("Consume batch failed, split and retry. size:" + messages.size(), t);
+            count("mq_consume_batch_splits_total", config);
+            int middle = messages.size() / 2;
+            consumeBatch(config, new ArrayList<MessageRecord>(messages.subList(0, middle)), errors);
+            consumeBatch(config, new ArrayList<MessageRecord>(messages.subList(middle, messages.size())), errors);
+        } finally {
+            metrics(config).timer("mq_consume_batch_latency_seconds").updateSince(start);
+        }
+    }
+
+    /**
+     * 整批消费，失败时不拆批，由调用方决定整批重试或逐条处理(如整批在同一事务中提交)
+     *
+     * @param config
+     * @param messages
+     */
+    protected void consumeAll(ConsumerConfig config, List<MessageRecord> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            invokeBatch(config, messages);
+            for (MessageRecord message : messages) {
+                markConsumed(config, message);
+            }
+        } catch (Throwable t) {
+            count("mq_consume_errors_total", config);
+            throw new MqClientException("Consume batch failed, size:" + messages.size(), t);
+        } finally {
+            metrics(config).timer("mq_consume_batch_latency_seconds").updateSince(start);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void invokeBatch(ConsumerConfig config, List<MessageRecord> messages) throws Throwable {
+        if (config.getBatchListener() != null) {
+            // 通过接口消费消息
+            config.getBatchListener().onMessages(messages);
+        } else {
+            // 通过注解消费消息
+            config.getBatchInvoker().invoke(config.getBean(), messages);
+        }
+    }
+
+    private void markConsumed(ConsumerConfig config, MessageRecord message) {
+        DedupStore store = DedupManager.getStore(config);
+        if (store != null) {
+            store.markConsumed(DedupManager.messageKey(message.getMessageId()), DedupManager.businessKey(message));
+        }
+    }
+
+    /**
+     * 记录一次消费重试
+     *
+     * @param config
+     */
+    protected void countRetry(ConsumerConfig config) {
+        count("mq_consume_retries_total", config);
+    }
+
+    /**
+     * 记录一次消费失败后持久化等待调度重试
+     *
+     * @param config
+     */
+    protected void countPersisted(ConsumerConfig config) {
+        count("mq_consume_persisted_total", config);
+    }
+
+    /**
+     * 开启死信路由时把消息异步写入死信目的地
+     *
+     * @param record 死信
+     * @param callback 写入结果回调，可为null
+     * @return 未开启死信路由或无法放入死信队列时返回false，由调用方按原方式持久化或丢弃
+     */
+    protected boolean deadLetter(DeadLetterRecord record, DeadLetterCallback callback) {
+        if (!DeadLetterRouter.isEnabled(record.getDestination())) {
+            return false;
+        }
+        return DeadLetterRouter.getInstance().route(record, callback);
+    }
+
+    /**
+     * 记录一次消费失败后丢弃消息
+     *
+     * @param config
+     */
+    protected void countDiscarded(ConsumerConfig config) {
+        count("mq_consume_discarded_total", config);
+    }
+
+    private void count(String name, ConsumerConfig config) {
+        metrics(config).counter(name).inc();
+    }
+
+    private DestinationMetrics metrics(ConsumerConfig config) {
+        return MqMetrics.destination(config.getType().getMemo(), config.getDestination());
     }
 }
@@ -0,0 +1,266 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.event;
+
+import com.arto.core.common.DataPipeline;
+import com.arto.core.common.MessagePriorityEnum;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按消息优先级分通道的事务消息管道，每个优先级({@link MessagePriorityEnum})一个独立容量的{@link DataPipeline}
+ * 取出时按权重在各通道间公平调度：单条取出按权重轮转起始通道，批量取出按权重分配每批份额(每个非空通道至少1条)，
+ * 剩余空间再按优先级从高到低补足，避免低优先级消息的突发流量拖慢高优先级消息，同时低优先级消息不会饿死
+ *
+ * Created by xiong.j on 2017/4/28.
+ */
+public class MqEventPipeline {
+
+    private static final int SPIN_TIMES = 64;
+
+    /** 优先级通道，下标0-2依次为高、中、低 */
+    private final DataPipeline<MqEvent>[] lanes;
+
+    /** 通道权重 */
+    private final int[] weights;
+
+    /** 权重之和 */
+    private final int totalWeight;
+
+    /** 单条取出时的轮转序号 */
+    private final AtomicLong sequence = new AtomicLong(0);
+
+    private final AtomicInteger takeWaiters = new AtomicInteger(0);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    /**
+     * @param lanes 高、中、低优先级通道
+     * @param weights 对应通道的权重，最小为1
+     */
+    public MqEventPipeline(DataPipeline<MqEvent>[] lanes, int[] weights) {
+        if (lanes.length != 3 || weights.length != 3) {
+            throw new IllegalArgumentException("Need high, medium and low lanes");
+        }
+        this.lanes = lanes;
+        this.weights = new int[weights.length];
+        int total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            this.weights[i] = Math.max(weights[i], 1);
+            total += this.weights[i];
+        }
+        this.totalWeight = total;
+    }
+
+    /**
+     * 按消息优先级加入对应通道
+     *
+     * @param event
+     * @return
+     */
+    public boolean offer(MqEvent event) {
+        if (lanes[laneIndex(event.getPriority())].offer(event)) {
+            signalNotEmpty();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 批量加入，相同优先级的连续消息一次加入对应通道，遇到第一条失败的消息即停止
+     *
+     * @param list
+     * @return 从头开始成功加入的数量
+     */
+    public int offerBatch(List<? extends MqEvent> list) {
+        int size = list.size();
+        int offered = 0;
+        try {
+            int from = 0;
+            while (from < size) {
+                int index = laneIndex(list.get(from).getPriority());
+                int to = from + 1;
+                while (to < size && laneIndex(list.get(to).getPriority()) == index) {
+                    to++;
+                }
+                int n = lanes[index].offerBatch(list.subList(from, to));
+                offered += n;
+                if (n < to - from) {
+                    break;
+                }
+                from = to;
+            }
+        } finally {
+            if (offered > 0) {
+                signalNotEmpty();
+            }
+        }
+        return offered;
+    }
+
+    /**
+     * 取出消息，没有消息时立即返回null
+     *
+     * @return
+     */
+    public MqEvent poll() {
+        // 按权重选择起始通道
+        int slot = (int) (sequence.getAndIncrement() % totalWeight);
+        int first = 0;
+        while (slot >= weights[first]) {
+            slot -= weights[first];
+            first++;
+        }
+        MqEvent event = lanes[first].poll();
+        if (event != null) {
+            return event;
+        }
+        // 起始通道为空时按优先级从高到低取出
+        for (int i = 0; i < lanes.length; i++) {
+            if (i != first && (event = lanes[i].poll()) != null) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    public MqEvent poll(long timeout, TimeUnit unit) throws InterruptedException {
+        MqEvent event;
+        for (int i = 0; i <= SPIN_TIMES; i++) {
+            event = poll();
+            if (event != null) {
+                return event;
+            }
+        }
+
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        takeWaiters.incrementAndGet();
+        try {
+            while ((event = poll()) == null) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return event;
+        } finally {
+            takeWaiters.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 批量取出消息，不阻塞
+     *
+     * @param c 存放取出的消息
+     * @param maxElements 最多取出的数量
+     * @return 取出的数量
+     */
+    public int drainTo(Collection<? super MqEvent> c, int maxElements) {
+        int n = 0;
+        // 按权重分配本批各通道的份额，每个通道至少1条
+        for (int i = 0; i < lanes.length && n < maxElements; i++) {
+            int quota = Math.max(1, maxElements * weights[i] / totalWeight);
+            n += lanes[i].drainTo(c, Math.min(quota, maxElements - n));
+        }
+        // 剩余空间按优先级从高到低补足
+        for (int i = 0; i < lanes.length && n < maxElements; i++) {
+            n += lanes[i].drainTo(c, maxElements - n);
+        }
+        return n;
+    }
+
+    /**
+     * 获取优先级对应的通道
+     *
+     * @param priority
+     * @return
+     */
+    public DataPipeline<MqEvent> getLane(MessagePriorityEnum priority) {
+        return lanes[laneIndex(priority.getCode())];
+    }
+
+    public int size() {
+        int size = 0;
+        for (DataPipeline<MqEvent> lane : lanes) {
+            size += lane.size();
+        }
+        return size;
+    }
+
+    public int capacity() {
+        int capacity = 0;
+        for (DataPipeline<MqEvent> lane : lanes) {
+            capacity += lane.capacity();
+        }
+        return capacity;
+    }
+
+    public long getRejectedCount() {
+        long count = 0;
+        for (DataPipeline<MqEvent> lane : lanes) {
+            count += lane.getRejectedCount();
+        }
+        return count;
+    }
+
+    public long getSpilledCount() {
+        long count = 0;
+        for (DataPipeline<MqEvent> lane : lanes) {
+            count += lane.getSpilledCount();
+        }
+        return count;
+    }
+
+    public void clear() {
+        for (DataPipeline<MqEvent> lane : lanes) {
+            lane.clear();
+        }
+    }
+
+    public void close() {
+        for (DataPipeline<MqEvent> lane : lanes) {
+            lane.close();
+        }
+    }
+
+    private int laneIndex(int priority) {
+        // 未知优先级按高优先级处理
+        if (priority <= MessagePriorityEnum.HIGH.getCode()) {
+            return 0;
+        } else if (priority >= MessagePriorityEnum.LOW.getCode()) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private void signalNotEmpty() {
+        if (takeWaiters.get() > 0) {
+            lock.lock();
+            try {
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
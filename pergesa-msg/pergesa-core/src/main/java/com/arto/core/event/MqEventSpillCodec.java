@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.event;
+
+import com.alibaba.fastjson.JSON;
+import com.arto.core.common.PipelineSpillCodec;
+import com.arto.event.bootstrap.EventContext;
+import com.arto.event.storage.EventInfo;
+
+import java.nio.charset.Charset;
+
+/**
+ * 事务消息溢出编解码，只保存已持久化的事件信息，解码方式与调度恢复时相同
+ *
+ * Created by xiong.j on 2017/3/20.
+ */
+public class MqEventSpillCodec implements PipelineSpillCodec<MqEvent> {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Override
+    public byte[] encode(MqEvent event) throws Exception {
+        if (event.getEventContext() == null || event.getEventContext().getEventInfo() == null) {
+            // 非持久化消息不能溢出
+            return null;
+        }
+        return JSON.toJSONString(event.getEventContext().getEventInfo()).getBytes(UTF8);
+    }
+
+    @Override
+    public MqEvent decode(byte[] bytes) throws Exception {
+        EventInfo eventInfo = JSON.parseObject(new String(bytes, UTF8), EventInfo.class);
+        Class<?> eventClass = Class.forName(eventInfo.getEventType(), true, getClassloader());
+        MqEvent event = (MqEvent) JSON.parseObject(eventInfo.getPayload(), eventClass);
+        event.setPersistent(true);
+        event.setEventContext(new EventContext(eventInfo));
+        return event;
+    }
+
+    private static ClassLoader getClassloader() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) classLoader = MqEventSpillCodec.class.getClassLoader();
+        return classLoader;
+    }
+}
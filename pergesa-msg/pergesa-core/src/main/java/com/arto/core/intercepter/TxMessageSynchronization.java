@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.intercepter;
+
+import com.arto.core.bootstrap.MqClient;
+import com.arto.core.event.MqEvent;
+import com.arto.event.service.PersistentEventService;
+import com.arto.event.storage.EventInfo;
+import com.arto.event.util.SpringContextHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 事务消息的事务同步回调，每个事务注册一次并持有该事务的事务消息：
+ * 提交前将延迟持久化的事务消息一次插入，提交后将事务消息批量加入发送管道.
+ * 事务挂起(如REQUIRES_NEW)时回调随事务一起挂起、恢复，嵌套的新事务使用单独的实例，互不影响.
+ *
+ * Created by xiong.j on 2017/4/12.
+ */
+@Slf4j
+public class TxMessageSynchronization extends TransactionSynchronizationAdapter {
+
+    private static volatile PersistentEventService service;
+
+    /** 事务消息，事务提交后加入发送管道 */
+    private final List<MqEvent> txMessages = new ArrayList<MqEvent>();
+
+    /** 延迟持久化的记录，事务提交前一次插入 */
+    private final List<EventInfo> pendingRows = new ArrayList<EventInfo>();
+
+    /**
+     * 在当前事务中注册回调(已注册时返回已注册的回调)
+     *
+     * @return 当前线程没有开启事务同步时返回null
+     */
+    public static TxMessageSynchronization register() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        // 挂起的事务的同步回调不在当前列表中，嵌套的新事务会单独注册
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof TxMessageSynchronization) {
+                return (TxMessageSynchronization) synchronization;
+            }
+        }
+        TxMessageSynchronization synchronization = new TxMessageSynchronization();
+        TransactionSynchronizationManager.registerSynchronization(synchronization);
+        return synchronization;
+    }
+
+    /**
+     * 加入已持久化的事务消息
+     *
+     * @param message
+     */
+    public void addMessage(MqEvent message) {
+        txMessages.add(message);
+    }
+
+    /**
+     * 批量加入已持久化的事务消息
+     *
+     * @param messages
+     */
+    public void addMessages(List<? extends MqEvent> messages) {
+        txMessages.addAll(messages);
+    }
+
+    /**
+     * 加入延迟持久化的事务消息(已通过PersistentEventService.prepare准备)
+     *
+     * @param message
+     */
+    public void addPendingMessage(MqEvent message) {
+        txMessages.add(message);
+        pendingRows.add(message.getEventContext().getEventInfo());
+    }
+
+    /**
+     * 批量加入延迟持久化的事务消息
+     *
+     * @param messages
+     */
+    public void addPendingMessages(List<? extends MqEvent> messages) {
+        for (MqEvent message : messages) {
+            addPendingMessage(message);
+        }
+    }
+
+    @Override
+    public void beforeCommit(boolean readOnly) {
+        if (!pendingRows.isEmpty()) {
+            // 一次多行插入，失败时异常抛出使事务回滚
+            getService().persistPrepared(pendingRows);
+            pendingRows.clear();
+        }
+    }
+
+    @Override
+    public void afterCommit() {
+        if (txMessages.isEmpty()) {
+            return;
+        }
+        try {
+            // 相同类型的连续消息一次批量加入管道
+            int from = 0;
+            String type = txMessages.get(0).getType();
+            for (int i = 1; i <= txMessages.size(); i++) {
+                if (i == txMessages.size() || !type.equals(txMessages.get(i).getType())) {
+                    offer(type, txMessages.subList(from, i));
+                    if (i < txMessages.size()) {
+                        from = i;
+                        type = txMessages.get(i).getType();
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            // 消息已持久化，等待调度恢复发送
+            log.warn("Offer tx messages to pipeline failed, messages will be sent by recovery job.", t);
+        }
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+        txMessages.clear();
+        pendingRows.clear();
+    }
+
+    private void offer(String type, List<MqEvent> messages) {
+        int offered = MqClient.getPipeline(type).offerBatch(messages);
+        for (int i = offered; i < messages.size(); i++) {
+            // 管道已满，消息已持久化，等待调度恢复发送
+            log.warn("Pipeline overflow, message will be sent by recovery job:" + messages.get(i));
+        }
+    }
+
+    private static PersistentEventService getService() {
+        if (service == null) {
+            service = SpringContextHolder.getBean("persistentEventService");
+        }
+        return service;
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 单个目的地的指标，带type和destination标签，发送、消费每条消息时直接使用缓存的指标，不再创建指标名
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+public final class DestinationMetrics {
+
+    private final String type;
+
+    private final String destination;
+
+    /** 按优先级的发送耗时 */
+    private final ConcurrentMap<Integer, Timer> sendLatency = new ConcurrentHashMap<Integer, Timer>();
+
+    /** 按优先级的发送失败数 */
+    private final ConcurrentMap<Integer, Counter> sendErrors = new ConcurrentHashMap<Integer, Counter>();
+
+    /** 按名称的计数器 */
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+
+    /** 按名称的耗时统计 */
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+
+    DestinationMetrics(String type, String destination) {
+        this.type = type;
+        this.destination = destination;
+    }
+
+    public Timer sendLatency(int priority) {
+        Timer timer = sendLatency.get(priority);
+        if (timer == null) {
+            // 注册中心保证同名指标只有一个，并发创建时结果相同
+            timer = MqMetrics.timer("mq_send_latency_seconds", "type", type, "destination", destination
+                    , "priority", String.valueOf(priority));
+            sendLatency.put(priority, timer);
+        }
+        return timer;
+    }
+
+    public Counter sendErrors(int priority) {
+        Counter counter = sendErrors.get(priority);
+        if (counter == null) {
+            counter = MqMetrics.counter("mq_send_errors_total", "type", type, "destination", destination
+                    , "priority", String.valueOf(priority));
+            sendErrors.put(priority, counter);
+        }
+        return counter;
+    }
+
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = MqMetrics.counter(name, "type", type, "destination", destination);
+            counters.put(name, counter);
+        }
+        return counter;
+    }
+
+    public Timer timer(String name) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            timer = MqMetrics.timer(name, "type", type, "destination", destination);
+            timers.put(name, timer);
+        }
+        return timer;
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.metrics;
+
+import com.arto.event.storage.EventStorage;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * 为EventStorage增加耗时统计(pergesa-event不依赖本模块，所以在这里代理)
+ *
+ * Created by xiong.j on 2017/4/20.
+ */
+@Component
+public class EventStorageMetricsPostProcessor implements BeanPostProcessor {
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (bean instanceof EventStorage && !Proxy.isProxyClass(bean.getClass())) {
+            return Proxy.newProxyInstance(bean.getClass().getClassLoader(), new Class[]{EventStorage.class}
+                    , new TimedInvocationHandler(bean));
+        }
+        return bean;
+    }
+
+    private static class TimedInvocationHandler implements InvocationHandler {
+
+        private final Object target;
+
+        TimedInvocationHandler(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(target, args);
+            }
+            long start = System.nanoTime();
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                MqMetrics.counter("event_storage_errors_total", "method", method.getName()).inc();
+                throw e.getTargetException();
+            } finally {
+                MqMetrics.timer("event_storage_latency_seconds", "method", method.getName()).updateSince(start);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.metrics;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * 指标名称，由名称和标签(键值成对)组成，输出格式与Prometheus文本格式一致: name{k1="v1",k2="v2"}
+ *
+ * Created by xiong.j on 2017/4/20.
+ */
+@Getter
+public final class MetricName implements Comparable<MetricName> {
+
+    private final String name;
+
+    /** 标签，偶数位为键，奇数位为值 */
+    private final String[] labels;
+
+    private final String text;
+
+    public MetricName(String name, String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be key/value pairs: " + Arrays.toString(labels));
+        }
+        this.name = sanitize(name);
+        this.labels = labels;
+        this.text = format(this.name, labels);
+    }
+
+    /**
+     * 替换Prometheus不支持的字符
+     *
+     * @param name
+     * @return
+     */
+    public static String sanitize(String name) {
+        StringBuilder builder = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == ':'
+                    || (c >= '0' && c <= '9' && i > 0)) {
+                builder.append(c);
+            } else {
+                builder.append('_');
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 派生一个同标签、不同名称的指标名(如Timer的_count/_sum)
+     *
+     * @param suffix
+     * @return
+     */
+    public MetricName withSuffix(String suffix) {
+        return new MetricName(name + suffix, labels);
+    }
+
+    @Override
+    public int compareTo(MetricName o) {
+        return text.compareTo(o.text);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof MetricName && text.equals(((MetricName) o).text));
+    }
+
+    @Override
+    public int hashCode() {
+        return text.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    private static String format(String name, String[] labels) {
+        if (labels.length == 0) {
+            return name;
+        }
+        StringBuilder builder = new StringBuilder(name).append('{');
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(sanitize(labels[i])).append("=\"");
+            String value = String.valueOf(labels[i + 1]);
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') {
+                    builder.append('\\').append(c);
+                } else if (c == '\n') {
+                    builder.append("\\n");
+                } else {
+                    builder.append(c);
+                }
+            }
+            builder.append('"');
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,282 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.metrics;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 消息客户端指标注册中心，通过JMX(com.arto.mq:type=MqMetrics)导出，也可输出Prometheus文本格式
+ *
+ * Created by xiong.j on 2017/4/20.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class MqMetrics {
+
+    /** JMX对象名 */
+    public static final String JMX_NAME = "com.arto.mq:type=MqMetrics";
+
+    private static final ConcurrentMap<MetricName, Counter> counters = new ConcurrentHashMap<MetricName, Counter>();
+
+    private static final ConcurrentMap<MetricName, Timer> timers = new ConcurrentHashMap<MetricName, Timer>();
+
+    private static final ConcurrentMap<MetricName, Gauge> gauges = new ConcurrentHashMap<MetricName, Gauge>();
+
+    private static final ConcurrentMap<String, MetricSource> sources = new ConcurrentHashMap<String, MetricSource>();
+
+    /** 按类型、目的地缓存的指标 */
+    private static final ConcurrentMap<String, ConcurrentMap<String, DestinationMetrics>> destinations
+            = new ConcurrentHashMap<String, ConcurrentMap<String, DestinationMetrics>>();
+
+    static {
+        registerMBean();
+    }
+
+    /**
+     * 获取(不存在时创建)计数器
+     *
+     * @param name
+     * @param labels 标签键值对
+     * @return
+     */
+    public static Counter counter(String name, String... labels) {
+        MetricName metricName = new MetricName(name, labels);
+        Counter counter = counters.get(metricName);
+        if (counter == null) {
+            Counter newCounter = new Counter();
+            counter = counters.putIfAbsent(metricName, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * 获取(不存在时创建)耗时统计
+     *
+     * @param name
+     * @param labels 标签键值对
+     * @return
+     */
+    public static Timer timer(String name, String... labels) {
+        MetricName metricName = new MetricName(name, labels);
+        Timer timer = timers.get(metricName);
+        if (timer == null) {
+            Timer newTimer = new Timer();
+            timer = timers.putIfAbsent(metricName, newTimer);
+            if (timer == null) {
+                timer = newTimer;
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * 注册计量，同名时替换
+     *
+     * @param gauge
+     * @param name
+     * @param labels 标签键值对
+     */
+    public static void gauge(Gauge gauge, String name, String... labels) {
+        gauges.put(new MetricName(name, labels), gauge);
+    }
+
+    /**
+     * 获取(不存在时创建)目的地的指标，发送、消费每条消息时使用
+     *
+     * @param type 消息中间件类型
+     * @param destination
+     * @return
+     */
+    public static DestinationMetrics destination(String type, String destination) {
+        ConcurrentMap<String, DestinationMetrics> typeMetrics = destinations.get(type);
+        if (typeMetrics == null) {
+            ConcurrentMap<String, DestinationMetrics> newMetrics = new ConcurrentHashMap<String, DestinationMetrics>();
+            typeMetrics = destinations.putIfAbsent(type, newMetrics);
+            if (typeMetrics == null) {
+                typeMetrics = newMetrics;
+            }
+        }
+        DestinationMetrics metrics = typeMetrics.get(destination);
+        if (metrics == null) {
+            DestinationMetrics newMetrics = new DestinationMetrics(type, destination);
+            metrics = typeMetrics.putIfAbsent(destination, newMetrics);
+            if (metrics == null) {
+                metrics = newMetrics;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * 注册外部指标来源，同Key时替换
+     *
+     * @param key
+     * @param source
+     */
+    public static void register(String key, MetricSource source) {
+        sources.put(key, source);
+    }
+
+    public static void unregister(String key) {
+        sources.remove(key);
+    }
+
+    /**
+     * 记录一次消息发送的耗时和结果
+     *
+     * @param type 消息中间件类型
+     * @param destination
+     * @param priority
+     * @param startNanos 开始发送时的System.nanoTime()
+     * @param error 发送失败时的异常，成功为null
+     */
+    public static void recordSend(String type, String destination, int priority, long startNanos, Throwable error) {
+        DestinationMetrics metrics = destination(type, destination);
+        metrics.sendLatency(priority).updateSince(startNanos);
+        if (error != null) {
+            metrics.sendErrors(priority).inc();
+        }
+    }
+
+    /**
+     * 获取所有指标的当前值(按名称排序)，Timer展开为_count、_sum(秒)和_max(秒)
+     *
+     * @return
+     */
+    public static SortedMap<MetricName, Double> snapshot() {
+        final SortedMap<MetricName, Double> metrics = new TreeMap<MetricName, Double>();
+        collect(new SampleCollector() {
+            @Override
+            public void add(String family, String type, MetricName name, double value) {
+                metrics.put(name, value);
+            }
+        });
+        return metrics;
+    }
+
+    /**
+     * 以Prometheus文本格式输出所有指标，同一指标族的样本连续输出，并带# TYPE行
+     *
+     * @param writer
+     * @throws IOException
+     */
+    public static void writePrometheus(Writer writer) throws IOException {
+        final SortedMap<String, String> types = new TreeMap<String, String>();
+        final SortedMap<String, SortedMap<MetricName, Double>> families = new TreeMap<String, SortedMap<MetricName, Double>>();
+        collect(new SampleCollector() {
+            @Override
+            public void add(String family, String type, MetricName name, double value) {
+                SortedMap<MetricName, Double> samples = families.get(family);
+                if (samples == null) {
+                    samples = new TreeMap<MetricName, Double>();
+                    families.put(family, samples);
+                    types.put(family, type);
+                }
+                samples.put(name, value);
+            }
+        });
+        for (Map.Entry<String, SortedMap<MetricName, Double>> family : families.entrySet()) {
+            writer.write("# TYPE ");
+            writer.write(family.getKey());
+            writer.write(' ');
+            writer.write(types.get(family.getKey()));
+            writer.write('\n');
+            for (Map.Entry<MetricName, Double> entry : family.getValue().entrySet()) {
+                double value = entry.getValue();
+                writer.write(entry.getKey().toString());
+                writer.write(' ');
+                if (Double.isNaN(value)) {
+                    writer.write("NaN");
+                } else if (Double.isInfinite(value)) {
+                    writer.write(value > 0 ? "+Inf" : "-Inf");
+                } else {
+                    writer.write(String.valueOf(value));
+                }
+                writer.write('\n');
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * 收集所有指标的样本，Timer输出为summary(_count、_sum)和gauge(_max)，外部来源的指标类型未知
+     *
+     * @param collector
+     */
+    private static void collect(final SampleCollector collector) {
+        for (Map.Entry<MetricName, Counter> entry : counters.entrySet()) {
+            collector.add(entry.getKey().getName(), "counter", entry.getKey(), (double) entry.getValue().getCount());
+        }
+        for (Map.Entry<MetricName, Timer> entry : timers.entrySet()) {
+            Timer timer = entry.getValue();
+            String family = entry.getKey().getName();
+            collector.add(family, "summary", entry.getKey().withSuffix("_count"), (double) timer.getCount());
+            collector.add(family, "summary", entry.getKey().withSuffix("_sum"), timer.getTotalSeconds());
+            collector.add(family + "_max", "gauge", entry.getKey().withSuffix("_max"), timer.getMaxSeconds());
+        }
+        for (Map.Entry<MetricName, Gauge> entry : gauges.entrySet()) {
+            try {
+                collector.add(entry.getKey().getName(), "gauge", entry.getKey(), entry.getValue().getValue());
+            } catch (Throwable t) {
+                log.debug("Read gauge failed:" + entry.getKey(), t);
+            }
+        }
+        Map<MetricName, Double> collected = new TreeMap<MetricName, Double>();
+        for (Map.Entry<String, MetricSource> entry : sources.entrySet()) {
+            try {
+                entry.getValue().collect(collected);
+            } catch (Throwable t) {
+                log.debug("Collect metrics failed:" + entry.getKey(), t);
+            }
+        }
+        for (Map.Entry<MetricName, Double> entry : collected.entrySet()) {
+            collector.add(entry.getKey().getName(), "untyped", entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 指标样本的收集方式
+     */
+    private interface SampleCollector {
+
+        void add(String family, String type, MetricName name, double value);
+    }
+
+    private static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(JMX_NAME);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(new MqMetricsDynamicMBean(), objectName);
+            }
+        } catch (Throwable t) {
+            log.warn("Register metrics MBean failed, name:" + JMX_NAME, t);
+        }
+    }
+}
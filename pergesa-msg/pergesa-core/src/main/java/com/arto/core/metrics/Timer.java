@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 耗时统计，记录次数、总耗时和最大耗时(纳秒)
+ *
+ * Created by xiong.j on 2017/4/20.
+ */
+public final class Timer {
+
+    private final AtomicLong count = new AtomicLong(0);
+
+    private final AtomicLong totalNanos = new AtomicLong(0);
+
+    private final AtomicLong maxNanos = new AtomicLong(0);
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos
+     */
+    public void update(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxNanos.get())) {
+            if (maxNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 记录从startNanos(System.nanoTime())到现在的耗时
+     *
+     * @param startNanos
+     */
+    public void updateSince(long startNanos) {
+        update(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getTotalSeconds() {
+        return totalNanos.get() / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    public double getMaxSeconds() {
+        return maxNanos.get() / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,316 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.producer;
+
+import com.arto.core.bootstrap.MqClient;
+import com.arto.core.event.MqEvent;
+import com.arto.core.event.MqEventPipeline;
+import com.arto.core.exception.CircuitBreakerOpenException;
+import com.arto.core.producer.breaker.SendCircuitBreakerManager;
+import com.arto.event.service.EventAdviceService;
+import com.arto.event.util.SpringContextHolder;
+import com.arto.event.util.SpringThreadPoolUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 事务消息发送器，事务提交后的消息由多个发送通道(lane)并行处理。
+ * 每个通道批量取出消息，按目的地分组后批量加锁、批量发送，成功的消息批量更新状态。
+ * 同一分组的加锁、发送与状态更新在同一数据库事务中，行锁持有到状态更新提交，避免调度任务同时发送。
+ *
+ * Created by xiong.j on 2017/3/24.
+ */
+@Slf4j
+public abstract class AbstractTxMessageSender {
+
+    /** 发送器名称，同时作为线程池名称 */
+    private final String name;
+
+    /** 消息中间件类型 */
+    private final String mqType;
+
+    /** 数据管道 */
+    private final MqEventPipeline dataPipeline;
+
+    /** 发送通道数 */
+    private final int laneSize;
+
+    /** 每批最大消息数 */
+    private final int batchSize;
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    private volatile boolean closed = false;
+
+    /** 持久化事件处理服务 */
+    private volatile EventAdviceService service;
+
+    /** 分组事务 */
+    private volatile TransactionTemplate transactionTemplate;
+
+    /** 加锁使用的嵌套事务(保存点)，加锁失败时只回滚到保存点 */
+    private volatile TransactionTemplate nestedTemplate;
+
+    protected AbstractTxMessageSender(String name, String mqType, int laneSize, int batchSize) {
+        this(name, mqType, MqClient.getPipeline(mqType), laneSize, batchSize);
+    }
+
+    AbstractTxMessageSender(String name, String mqType, MqEventPipeline dataPipeline, int laneSize, int batchSize) {
+        this.name = name;
+        this.mqType = mqType;
+        this.dataPipeline = dataPipeline;
+        this.laneSize = Math.max(laneSize, 1);
+        this.batchSize = Math.max(batchSize, 1);
+    }
+
+    /**
+     * 启动发送通道
+     */
+    public void start() {
+        if (started.compareAndSet(false, true)) {
+            ExecutorService executor = SpringThreadPoolUtil.getNewPool(name, laneSize, laneSize, laneSize, null)
+                    .getThreadPoolExecutor();
+            for (int i = 0; i < laneSize; i++) {
+                executor.execute(new SendLane());
+            }
+            log.info(name + " started, lanes:" + laneSize + ", batchSize:" + batchSize);
+        }
+    }
+
+    /**
+     * 停止发送通道
+     */
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * 批量发送同一目的地的消息
+     *
+     * @param destination 目的地
+     * @param events 消息
+     * @return 与消息一一对应的发送结果，成功为null，失败为异常
+     */
+    protected abstract Throwable[] send(String destination, List<MqEvent> events);
+
+    void sendGroup(final String destination, final List<MqEvent> events) {
+        if (SendCircuitBreakerManager.isOpen(mqType, destination)) {
+            // 熔断中不加锁也不发送，直接延后由调度任务重试
+            park(destination, events);
+            return;
+        }
+        // 自动提交时行锁在加锁语句返回后即释放，加锁、发送与状态更新需在同一事务中
+        getTransactionTemplate().execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                sendLocked(destination, lock(events));
+            }
+        });
+    }
+
+    private void sendLocked(String destination, List<MqEvent> lockedEvents) {
+        if (lockedEvents.isEmpty()) {
+            return;
+        }
+
+        Throwable[] results;
+        try {
+            results = send(destination, lockedEvents);
+        } catch (Throwable t) {
+            results = new Throwable[lockedEvents.size()];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = t;
+            }
+        }
+
+        List<MqEvent> succeeded = new ArrayList<MqEvent>(lockedEvents.size());
+        List<MqEvent> parked = null;
+        for (int i = 0; i < lockedEvents.size(); i++) {
+            if (results[i] == null) {
+                succeeded.add(lockedEvents.get(i));
+            } else if (results[i] instanceof CircuitBreakerOpenException) {
+                // 熔断中未发送的消息不计入重试次数
+                if (parked == null) {
+                    parked = new ArrayList<MqEvent>();
+                }
+                parked.add(lockedEvents.get(i));
+            } else {
+                getService().fail(lockedEvents.get(i), results[i]);
+            }
+        }
+        if (parked != null) {
+            park(destination, parked);
+        }
+        if (!succeeded.isEmpty()) {
+            try {
+                // 批量更新状态
+                getService().after(succeeded);
+            } catch (Throwable t) {
+                // 状态未更新时由调度任务处理(可能重复发送)
+                log.warn("Update message status failed. destination:" + destination + ", size:" + succeeded.size(), t);
+            }
+        }
+    }
+
+    private void park(String destination, List<MqEvent> events) {
+        try {
+            getService().park(events, SendCircuitBreakerManager.getParkSeconds());
+        } catch (Throwable t) {
+            // 未更新时由调度任务按原时间处理
+            log.warn("Park messages failed. destination:" + destination + ", size:" + events.size(), t);
+        }
+    }
+
+    private List<MqEvent> lock(final List<MqEvent> events) {
+        try {
+            return inSavepoint(new Callable<List<MqEvent>>() {
+                @Override
+                public List<MqEvent> call() throws Exception {
+                    return getService().before(events);
+                }
+            });
+        } catch (Throwable t) {
+            log.debug("Lock messages failed, lock one by one. cause:" + t.getMessage());
+        }
+        // 批量加锁失败时逐条加锁(Postgresql中语句出错后整个事务不可用，每条加锁使用单独的保存点)
+        List<MqEvent> lockedEvents = new ArrayList<MqEvent>(events.size());
+        for (final MqEvent event : events) {
+            try {
+                inSavepoint(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        return getService().before(event);
+                    }
+                });
+                lockedEvents.add(event);
+            } catch (Throwable t) {
+                getService().fail(event, t);
+            }
+        }
+        return lockedEvents;
+    }
+
+    /**
+     * 在保存点中执行，出错时回滚到保存点并抛出原异常
+     */
+    private <T> T inSavepoint(final Callable<T> action) throws Exception {
+        final Exception[] error = new Exception[1];
+        T result = getNestedTemplate().execute(new TransactionCallback<T>() {
+            @Override
+            public T doInTransaction(TransactionStatus status) {
+                try {
+                    return action.call();
+                } catch (Exception e) {
+                    error[0] = e;
+                    status.setRollbackOnly();
+                    return null;
+                }
+            }
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+        return result;
+    }
+
+    private EventAdviceService getService() {
+        if (service == null) {
+            service = SpringContextHolder.getBean("eventAdviceService");
+        }
+        return service;
+    }
+
+    private TransactionTemplate getTransactionTemplate() {
+        if (transactionTemplate == null) {
+            // 暂时依赖Spring获取，与事务消息持久化使用同一个事务管理器
+            setTransactionManager(SpringContextHolder.getBean(DataSourceTransactionManager.class));
+        }
+        return transactionTemplate;
+    }
+
+    private TransactionTemplate getNestedTemplate() {
+        getTransactionTemplate();
+        return nestedTemplate;
+    }
+
+    void setService(EventAdviceService service) {
+        this.service = service;
+    }
+
+    void setTransactionManager(PlatformTransactionManager transactionManager) {
+        TransactionTemplate nested = new TransactionTemplate(transactionManager);
+        nested.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        this.nestedTemplate = nested;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 发送通道
+     */
+    private class SendLane implements Runnable {
+
+        private final List<MqEvent> batch = new ArrayList<MqEvent>(batchSize);
+
+        private final Map<String, List<MqEvent>> groups = new LinkedHashMap<String, List<MqEvent>>();
+
+        @Override
+        public void run() {
+            while (!closed) {
+                try {
+                    MqEvent event = dataPipeline.poll(300, TimeUnit.MILLISECONDS);
+                    if (event == null) {
+                        continue;
+                    }
+                    batch.add(event);
+                    dataPipeline.drainTo(batch, batchSize - 1);
+
+                    // 按目的地分组
+                    for (MqEvent e : batch) {
+                        List<MqEvent> group = groups.get(e.getDestination());
+                        if (group == null) {
+                            group = new ArrayList<MqEvent>();
+                            groups.put(e.getDestination(), group);
+                        }
+                        group.add(e);
+                    }
+                    for (Map.Entry<String, List<MqEvent>> entry : groups.entrySet()) {
+                        sendGroup(entry.getKey(), entry.getValue());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Throwable t) {
+                    log.warn("Send message failed.", t);
+                } finally {
+                    batch.clear();
+                    groups.clear();
+                }
+            }
+        }
+    }
+}
@@ -14,6 +14,9 @@ package com.arto.core.producer;
 
 import com.arto.core.common.MessageRecord;
 import com.arto.core.exception.MqClientException;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.List;
 
 /**
  * 消息中件间客户端通用生产者接口。
@@ -39,6 +42,34 @@ public interface MqProducer<T> {
      */
     void send(MessageRecord<T> record) throws MqClientException;
 
+    /**
+     * 批量发送消息，事务消息在同一事务中批量持久化，事务提交后批量发送
+     * 注:事务消息必须设置"业务凭证流水号"和"业务类型"，以便发生异常时追踪排错
+     *
+     * @param records 消息包装对象列表
+     * @throws MqClientException
+     */
+    void sendBatch(List<MessageRecord<T>> records) throws MqClientException;
+
+    /**
+     * 异步发送消息(简化方法)，不等待发送结果
+     *
+     * @param message 消息对象
+     * @return 发送结果，成功时为消息中间件生成的消息Id
+     * @throws MqClientException
+     */
+    ListenableFuture<String> sendAsync(T message) throws MqClientException;
+
+    /**
+     * 异步发送消息，不等待发送结果，可连续发送大量消息后统一等待或注册监听。
+     * 注:异步发送的消息不持久化(非事务消息)，监听器默认在消息中间件客户端的回调线程中执行
+     *
+     * @param record 消息包装对象
+     * @return 发送结果，成功时为消息中间件生成的消息Id
+     * @throws MqClientException
+     */
+    ListenableFuture<String> sendAsync(MessageRecord<T> record) throws MqClientException;
+
     /**
      * 发送非事务消息(开启事务发送后，可使用此方法发送非事务消息)
      *
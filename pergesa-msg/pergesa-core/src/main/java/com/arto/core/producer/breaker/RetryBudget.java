@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.producer.breaker;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 全局重试预算，限制同时进行的消息重试发送数量，超出预算的重试延后处理
+ *
+ * Created by xiong.j on 2017/4/29.
+ */
+public class RetryBudget {
+
+    /** 最大并发重试数，小于等于0时不限制 */
+    private volatile int max;
+
+    private final AtomicInteger inUse = new AtomicInteger(0);
+
+    /** 超出预算被拒绝的次数 */
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+
+    public RetryBudget(int max) {
+        this.max = max;
+    }
+
+    /**
+     * 占用一个重试名额
+     *
+     * @return 超出预算时返回false
+     */
+    public boolean tryAcquire() {
+        int used;
+        do {
+            used = inUse.get();
+            if (max > 0 && used >= max) {
+                rejectedCount.incrementAndGet();
+                return false;
+            }
+        } while (!inUse.compareAndSet(used, used + 1));
+        return true;
+    }
+
+    /**
+     * 释放一个重试名额
+     */
+    public void release() {
+        inUse.decrementAndGet();
+    }
+
+    public void setMax(int max) {
+        this.max = max;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    public int getInUse() {
+        return inUse.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.producer.breaker;
+
+import com.arto.core.common.CircuitStateEnum;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个MQ类型+目的地的发送熔断器
+ * 统计窗口内请求数达到下限且错误率或慢请求率超过阈值时熔断，熔断期间不发送；
+ * 熔断时间过后进入半开状态，只放行少量探测请求，探测全部成功后恢复，任一失败则重新熔断
+ *
+ * Created by xiong.j on 2017/4/29.
+ */
+@Slf4j
+public class SendCircuitBreaker {
+
+    private final String name;
+
+    /** 统计窗口(毫秒) */
+    private final long window;
+
+    /** 窗口内最少请求数，不足时不熔断 */
+    private final int minRequests;
+
+    /** 熔断的错误率(百分比) */
+    private final int errorPercent;
+
+    /** 慢请求耗时(纳秒) */
+    private final long slowNanos;
+
+    /** 熔断的慢请求率(百分比) */
+    private final int slowPercent;
+
+    /** 熔断时间(毫秒) */
+    private final long openMillis;
+
+    /** 半开状态的探测请求数 */
+    private final int probes;
+
+    private volatile CircuitStateEnum state = CircuitStateEnum.CLOSED;
+
+    /** 进入当前状态的时间 */
+    private volatile long stateSince = System.currentTimeMillis();
+
+    /** 当前窗口的开始时间和统计 */
+    private volatile long windowStart = System.currentTimeMillis();
+
+    private final AtomicLong requests = new AtomicLong(0);
+
+    private final AtomicLong failures = new AtomicLong(0);
+
+    private final AtomicLong slows = new AtomicLong(0);
+
+    /** 半开状态已放行和已成功的探测请求数 */
+    private final AtomicInteger probesIssued = new AtomicInteger(0);
+
+    private final AtomicInteger probesSucceeded = new AtomicInteger(0);
+
+    public SendCircuitBreaker(String name, long window, int minRequests, int errorPercent, long slowMillis
+            , int slowPercent, long openMillis, int probes) {
+        this.name = name;
+        this.window = window;
+        this.minRequests = Math.max(minRequests, 1);
+        this.errorPercent = errorPercent;
+        this.slowNanos = TimeUnit.MILLISECONDS.toNanos(slowMillis);
+        this.slowPercent = slowPercent;
+        this.openMillis = openMillis;
+        this.probes = Math.max(probes, 1);
+    }
+
+    /**
+     * 是否允许发送，半开状态时占用一个探测名额
+     *
+     * @return
+     */
+    public boolean allowRequest() {
+        CircuitStateEnum current = state;
+        if (current == CircuitStateEnum.CLOSED) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (current == CircuitStateEnum.OPEN) {
+            if (now - stateSince < openMillis) {
+                return false;
+            }
+            toHalfOpen(CircuitStateEnum.OPEN, now);
+        } else if (now - stateSince >= openMillis) {
+            // 探测请求长时间没有结果(如发送前失败)，重新探测
+            toHalfOpen(CircuitStateEnum.HALF_OPEN, now);
+        }
+        return state == CircuitStateEnum.HALF_OPEN && probesIssued.incrementAndGet() <= probes;
+    }
+
+    /**
+     * 是否熔断中(不占用探测名额)
+     *
+     * @return
+     */
+    public boolean isOpen() {
+        return state == CircuitStateEnum.OPEN && System.currentTimeMillis() - stateSince < openMillis;
+    }
+
+    /**
+     * 记录一次发送结果
+     *
+     * @param nanos 发送耗时
+     * @param error 是否出错
+     */
+    public void record(long nanos, boolean error) {
+        CircuitStateEnum current = state;
+        if (current == CircuitStateEnum.HALF_OPEN) {
+            if (error) {
+                transit(CircuitStateEnum.HALF_OPEN, CircuitStateEnum.OPEN);
+            } else if (probesSucceeded.incrementAndGet() >= probes) {
+                transit(CircuitStateEnum.HALF_OPEN, CircuitStateEnum.CLOSED);
+            }
+            return;
+        }
+        if (current != CircuitStateEnum.CLOSED) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - windowStart >= window) {
+            resetWindow(now, false);
+        }
+        long total = requests.incrementAndGet();
+        long failed = error ? failures.incrementAndGet() : failures.get();
+        long slow = nanos >= slowNanos ? slows.incrementAndGet() : slows.get();
+        if (total >= minRequests
+                && (failed * 100 >= errorPercent * total || slow * 100 >= slowPercent * total)) {
+            if (transit(CircuitStateEnum.CLOSED, CircuitStateEnum.OPEN)) {
+                log.warn("Circuit breaker open, name:" + name + ", requests:" + total + ", failures:" + failed
+                        + ", slows:" + slow);
+            }
+        }
+    }
+
+    public CircuitStateEnum getState() {
+        return state;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private synchronized void toHalfOpen(CircuitStateEnum expect, long now) {
+        if (state == expect && now - stateSince >= openMillis) {
+            probesIssued.set(0);
+            probesSucceeded.set(0);
+            state = CircuitStateEnum.HALF_OPEN;
+            stateSince = now;
+            log.info("Circuit breaker half open, name:" + name);
+        }
+    }
+
+    private synchronized boolean transit(CircuitStateEnum expect, CircuitStateEnum target) {
+        if (state != expect) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (target == CircuitStateEnum.CLOSED) {
+            resetWindow(now, true);
+            log.info("Circuit breaker closed, name:" + name);
+        } else if (expect == CircuitStateEnum.HALF_OPEN) {
+            log.warn("Circuit breaker probe failed, open again, name:" + name);
+        }
+        state = target;
+        stateSince = now;
+        return true;
+    }
+
+    private synchronized void resetWindow(long now, boolean force) {
+        if (!force && now - windowStart < window) {
+            // 其它线程已重置
+            return;
+        }
+        requests.set(0);
+        failures.set(0);
+        slows.set(0);
+        windowStart = now;
+    }
+}
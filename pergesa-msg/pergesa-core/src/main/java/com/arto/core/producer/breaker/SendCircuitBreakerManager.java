@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.producer.breaker;
+
+import com.arto.core.config.MqConfigManager;
+import com.arto.core.exception.CircuitBreakerOpenException;
+import com.arto.core.metrics.Gauge;
+import com.arto.core.metrics.MqMetrics;
+import com.arto.event.bootstrap.Event;
+import com.arto.event.common.EventStatusEnum;
+import com.arto.event.config.ConfigChangeListener;
+import com.arto.event.storage.EventInfo;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 发送熔断管理，按MQ类型+目的地维护熔断器(mq.breaker.enable=true时开启)，并持有全局重试预算(mq.retry.budget)
+ * 熔断中的持久化消息不发送，直接延后mq.breaker.park.seconds秒后由调度任务重试
+ *
+ * Created by xiong.j on 2017/4/29.
+ */
+public class SendCircuitBreakerManager {
+
+    private static final ConcurrentMap<String, SendCircuitBreaker> breakers
+            = new ConcurrentHashMap<String, SendCircuitBreaker>();
+
+    /** 默认同时最多16条消息重试 */
+    private static final RetryBudget retryBudget = new RetryBudget(MqConfigManager.getInt("mq.retry.budget", 16));
+
+    static {
+        MqMetrics.gauge(new Gauge() {
+            @Override
+            public double getValue() {
+                return retryBudget.getInUse();
+            }
+        }, "mq_retry_budget_inuse");
+        MqMetrics.gauge(new Gauge() {
+            @Override
+            public double getValue() {
+                return retryBudget.getRejectedCount();
+            }
+        }, "mq_retry_budget_rejected_total");
+        // 配置刷新时调整重试预算
+        MqConfigManager.getInstance().addListener(new ConfigChangeListener() {
+            @Override
+            public void onChange(Set<String> changedKeys) {
+                retryBudget.setMax(MqConfigManager.getInt("mq.retry.budget", 16));
+            }
+        });
+    }
+
+    private SendCircuitBreakerManager() {
+    }
+
+    /**
+     * 发送前检查熔断状态，熔断中时抛出异常
+     *
+     * @param type MQ类型
+     * @param destination 目的地
+     * @throws CircuitBreakerOpenException
+     */
+    public static void checkSend(String type, String destination) throws CircuitBreakerOpenException {
+        SendCircuitBreaker breaker = getBreaker(type, destination);
+        if (breaker != null && !breaker.allowRequest()) {
+            MqMetrics.destination(type, destination).counter("mq_breaker_rejected_total").inc();
+            throw new CircuitBreakerOpenException("Circuit breaker is open, type:" + type + ", destination:" + destination);
+        }
+    }
+
+    /**
+     * 是否熔断中(不占用半开状态的探测名额)，用于批量发送前整体跳过
+     *
+     * @param type MQ类型
+     * @param destination 目的地
+     * @return
+     */
+    public static boolean isOpen(String type, String destination) {
+        SendCircuitBreaker breaker = getBreaker(type, destination);
+        return breaker != null && breaker.isOpen();
+    }
+
+    /**
+     * 发送完成后记录结果
+     *
+     * @param type MQ类型
+     * @param destination 目的地
+     * @param startNanos 发送开始时间(System.nanoTime())
+     * @param error 发送异常，成功时为null
+     */
+    public static void onSend(String type, String destination, long startNanos, Throwable error) {
+        SendCircuitBreaker breaker = getBreaker(type, destination);
+        if (breaker != null) {
+            breaker.record(System.nanoTime() - startNanos, error != null);
+        }
+    }
+
+    /**
+     * 是否为重试发送的持久化事件(调度任务恢复的事件)
+     *
+     * @param event
+     * @return
+     */
+    public static boolean isRetry(Event event) {
+        if (event.getEventContext() == null || event.getEventContext().getEventInfo() == null) {
+            return false;
+        }
+        EventInfo eventInfo = event.getEventContext().getEventInfo();
+        return eventInfo.getCurrentRetriedCount() > 0 || eventInfo.getStatus() == EventStatusEnum.PROCESSING.getCode();
+    }
+
+    public static RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * 熔断或超出重试预算时，持久化消息延后处理的秒数(默认1分钟)
+     *
+     * @return
+     */
+    public static int getParkSeconds() {
+        return MqConfigManager.getInt("mq.breaker.park.seconds", 60);
+    }
+
+    private static SendCircuitBreaker getBreaker(String type, String destination) {
+        if (!MqConfigManager.getBoolean("mq.breaker.enable", false)) {
+            return null;
+        }
+        String name = type + ":" + destination;
+        SendCircuitBreaker breaker = breakers.get(name);
+        if (breaker == null) {
+            breaker = new SendCircuitBreaker(name
+                    , MqConfigManager.getInt("mq.breaker.window", 10000)
+                    , MqConfigManager.getInt("mq.breaker.min.requests", 20)
+                    , MqConfigManager.getInt("mq.breaker.error.percent", 50)
+                    , MqConfigManager.getInt("mq.breaker.slow.ms", 3000)
+                    , MqConfigManager.getInt("mq.breaker.slow.percent", 80)
+                    , MqConfigManager.getInt("mq.breaker.open.ms", 30000)
+                    , MqConfigManager.getInt("mq.breaker.halfopen.probes", 3));
+            SendCircuitBreaker exists = breakers.putIfAbsent(name, breaker);
+            if (exists != null) {
+                breaker = exists;
+            } else {
+                registerMetrics(type, destination, breaker);
+            }
+        }
+        return breaker;
+    }
+
+    private static void registerMetrics(String type, String destination, final SendCircuitBreaker breaker) {
+        MqMetrics.gauge(new Gauge() {
+            @Override
+            public double getValue() {
+                return breaker.getState().getCode();
+            }
+        }, "mq_breaker_state", "type", type, "destination", destination);
+    }
+}
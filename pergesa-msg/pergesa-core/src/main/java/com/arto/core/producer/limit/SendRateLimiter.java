@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.producer.limit;
+
+import com.arto.core.metrics.Gauge;
+import com.arto.core.metrics.MqMetrics;
+import com.arto.core.metrics.Timer;
+import com.google.common.util.concurrent.RateLimiter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个MQ类型+目的地+优先级的发送限流器(令牌桶)，速率为0时不限流
+ * 开启自适应时按发送耗时、发送错误和Broker限流指标调整速率：过载时乘性降低，恢复后按基准速率的10%逐步加回
+ *
+ * Created by xiong.j on 2017/4/28.
+ */
+@Slf4j
+public class SendRateLimiter {
+
+    /** 过载时速率降低的比例 */
+    private static final double DECREASE_FACTOR = 0.7;
+
+    /** 恢复时每次加回基准速率的比例 */
+    private static final double INCREASE_FACTOR = 0.1;
+
+    private final String type;
+
+    private final String destination;
+
+    private final String priority;
+
+    /** 配置的速率(每秒消息数)，0为不限流 */
+    private volatile double baseRate;
+
+    /** 当前生效的速率 */
+    private volatile double currentRate;
+
+    /** 令牌桶，不限流时为空 */
+    private volatile RateLimiter rateLimiter;
+
+    /** 等待令牌的耗时 */
+    private final Timer throttled;
+
+    /** 上次调整以来的发送次数、总耗时和错误次数 */
+    private final AtomicLong sendCount = new AtomicLong(0);
+
+    private final AtomicLong sendNanos = new AtomicLong(0);
+
+    private final AtomicLong errorCount = new AtomicLong(0);
+
+    /** 上次调整时间 */
+    private final AtomicLong lastAdjust = new AtomicLong(System.currentTimeMillis());
+
+    public SendRateLimiter(String type, String destination, String priority, double rate) {
+        this.type = type;
+        this.destination = destination;
+        this.priority = priority;
+        this.throttled = MqMetrics.timer("mq_producer_throttled_seconds"
+                , "type", type, "destination", destination, "priority", priority);
+        setRate(rate);
+        MqMetrics.gauge(new Gauge() {
+            @Override
+            public double getValue() {
+                return currentRate;
+            }
+        }, "mq_producer_rate", "type", type, "destination", destination, "priority", priority);
+    }
+
+    /**
+     * 获取一个发送令牌，没有令牌时阻塞等待
+     */
+    public void acquire() {
+        RateLimiter limiter = rateLimiter;
+        if (limiter == null) {
+            return;
+        }
+        double waited = limiter.acquire();
+        if (waited > 0) {
+            throttled.update((long) (waited * TimeUnit.SECONDS.toNanos(1)));
+        }
+    }
+
+    /**
+     * 记录一次发送结果，供自适应调整使用
+     *
+     * @param nanos 发送耗时
+     * @param error 是否出错
+     */
+    public void record(long nanos, boolean error) {
+        if (rateLimiter == null) {
+            return;
+        }
+        sendCount.incrementAndGet();
+        sendNanos.addAndGet(nanos);
+        if (error) {
+            errorCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 是否到了调整周期，多个线程同时调用时只有一个返回true
+     *
+     * @param interval 调整周期(毫秒)
+     * @return
+     */
+    public boolean tryStartAdjust(long interval) {
+        long now = System.currentTimeMillis();
+        long last = lastAdjust.get();
+        return rateLimiter != null && now - last >= interval && lastAdjust.compareAndSet(last, now);
+    }
+
+    /**
+     * 配置变化时重置速率
+     *
+     * @param rate
+     */
+    public synchronized void setRate(double rate) {
+        this.baseRate = rate;
+        this.currentRate = rate;
+        if (rate <= 0) {
+            rateLimiter = null;
+        } else if (rateLimiter == null) {
+            rateLimiter = RateLimiter.create(rate);
+        } else {
+            rateLimiter.setRate(rate);
+        }
+    }
+
+    public double getBaseRate() {
+        return baseRate;
+    }
+
+    public double getCurrentRate() {
+        return currentRate;
+    }
+
+    /**
+     * 按上个周期的发送情况调整当前速率
+     *
+     * @param latency 平均发送耗时超过该值(毫秒)时视为过载
+     * @param minRatio 最低速率占基准速率的比例
+     * @param throttleMs Broker当前的限流时间(毫秒)
+     */
+    public synchronized void adjust(long latency, double minRatio, double throttleMs) {
+        long count = sendCount.getAndSet(0);
+        long nanos = sendNanos.getAndSet(0);
+        long errors = errorCount.getAndSet(0);
+        RateLimiter limiter = rateLimiter;
+        if (limiter == null || count == 0) {
+            return;
+        }
+        boolean overloaded = TimeUnit.NANOSECONDS.toMillis(nanos / count) > latency || errors > 0 || throttleMs > 0;
+        double rate;
+        if (overloaded) {
+            rate = Math.max(baseRate * minRatio, currentRate * DECREASE_FACTOR);
+        } else {
+            rate = Math.min(baseRate, currentRate + baseRate * INCREASE_FACTOR);
+        }
+        if (rate != currentRate) {
+            currentRate = rate;
+            limiter.setRate(rate);
+            if (overloaded) {
+                log.info("Decrease send rate to " + rate + ", type:" + type + ", destination:" + destination
+                        + ", priority:" + priority);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.core.producer.limit;
+
+import com.arto.core.common.MessagePriorityEnum;
+import com.arto.core.config.MqConfigManager;
+import com.arto.event.config.ConfigChangeListener;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 生产者发送限流管理，按MQ类型+目的地+优先级维护令牌桶，默认不限流
+ * 速率(每秒消息数)按以下顺序读取，配置刷新后立即生效：
+ * mq.producer.rate.{destination}.{high|medium|low} > mq.producer.rate.{destination}
+ * > mq.producer.rate.{high|medium|low} > mq.producer.rate
+ * mq.producer.rate.adaptive=true 时按发送耗时、错误和Broker限流指标自动降低/恢复速率
+ *
+ * Created by xiong.j on 2017/4/28.
+ */
+@Slf4j
+public class SendRateLimiterManager {
+
+    private static final ConcurrentMap<String, SendRateLimiter> limiters
+            = new ConcurrentHashMap<String, SendRateLimiter>();
+
+    /** MQ类型 -> Broker限流指标来源 */
+    private static final ConcurrentMap<String, List<ThrottleSource>> throttleSources
+            = new ConcurrentHashMap<String, List<ThrottleSource>>();
+
+    static {
+        // 配置刷新时重置所有限流器的速率
+        MqConfigManager.getInstance().addListener(new ConfigChangeListener() {
+            @Override
+            public void onChange(Set<String> changedKeys) {
+                for (Map.Entry<String, SendRateLimiter> entry : limiters.entrySet()) {
+                    String[] keys = entry.getKey().split(":", 3);
+                    double rate = resolveRate(keys[2], Integer.parseInt(keys[1]));
+                    if (rate != entry.getValue().getBaseRate()) {
+                        entry.getValue().setRate(rate);
+                        log.info("Reset send rate to " + rate + ", limiter:" + entry.getKey());
+                    }
+                }
+            }
+        });
+    }
+
+    private SendRateLimiterManager() {
+    }
+
+    /**
+     * 发送前获取令牌，超过速率时阻塞调用线程
+     *
+     * @param type MQ类型
+     * @param destination 目的地
+     * @param priority 优先级
+     */
+    public static void acquire(String type, String destination, int priority) {
+        getLimiter(type, destination, priority).acquire();
+    }
+
+    /**
+     * 发送完成后记录结果，开启自适应时按周期调整速率
+     *
+     * @param type MQ类型
+     * @param destination 目的地
+     * @param priority 优先级
+     * @param startNanos 发送开始时间(System.nanoTime())
+     * @param error 发送异常，成功时为null
+     */
+    public static void onSend(String type, String destination, int priority, long startNanos, Throwable error) {
+        if (!MqConfigManager.getBoolean("mq.producer.rate.adaptive", false)) {
+            return;
+        }
+        SendRateLimiter limiter = getLimiter(type, destination, priority);
+        limiter.record(System.nanoTime() - startNanos, error != null);
+        if (limiter.tryStartAdjust(MqConfigManager.getInt("mq.producer.rate.adaptive.interval", 1000))) {
+            limiter.adjust(MqConfigManager.getInt("mq.producer.rate.adaptive.latency", 200)
+                    , MqConfigManager.getInt("mq.producer.rate.adaptive.min.percent", 10) / 100.0
+                    , getThrottleTimeMs(type));
+        }
+    }
+
+    /**
+     * 注册Broker限流指标来源
+     *
+     * @param type MQ类型
+     * @param source
+     */
+    public static void registerThrottleSource(String type, ThrottleSource source) {
+        List<ThrottleSource> sources = throttleSources.get(type);
+        if (sources == null) {
+            sources = new CopyOnWriteArrayList<ThrottleSource>();
+            List<ThrottleSource> exists = throttleSources.putIfAbsent(type, sources);
+            if (exists != null) {
+                sources = exists;
+            }
+        }
+        sources.add(source);
+    }
+
+    static SendRateLimiter getLimiter(String type, String destination, int priority) {
+        String key = type + ":" + priority + ":" + destination;
+        SendRateLimiter limiter = limiters.get(key);
+        if (limiter == null) {
+            limiter = new SendRateLimiter(type, destination, priorityName(priority), resolveRate(destination, priority));
+            SendRateLimiter exists = limiters.putIfAbsent(key, limiter);
+            if (exists != null) {
+                limiter = exists;
+            }
+        }
+        return limiter;
+    }
+
+    private static double resolveRate(String destination, int priority) {
+        String name = priorityName(priority);
+        int rate = MqConfigManager.getInt("mq.producer.rate", 0);
+        rate = MqConfigManager.getInt("mq.producer.rate." + name, rate);
+        rate = MqConfigManager.getInt("mq.producer.rate." + destination, rate);
+        return MqConfigManager.getInt("mq.producer.rate." + destination + "." + name, rate);
+    }
+
+    private static double getThrottleTimeMs(String type) {
+        List<ThrottleSource> sources = throttleSources.get(type);
+        double throttleMs = 0;
+        if (sources != null) {
+            for (ThrottleSource source : sources) {
+                try {
+                    throttleMs = Math.max(throttleMs, source.getThrottleTimeMs());
+                } catch (Throwable t) {
+                    log.debug("Read throttle time failed. type:" + type + ", cause:" + t.getMessage());
+                }
+            }
+        }
+        return throttleMs;
+    }
+
+    private static String priorityName(int priority) {
+        return MessagePriorityEnum.getEnum(priority).name().toLowerCase();
+    }
+}
@@ -0,0 +1,117 @@
+package com.arto.core.codec;
+
+import com.alibaba.fastjson.TypeReference;
+import com.arto.core.common.MessageRecord;
+import com.arto.core.consumer.MessageDeserializePlan;
+import common.TestMessageBean;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Created by xiong.j on 2017/4/10.
+ */
+public class MessageCodecTest {
+
+    private final MessageDeserializePlan plan
+            = MessageDeserializePlan.create(new TypeReference<MessageRecord<TestMessageBean>>(){}.getType());
+
+    @Test
+    public void testJsonCodec() throws Exception {
+        MessageCodec codec = new JsonMessageCodec();
+        MessageRecord record = codec.decode(ByteBuffer.wrap(codec.encode(buildRecord(2))), plan);
+        assertRecord(record, 2);
+    }
+
+    @Test
+    public void testBinaryCodec() throws Exception {
+        MessageCodec codec = new BinaryMessageCodec(-1);
+        MessageRecord record = codec.decode(ByteBuffer.wrap(codec.encode(buildRecord(2))), plan);
+        assertRecord(record, 2);
+    }
+
+    @Test
+    public void testBinaryCodecCompressed() throws Exception {
+        MessageCodec codec = new BinaryMessageCodec(64);
+        byte[] bytes = codec.encode(buildRecord(500));
+        Assert.assertTrue(bytes.length < new JsonMessageCodec().encode(buildRecord(500)).length);
+        assertRecord(codec.decode(ByteBuffer.wrap(bytes), plan), 500);
+    }
+
+    @Test
+    public void testBinaryCodecNullFields() throws Exception {
+        MessageCodec codec = new BinaryMessageCodec(-1);
+        MessageRecord<TestMessageBean> origin = new MessageRecord<TestMessageBean>(new TestMessageBean());
+        MessageRecord record = codec.decode(ByteBuffer.wrap(codec.encode(origin)), plan);
+        Assert.assertNull(record.getBusinessId());
+        Assert.assertNull(record.getSelectKey());
+        Assert.assertNull(record.getProperties());
+        Assert.assertTrue(record.getMessage() instanceof TestMessageBean);
+    }
+
+    @Test
+    public void testJsonCodecStream() throws Exception {
+        // 阈值为0时始终从字节流解析
+        MessageCodec codec = new JsonMessageCodec(0);
+        MessageRecord record = codec.decode(ByteBuffer.wrap(codec.encode(buildRecord(500))), plan);
+        assertRecord(record, 500);
+    }
+
+    @Test
+    public void testBinaryCodecStream() throws Exception {
+        MessageCodec codec = new BinaryMessageCodec(64, 0);
+        assertRecord(codec.decode(ByteBuffer.wrap(codec.encode(buildRecord(500))), plan), 500);
+        codec = new BinaryMessageCodec(-1, 0);
+        assertRecord(codec.decode(ByteBuffer.wrap(codec.encode(buildRecord(2))), plan), 2);
+    }
+
+    @Test
+    public void testUtf8Reader() throws Exception {
+        String text = "a测试\uD83D\uDE00b";
+        byte[] bytes = ("xx" + text).getBytes("UTF-8");
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position(2);
+        Reader reader = CodecUtil.utf8Reader(buffer, bytes.length - 2);
+        Assert.assertEquals(bytes.length, buffer.position());
+
+        // 每次只读一个字符，代理对跨两次读取
+        StringBuilder sb = new StringBuilder();
+        char[] cbuf = new char[1];
+        int n;
+        while ((n = reader.read(cbuf, 0, 1)) > 0) {
+            sb.append(cbuf, 0, n);
+        }
+        Assert.assertEquals(text, sb.toString());
+        Assert.assertEquals(-1, reader.read(cbuf, 0, 1));
+    }
+
+    private MessageRecord<TestMessageBean> buildRecord(int size) {
+        TestMessageBean bean = new TestMessageBean();
+        bean.setId(1);
+        bean.setName("测试");
+        List<String> list = new ArrayList<String>();
+        for (int i = 0; i < size; i++) {
+            list.add("item" + i);
+        }
+        bean.setList(list);
+        MessageRecord<TestMessageBean> record = new MessageRecord<TestMessageBean>("b1", "t1", bean);
+        record.setSelectKey("s1");
+        record.setStringProperty("key", "value");
+        return record;
+    }
+
+    private void assertRecord(MessageRecord record, int size) {
+        Assert.assertEquals("b1", record.getBusinessId());
+        Assert.assertEquals("t1", record.getBusinessType());
+        Assert.assertEquals("s1", record.getSelectKey());
+        Assert.assertEquals("value", record.getStringProperty("key"));
+        Assert.assertTrue(record.getMessage() instanceof TestMessageBean);
+        TestMessageBean bean = (TestMessageBean) record.getMessage();
+        Assert.assertEquals("测试", bean.getName());
+        Assert.assertEquals(size, bean.getList().size());
+    }
+}
@@ -0,0 +1,184 @@
+package com.arto.core.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by xiong.j on 2017/3/20.
+ */
+public class DataPipelineTest {
+
+    @Test
+    public void testOfferAndDrain() throws Exception {
+        DataPipeline<Integer> pipeline = new DataPipeline<Integer>(5);
+        Assert.assertEquals(8, pipeline.capacity());
+        for (int i = 0; i < 8; i++) {
+            Assert.assertTrue(pipeline.offer(i));
+        }
+        // 满了直接失败
+        Assert.assertFalse(pipeline.offer(8));
+        Assert.assertEquals(1, pipeline.getRejectedCount());
+
+        List<Integer> batch = new ArrayList<Integer>();
+        Assert.assertEquals(5, pipeline.drainTo(batch, 5));
+        Assert.assertEquals(Integer.valueOf(0), batch.get(0));
+        Assert.assertEquals(Integer.valueOf(4), batch.get(4));
+        Assert.assertEquals(3, pipeline.size());
+        Assert.assertEquals(Integer.valueOf(5), pipeline.poll(10, TimeUnit.MILLISECONDS));
+        pipeline.clear();
+        Assert.assertNull(pipeline.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testOfferBatch() throws Exception {
+        DataPipeline<Integer> pipeline = new DataPipeline<Integer>(8);
+        Assert.assertTrue(pipeline.offer(-1));
+        List<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < 10; i++) {
+            list.add(i);
+        }
+        // 只剩7个空槽，从第8条开始失败
+        Assert.assertEquals(7, pipeline.offerBatch(list));
+        Assert.assertEquals(8, pipeline.size());
+
+        List<Integer> batch = new ArrayList<Integer>();
+        Assert.assertEquals(8, pipeline.drainTo(batch, 10));
+        Assert.assertEquals(Integer.valueOf(-1), batch.get(0));
+        Assert.assertEquals(Integer.valueOf(6), batch.get(7));
+        Assert.assertEquals(8, pipeline.offerBatch(list.subList(0, 8)));
+    }
+
+    @Test
+    public void testBlockTimeout() throws Exception {
+        DataPipeline<Integer> pipeline = new DataPipeline<Integer>(2, PipelineOverflowEnum.BLOCK, 50, null, null);
+        Assert.assertTrue(pipeline.offer(0));
+        Assert.assertTrue(pipeline.offer(1));
+        long start = System.currentTimeMillis();
+        Assert.assertFalse(pipeline.offer(2));
+        Assert.assertTrue(System.currentTimeMillis() - start >= 40);
+        Assert.assertEquals(1, pipeline.getRejectedCount());
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        File file = File.createTempFile("pipeline", ".spill");
+        PipelineSpillSegment segment = new PipelineSpillSegment(file, 1024);
+        DataPipeline<String> pipeline = new DataPipeline<String>(2, PipelineOverflowEnum.SPILL, 0, segment, new StringCodec());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(pipeline.offer("m" + i));
+        }
+        Assert.assertEquals(3, pipeline.getSpilledCount());
+        Assert.assertEquals(5, pipeline.size());
+
+        List<String> batch = new ArrayList<String>();
+        Assert.assertEquals(5, pipeline.drainTo(batch, 10));
+        Assert.assertTrue(batch.contains("m4"));
+        Assert.assertEquals(0, segment.size());
+        pipeline.close();
+    }
+
+    @Test
+    public void testSpillOrder() throws Exception {
+        File file = File.createTempFile("pipeline", ".spill");
+        PipelineSpillSegment segment = new PipelineSpillSegment(file, 1024);
+        DataPipeline<String> pipeline = new DataPipeline<String>(2, PipelineOverflowEnum.SPILL, 0, segment, new StringCodec());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(pipeline.offer("m" + i));
+        }
+        Assert.assertEquals("m0", pipeline.poll());
+        // 队列有空位，但溢出段未读空，继续写入溢出段
+        Assert.assertTrue(pipeline.offer("m4"));
+        List<String> list = new ArrayList<String>();
+        list.add("m5");
+        list.add("m6");
+        Assert.assertEquals(2, pipeline.offerBatch(list));
+        Assert.assertEquals(5, pipeline.getSpilledCount());
+
+        List<String> batch = new ArrayList<String>();
+        Assert.assertEquals(6, pipeline.drainTo(batch, 10));
+        for (int i = 0; i < 6; i++) {
+            Assert.assertEquals("m" + (i + 1), batch.get(i));
+        }
+        // 溢出段读空后恢复使用队列
+        Assert.assertTrue(pipeline.offer("m7"));
+        Assert.assertEquals(5, pipeline.getSpilledCount());
+        Assert.assertEquals("m7", pipeline.poll());
+        pipeline.close();
+    }
+
+    @Test
+    public void testSpillFileLocked() throws Exception {
+        File file = File.createTempFile("pipeline", ".spill");
+        PipelineSpillSegment segment = new PipelineSpillSegment(file, 1024);
+        try {
+            new PipelineSpillSegment(file, 1024);
+            Assert.fail("Spill file should be locked");
+        } catch (IOException e) {
+            // 已被锁定
+        }
+        Assert.assertTrue(segment.append(new byte[]{1}));
+        Assert.assertEquals(1, segment.size());
+
+        // 默认文件已被使用时改用带进程号的文件
+        String name = file.getName().substring(0, file.getName().length() - ".spill".length());
+        PipelineSpillSegment other = PipelineSpillSegment.create(file.getParent(), name, 1024);
+        Assert.assertTrue(other.append(new byte[]{2}));
+        Assert.assertEquals(1, segment.size());
+        other.close();
+        segment.close();
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final DataPipeline<Integer> pipeline = new DataPipeline<Integer>(1024, PipelineOverflowEnum.BLOCK, 5000, null, null);
+        final int threads = 4;
+        final int amount = 10000;
+        final CountDownLatch latch = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < amount; i++) {
+                        pipeline.offer(i);
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+
+        int received = 0;
+        List<Integer> batch = new ArrayList<Integer>();
+        while (received < threads * amount) {
+            Integer first = pipeline.poll(1, TimeUnit.SECONDS);
+            Assert.assertNotNull(first);
+            batch.clear();
+            received += 1 + pipeline.drainTo(batch, 100);
+        }
+        latch.await();
+        Assert.assertEquals(0, pipeline.getRejectedCount());
+        Assert.assertEquals(0, pipeline.size());
+    }
+
+    private static class StringCodec implements PipelineSpillCodec<String> {
+
+        private static final Charset UTF8 = Charset.forName("UTF-8");
+
+        @Override
+        public byte[] encode(String s) throws Exception {
+            return s.getBytes(UTF8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) throws Exception {
+            return new String(bytes, UTF8);
+        }
+    }
+}
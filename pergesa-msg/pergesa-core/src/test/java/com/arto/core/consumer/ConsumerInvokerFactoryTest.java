@@ -0,0 +1,124 @@
+package com.arto.core.consumer;
+
+import com.arto.core.common.MessageRecord;
+import com.arto.core.exception.MqClientException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Created by xiong.j on 2017/4/30.
+ */
+public class ConsumerInvokerFactoryTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGeneratedInvoker() throws Throwable {
+        InvokerTestBean bean = new InvokerTestBean();
+        ConsumerInvoker invoker = ConsumerInvokerFactory.getInvoker(
+                InvokerTestBean.class.getDeclaredMethod("onMessage", MessageRecord.class));
+        // 生成的调用器与目标类同包，不是反射调用
+        Assert.assertEquals(InvokerTestBean.class.getName() + "$$ConsumerInvoker$onMessage", invoker.getClass().getName());
+        Assert.assertSame(invoker.getClass().getClassLoader(), InvokerTestBean.class.getClassLoader());
+
+        MessageRecord message = new MessageRecord("hello");
+        Assert.assertNull(invoker.invoke(bean, message));
+        Assert.assertEquals(1, bean.received.size());
+        Assert.assertSame(message, bean.received.get(0));
+
+        // 同一方法只生成一次
+        Assert.assertSame(invoker, ConsumerInvokerFactory.getInvoker(
+                InvokerTestBean.class.getDeclaredMethod("onMessage", MessageRecord.class)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRedeliverInvoker() throws Throwable {
+        InvokerTestBean bean = new InvokerTestBean();
+        ConsumerInvoker invoker = ConsumerInvokerFactory.getRedeliverInvoker(bean, "checkRedeliver");
+        Assert.assertEquals(InvokerTestBean.class.getName() + "$$ConsumerInvoker$checkRedeliver", invoker.getClass().getName());
+        // 基本类型返回值装箱
+        Assert.assertEquals(Boolean.TRUE, invoker.invoke(bean, new MessageRecord("redelivered")));
+        Assert.assertEquals(Boolean.FALSE, invoker.invoke(bean, new MessageRecord("new")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBatchInvoker() throws Throwable {
+        InvokerTestBean bean = new InvokerTestBean();
+        ConsumerBatchInvoker invoker = ConsumerInvokerFactory.getBatchInvoker(
+                InvokerTestBean.class.getDeclaredMethod("onMessages", List.class));
+        Assert.assertEquals(InvokerTestBean.class.getName() + "$$ConsumerBatchInvoker$onMessages", invoker.getClass().getName());
+        List<MessageRecord> messages = Arrays.asList(new MessageRecord("a"), new MessageRecord("b"));
+        invoker.invoke(bean, messages);
+        Assert.assertEquals(messages, bean.received);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPrivateMethodUseReflection() throws Throwable {
+        InvokerTestBean bean = new InvokerTestBean();
+        ConsumerInvoker invoker = ConsumerInvokerFactory.getInvoker(
+                InvokerTestBean.class.getDeclaredMethod("onPrivateMessage", MessageRecord.class));
+        Assert.assertFalse(invoker.getClass().getName().startsWith(InvokerTestBean.class.getName()));
+        invoker.invoke(bean, new MessageRecord("private"));
+        Assert.assertEquals(1, bean.received.size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testExceptionNotWrapped() throws Throwable {
+        ConsumerInvoker invoker = ConsumerInvokerFactory.getInvoker(
+                InvokerTestBean.class.getDeclaredMethod("onError", MessageRecord.class));
+        try {
+            invoker.invoke(new InvokerTestBean(), new MessageRecord("error"));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("error", e.getMessage());
+        }
+    }
+
+    @Test(expected = MqClientException.class)
+    public void testInvalidParameter() throws Throwable {
+        ConsumerInvokerFactory.getInvoker(InvokerTestBean.class.getDeclaredMethod("invalid", String.class));
+    }
+
+    @Test(expected = MqClientException.class)
+    public void testRedeliverNotBoolean() throws Throwable {
+        ConsumerInvokerFactory.getRedeliverInvoker(new InvokerTestBean(), "onMessage");
+    }
+}
+
+/**
+ * 注解消费类
+ */
+class InvokerTestBean {
+
+    final List<MessageRecord> received = new ArrayList<MessageRecord>();
+
+    public void onMessage(MessageRecord message) {
+        received.add(message);
+    }
+
+    public void onMessages(List<MessageRecord> messages) {
+        received.addAll(messages);
+    }
+
+    public boolean checkRedeliver(MessageRecord message) {
+        return "redelivered".equals(message.getMessage());
+    }
+
+    public void onError(MessageRecord message) {
+        throw new IllegalStateException(String.valueOf(message.getMessage()));
+    }
+
+    public void invalid(String message) {
+    }
+
+    private void onPrivateMessage(MessageRecord message) {
+        received.add(message);
+    }
+}
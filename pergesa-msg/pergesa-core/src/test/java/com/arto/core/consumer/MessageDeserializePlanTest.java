@@ -0,0 +1,50 @@
+package com.arto.core.consumer;
+
+import com.arto.core.common.MessageRecord;
+import common.TestMessageBean;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Created by xiong.j on 2017/4/6.
+ */
+public class MessageDeserializePlanTest {
+
+    private static final String PAYLOAD = "{\"businessId\":\"b1\",\"businessType\":\"t1\",\"message\":{\"id\":1,\"name\":\"test\",\"list\":[\"a\",\"b\"]}}";
+
+    @Test
+    public void testListenerPlan() throws Exception {
+        ConsumerConfig config = new ConsumerConfig();
+        config.setListener(new MqListener<TestMessageBean>() {
+            @Override
+            public void onMessage(MessageRecord<TestMessageBean> record) {
+            }
+
+            @Override
+            public boolean checkRedeliver(MessageRecord<TestMessageBean> record) {
+                return false;
+            }
+        });
+        MessageDeserializePlan plan = MessageDeserializePlan.create(config);
+
+        MessageRecord record = plan.deserialize(PAYLOAD);
+        Assert.assertEquals("b1", record.getBusinessId());
+        Assert.assertTrue(record.getMessage() instanceof TestMessageBean);
+        Assert.assertEquals(2, ((TestMessageBean) record.getMessage()).getList().size());
+    }
+
+    @Test
+    public void testMethodPlan() throws Exception {
+        ConsumerConfig config = new ConsumerConfig();
+        config.setBean(this);
+        config.setMethod(MessageDeserializePlanTest.class.getMethod("consume", MessageRecord.class));
+        MessageDeserializePlan plan = MessageDeserializePlan.create(config);
+
+        MessageRecord record = plan.deserialize(PAYLOAD);
+        Assert.assertTrue(record.getMessage() instanceof TestMessageBean);
+        Assert.assertEquals("test", ((TestMessageBean) record.getMessage()).getName());
+    }
+
+    public void consume(MessageRecord<TestMessageBean> message) {
+    }
+}
@@ -0,0 +1,195 @@
+package com.arto.core.consumer.dedup;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Created by xiong.j on 2017/4/27.
+ */
+public class DedupStoreTest {
+
+    @Test
+    public void testBloomFilter() throws Exception {
+        DedupBloomFilter filter = new DedupBloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put(DedupBloomFilter.hash("m:" + i));
+        }
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertTrue(filter.mightContain(DedupBloomFilter.hash("m:" + i)));
+        }
+        int falsePositive = 0;
+        for (int i = 10000; i < 20000; i++) {
+            if (filter.mightContain(DedupBloomFilter.hash("m:" + i))) {
+                falsePositive++;
+            }
+        }
+        // 误判率1%，留出余量
+        Assert.assertTrue("false positive:" + falsePositive, falsePositive < 300);
+    }
+
+    @Test
+    public void testMarkConsumed() throws Exception {
+        DedupStore store = new DedupStore("test", 60000, 1000, 0.01, 100, null);
+        Assert.assertFalse(store.isDuplicate("m:1"));
+        store.markConsumed("m:1");
+        Assert.assertTrue(store.isDuplicate("m:1"));
+        Assert.assertFalse(store.isDuplicate("m:2"));
+        Assert.assertFalse(store.isDuplicate(null));
+    }
+
+    @Test
+    public void testLruEvict() throws Exception {
+        DedupStore store = new DedupStore("test", 60000, 1000, 0.01, 10, null);
+        for (int i = 0; i < 20; i++) {
+            store.markConsumed("m:" + i);
+        }
+        Assert.assertEquals(10, store.size());
+        // 已淘汰且没有持久化存储，按未消费处理
+        Assert.assertFalse(store.isDuplicate("m:0"));
+        Assert.assertTrue(store.isDuplicate("m:19"));
+    }
+
+    @Test
+    public void testRepository() throws Exception {
+        MemoryRepository repository = new MemoryRepository();
+        DedupStore store = new DedupStore("test", 60000, 1000, 0.01, 1, repository);
+        store.markConsumed("m:1");
+        store.markConsumed("m:2");
+        Assert.assertEquals(2, repository.keys.size());
+        Assert.assertEquals(2, repository.saved);
+        // m:1已被LRU淘汰，由持久化存储确认
+        Assert.assertTrue(store.isDuplicate("m:1"));
+        Assert.assertTrue(repository.queried > 0);
+    }
+
+    @Test
+    public void testRepositoryOnLocalMiss() throws Exception {
+        // 其它实例或重启前已消费，本地布隆过滤器和LRU都为空
+        MemoryRepository repository = new MemoryRepository();
+        repository.save("test", Collections.singletonList("m:1"));
+        DedupStore store = new DedupStore("test", 60000, 1000, 0.01, 100, repository);
+        Assert.assertEquals(0, store.size());
+        Assert.assertTrue(store.isDuplicate("m:1"));
+        Assert.assertFalse(store.isDuplicate("m:2"));
+        Assert.assertFalse(store.isDuplicate("m:3"));
+        // 只预热一次，预热后布隆过滤器未命中不再查询持久化存储
+        Assert.assertEquals(1, repository.loaded);
+        Assert.assertEquals(1, repository.queried);
+    }
+
+    @Test
+    public void testMarkConsumedOnce() throws Exception {
+        MemoryRepository repository = new MemoryRepository();
+        DedupStore store = new DedupStore("test", 60000, 1000, 0.01, 100, repository);
+        store.markConsumed("m:1", "b:order:1", null);
+        // 多个标识同一次写入
+        Assert.assertEquals(1, repository.saved);
+        Assert.assertEquals(2, repository.keys.size());
+        Assert.assertTrue(store.isDuplicate("m:1"));
+        Assert.assertTrue(store.isDuplicate("b:order:1"));
+        Assert.assertEquals(0, repository.queried);
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        MemoryRepository repository = new MemoryRepository();
+        DedupStore store = new DedupStore("test", 60000, 1000, 0.01, 100, repository);
+        Assert.assertFalse(store.isDuplicate("m:1"));
+        // 预热后其它实例消费的消息本地无法感知
+        repository.save("test", Collections.singletonList("m:2"));
+        Assert.assertFalse(store.isDuplicate("m:2"));
+        Assert.assertEquals(0, repository.queried);
+        // 分区重新分配后重新预热
+        store.reload();
+        Assert.assertTrue(store.isDuplicate("m:2"));
+        Assert.assertEquals(2, repository.loaded);
+    }
+
+    @Test
+    public void testVerify() throws Exception {
+        MemoryRepository repository = new MemoryRepository();
+        DedupStore store = new DedupStore("test", 60000, 1000, 0.01, 100, repository);
+        Assert.assertFalse(store.isDuplicate("m:1"));
+        repository.save("test", Collections.singletonList("m:1"));
+        // 重投递的消息以持久化存储为准
+        Assert.assertFalse(store.isDuplicate("m:1"));
+        Assert.assertTrue(store.isDuplicate("m:1", true));
+        Assert.assertEquals(1, repository.queried);
+    }
+
+    @Test
+    public void testWarmUpFailed() throws Exception {
+        MemoryRepository repository = new MemoryRepository();
+        repository.save("test", Collections.singletonList("m:1"));
+        repository.loadFailed = true;
+        DedupStore store = new DedupStore("test", 60000, 1000, 0.01, 100, repository);
+        // 预热失败时逐条查询持久化存储，重试间隔内不再预热
+        Assert.assertTrue(store.isDuplicate("m:1"));
+        Assert.assertFalse(store.isDuplicate("m:2"));
+        Assert.assertEquals(1, repository.loaded);
+        Assert.assertEquals(2, repository.queried);
+    }
+
+    @Test
+    public void testTtl() throws Exception {
+        DedupStore store = new DedupStore("test", 50, 1000, 0.01, 100, null);
+        store.markConsumed("m:1");
+        Assert.assertTrue(store.isDuplicate("m:1"));
+        Thread.sleep(120);
+        Assert.assertFalse(store.isDuplicate("m:1"));
+    }
+
+    private static class MemoryRepository implements DedupRepository {
+
+        private final Set<String> keys = new HashSet<String>();
+
+        private int queried;
+
+        private int loaded;
+
+        private int saved;
+
+        private boolean loadFailed;
+
+        @Override
+        public boolean exists(String destination, String key, Timestamp since) {
+            queried++;
+            return keys.contains(destination + key);
+        }
+
+        @Override
+        public int load(String destination, Timestamp since, KeyHandler handler) {
+            loaded++;
+            if (loadFailed) {
+                throw new IllegalStateException("load failed");
+            }
+            int count = 0;
+            for (String key : keys) {
+                if (key.startsWith(destination)) {
+                    handler.handle(key.substring(destination.length()));
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public void save(String destination, List<String> keys) {
+            saved++;
+            for (String key : keys) {
+                this.keys.add(destination + key);
+            }
+        }
+
+        @Override
+        public int deleteBefore(String destination, Timestamp before) {
+            return 0;
+        }
+    }
+}
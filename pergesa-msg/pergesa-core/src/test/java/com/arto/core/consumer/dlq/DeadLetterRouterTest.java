@@ -0,0 +1,133 @@
+package com.arto.core.consumer.dlq;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Created by xiong.j on 2017/4/30.
+ */
+public class DeadLetterRouterTest {
+
+    @Test
+    public void testBatchAndRetry() throws Exception {
+        final List<Integer> batches = new CopyOnWriteArrayList<Integer>();
+        final AtomicInteger calls = new AtomicInteger(0);
+        DeadLetterRouter.register("dlq-batch", new DeadLetterSender() {
+            @Override
+            public String getDefaultName(String destination) {
+                return destination + ".DLQ";
+            }
+
+            @Override
+            public Throwable[] send(List<DeadLetterRecord> records) throws Exception {
+                batches.add(records.size());
+                Throwable[] results = new Throwable[records.size()];
+                // 第一次发送时m0失败，重试后成功
+                if (calls.incrementAndGet() == 1) {
+                    results[0] = new IllegalStateException("broker busy");
+                }
+                return results;
+            }
+        });
+        DeadLetterRouter router = new DeadLetterRouter(16, 10, 200, 3);
+        Callback callback = new Callback(5);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(router.route(record("dlq-batch", "m" + i), callback));
+        }
+        Assert.assertTrue(callback.latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(5, callback.sent.size());
+        Assert.assertEquals(0, callback.failed.get());
+        // 5条合并为一批，失败的1条单独重试
+        Assert.assertEquals("[5, 1]", batches.toString());
+        Assert.assertEquals("test.DLQ", callback.sent.get(0).getDeadLetterDestination());
+        router.destroy();
+    }
+
+    @Test
+    public void testFailedAndClosed() throws Exception {
+        DeadLetterRouter.register("dlq-fail", new DeadLetterSender() {
+            @Override
+            public String getDefaultName(String destination) {
+                return "DLQ." + destination;
+            }
+
+            @Override
+            public Throwable[] send(List<DeadLetterRecord> records) throws Exception {
+                throw new IllegalStateException("broker down");
+            }
+        });
+        DeadLetterRouter router = new DeadLetterRouter(16, 10, 0, 1);
+        Callback callback = new Callback(1);
+        Assert.assertTrue(router.route(record("dlq-fail", "m0"), callback));
+        // 未注册发送实现时由调用方处理
+        Assert.assertFalse(router.route(record("dlq-none", "m1"), callback));
+        Assert.assertTrue(callback.latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, callback.failed.get());
+
+        router.destroy();
+        Assert.assertFalse(router.route(record("dlq-fail", "m2"), callback));
+    }
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        DeadLetterRecord record = new DeadLetterRecord("kafka", "test", "0-12"
+                , new byte[]{(byte) 0xC7, 0, (byte) 0xFF, '{', '"'}, new IllegalStateException("bad"), 3);
+        record.setDeadLetterDestination("test.DLQ");
+        record.setKey("k1");
+        record.setPartition(2);
+        record.setOffset(12);
+
+        DeadLetterRecord decoded = DeadLetterRecord.decode(record.encode());
+
+        // 二进制消息体原样保留
+        Assert.assertArrayEquals(record.getPayload(), decoded.getPayload());
+        Assert.assertEquals("kafka", decoded.getType());
+        Assert.assertEquals("test", decoded.getDestination());
+        Assert.assertEquals("test.DLQ", decoded.getDeadLetterDestination());
+        Assert.assertEquals("0-12", decoded.getMessageId());
+        Assert.assertEquals("k1", decoded.getKey());
+        Assert.assertEquals(2, decoded.getPartition());
+        Assert.assertEquals(12, decoded.getOffset());
+        Assert.assertEquals(3, decoded.getAttempts());
+        Assert.assertEquals("java.lang.IllegalStateException: bad", decoded.getException());
+        Assert.assertEquals(record.getTimestamp(), decoded.getTimestamp());
+    }
+
+    private static DeadLetterRecord record(String type, String messageId) {
+        DeadLetterRecord record = new DeadLetterRecord(type, "test", messageId, new byte[]{1}
+                , new IllegalArgumentException("bad"), 3);
+        Assert.assertEquals("java.lang.IllegalArgumentException: bad", record.getException());
+        return record;
+    }
+
+    private static class Callback implements DeadLetterCallback {
+
+        private final List<DeadLetterRecord> sent = new CopyOnWriteArrayList<DeadLetterRecord>();
+
+        private final AtomicInteger failed = new AtomicInteger(0);
+
+        private final CountDownLatch latch;
+
+        Callback(int count) {
+            this.latch = new CountDownLatch(count);
+        }
+
+        @Override
+        public void onSent(DeadLetterRecord record) {
+            sent.add(record);
+            latch.countDown();
+        }
+
+        @Override
+        public void onFailed(DeadLetterRecord record, Throwable error) {
+            failed.incrementAndGet();
+            latch.countDown();
+        }
+    }
+}
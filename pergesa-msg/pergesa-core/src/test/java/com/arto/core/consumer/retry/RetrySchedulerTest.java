@@ -0,0 +1,243 @@
+package com.arto.core.consumer.retry;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Created by xiong.j on 2017/4/30.
+ */
+public class RetrySchedulerTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private RetryScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        // 8格 * 10毫秒，超过80毫秒的任务需要多轮
+        scheduler = new RetryScheduler(10, 8, 3, DIRECT);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.destroy();
+    }
+
+    @Test
+    public void testScheduleOrder() throws Exception {
+        List<String> fired = new CopyOnWriteArrayList<String>();
+        CountDownLatch latch = new CountDownLatch(3);
+        long start = System.currentTimeMillis();
+        Assert.assertTrue(scheduler.schedule(new RecordTask("c", fired, latch, start, 200), 200));
+        Assert.assertTrue(scheduler.schedule(new RecordTask("a", fired, latch, start, 10), 10));
+        Assert.assertTrue(scheduler.schedule(new RecordTask("b", fired, latch, start, 50), 50));
+        Assert.assertEquals(3, scheduler.getPendingCount());
+
+        Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+        Assert.assertEquals("[a, b, c]", fired.toString());
+        Assert.assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testMaxPending() throws Exception {
+        List<String> fired = new CopyOnWriteArrayList<String>();
+        CountDownLatch latch = new CountDownLatch(3);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(scheduler.schedule(new RecordTask("m" + i, fired, latch, start, 0), 30));
+        }
+        // 超过上限时拒绝，由调用方退回当前线程重试
+        Assert.assertFalse(scheduler.schedule(new RecordTask("m3", fired, latch, start, 0), 30));
+        Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+        Assert.assertTrue(scheduler.schedule(new RecordTask("m4", fired, new CountDownLatch(1), start, 0), 30));
+    }
+
+    @Test
+    public void testRejectedTaskRescheduled() throws Exception {
+        final AtomicInteger submitted = new AtomicInteger(0);
+        final List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+        // 前两次提交时重试线程池已满
+        RetryScheduler rejecting = new RetryScheduler(10, 8, 3, new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                if (submitted.incrementAndGet() <= 2) {
+                    throw new RejectedExecutionException("pool full");
+                }
+                new Thread(command, "retry-worker").start();
+            }
+        });
+        final CountDownLatch latch = new CountDownLatch(1);
+        try {
+            Assert.assertTrue(rejecting.schedule(new RetryTask() {
+                @Override
+                public void onShutdown() {
+                }
+
+                @Override
+                public void run() {
+                    threads.add(Thread.currentThread());
+                    latch.countDown();
+                }
+            }, 10));
+
+            // 被拒绝的任务放回时间轮稍后提交，不在时间轮线程中执行
+            Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+            Assert.assertEquals(3, submitted.get());
+            Assert.assertEquals("retry-worker", threads.get(0).getName());
+            Assert.assertEquals(0, rejecting.getPendingCount());
+        } finally {
+            rejecting.destroy();
+        }
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        final AtomicInteger shutdown = new AtomicInteger(0);
+        RetryTask task = new RetryTask() {
+            @Override
+            public void onShutdown() {
+                shutdown.incrementAndGet();
+            }
+
+            @Override
+            public void run() {
+                Assert.fail("Should not run after shutdown");
+            }
+        };
+        Assert.assertTrue(scheduler.schedule(task, 10000));
+        scheduler.destroy();
+
+        Assert.assertTrue(scheduler.isClosed());
+        Assert.assertEquals(0, scheduler.getPendingCount());
+        Assert.assertEquals(1, shutdown.get());
+        Assert.assertFalse(scheduler.schedule(task, 0));
+    }
+
+    @Test
+    public void testConsumeRetryTask() throws Exception {
+        final CountDownLatch resolved = new CountDownLatch(1);
+        final AtomicInteger consumed = new AtomicInteger(0);
+        final AtomicInteger givenUp = new AtomicInteger(0);
+        // 第三次消费成功
+        new ConsumeRetryTask(scheduler, new RetryPolicy(10, 1, 10, 0, 3), 1) {
+            @Override
+            protected boolean consume() {
+                return consumed.incrementAndGet() == 2;
+            }
+
+            @Override
+            protected boolean giveUp() {
+                givenUp.incrementAndGet();
+                return true;
+            }
+
+            @Override
+            protected void onResolved() {
+                resolved.countDown();
+            }
+
+            @Override
+            public void onShutdown() {
+            }
+        }.start();
+        Assert.assertTrue(resolved.await(2, TimeUnit.SECONDS));
+        Assert.assertEquals(2, consumed.get());
+        Assert.assertEquals(0, givenUp.get());
+    }
+
+    @Test
+    public void testConsumeRetryTaskGiveUp() throws Exception {
+        final CountDownLatch resolved = new CountDownLatch(1);
+        final AtomicInteger consumed = new AtomicInteger(0);
+        final AtomicInteger givenUp = new AtomicInteger(0);
+        // 一直失败，持久化第二次成功
+        new ConsumeRetryTask(scheduler, new RetryPolicy(10, 2, 40, 0, 3), 1) {
+            @Override
+            protected boolean consume() {
+                consumed.incrementAndGet();
+                return false;
+            }
+
+            @Override
+            protected boolean giveUp() {
+                return givenUp.incrementAndGet() == 2;
+            }
+
+            @Override
+            protected void onResolved() {
+                resolved.countDown();
+            }
+
+            @Override
+            public void onShutdown() {
+            }
+        }.start();
+        Assert.assertTrue(resolved.await(2, TimeUnit.SECONDS));
+        Assert.assertEquals(2, consumed.get());
+        Assert.assertEquals(2, givenUp.get());
+    }
+
+    @Test
+    public void testPolicyBackoff() {
+        RetryPolicy policy = new RetryPolicy(100, 2, 1000, 0, 3);
+        Assert.assertEquals(100, policy.nextDelay(1));
+        Assert.assertEquals(200, policy.nextDelay(2));
+        Assert.assertEquals(800, policy.nextDelay(4));
+        Assert.assertEquals(1000, policy.nextDelay(10));
+        Assert.assertEquals(1000, policy.nextDelay(Integer.MAX_VALUE));
+
+        RetryPolicy jitter = new RetryPolicy(100, 2, 1000, 0.2, 3);
+        for (int i = 0; i < 100; i++) {
+            long delay = jitter.nextDelay(2);
+            Assert.assertTrue(delay >= 160 && delay <= 240);
+        }
+    }
+
+    private static class RecordTask implements RetryTask {
+
+        private final String name;
+
+        private final List<String> fired;
+
+        private final CountDownLatch latch;
+
+        private final long start;
+
+        private final long delay;
+
+        RecordTask(String name, List<String> fired, CountDownLatch latch, long start, long delay) {
+            this.name = name;
+            this.fired = fired;
+            this.latch = latch;
+            this.start = start;
+            this.delay = delay;
+        }
+
+        @Override
+        public void run() {
+            // 不会提前执行
+            Assert.assertTrue(System.currentTimeMillis() - start >= delay);
+            fired.add(name);
+            latch.countDown();
+        }
+
+        @Override
+        public void onShutdown() {
+        }
+    }
+}
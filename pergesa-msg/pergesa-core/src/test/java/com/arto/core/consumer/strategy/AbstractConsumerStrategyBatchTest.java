@@ -0,0 +1,231 @@
+package com.arto.core.consumer.strategy;
+
+import com.arto.core.codec.JsonMessageCodec;
+import com.arto.core.common.MessageRecord;
+import com.arto.core.consumer.ConsumerConfig;
+import com.arto.core.consumer.MqBatchListener;
+import com.arto.core.consumer.RawMessageAccessor;
+import com.arto.event.util.PropertiesResolve;
+import com.arto.event.util.SpringContextHolder;
+import common.TestMessageBean;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Created by xiong.j on 2017/4/30.
+ */
+public class AbstractConsumerStrategyBatchTest {
+
+    private static final RawMessageAccessor<RawMessage> ACCESSOR = new RawMessageAccessor<RawMessage>() {
+        @Override
+        public String getMessageId(RawMessage raw) throws Exception {
+            return raw.id;
+        }
+
+        @Override
+        public byte[] getPayload(RawMessage raw) throws Exception {
+            return raw.payload;
+        }
+    };
+
+    private final AbstractConsumerStrategy strategy = new AbstractConsumerStrategy();
+
+    @BeforeClass
+    public static void setUpConfig() {
+        // 配置只从配置文件读取(不开启去重)
+        ConfigurableListableBeanFactory beanFactory = Mockito.mock(ConfigurableListableBeanFactory.class);
+        Mockito.when(beanFactory.getBean(PropertiesResolve.class)).thenReturn(Mockito.mock(PropertiesResolve.class));
+        new SpringContextHolder().postProcessBeanFactory(beanFactory);
+    }
+
+    @Test
+    public void testSplitOnFailure() throws Exception {
+        // m1、m3处理失败
+        TestBatchListener listener = new TestBatchListener("m1", "m3");
+        List<RawMessage> raws = raws("m0", "m1", "m2", "m3", "m4");
+
+        List<RawMessage> failed = strategy.onMessages(config("batch-split", listener), raws, ACCESSOR);
+
+        // 只有失败的消息交给逐条重试，保持原有顺序
+        Assert.assertEquals(Arrays.asList(raws.get(1), raws.get(3)), failed);
+        Assert.assertEquals(Arrays.asList("m0", "m2", "m4"), listener.consumed);
+        // [0-4] -> [0,1] -> [0] [1] ; [2-4] -> [2] [3,4] -> [3] [4]
+        Assert.assertEquals(Arrays.asList(5, 2, 1, 1, 3, 1, 2, 1, 1), listener.batches);
+    }
+
+    @Test
+    public void testOnMessages() throws Exception {
+        TestBatchListener listener = new TestBatchListener();
+        List<RawMessage> raws = raws("m0", "m1", "m2");
+
+        List<RawMessage> failed = strategy.onMessages(config("batch-all", listener), raws, ACCESSOR);
+
+        // 一次调用消费整批，消息按监听器的泛型类型反序列化
+        Assert.assertTrue(failed.isEmpty());
+        Assert.assertEquals(Collections.singletonList(3), listener.batches);
+        Assert.assertEquals(Arrays.asList("m0", "m1", "m2"), listener.consumed);
+        Assert.assertEquals("m1", listener.records.get(1).getMessageId());
+        Assert.assertEquals("b1", listener.records.get(1).getBusinessId());
+    }
+
+    @Test
+    public void testDeserializeFailureRetriedAlone() throws Exception {
+        TestBatchListener listener = new TestBatchListener();
+        List<RawMessage> raws = raws("m0", "m1", "m2");
+        raws.get(1).payload = "not json".getBytes("UTF-8");
+
+        List<RawMessage> failed = strategy.onMessages(config("batch-deserialize", listener), raws, ACCESSOR);
+
+        Assert.assertEquals(Collections.singletonList(raws.get(1)), failed);
+        Assert.assertEquals(Collections.singletonList(2), listener.batches);
+        Assert.assertEquals(Arrays.asList("m0", "m2"), listener.consumed);
+    }
+
+    @Test
+    public void testFilterRedelivered() throws Exception {
+        TestBatchListener listener = new TestBatchListener();
+        listener.redelivered.add("m1");
+        List<RawMessage> raws = raws("m0", "m1", "m2");
+
+        List<RawMessage> failed = strategy.onMessages(config("batch-filter", listener), raws, ACCESSOR);
+
+        // 已处理过的消息不再交给onMessages，也不算失败
+        Assert.assertTrue(failed.isEmpty());
+        Assert.assertEquals(Collections.singletonList(3), listener.filtered);
+        Assert.assertEquals(Arrays.asList("m0", "m2"), listener.consumed);
+    }
+
+    @Test
+    public void testFilterRedeliveredFailed() throws Exception {
+        TestBatchListener listener = new TestBatchListener();
+        listener.filterError = true;
+        List<RawMessage> raws = raws("m0", "m1");
+
+        List<RawMessage> failed = strategy.onMessages(config("batch-filter-error", listener), raws, ACCESSOR);
+
+        // 批量去重失败时整批逐条处理
+        Assert.assertEquals(raws, failed);
+        Assert.assertTrue(listener.batches.isEmpty());
+    }
+
+    @Test
+    public void testSingleRetryUseBatchListener() throws Exception {
+        TestBatchListener listener = new TestBatchListener();
+        listener.redelivered.add("m1");
+        ConsumerConfig config = config("batch-single", listener);
+        MessageRecord<TestMessageBean> m0 = record("m0");
+        MessageRecord<TestMessageBean> m1 = record("m1");
+
+        // 逐条重试时按单条消息的批次去重、消费
+        Assert.assertFalse(strategy.checkRedeliver(config, m0));
+        Assert.assertTrue(strategy.checkRedeliver(config, m1));
+        strategy.onMessage(config, m0);
+        Assert.assertEquals(Collections.singletonList(1), listener.batches);
+        Assert.assertEquals(Collections.singletonList("m0"), listener.consumed);
+    }
+
+    private ConsumerConfig config(String destination, MqBatchListener listener) {
+        ConsumerConfig config = new ConsumerConfig();
+        config.setDestination(destination);
+        config.setBatch(true);
+        config.setBatchListener(listener);
+        return config;
+    }
+
+    private List<RawMessage> raws(String... ids) {
+        JsonMessageCodec codec = new JsonMessageCodec();
+        List<RawMessage> raws = new ArrayList<RawMessage>(ids.length);
+        for (String id : ids) {
+            raws.add(new RawMessage(id, codec.encode(record(id))));
+        }
+        return raws;
+    }
+
+    private MessageRecord<TestMessageBean> record(String id) {
+        TestMessageBean bean = new TestMessageBean();
+        bean.setName(id);
+        MessageRecord<TestMessageBean> record
+                = new MessageRecord<TestMessageBean>("b" + id.substring(1), "t", bean);
+        record.setMessageId(id);
+        return record;
+    }
+
+    /**
+     * 原始消息
+     */
+    private static class RawMessage {
+
+        final String id;
+
+        byte[] payload;
+
+        RawMessage(String id, byte[] payload) {
+            this.id = id;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * 批次中包含指定消息时失败的批量监听器
+     */
+    private static class TestBatchListener implements MqBatchListener<TestMessageBean> {
+
+        final List<String> failures;
+
+        final List<String> redelivered = new ArrayList<String>();
+
+        /** 每次调用onMessages的批次大小 */
+        final List<Integer> batches = new ArrayList<Integer>();
+
+        /** 每次调用filterRedelivered的批次大小 */
+        final List<Integer> filtered = new ArrayList<Integer>();
+
+        final List<String> consumed = new ArrayList<String>();
+
+        final List<MessageRecord<TestMessageBean>> records = new ArrayList<MessageRecord<TestMessageBean>>();
+
+        boolean filterError = false;
+
+        TestBatchListener(String... failures) {
+            this.failures = Arrays.asList(failures);
+        }
+
+        @Override
+        public void onMessages(List<MessageRecord<TestMessageBean>> messages) {
+            batches.add(messages.size());
+            for (MessageRecord<TestMessageBean> message : messages) {
+                if (failures.contains(message.getMessage().getName())) {
+                    throw new IllegalStateException("failed:" + message.getMessage().getName());
+                }
+            }
+            // 整批成功才算消费
+            for (MessageRecord<TestMessageBean> message : messages) {
+                consumed.add(message.getMessage().getName());
+                records.add(message);
+            }
+        }
+
+        @Override
+        public List<MessageRecord<TestMessageBean>> filterRedelivered(List<MessageRecord<TestMessageBean>> messages) {
+            filtered.add(messages.size());
+            if (filterError) {
+                throw new IllegalStateException("filter failed");
+            }
+            List<MessageRecord<TestMessageBean>> result = new ArrayList<MessageRecord<TestMessageBean>>();
+            for (MessageRecord<TestMessageBean> message : messages) {
+                if (!redelivered.contains(message.getMessage().getName())) {
+                    result.add(message);
+                }
+            }
+            return result;
+        }
+    }
+}
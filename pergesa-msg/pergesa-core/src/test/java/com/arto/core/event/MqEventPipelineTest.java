@@ -0,0 +1,111 @@
+package com.arto.core.event;
+
+import com.arto.core.common.DataPipeline;
+import com.arto.core.common.MessagePriorityEnum;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by xiong.j on 2017/4/28.
+ */
+public class MqEventPipelineTest {
+
+    @Test
+    public void testLaneCapacity() throws Exception {
+        MqEventPipeline pipeline = newPipeline(4, 8, 4, 1);
+        // 低优先级通道满了不影响高优先级通道
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(pipeline.offer(newEvent(MessagePriorityEnum.LOW)));
+        }
+        Assert.assertFalse(pipeline.offer(newEvent(MessagePriorityEnum.LOW)));
+        Assert.assertTrue(pipeline.offer(newEvent(MessagePriorityEnum.HIGH)));
+        Assert.assertEquals(5, pipeline.size());
+        Assert.assertEquals(12, pipeline.capacity());
+        Assert.assertEquals(1, pipeline.getRejectedCount());
+        Assert.assertEquals(4, pipeline.getLane(MessagePriorityEnum.LOW).size());
+    }
+
+    @Test
+    public void testWeightedDrain() throws Exception {
+        MqEventPipeline pipeline = newPipeline(64, 8, 4, 1);
+        for (int i = 0; i < 32; i++) {
+            pipeline.offer(newEvent(MessagePriorityEnum.LOW));
+            pipeline.offer(newEvent(MessagePriorityEnum.HIGH));
+        }
+        List<MqEvent> batch = new ArrayList<MqEvent>();
+        Assert.assertEquals(13, pipeline.drainTo(batch, 13));
+        // 高优先级份额8条，低优先级份额1条，剩余空间由高优先级补足
+        Assert.assertEquals(MessagePriorityEnum.HIGH.getCode(), batch.get(0).getPriority());
+        Assert.assertEquals(MessagePriorityEnum.LOW.getCode(), batch.get(8).getPriority());
+        int high = 0;
+        for (MqEvent event : batch) {
+            if (event.getPriority() == MessagePriorityEnum.HIGH.getCode()) {
+                high++;
+            }
+        }
+        Assert.assertEquals(12, high);
+    }
+
+    @Test
+    public void testNoStarvation() throws Exception {
+        MqEventPipeline pipeline = newPipeline(64, 8, 4, 1);
+        for (int i = 0; i < 26; i++) {
+            pipeline.offer(newEvent(MessagePriorityEnum.HIGH));
+        }
+        pipeline.offer(newEvent(MessagePriorityEnum.LOW));
+        // 逐条取出时按权重轮转，13条内必然取到低优先级消息
+        boolean low = false;
+        for (int i = 0; i < 13; i++) {
+            if (pipeline.poll().getPriority() == MessagePriorityEnum.LOW.getCode()) {
+                low = true;
+            }
+        }
+        Assert.assertTrue(low);
+    }
+
+    @Test
+    public void testOfferBatchAndPoll() throws Exception {
+        MqEventPipeline pipeline = newPipeline(2, 8, 4, 1);
+        List<MqEvent> list = new ArrayList<MqEvent>();
+        list.add(newEvent(MessagePriorityEnum.HIGH));
+        list.add(newEvent(MessagePriorityEnum.MEDIUM));
+        list.add(newEvent(MessagePriorityEnum.MEDIUM));
+        list.add(newEvent(MessagePriorityEnum.MEDIUM));
+        list.add(newEvent(MessagePriorityEnum.LOW));
+        // 中优先级通道只有2个空槽，第4条失败后停止
+        Assert.assertEquals(3, pipeline.offerBatch(list));
+        Assert.assertEquals(3, pipeline.size());
+
+        final MqEventPipeline empty = newPipeline(2, 8, 4, 1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                empty.offer(newEvent(MessagePriorityEnum.LOW));
+            }
+        }).start();
+        Assert.assertNotNull(empty.poll(5, TimeUnit.SECONDS));
+        Assert.assertNull(empty.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MqEventPipeline newPipeline(int size, int high, int medium, int low) {
+        DataPipeline<MqEvent>[] lanes = new DataPipeline[]{new DataPipeline<MqEvent>(size)
+                , new DataPipeline<MqEvent>(size), new DataPipeline<MqEvent>(size)};
+        return new MqEventPipeline(lanes, new int[]{high, medium, low});
+    }
+
+    private static MqEvent newEvent(MessagePriorityEnum priority) {
+        MqEvent event = new MqEvent();
+        event.setPriority(priority.getCode());
+        return event;
+    }
+}
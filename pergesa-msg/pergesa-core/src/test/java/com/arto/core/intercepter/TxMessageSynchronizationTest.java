@@ -0,0 +1,280 @@
+package com.arto.core.intercepter;
+
+import com.arto.core.bootstrap.MqClient;
+import com.arto.core.common.DataPipeline;
+import com.arto.core.event.MqEvent;
+import com.arto.core.event.MqEventPipeline;
+import com.arto.event.bootstrap.EventContext;
+import com.arto.event.service.PersistentEventService;
+import com.arto.event.storage.EventInfo;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created by xiong.j on 2017/4/30.
+ */
+public class TxMessageSynchronizationTest {
+
+    private static final String TYPE = "tx-test";
+
+    private PersistentEventService service;
+
+    private MqEventPipeline pipeline;
+
+    /** persistPrepared调用时传入的记录(调用后会被清空，需复制) */
+    private final List<List<EventInfo>> persisted = new ArrayList<List<EventInfo>>();
+
+    /** persistPrepared调用时管道中的消息数 */
+    private final List<Integer> pipelineSizes = new ArrayList<Integer>();
+
+    private TransactionTemplate required;
+
+    private TransactionTemplate requiresNew;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        service = Mockito.mock(PersistentEventService.class);
+        Mockito.doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                persisted.add(new ArrayList<EventInfo>((List<EventInfo>) invocation.getArguments()[0]));
+                pipelineSizes.add(pipeline.size());
+                return null;
+            }
+        }).when(service).persistPrepared(Matchers.anyListOf(EventInfo.class));
+        setStaticField(TxMessageSynchronization.class, "service", service);
+
+        DataPipeline<MqEvent>[] lanes = new DataPipeline[]{new DataPipeline<MqEvent>(16)
+                , new DataPipeline<MqEvent>(16), new DataPipeline<MqEvent>(16)};
+        pipeline = new MqEventPipeline(lanes, new int[]{1, 1, 1});
+        pipelines().put(TYPE, pipeline);
+
+        TestTransactionManager transactionManager = new TestTransactionManager();
+        required = new TransactionTemplate(transactionManager);
+        requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pipelines().remove(TYPE);
+        setStaticField(TxMessageSynchronization.class, "service", null);
+    }
+
+    @Test
+    public void testNotInTransaction() throws Exception {
+        Assert.assertNull(TxMessageSynchronization.register());
+    }
+
+    @Test
+    public void testBeforeCommitAndAfterCommit() throws Exception {
+        final MqEvent pending1 = event("p1");
+        final MqEvent pending2 = event("p2");
+        final MqEvent persistent = event("m1");
+        required.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                TxMessageSynchronization synchronization = TxMessageSynchronization.register();
+                // 每个事务只注册一次
+                Assert.assertSame(synchronization, TxMessageSynchronization.register());
+                synchronization.addPendingMessages(Arrays.asList(pending1, pending2));
+                synchronization.addMessage(persistent);
+            }
+        });
+
+        // 提交前一次插入延迟持久化的记录，此时还未发送
+        Assert.assertEquals(Collections.singletonList(rows(pending1, pending2)), persisted);
+        Assert.assertEquals(Collections.singletonList(0), pipelineSizes);
+        // 提交后按加入顺序进入发送管道
+        Assert.assertEquals(Arrays.asList(pending1, pending2, persistent), drain());
+    }
+
+    @Test
+    public void testRollback() throws Exception {
+        required.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                TxMessageSynchronization.register().addPendingMessage(event("p1"));
+                TxMessageSynchronization.register().addMessage(event("m1"));
+                status.setRollbackOnly();
+            }
+        });
+
+        // 回滚时不插入、不发送
+        Mockito.verify(service, Mockito.never()).persistPrepared(Matchers.anyListOf(EventInfo.class));
+        Assert.assertTrue(drain().isEmpty());
+
+        // 同一线程的下一个事务不会带上已回滚的消息
+        final MqEvent next = event("p2");
+        required.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                TxMessageSynchronization.register().addPendingMessage(next);
+            }
+        });
+        Assert.assertEquals(Collections.singletonList(rows(next)), persisted);
+        Assert.assertEquals(Collections.singletonList(next), drain());
+    }
+
+    @Test
+    public void testRequiresNew() throws Exception {
+        final MqEvent outer = event("outer");
+        final MqEvent inner = event("inner");
+        final MqEvent outerAfter = event("outer-after");
+        required.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                final TxMessageSynchronization outerSynchronization = TxMessageSynchronization.register();
+                outerSynchronization.addPendingMessage(outer);
+                requiresNew.execute(new TransactionCallbackWithoutResult() {
+                    @Override
+                    protected void doInTransactionWithoutResult(TransactionStatus status) {
+                        // 新事务单独注册
+                        TxMessageSynchronization innerSynchronization = TxMessageSynchronization.register();
+                        Assert.assertNotSame(outerSynchronization, innerSynchronization);
+                        innerSynchronization.addPendingMessage(inner);
+                    }
+                });
+                // 新事务只插入、发送自己的消息
+                Assert.assertEquals(Collections.singletonList(rows(inner)), persisted);
+                Assert.assertEquals(Collections.singletonList(inner), drain());
+                // 外层事务恢复后继续使用原来的回调
+                Assert.assertSame(outerSynchronization, TxMessageSynchronization.register());
+                outerSynchronization.addPendingMessage(outerAfter);
+            }
+        });
+
+        // 外层事务的消息在外层提交时插入、发送
+        Assert.assertEquals(Arrays.asList(rows(inner), rows(outer, outerAfter)), persisted);
+        Assert.assertEquals(Arrays.asList(outer, outerAfter), drain());
+    }
+
+    @Test
+    public void testRequiresNewThenOuterRollback() throws Exception {
+        final MqEvent outer = event("outer");
+        final MqEvent inner = event("inner");
+        required.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                TxMessageSynchronization.register().addPendingMessage(outer);
+                requiresNew.execute(new TransactionCallbackWithoutResult() {
+                    @Override
+                    protected void doInTransactionWithoutResult(TransactionStatus status) {
+                        TxMessageSynchronization.register().addPendingMessage(inner);
+                    }
+                });
+                status.setRollbackOnly();
+            }
+        });
+
+        // 外层回滚，外层的记录不会随新事务提交
+        Assert.assertEquals(Collections.singletonList(rows(inner)), persisted);
+        Assert.assertEquals(Collections.singletonList(inner), drain());
+    }
+
+    private MqEvent event(String businessId) {
+        MqEvent event = new MqEvent();
+        event.setType(TYPE);
+        event.setBusinessId(businessId);
+        EventInfo eventInfo = new EventInfo();
+        eventInfo.setBusinessId(businessId);
+        event.setEventContext(new EventContext(eventInfo));
+        return event;
+    }
+
+    private List<EventInfo> rows(MqEvent... events) {
+        List<EventInfo> rows = new ArrayList<EventInfo>(events.length);
+        for (MqEvent event : events) {
+            rows.add(event.getEventContext().getEventInfo());
+        }
+        return rows;
+    }
+
+    private List<MqEvent> drain() {
+        List<MqEvent> events = new ArrayList<MqEvent>();
+        pipeline.drainTo(events, 100);
+        return events;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, MqEventPipeline> pipelines() throws Exception {
+        Field field = MqClient.class.getDeclaredField("pipelineMap");
+        field.setAccessible(true);
+        return (Map<String, MqEventPipeline>) field.get(null);
+    }
+
+    private static void setStaticField(Class<?> clazz, String name, Object value) throws Exception {
+        Field field = clazz.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(null, value);
+    }
+
+    /**
+     * 只记录当前事务的事务管理器，按Spring的方式挂起、恢复事务同步
+     */
+    private static class TestTransactionManager extends AbstractPlatformTransactionManager {
+
+        /** 当前线程中的活动事务 */
+        private final ThreadLocal<Object> current = new ThreadLocal<Object>();
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected boolean isExistingTransaction(Object transaction) {
+            return current.get() != null;
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            current.set(transaction);
+        }
+
+        @Override
+        protected Object doSuspend(Object transaction) {
+            Object suspended = current.get();
+            current.remove();
+            return suspended;
+        }
+
+        @Override
+        protected void doResume(Object transaction, Object suspendedResources) {
+            current.set(suspendedResources);
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doCleanupAfterCompletion(Object transaction) {
+            current.remove();
+        }
+    }
+}
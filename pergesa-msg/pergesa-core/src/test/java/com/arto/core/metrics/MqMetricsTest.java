@@ -0,0 +1,112 @@
+package com.arto.core.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * Created by xiong.j on 2017/4/20.
+ */
+public class MqMetricsTest {
+
+    @Test
+    public void testCounterAndTimer() throws Exception {
+        MqMetrics.counter("test_counter_total", "destination", "t1").inc();
+        MqMetrics.counter("test_counter_total", "destination", "t1").inc(2);
+        MqMetrics.counter("test_counter_total", "destination", "t2").inc();
+        MqMetrics.timer("test_latency_seconds").update(3000000000L);
+        MqMetrics.timer("test_latency_seconds").update(1000000000L);
+
+        Map<MetricName, Double> snapshot = MqMetrics.snapshot();
+        Assert.assertEquals(3d, snapshot.get(new MetricName("test_counter_total", "destination", "t1")), 0);
+        Assert.assertEquals(1d, snapshot.get(new MetricName("test_counter_total", "destination", "t2")), 0);
+        Assert.assertEquals(2d, snapshot.get(new MetricName("test_latency_seconds_count")), 0);
+        Assert.assertEquals(4d, snapshot.get(new MetricName("test_latency_seconds_sum")), 0.0001);
+        Assert.assertEquals(3d, snapshot.get(new MetricName("test_latency_seconds_max")), 0.0001);
+    }
+
+    @Test
+    public void testGaugeAndSource() throws Exception {
+        MqMetrics.gauge(new Gauge() {
+            @Override
+            public double getValue() {
+                return 7;
+            }
+        }, "test_depth", "type", "kafka");
+        MqMetrics.register("test-source", new MetricSource() {
+            @Override
+            public void collect(Map<MetricName, Double> metrics) {
+                metrics.put(new MetricName("test-source.rate", "client-id", "c1"), 1.5);
+            }
+        });
+
+        Map<MetricName, Double> snapshot = MqMetrics.snapshot();
+        Assert.assertEquals(7d, snapshot.get(new MetricName("test_depth", "type", "kafka")), 0);
+        // 名称中不支持的字符替换为下划线
+        Assert.assertEquals(1.5d, snapshot.get(new MetricName("test_source_rate", "client_id", "c1")), 0);
+
+        MqMetrics.unregister("test-source");
+        Assert.assertNull(MqMetrics.snapshot().get(new MetricName("test_source_rate", "client_id", "c1")));
+    }
+
+    @Test
+    public void testPrometheusFormat() throws Exception {
+        MqMetrics.counter("test_format_total", "destination", "a\"b\\c").inc();
+        StringWriter writer = new StringWriter();
+        MqMetrics.writePrometheus(writer);
+        Assert.assertTrue(writer.toString().contains("test_format_total{destination=\"a\\\"b\\\\c\"} 1.0\n"));
+    }
+
+    @Test
+    public void testPrometheusType() throws Exception {
+        MqMetrics.counter("test_type_total", "destination", "t1").inc();
+        MqMetrics.timer("test_type_seconds", "destination", "t1").update(1000000000L);
+        MqMetrics.gauge(new Gauge() {
+            @Override
+            public double getValue() {
+                return 2;
+            }
+        }, "test_type_depth");
+        StringWriter writer = new StringWriter();
+        MqMetrics.writePrometheus(writer);
+        String text = writer.toString();
+        Assert.assertTrue(text.contains("# TYPE test_type_total counter\ntest_type_total{destination=\"t1\"} 1.0\n"));
+        // summary的_count和_sum连续输出，_max单独作为gauge
+        Assert.assertTrue(text.contains("# TYPE test_type_seconds summary\n"
+                + "test_type_seconds_count{destination=\"t1\"} 1.0\n"
+                + "test_type_seconds_sum{destination=\"t1\"} 1.0\n"));
+        Assert.assertTrue(text.contains("# TYPE test_type_seconds_max gauge\ntest_type_seconds_max{destination=\"t1\"} 1.0\n"));
+        Assert.assertTrue(text.contains("# TYPE test_type_depth gauge\ntest_type_depth 2.0\n"));
+    }
+
+    @Test
+    public void testDestinationMetrics() throws Exception {
+        DestinationMetrics metrics = MqMetrics.destination("kafka", "test_dest");
+        Assert.assertSame(metrics, MqMetrics.destination("kafka", "test_dest"));
+        // 缓存的指标与注册中心中的为同一个
+        Assert.assertSame(metrics.counter("test_dest_total"), metrics.counter("test_dest_total"));
+        Assert.assertSame(MqMetrics.counter("test_dest_total", "type", "kafka", "destination", "test_dest")
+                , metrics.counter("test_dest_total"));
+
+        MqMetrics.recordSend("kafka", "test_dest", 2, System.nanoTime(), new Exception());
+        Map<MetricName, Double> snapshot = MqMetrics.snapshot();
+        Assert.assertEquals(1d, snapshot.get(new MetricName("mq_send_errors_total"
+                , "type", "kafka", "destination", "test_dest", "priority", "2")), 0);
+        Assert.assertEquals(1d, snapshot.get(new MetricName("mq_send_latency_seconds_count"
+                , "type", "kafka", "destination", "test_dest", "priority", "2")), 0);
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        MqMetrics.counter("test_jmx_total").inc();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(MqMetrics.JMX_NAME);
+        Assert.assertTrue(server.isRegistered(objectName));
+        Assert.assertEquals(1d, (Double) server.getAttribute(objectName, "test_jmx_total"), 0);
+    }
+}
@@ -0,0 +1,127 @@
+package com.arto.core.producer;
+
+import com.arto.core.common.DataPipeline;
+import com.arto.core.event.MqEvent;
+import com.arto.core.event.MqEventPipeline;
+import com.arto.event.bootstrap.Event;
+import com.arto.event.exception.PersistentEventLockException;
+import com.arto.event.service.EventAdviceService;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Created by xiong.j on 2017/4/30.
+ */
+public class AbstractTxMessageSenderTest {
+
+    private PlatformTransactionManager transactionManager;
+
+    private EventAdviceService service;
+
+    /** 按开始顺序记录的事务 */
+    private final List<TransactionDefinition> definitions = new ArrayList<TransactionDefinition>();
+
+    private final List<SimpleTransactionStatus> statuses = new ArrayList<SimpleTransactionStatus>();
+
+    /** 实际发送的消息 */
+    private final List<MqEvent> sent = new ArrayList<MqEvent>();
+
+    private AbstractTxMessageSender sender;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        transactionManager = Mockito.mock(PlatformTransactionManager.class);
+        Mockito.when(transactionManager.getTransaction(Matchers.any(TransactionDefinition.class)))
+                .thenAnswer(new Answer<TransactionStatus>() {
+                    @Override
+                    public TransactionStatus answer(InvocationOnMock invocation) throws Throwable {
+                        definitions.add((TransactionDefinition) invocation.getArguments()[0]);
+                        SimpleTransactionStatus status = new SimpleTransactionStatus();
+                        statuses.add(status);
+                        return status;
+                    }
+                });
+        service = Mockito.mock(EventAdviceService.class);
+        DataPipeline<MqEvent>[] lanes = new DataPipeline[]{new DataPipeline<MqEvent>(16)
+                , new DataPipeline<MqEvent>(16), new DataPipeline<MqEvent>(16)};
+        sender = new AbstractTxMessageSender("test", "test", new MqEventPipeline(lanes, new int[]{1, 1, 1}), 1, 10) {
+            @Override
+            protected Throwable[] send(String destination, List<MqEvent> events) {
+                sent.addAll(events);
+                return new Throwable[events.size()];
+            }
+        };
+        sender.setService(service);
+        sender.setTransactionManager(transactionManager);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testClaimAndFinishInOneTransaction() throws Exception {
+        List<MqEvent> events = Arrays.asList(event("t"), event("t"));
+        Mockito.when(service.before(events)).thenReturn(events);
+
+        sender.sendGroup("t", events);
+
+        Assert.assertEquals(events, sent);
+        // 外层事务中加锁(保存点)后发送，批量更新状态后才提交
+        InOrder inOrder = Mockito.inOrder(transactionManager, service);
+        inOrder.verify(transactionManager).getTransaction(Matchers.any(TransactionDefinition.class));
+        inOrder.verify(service).before(events);
+        inOrder.verify(service).after(events);
+        inOrder.verify(transactionManager).commit(statuses.get(0));
+        Assert.assertEquals(TransactionDefinition.PROPAGATION_REQUIRED, definitions.get(0).getPropagationBehavior());
+        Assert.assertEquals(TransactionDefinition.PROPAGATION_NESTED, definitions.get(1).getPropagationBehavior());
+        Assert.assertFalse(statuses.get(0).isRollbackOnly());
+        Mockito.verify(transactionManager, Mockito.never()).rollback(Matchers.any(TransactionStatus.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBulkLockFallbackToSavepoints() throws Exception {
+        MqEvent locked = event("t");
+        MqEvent busy = event("t");
+        List<MqEvent> events = Arrays.asList(locked, busy);
+        PersistentEventLockException lockError = new PersistentEventLockException(new Exception("could not obtain lock"));
+        Mockito.when(service.before(events)).thenThrow(lockError);
+        Mockito.when(service.before((Event) busy)).thenThrow(lockError);
+
+        sender.sendGroup("t", events);
+
+        // 只发送取到锁的消息，取不到锁的交给失败处理
+        Assert.assertEquals(Collections.singletonList(locked), sent);
+        Mockito.verify(service).before((Event) locked);
+        Mockito.verify(service).fail(busy, lockError);
+        Mockito.verify(service).after(Collections.singletonList(locked));
+        // 外层事务 + 批量加锁、两次逐条加锁的保存点
+        Assert.assertEquals(4, statuses.size());
+        Assert.assertFalse(statuses.get(0).isRollbackOnly());
+        Assert.assertTrue(statuses.get(1).isRollbackOnly());
+        Assert.assertFalse(statuses.get(2).isRollbackOnly());
+        Assert.assertTrue(statuses.get(3).isRollbackOnly());
+        // 外层事务正常提交，状态更新与行锁同时结束
+        Mockito.verify(transactionManager).commit(statuses.get(0));
+    }
+
+    private MqEvent event(String destination) {
+        MqEvent event = new MqEvent();
+        event.setDestination(destination);
+        return event;
+    }
+}
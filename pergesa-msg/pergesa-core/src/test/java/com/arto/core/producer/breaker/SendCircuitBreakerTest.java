@@ -0,0 +1,79 @@
+package com.arto.core.producer.breaker;
+
+import com.arto.core.common.CircuitStateEnum;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Created by xiong.j on 2017/4/29.
+ */
+public class SendCircuitBreakerTest {
+
+    @Test
+    public void testOpenOnErrorRate() throws Exception {
+        SendCircuitBreaker breaker = new SendCircuitBreaker("test", 10000, 10, 50, 3000, 80, 100, 2);
+        for (int i = 0; i < 9; i++) {
+            breaker.record(1000, true);
+        }
+        // 请求数不足时不熔断
+        Assert.assertEquals(CircuitStateEnum.CLOSED, breaker.getState());
+        breaker.record(1000, true);
+        Assert.assertEquals(CircuitStateEnum.OPEN, breaker.getState());
+        Assert.assertTrue(breaker.isOpen());
+        Assert.assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void testOpenOnSlowRate() throws Exception {
+        SendCircuitBreaker breaker = new SendCircuitBreaker("test", 10000, 10, 50, 1, 80, 100, 2);
+        for (int i = 0; i < 10; i++) {
+            breaker.record(2000000L, false);
+        }
+        Assert.assertEquals(CircuitStateEnum.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testHalfOpen() throws Exception {
+        SendCircuitBreaker breaker = new SendCircuitBreaker("test", 10000, 1, 50, 3000, 80, 50, 2);
+        breaker.record(1000, true);
+        Assert.assertFalse(breaker.allowRequest());
+        Thread.sleep(80);
+        Assert.assertFalse(breaker.isOpen());
+
+        // 只放行2个探测请求
+        Assert.assertTrue(breaker.allowRequest());
+        Assert.assertEquals(CircuitStateEnum.HALF_OPEN, breaker.getState());
+        Assert.assertTrue(breaker.allowRequest());
+        Assert.assertFalse(breaker.allowRequest());
+
+        // 探测失败，重新熔断
+        breaker.record(1000, true);
+        Assert.assertEquals(CircuitStateEnum.OPEN, breaker.getState());
+        Assert.assertFalse(breaker.allowRequest());
+
+        // 探测全部成功后恢复
+        Thread.sleep(80);
+        Assert.assertTrue(breaker.allowRequest());
+        Assert.assertTrue(breaker.allowRequest());
+        breaker.record(1000, false);
+        Assert.assertEquals(CircuitStateEnum.HALF_OPEN, breaker.getState());
+        breaker.record(1000, false);
+        Assert.assertEquals(CircuitStateEnum.CLOSED, breaker.getState());
+        Assert.assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void testRetryBudget() throws Exception {
+        RetryBudget budget = new RetryBudget(2);
+        Assert.assertTrue(budget.tryAcquire());
+        Assert.assertTrue(budget.tryAcquire());
+        Assert.assertFalse(budget.tryAcquire());
+        Assert.assertEquals(1, budget.getRejectedCount());
+        budget.release();
+        Assert.assertTrue(budget.tryAcquire());
+        // 不限制
+        budget.setMax(0);
+        Assert.assertTrue(budget.tryAcquire());
+        Assert.assertEquals(3, budget.getInUse());
+    }
+}
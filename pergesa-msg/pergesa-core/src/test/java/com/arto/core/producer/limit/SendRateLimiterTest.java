@@ -0,0 +1,64 @@
+package com.arto.core.producer.limit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Created by xiong.j on 2017/4/28.
+ */
+public class SendRateLimiterTest {
+
+    @Test
+    public void testUnlimited() throws Exception {
+        SendRateLimiter limiter = new SendRateLimiter("test", "unlimited", "high", 0);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 10000; i++) {
+            limiter.acquire();
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+        Assert.assertFalse(limiter.tryStartAdjust(0));
+    }
+
+    @Test
+    public void testAcquire() throws Exception {
+        SendRateLimiter limiter = new SendRateLimiter("test", "limited", "low", 20);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 11; i++) {
+            limiter.acquire();
+        }
+        // 每秒20条，11条至少需要500毫秒
+        Assert.assertTrue(System.currentTimeMillis() - start >= 450);
+    }
+
+    @Test
+    public void testAdjust() throws Exception {
+        SendRateLimiter limiter = new SendRateLimiter("test", "adaptive", "medium", 100);
+        // 耗时超过阈值，乘性降低
+        limiter.record(300000000L, false);
+        limiter.adjust(200, 0.1, 0);
+        Assert.assertEquals(70, limiter.getCurrentRate(), 0.001);
+        // Broker限流，继续降低
+        limiter.record(1000000L, false);
+        limiter.adjust(200, 0.1, 5);
+        Assert.assertEquals(49, limiter.getCurrentRate(), 0.001);
+        // 恢复后按基准速率的10%加回
+        limiter.record(1000000L, false);
+        limiter.adjust(200, 0.1, 0);
+        Assert.assertEquals(59, limiter.getCurrentRate(), 0.001);
+        // 没有发送时不调整
+        limiter.adjust(200, 0.1, 0);
+        Assert.assertEquals(59, limiter.getCurrentRate(), 0.001);
+
+        // 不低于最低比例
+        for (int i = 0; i < 20; i++) {
+            limiter.record(1000000L, true);
+            limiter.adjust(200, 0.1, 0);
+        }
+        Assert.assertEquals(10, limiter.getCurrentRate(), 0.001);
+
+        // 配置变化时重置
+        limiter.setRate(200);
+        Assert.assertEquals(200, limiter.getCurrentRate(), 0.001);
+        Assert.assertEquals(200, limiter.getBaseRate(), 0.001);
+    }
+}
@@ -19,6 +19,7 @@ import com.arto.core.bootstrap.MqClient;
 import com.arto.core.common.MessagePriorityEnum;
 import com.arto.core.common.MessageRecord;
 import com.arto.core.common.MqTypeEnum;
+import com.arto.core.consumer.ConsumerInvokerFactory;
 import com.arto.core.exception.MqClientException;
 import com.arto.core.producer.MqCallback;
 import com.arto.core.producer.MqProducer;
@@ -104,7 +105,8 @@ public class KafkaAnnotationParse implements MqParseStrategy {
         if (types.length != 1 && !MessageRecord.class.isAssignableFrom(types[0].getClass())) {
             throw new MqClientException("@Consumer's method [" + method + "] should only have 1 parameter and which type supposed to be MessageRecord<?>");
         }
-        if (!method.getParameterTypes()[0].equals(MessageRecord.class)) {
+        // 批量消费的参数为List<MessageRecord<?>>，由ConsumerInvokerFactory检查
+        if (!annotation.batch() && !method.getParameterTypes()[0].equals(MessageRecord.class)) {
             throw new MqClientException("@Consumer's method [" + method + "] should only to be MessageRecord<?> ");
         }
 
@@ -135,8 +137,29 @@ public class KafkaAnnotationParse implements MqParseStrategy {
         config.setBean(bean);
         config.setMethod(method);
         config.setCheckRedeliver(checkRedeliver);
+        // 生成调用器，消费时不再使用反射
+        if (annotation.batch()) {
+            // 批量消费
+            if (annotation.maxBatch() <= 0) {
+                throw new MqClientException("@Consumer's [maxBatch] is invalid.");
+            }
+            config.setBatch(true);
+            config.setMaxBatch(annotation.maxBatch());
+            config.setMaxWaitMs(Math.max(annotation.maxWaitMs(), 0));
+            config.setBatchInvoker(ConsumerInvokerFactory.getBatchInvoker(method));
+            if (!Strings.isNullOrEmpty(checkRedeliver)) {
+                config.setBatchRedeliverInvoker(ConsumerInvokerFactory.getBatchRedeliverInvoker(bean, checkRedeliver));
+            }
+        } else {
+            config.setInvoker(ConsumerInvokerFactory.getInvoker(method));
+            if (!Strings.isNullOrEmpty(checkRedeliver)) {
+                config.setRedeliverInvoker(ConsumerInvokerFactory.getRedeliverInvoker(bean, checkRedeliver));
+            }
+        }
         config.setNumThreads(numThreads);
         config.setBatchSize(batchSize);
+        config.setKeyOrdered(annotation.keyOrdered());
+        config.setExactlyOnce(annotation.exactlyOnce());
         try {
             MqClient.buildConsumer(config);
         } catch (Throwable t) {
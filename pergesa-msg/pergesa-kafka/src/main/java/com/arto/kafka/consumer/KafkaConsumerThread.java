@@ -13,20 +13,29 @@
 package com.arto.kafka.consumer;
 
 import com.arto.core.exception.MqClientException;
+import com.arto.core.metrics.MqMetrics;
 import com.arto.kafka.consumer.binding.KafkaConsumerConfig;
+import com.arto.kafka.consumer.strategy.KafkaConsumerStrategy;
 import com.arto.kafka.consumer.strategy.KafkaConsumerStrategyFactory;
+import com.arto.kafka.consumer.strategy.KafkaRetryCallback;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.common.TopicPartition;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Kafka消息处理线程
+ * 默认一个线程串行处理一个分区的一批消息；开启keyOrdered后同一批消息按Key分片由多个线程并行处理，
+ * 同一Key的消息仍按顺序处理，所有分片完成后才恢复该分区的拉取.
  *
  * Created by xiong.j on 2017/1/18.
  */
@@ -34,54 +43,154 @@ import java.util.concurrent.Callable;
 public class KafkaConsumerThread implements Callable{
 
     /** Kafka消费者包装类 */
-    private KafkaConsumerWrapper<String, String> consumerWrapper;
+    private KafkaConsumerWrapper<String, byte[]> consumerWrapper;
 
     /** Topic消费者配置 */
     private KafkaConsumerConfig config;
 
-    /** Topic拉取的消息(单个分区) */
-    private List<ConsumerRecord<String, String>> records;
+    /** Topic拉取的消息(单个分区或单个分区的一个分片) */
+    private List<ConsumerRecord<String, byte[]>> records;
 
-    /** 当前已消费数据 */
-    private ConsumerRecord<String, String> currentConsumedRecord;
+    /** 所属的分区批次 */
+    private PartitionBatch batch;
 
-    public KafkaConsumerThread(final KafkaConsumerWrapper<String, String> consumerWrapper, final KafkaConsumerConfig config
-            , final List<ConsumerRecord<String, String>> records) {
+    /** 消费策略，为空时按配置从策略工厂获取 */
+    private KafkaConsumerStrategy strategy;
+
+    public KafkaConsumerThread(final KafkaConsumerWrapper<String, byte[]> consumerWrapper, final KafkaConsumerConfig config
+            , final List<ConsumerRecord<String, byte[]>> records) {
+        this(consumerWrapper, config, records, new PartitionBatch(records, 1));
+    }
+
+    KafkaConsumerThread(final KafkaConsumerWrapper<String, byte[]> consumerWrapper, final KafkaConsumerConfig config
+            , final List<ConsumerRecord<String, byte[]>> records, final KafkaConsumerStrategy strategy) {
+        this(consumerWrapper, config, records, new PartitionBatch(records, 1));
+        this.strategy = strategy;
+    }
+
+    private KafkaConsumerThread(final KafkaConsumerWrapper<String, byte[]> consumerWrapper, final KafkaConsumerConfig config
+            , final List<ConsumerRecord<String, byte[]>> records, final PartitionBatch batch) {
         this.consumerWrapper = consumerWrapper;
         this.config = config;
         this.records = records;
+        this.batch = batch;
+    }
+
+    /**
+     * 创建一个分区批次的处理线程，开启keyOrdered时按Key分片(事务消费时按分区顺序提交位置，不分片)
+     *
+     * @param consumerWrapper
+     * @param config
+     * @param records 单个分区拉取到的消息
+     * @return
+     */
+    public static List<KafkaConsumerThread> create(final KafkaConsumerWrapper<String, byte[]> consumerWrapper
+            , final KafkaConsumerConfig config, final List<ConsumerRecord<String, byte[]>> records) {
+        if (!config.isKeyOrdered() || config.isExactlyOnce() || config.getNumThreads() <= 1 || records.size() <= 1) {
+            return Collections.singletonList(new KafkaConsumerThread(consumerWrapper, config, records));
+        }
+        List<List<ConsumerRecord<String, byte[]>>> shards = shard(records, config.getNumThreads());
+        PartitionBatch batch = new PartitionBatch(records, shards.size());
+        List<KafkaConsumerThread> threads = new ArrayList<KafkaConsumerThread>(shards.size());
+        for (List<ConsumerRecord<String, byte[]>> shard : shards) {
+            threads.add(new KafkaConsumerThread(consumerWrapper, config, shard, batch));
+        }
+        return threads;
+    }
+
+    /**
+     * 按Key将消息分片，同一Key的消息在同一分片内保持原有顺序.
+     * 无Key的消息无法在不解码消息体的情况下得知业务流水号，统一放入同一分片，保持分区内顺序.
+     *
+     * @param records
+     * @param numShards
+     * @return 非空的分片
+     */
+    static List<List<ConsumerRecord<String, byte[]>>> shard(List<ConsumerRecord<String, byte[]>> records, int numShards) {
+        List<List<ConsumerRecord<String, byte[]>>> shards = new ArrayList<List<ConsumerRecord<String, byte[]>>>(numShards);
+        for (int i = 0; i < numShards; i++) {
+            shards.add(null);
+        }
+        for (ConsumerRecord<String, byte[]> record : records) {
+            int index = record.key() == null ? 0 : (record.key().hashCode() & Integer.MAX_VALUE) % numShards;
+            List<ConsumerRecord<String, byte[]>> shard = shards.get(index);
+            if (shard == null) {
+                shard = new ArrayList<ConsumerRecord<String, byte[]>>();
+                shards.set(index, shard);
+            }
+            shard.add(record);
+        }
+        List<List<ConsumerRecord<String, byte[]>>> result = new ArrayList<List<ConsumerRecord<String, byte[]>>>(numShards);
+        for (List<ConsumerRecord<String, byte[]>> shard : shards) {
+            if (shard != null) {
+                result.add(shard);
+            }
+        }
+        return result;
     }
 
     @Override
     public Boolean call() throws Exception {
-        TopicPartition topicPartition = null;
-        ConsumerRecord<String, String> record;
+        TopicPartition topicPartition = batch.topicPartition;
+        if (topicPartition == null) {
+            return true;
+        }
+        ConsumerRecord<String, byte[]> record;
+        int consumed = 0;
+        OffsetCallback callback = new OffsetCallback(consumerWrapper, topicPartition);
+        batch.start(config);
         try {
-            for (int i = 0; i < records.size(); i++) {
-                record = records.get(i);
-                if (topicPartition == null) {
-                    topicPartition = new TopicPartition(record.topic(), record.partition());
+            KafkaConsumerStrategy strategy = this.strategy != null
+                    ? this.strategy : KafkaConsumerStrategyFactory.getInstance().getStrategy(config);
+            if (config.isBatch()) {
+                // 批量消费，每次最多maxBatch条
+                int maxBatch = Math.max(config.getMaxBatch(), 1);
+                while (consumed < records.size()) {
+                    List<ConsumerRecord<String, byte[]>> chunk
+                            = records.subList(consumed, Math.min(consumed + maxBatch, records.size()));
+                    // ConsumerRecord未重写equals，按引用判断，避免contains逐条遍历
+                    Set<ConsumerRecord<String, byte[]>> deferred = Collections.newSetFromMap(
+                            new IdentityHashMap<ConsumerRecord<String, byte[]>, Boolean>());
+                    deferred.addAll(strategy.onMessages(config, chunk, callback));
+                    log.debug("Kafka consume messages:" + chunk.size());
+
+                    for (ConsumerRecord<String, byte[]> processed : chunk) {
+                        // 转入重试的消息在处理结束后由回调标记
+                        if (!deferred.contains(processed)) {
+                            consumerWrapper.markProcessed(topicPartition, processed.offset());
+                        }
+                    }
+                    consumed += chunk.size();
                 }
-                // 处理消息
-                KafkaConsumerStrategyFactory.getInstance().getStrategy(config.getPriority()).onMessage(config, record);
-                log.debug("Kafka consume message:" + record);
-
-                // 提交消费标识
-                currentConsumedRecord = record;
-                //if (config.getPriority() != MessagePriorityEnum.LOW.getCode()) {
-                if (i % config.getBatchSize() == 0 || i == records.size() - 1) {
-                    commitSync(topicPartition, new OffsetAndMetadata(currentConsumedRecord.offset() + 1));
+            } else {
+                for (int i = 0; i < records.size(); i++) {
+                    record = records.get(i);
+                    // 处理消息
+                    boolean resolved = strategy.onMessage(config, record, callback);
+                    log.debug("Kafka consume message:" + record);
+
+                    // 标记消费完成，由拉取线程合并提交(分片乱序完成或消息转入重试时只提交到最小的未完成位置)
+                    if (resolved) {
+                        consumerWrapper.markProcessed(topicPartition, record.offset());
+                    }
+                    consumed++;
                 }
-                //} else {
-                    // 大量异步提交时报coordinator unavailable？？ 所以低优先级走自动提交..
-                    // commitAsync(topicPartition, new OffsetAndMetadata(currentConsumedRecord.offset() + 1));
-                //}
             }
         } catch (Throwable t) {
             log.warn("Kafka message consume failed", t);
+            if (consumed < records.size()) {
+                // 未处理的消息不标记完成，分区回退到第一条未处理的消息重新拉取
+                batch.rewindTo(records.get(consumed).offset());
+            }
             throw new MqClientException(t);
         } finally {
-            if (topicPartition != null) {
+            if (batch.finish(config)) {
+                long rewindOffset = batch.getRewindOffset();
+                if (rewindOffset >= 0) {
+                    // 多个分片失败时回退到最小的未处理位置，其它分片已处理的消息会重复消费
+                    consumerWrapper.rewind(topicPartition, rewindOffset);
+                }
+                // 所有分片完成后才恢复拉取，保证同一Key跨批次的顺序
                 resume(topicPartition);
             }
         }
@@ -89,30 +198,103 @@ public class KafkaConsumerThread implements Callable{
         return true;
     }
 
-    /**
-     * 立即提交消费标识
-     */
-    public void commitOffsetImmediately(){
-        if (currentConsumedRecord == null) return;
-
-        commitSync(new TopicPartition(currentConsumedRecord.topic()
-                , currentConsumedRecord.partition())
-                , new OffsetAndMetadata(currentConsumedRecord.offset() + 1));
-    }
-
     private void resume(TopicPartition topicPartition){
-        currentConsumedRecord = null;
         consumerWrapper.resume(Collections.singleton(topicPartition));
         log.info("Kafka consumer resume:" + topicPartition + ", thread:" + Thread.currentThread().getName());
     }
 
-    private void commitSync(TopicPartition topicPartition, OffsetAndMetadata offsetAndMetadata) {
-        Map<TopicPartition, OffsetAndMetadata> offsets = Collections.singletonMap(topicPartition, offsetAndMetadata);
-        consumerWrapper.commitSync(offsets);
+    /**
+     * 转入重试调度器的消息处理结束后标记消费完成
+     */
+    private static class OffsetCallback implements KafkaRetryCallback {
+
+        private final KafkaConsumerWrapper<String, byte[]> consumerWrapper;
+
+        private final TopicPartition topicPartition;
+
+        OffsetCallback(KafkaConsumerWrapper<String, byte[]> consumerWrapper, TopicPartition topicPartition) {
+            this.consumerWrapper = consumerWrapper;
+            this.topicPartition = topicPartition;
+        }
+
+        @Override
+        public void onResolved(ConsumerRecord<String, byte[]> record) {
+            consumerWrapper.markProcessed(topicPartition, record.offset());
+        }
     }
 
-    private void commitAsync(TopicPartition topicPartition, OffsetAndMetadata offsetAndMetadata) {
-        Map<TopicPartition, OffsetAndMetadata> offsets = Collections.singletonMap(topicPartition, offsetAndMetadata);
-        consumerWrapper.commitAsync(offsets, null);
+    /**
+     * 单个分区的一批消息，可能被拆分为多个分片并行处理
+     */
+    private static class PartitionBatch {
+
+        /** 分区 */
+        private final TopicPartition topicPartition;
+
+        /** 消息总数 */
+        private final int size;
+
+        /** 未完成的分片数 */
+        private final AtomicInteger pending;
+
+        /** 是否已开始处理 */
+        private final AtomicBoolean started = new AtomicBoolean(false);
+
+        /** 开始处理时间 */
+        private volatile long start;
+
+        /** 需要回退到的位置(分片中第一条未处理消息的最小位置)，无需回退时为Long.MAX_VALUE */
+        private final AtomicLong rewindOffset = new AtomicLong(Long.MAX_VALUE);
+
+        PartitionBatch(List<ConsumerRecord<String, byte[]>> records, int shards) {
+            if (records.isEmpty()) {
+                topicPartition = null;
+            } else {
+                topicPartition = new TopicPartition(records.get(0).topic(), records.get(0).partition());
+            }
+            this.size = records.size();
+            this.pending = new AtomicInteger(shards);
+        }
+
+        void start(KafkaConsumerConfig config) {
+            if (started.compareAndSet(false, true)) {
+                start = System.nanoTime();
+                MqMetrics.counter("kafka_consumer_inflight_partitions", "topic", config.getDestination()).inc();
+            }
+        }
+
+        void rewindTo(long offset) {
+            long current;
+            while (offset < (current = rewindOffset.get())) {
+                if (rewindOffset.compareAndSet(current, offset)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return 需要回退到的位置，无需回退时返回-1
+         */
+        long getRewindOffset() {
+            long offset = rewindOffset.get();
+            return offset == Long.MAX_VALUE ? -1 : offset;
+        }
+
+        /**
+         * @return 是否为最后一个完成的分片
+         */
+        boolean finish(KafkaConsumerConfig config) {
+            if (pending.decrementAndGet() > 0) {
+                return false;
+            }
+            MqMetrics.counter("kafka_consumer_inflight_partitions", "topic", config.getDestination()).dec();
+            // 单个分区一批消息的处理耗时
+            String partition = String.valueOf(topicPartition.partition());
+            MqMetrics.timer("kafka_consumer_partition_process_seconds"
+                    , "topic", topicPartition.topic(), "partition", partition).updateSince(start);
+            MqMetrics.counter("kafka_consumer_records_total"
+                    , "topic", topicPartition.topic(), "partition", partition).inc(size);
+            return true;
+        }
     }
 }
@@ -12,14 +12,30 @@
  */
 package com.arto.kafka.consumer;
 
+import com.arto.core.exception.MqClientException;
+import com.arto.core.metrics.MqMetrics;
+import com.arto.event.util.ThreadUtil;
+import com.arto.kafka.config.KafkaConfigManager;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.*;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * Kafka消费者包装类，确保同一消费者在多线程环境中是同步调用的.
+ * Kafka消费者包装类，消费者只由拉取线程使用.
+ * 其它线程的提交、恢复、订阅请求以命令形式放入无锁队列，由拉取线程在两次poll之间执行，
+ * 拉取线程阻塞在poll中时通过wakeup()立即唤醒.
+ * 消费标识由{@link KafkaOffsetTracker}记录，按间隔或数量合并异步提交，分区回收和关闭时同步提交.
+ * 事务消费的Topic以数据库中的消费位置为准，分区分配后从该位置继续消费，分区回收前等待处理中的消息完成；
+ * 分配时未能读取数据库中的位置则暂停拉取该分区，按间隔重新读取成功后再恢复.
  *
  * Created by xiong.j on 2017/2/28.
  */
@@ -28,71 +44,516 @@ public class KafkaConsumerWrapper<K, V> {
 
     private final KafkaConsumer<K, V> consumer;
 
+    /** 待拉取线程执行的命令 */
+    private final Queue<ConsumerCommand> commands = new ConcurrentLinkedQueue<ConsumerCommand>();
+
+    /** 拉取线程是否阻塞在poll中 */
+    private final AtomicBoolean polling = new AtomicBoolean(false);
+
+    /** 同步命令的最大等待时间(毫秒) */
+    private final long commandTimeout;
+
+    /** 拉取线程(消费者的唯一使用者) */
+    private volatile Thread owner;
+
+    /** 是否已关闭 */
+    private volatile boolean closed;
+
+    /** 按Topic统计的暂停拉取分区数(监控用，由拉取线程整体替换) */
+    private volatile Map<String, Integer> pausedCounts = Collections.emptyMap();
+
+    /** 消费标识跟踪器 */
+    private final KafkaOffsetTracker offsetTracker;
+
+    /** 事务消费(消费位置存储在数据库)的Topic */
+    private final Set<String> storedOffsetTopics
+            = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /** 分区回收前等待处理中消息完成的最大时间(毫秒) */
+    private final long revokeTimeout;
+
+    /** 分配后未能定位到数据库中消费位置、暂停拉取的分区(只由拉取线程访问) */
+    private final Set<TopicPartition> unseekedPartitions = new HashSet<TopicPartition>();
+
+    /** 重新读取数据库中消费位置的间隔(毫秒) */
+    private final long seekRetryInterval;
+
+    /** 下次重新读取数据库中消费位置的时间 */
+    private long nextSeekRetry;
+
+    /** 异步提交回调，失败时下次重新提交 */
+    private final OffsetCommitCallback commitCallback = new OffsetCommitCallback() {
+        @Override
+        public void onComplete(Map<TopicPartition, OffsetAndMetadata> offsets, Exception exception) {
+            if (exception != null) {
+                log.warn("Kafka async commit failed, will retry. offsets:" + offsets, exception);
+                offsetTracker.rollback(offsets);
+            }
+        }
+    };
+
     KafkaConsumerWrapper(final KafkaConsumer<K, V> consumer) {
         this.consumer = consumer;
+        this.commandTimeout = KafkaConfigManager.getInt("kafka.consumer.command.timeout", 30000);
+        this.offsetTracker = new KafkaOffsetTracker(KafkaConfigManager.getInt("kafka.consumer.commit.interval", 1000)
+                , KafkaConfigManager.getInt("kafka.consumer.commit.count", 500));
+        this.revokeTimeout = KafkaConfigManager.getInt("kafka.consumer.revoke.timeout", 30000);
+        this.seekRetryInterval = KafkaConfigManager.getInt("kafka.consumer.seek.retry.interval", 1000);
     }
 
-    private synchronized void pause(Collection<TopicPartition> partitions) {
-        consumer.pause(partitions);
+    /**
+     * Topic开启事务消费，需在订阅前调用
+     *
+     * @param topic
+     */
+    void enableStoredOffsets(String topic) {
+        storedOffsetTopics.add(topic);
     }
 
-    synchronized void resume(Collection<TopicPartition> partitions) {
-        consumer.resume(partitions);
+    void resume(final Collection<TopicPartition> partitions) {
+        submit(new ConsumerCommand() {
+            @Override
+            void execute() {
+                if (unseekedPartitions.isEmpty()) {
+                    consumer.resume(partitions);
+                    return;
+                }
+                // 未定位到数据库中消费位置的分区保持暂停
+                List<TopicPartition> resumable = new ArrayList<TopicPartition>(partitions);
+                resumable.removeAll(unseekedPartitions);
+                consumer.resume(resumable);
+            }
+        });
+    }
+
+    /**
+     * 分区回退到指定位置重新拉取，处理线程在消息处理异常时调用，需在恢复拉取前调用(命令按提交顺序执行)
+     * 该位置及之后未完成的消息不再等待完成，重新拉取时再登记
+     *
+     * @param partition
+     * @param offset 第一条未处理的消息位置
+     */
+    void rewind(final TopicPartition partition, final long offset) {
+        submit(new ConsumerCommand() {
+            @Override
+            void execute() {
+                int released = offsetTracker.release(partition, offset);
+                if (consumer.assignment().contains(partition)) {
+                    consumer.seek(partition, offset);
+                    log.info("Kafka consumer rewind:" + partition + " to offset:" + offset + ", released:" + released);
+                }
+            }
+        });
+    }
+
+    int getPausedCount(String topic) {
+        Integer count = pausedCounts.get(topic);
+        return count == null ? 0 : count;
+    }
+
+    int getPendingCommandCount() {
+        return commands.size();
     }
 
-    synchronized Set<TopicPartition> paused() {
-        return consumer.paused();
+    int getInFlightCount() {
+        return offsetTracker.getInFlightCount();
     }
 
-    synchronized void commitSync() {
-        consumer.commitSync();
+    /**
+     * 标记消息处理完成，处理线程调用，必要时唤醒拉取线程以便按时提交
+     *
+     * @param partition
+     * @param offset
+     */
+    void markProcessed(TopicPartition partition, long offset) {
+        if (offsetTracker.complete(partition, offset)) {
+            wakeup();
+        }
+    }
+
+    void commitSync() {
+        await(submit(new ConsumerCommand() {
+            @Override
+            void execute() {
+                consumer.commitSync();
+            }
+        }));
     }
 
-    synchronized void commitSync(final Map<TopicPartition, OffsetAndMetadata> offsets) {
-        consumer.commitSync(offsets);
+    void commitSync(final Map<TopicPartition, OffsetAndMetadata> offsets) {
+        await(submit(new ConsumerCommand() {
+            @Override
+            void execute() {
+                consumer.commitSync(offsets);
+            }
+        }));
     }
 
-    synchronized void commitAsync() {
+    void commitAsync() {
         commitAsync(null);
     }
 
-    synchronized void commitAsync(OffsetCommitCallback callback) {
-        consumer.commitAsync(callback);
+    void commitAsync(final OffsetCommitCallback callback) {
+        submit(new ConsumerCommand() {
+            @Override
+            void execute() {
+                consumer.commitAsync(callback);
+            }
+        });
+    }
+
+    void commitAsync(final Map<TopicPartition, OffsetAndMetadata> offsets, final OffsetCommitCallback callback) {
+        submit(new ConsumerCommand() {
+            @Override
+            void execute() {
+                consumer.commitAsync(offsets, callback);
+            }
+        });
+    }
+
+    void subscribe(Collection<String> topics) {
+        subscribe(topics, new NoOpConsumerRebalanceListener());
     }
 
-    synchronized void commitAsync(final Map<TopicPartition, OffsetAndMetadata> offsets, OffsetCommitCallback callback) {
-        consumer.commitAsync(offsets, callback);
+    void subscribe(Collection<String> topics, final ConsumerRebalanceListener listener) {
+        // 复制一份，避免调用方后续修改
+        final List<String> copy = new ArrayList<String>(topics);
+        submit(new ConsumerCommand() {
+            @Override
+            void execute() {
+                consumer.subscribe(copy, new CommitOnRevokeListener(listener));
+            }
+        });
     }
 
-    synchronized List<List<ConsumerRecord<K, V>>> sequencePoll(long timeout) {
+    /**
+     * 拉取消息，只允许拉取线程调用
+     *
+     * @param timeout 无命令时poll的最大阻塞时间(毫秒)
+     * @return 按分区分组的消息
+     */
+    List<List<ConsumerRecord<K, V>>> sequencePoll(long timeout) {
         List<List<ConsumerRecord<K, V>>> list = new ArrayList<List<ConsumerRecord<K, V>>>();
+        owner = Thread.currentThread();
+        runCommands();
+        retrySeekStoredOffsets();
+        commitIfNecessary();
 
-        if (consumer.subscription().size() > 0) {
-            ConsumerRecords<K, V> records = consumer.poll(timeout);
-            if (!records.isEmpty()) {
-                Set<TopicPartition> partitions = records.partitions();
-                for (TopicPartition partition : partitions) {
-                    // 将拉取到的消息按Topic分类
-                    list.add(records.records(partition));
+        if (consumer.subscription().isEmpty()) {
+            // 尚未订阅时等待订阅命令
+            if (commands.isEmpty()) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(timeout));
+            }
+            return list;
+        }
 
-                }
-                // 已拉取到消息的暂停拉取直接消息消费完成
-                pause(partitions);
-                log.info("Kafka poll topic:" + consumer.subscription() + ", message size:" + records.count() + ", and pause:" + partitions);
+        ConsumerRecords<K, V> records;
+        // 先置标记再检查队列，保证提交命令的线程要么被本次检查看到，要么看到标记后唤醒poll
+        polling.set(true);
+        try {
+            records = consumer.poll(commands.isEmpty()
+                    ? offsetTracker.nextCommitDelay(System.currentTimeMillis(), timeout) : 0);
+        } catch (WakeupException e) {
+            // 有新命令，回到循环开头执行
+            return list;
+        } finally {
+            polling.set(false);
+        }
+
+        if (!records.isEmpty()) {
+            Set<TopicPartition> partitions = records.partitions();
+            for (TopicPartition partition : partitions) {
+                // 将拉取到的消息按Topic分类，并登记到跟踪器
+                List<ConsumerRecord<K, V>> partitionRecords = records.records(partition);
+                offsetTracker.register(partition, partitionRecords);
+                list.add(partitionRecords);
             }
+            // 已拉取到消息的暂停拉取直接消息消费完成
+            consumer.pause(partitions);
+            updatePausedCounts();
+            log.info("Kafka poll topic:" + consumer.subscription() + ", message size:" + records.count() + ", and pause:" + partitions);
         }
         return list;
     }
 
-    synchronized Set<String> subscription() {
-        return consumer.subscription();
+    /**
+     * 唤醒拉取线程(线程安全)
+     */
+    void wakeup() {
+        if (polling.get()) {
+            consumer.wakeup();
+        } else {
+            Thread thread = owner;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    /**
+     * 同步提交所有待提交的消费标识，只允许拉取线程调用(关闭前)
+     */
+    void commitPendingSync() {
+        runCommands();
+        commitPending(true);
+    }
+
+    /**
+     * 关闭，拉取线程退出前调用，未执行的命令直接失败
+     */
+    void close() {
+        closed = true;
+        ConsumerCommand command;
+        while ((command = commands.poll()) != null) {
+            command.fail(new MqClientException("Kafka consumer is closed."));
+        }
+    }
+
+    private ConsumerCommand submit(ConsumerCommand command) {
+        if (closed) {
+            throw new MqClientException("Kafka consumer is closed.");
+        }
+        if (Thread.currentThread() == owner) {
+            // 拉取线程自己调用(如重分配监听器中提交)，直接执行
+            command.run();
+        } else {
+            commands.offer(command);
+            wakeup();
+        }
+        return command;
+    }
+
+    private void await(ConsumerCommand command) {
+        try {
+            if (!command.done.await(commandTimeout, TimeUnit.MILLISECONDS)) {
+                throw new MqClientException("Kafka consumer command timeout. timeout:" + commandTimeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MqClientException(e);
+        }
+        if (command.error instanceof RuntimeException) {
+            throw (RuntimeException) command.error;
+        } else if (command.error != null) {
+            throw new MqClientException(command.error);
+        }
+    }
+
+    private void runCommands() {
+        ConsumerCommand command;
+        boolean executed = false;
+        while ((command = commands.poll()) != null) {
+            command.run();
+            executed = true;
+        }
+        if (executed) {
+            updatePausedCounts();
+        }
     }
 
-    synchronized void subscribe(Collection<String> topics) {
-        consumer.subscribe(topics);
+    /**
+     * 重新读取分配时未能读取的数据库消费位置，成功后恢复拉取
+     */
+    private void retrySeekStoredOffsets() {
+        if (unseekedPartitions.isEmpty() || System.currentTimeMillis() < nextSeekRetry) {
+            return;
+        }
+        Set<TopicPartition> assignment = consumer.assignment();
+        List<TopicPartition> seeked = new ArrayList<TopicPartition>();
+        Iterator<TopicPartition> iterator = unseekedPartitions.iterator();
+        while (iterator.hasNext()) {
+            TopicPartition partition = iterator.next();
+            if (!assignment.contains(partition)) {
+                iterator.remove();
+            } else if (seekStoredOffset(partition)) {
+                iterator.remove();
+                seeked.add(partition);
+            }
+        }
+        if (!seeked.isEmpty()) {
+            consumer.resume(seeked);
+            updatePausedCounts();
+            log.info("Kafka consumer resume after seek to stored offset. partitions:" + seeked);
+        }
+        nextSeekRetry = System.currentTimeMillis() + seekRetryInterval;
+    }
+
+    /**
+     * 定位到数据库中的消费位置，无记录时初始化并按Kafka提交的位置消费
+     *
+     * @param partition
+     * @return 读取数据库失败时返回false
+     */
+    private boolean seekStoredOffset(TopicPartition partition) {
+        try {
+            KafkaOffsetRepository repository = KafkaOffsetRepository.getInstance();
+            Long offset = repository.find(partition);
+            if (offset != null) {
+                consumer.seek(partition, offset);
+                log.info("Kafka consumer seek to stored offset. partition:" + partition + ", offset:" + offset);
+            } else {
+                repository.init(partition);
+            }
+            return true;
+        } catch (Throwable t) {
+            log.error("Kafka consumer seek to stored offset failed, pause it and retry. partition:" + partition, t);
+            return false;
+        }
+    }
+
+    private void updatePausedCounts() {
+        Set<TopicPartition> paused = consumer.paused();
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        Integer count;
+        for (TopicPartition partition : paused) {
+            count = counts.get(partition.topic());
+            counts.put(partition.topic(), count == null ? 1 : count + 1);
+        }
+        pausedCounts = counts;
+    }
+
+    private void commitIfNecessary() {
+        if (offsetTracker.shouldCommit(System.currentTimeMillis())) {
+            commitPending(false);
+        }
+    }
+
+    private void commitPending(boolean sync) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = offsetTracker.collect();
+        if (offsets.isEmpty()) {
+            return;
+        }
+        if (!sync) {
+            consumer.commitAsync(offsets, commitCallback);
+            MqMetrics.counter("kafka_consumer_commits_total", "mode", "async").inc();
+            return;
+        }
+        try {
+            while (true) {
+                try {
+                    consumer.commitSync(offsets);
+                    break;
+                } catch (WakeupException e) {
+                    log.debug("Kafka consumer sync commit woken up, retry.");
+                }
+            }
+            MqMetrics.counter("kafka_consumer_commits_total", "mode", "sync").inc();
+        } catch (Throwable t) {
+            log.warn("Kafka sync commit failed. offsets:" + offsets, t);
+        }
+    }
+
+    /**
+     * 分区回收前同步提交所有已处理的消费标识，分区分配后事务消费的Topic定位到数据库中的消费位置
+     */
+    private class CommitOnRevokeListener implements ConsumerRebalanceListener {
+
+        private final ConsumerRebalanceListener delegate;
+
+        CommitOnRevokeListener(ConsumerRebalanceListener delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            awaitStoredOffsets(partitions);
+            commitPending(true);
+            offsetTracker.remove(partitions);
+            unseekedPartitions.removeAll(partitions);
+            delegate.onPartitionsRevoked(partitions);
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            seekStoredOffsets(partitions);
+            delegate.onPartitionsAssigned(partitions);
+        }
+
+        /**
+         * 等待事务消费分区中处理中的消息完成，避免分区分配给其它消费者后重复消费
+         */
+        private void awaitStoredOffsets(Collection<TopicPartition> partitions) {
+            List<TopicPartition> stored = filterStored(partitions);
+            if (stored.isEmpty()) {
+                return;
+            }
+            long deadline = System.currentTimeMillis() + revokeTimeout;
+            while (offsetTracker.getInFlightCount(stored) > 0) {
+                if (System.currentTimeMillis() >= deadline) {
+                    log.warn("Kafka consumer wait in-flight messages timeout before revoke. partitions:" + stored
+                            + ", in-flight:" + offsetTracker.getInFlightCount(stored));
+                    return;
+                }
+                ThreadUtil.sleep(10, log);
+            }
+        }
+
+        /**
+         * 事务消费的分区从数据库中的消费位置继续消费，读取失败的分区暂停拉取，避免从Kafka提交的位置重复消费
+         */
+        private void seekStoredOffsets(Collection<TopicPartition> partitions) {
+            List<TopicPartition> failed = new ArrayList<TopicPartition>();
+            for (TopicPartition partition : filterStored(partitions)) {
+                if (!seekStoredOffset(partition)) {
+                    failed.add(partition);
+                }
+            }
+            if (!failed.isEmpty()) {
+                consumer.pause(failed);
+                unseekedPartitions.addAll(failed);
+                nextSeekRetry = System.currentTimeMillis() + seekRetryInterval;
+            }
+        }
+
+        private List<TopicPartition> filterStored(Collection<TopicPartition> partitions) {
+            List<TopicPartition> stored = new ArrayList<TopicPartition>();
+            if (storedOffsetTopics.isEmpty()) {
+                return stored;
+            }
+            for (TopicPartition partition : partitions) {
+                if (storedOffsetTopics.contains(partition.topic())) {
+                    stored.add(partition);
+                }
+            }
+            return stored;
+        }
     }
 
-    synchronized void subscribe(Collection<String> topics, ConsumerRebalanceListener listener) {
-        consumer.subscribe(topics, listener);
+    /**
+     * 由拉取线程执行的消费者命令
+     */
+    private abstract static class ConsumerCommand {
+
+        /** 执行完成 */
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        /** 执行异常 */
+        private volatile Throwable error;
+
+        abstract void execute();
+
+        void run() {
+            try {
+                while (true) {
+                    try {
+                        execute();
+                        break;
+                    } catch (WakeupException e) {
+                        // poll结束后才到达的唤醒会作用在下一个阻塞调用上，重新执行
+                        log.debug("Kafka consumer command woken up, retry.");
+                    }
+                }
+            } catch (Throwable t) {
+                log.warn("Kafka consumer command failed.", t);
+                error = t;
+            } finally {
+                done.countDown();
+            }
+        }
+
+        void fail(Throwable t) {
+            error = t;
+            done.countDown();
+        }
     }
 }
@@ -12,9 +12,12 @@
  */
 package com.arto.kafka.consumer;
 
-import com.arto.event.util.ThreadUtil;
+import com.arto.core.metrics.Gauge;
+import com.arto.core.metrics.MqMetrics;
+import com.arto.kafka.config.KafkaConfigManager;
 import com.arto.kafka.consumer.binding.KafkaConsumerBinding;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
@@ -84,31 +87,55 @@ public class KafkaMessageConsumer {
     public void destroy() {
         log.info("Kafka Consumer poll thread is destroyed.");
         closeFlag.set(true);
+        if (pollThread != null) {
+            pollThread.consumerWrapper.wakeup();
+        }
     }
 
     /**
-     * Kafka消息拉取线程，一个线程对应多个Topic
+     * Kafka消息拉取线程，一个线程对应多个Topic，也是消费者的唯一使用者
      */
     private class KafkaMessagePollThread implements Runnable{
 
         /** 消费者包装类 */
-        private KafkaConsumerWrapper<String, String> consumerWrapper;
+        private final KafkaConsumerWrapper<String, byte[]> consumerWrapper;
+
+        /** 无命令、无消息时poll的最大阻塞时间(毫秒)，有提交或恢复命令时会被立即唤醒 */
+        private final long pollTimeout;
 
         /** 消费者订阅的Topic集合 */
         private final Collection<String> topic;
 
+        /** 消费组 */
+        private final String group;
+
         /** 拉取的消息集合(以Topic分类) */
-        private Map<String, LinkedBlockingQueue<List<ConsumerRecord<String, String>>>> topicRecords
-                = new ConcurrentHashMap<String, LinkedBlockingQueue<List<ConsumerRecord<String, String>>>>();
+        private Map<String, LinkedBlockingQueue<List<ConsumerRecord<String, byte[]>>>> topicRecords
+                = new ConcurrentHashMap<String, LinkedBlockingQueue<List<ConsumerRecord<String, byte[]>>>>();
 
         /**
          * Kafka消息拉取线程构造方法
          *
          * @param consumer
          */
-        KafkaMessagePollThread(final KafkaConsumer<String, String> consumer){
-            this.consumerWrapper = new KafkaConsumerWrapper<String, String>(consumer);
+        KafkaMessagePollThread(final KafkaConsumer<String, byte[]> consumer){
+            this.consumerWrapper = new KafkaConsumerWrapper<String, byte[]>(consumer);
+            this.pollTimeout = KafkaConfigManager.getInt("kafka.consumer.poll.timeout", 1000);
             topic = new ArrayList<String>();
+            // 指标按消费组区分
+            group = KafkaConfigManager.getString("kafka." + ConsumerConfig.GROUP_ID_CONFIG, "pergesa-msg");
+            MqMetrics.gauge(new Gauge() {
+                @Override
+                public double getValue() {
+                    return consumerWrapper.getPendingCommandCount();
+                }
+            }, "kafka_consumer_pending_commands", "group", group);
+            MqMetrics.gauge(new Gauge() {
+                @Override
+                public double getValue() {
+                    return consumerWrapper.getInFlightCount();
+                }
+            }, "kafka_consumer_inflight_records", "group", group);
         }
 
         /**
@@ -120,41 +147,49 @@ public class KafkaMessageConsumer {
             // 更新订阅的Topic集合
             topic.add(kafkaConsumerBinding.getConfig().getDestination());
             // 初始化Topic消费线程
-            LinkedBlockingQueue<List<ConsumerRecord<String, String>>> topicQueue
-                    = new LinkedBlockingQueue<List<ConsumerRecord<String, String>>>();
-            topicRecords.put(kafkaConsumerBinding.getConfig().getDestination(), topicQueue);
-            // 传入封装后的消费者，使其在多线程环境中同步调用
+            final LinkedBlockingQueue<List<ConsumerRecord<String, byte[]>>> topicQueue
+                    = new LinkedBlockingQueue<List<ConsumerRecord<String, byte[]>>>();
+            final String destination = kafkaConsumerBinding.getConfig().getDestination();
+            topicRecords.put(destination, topicQueue);
+            // 暂停拉取(消息处理中)的分区数
+            MqMetrics.gauge(new Gauge() {
+                @Override
+                public double getValue() {
+                    return consumerWrapper.getPausedCount(destination);
+                }
+            }, "kafka_consumer_paused_partitions", "group", group, "topic", destination);
+            // 已拉取、等待分配处理线程的分区数
+            MqMetrics.gauge(new Gauge() {
+                @Override
+                public double getValue() {
+                    return topicQueue.size();
+                }
+            }, "kafka_consumer_queued_partitions", "group", group, "topic", destination);
+            // 传入封装后的消费者，其它线程的提交、恢复由拉取线程代为执行
             kafkaConsumerBinding.start(consumerWrapper, topicQueue);
-            // 更新拉取的Topic
+            // 更新拉取的Topic(由拉取线程执行订阅)
             consumerWrapper.subscribe(topic, listener);
         }
 
         @Override
         public void run() {
-            // 延迟一定时间等系统启动后再开始消费
-            ThreadUtil.sleep(5000, log);
-
             while (!closeFlag.get()) {
-                synchronized (this) {
-                    try {
-                        // 拉取消息
-                        List<List<ConsumerRecord<String, String>>> list = consumerWrapper.sequencePoll(100);
-                        if (list.size() > 0) {
-                            for (List<ConsumerRecord<String, String>> records : list) {
-                                // 将拉取到的消息按Topic分类消费
-                                if (records.size() > 0) {
-                                    topicRecords.get(records.get(0).topic()).put(records);
-                                }
-                            }
+                try {
+                    // 拉取消息，提交、恢复等命令在两次poll之间执行
+                    List<List<ConsumerRecord<String, byte[]>>> list = consumerWrapper.sequencePoll(pollTimeout);
+                    for (List<ConsumerRecord<String, byte[]>> records : list) {
+                        // 将拉取到的消息按Topic分类消费
+                        if (records.size() > 0) {
+                            topicRecords.get(records.get(0).topic()).put(records);
                         }
-                    } catch (Throwable e) {
-                        log.warn("Kafka poll message failed.", e);
                     }
+                } catch (Throwable e) {
+                    log.warn("Kafka poll message failed.", e);
                 }
-
-                // 休眠300毫秒，减少offset提交时的线程竞争
-                ThreadUtil.sleep(300, log);
             }
+            // 关闭前同步提交已处理的消费标识
+            consumerWrapper.commitPendingSync();
+            consumerWrapper.close();
         }
     }
 
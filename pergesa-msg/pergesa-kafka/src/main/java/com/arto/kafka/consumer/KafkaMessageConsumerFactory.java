@@ -12,7 +12,9 @@
  */
 package com.arto.kafka.consumer;
 
+import com.arto.core.metrics.MqMetrics;
 import com.arto.kafka.config.KafkaConfigManager;
+import com.arto.kafka.metrics.KafkaMetricSource;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
@@ -55,8 +57,8 @@ public class KafkaMessageConsumerFactory {
 //    @Value("${kafka.value.deserializer:org.apache.kafka.common.serialization.StringDeserializer}")
 //    private String valueDeserializer;
 
-    private ConcurrentMap<String, KafkaConsumer<String, String>> consumerMap
-            = new ConcurrentHashMap<String, KafkaConsumer<String, String>>(3);
+    private ConcurrentMap<String, KafkaConsumer<String, byte[]>> consumerMap
+            = new ConcurrentHashMap<String, KafkaConsumer<String, byte[]>>(3);
 
     private final String defaultKey = "default";
 
@@ -66,7 +68,7 @@ public class KafkaMessageConsumerFactory {
      * @return
      * @throws Exception
      */
-    public KafkaConsumer<String, String> getConsumer() throws Throwable {
+    public KafkaConsumer<String, byte[]> getConsumer() throws Throwable {
         if (consumerMap.containsKey(defaultKey)) {
             return consumerMap.get(defaultKey);
         } else {
@@ -74,7 +76,7 @@ public class KafkaMessageConsumerFactory {
         }
     }
 
-    private synchronized KafkaConsumer<String, String> createConsumer() throws Throwable {
+    private synchronized KafkaConsumer<String, byte[]> createConsumer() throws Throwable {
         if (consumerMap.containsKey(defaultKey)) {
             return consumerMap.get(defaultKey);
         }
@@ -92,20 +94,22 @@ public class KafkaMessageConsumerFactory {
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG
                 , KafkaConfigManager.getString(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG
                 , "org.apache.kafka.common.serialization.StringDeserializer"));
+        // 消息体由MessageCodec解码(mq.codec)
         props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG
-                , KafkaConfigManager.getString(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG
-                , "org.apache.kafka.common.serialization.StringDeserializer"));
+                , "org.apache.kafka.common.serialization.ByteArrayDeserializer");
 
         prepareEnvironments(props);
-        KafkaConsumer<String, String> consumer = new KafkaConsumer<String, String>(props);
+        KafkaConsumer<String, byte[]> consumer = new KafkaConsumer<String, byte[]>(props);
         consumerMap.put(defaultKey, consumer);
+        // 导出Kafka消费者自带的指标
+        MqMetrics.register("kafka-consumer-" + defaultKey, new KafkaMetricSource("kafka_consumer", consumer.metrics()));
         log.info("Create kafka consumer successful. config:" + props);
         return consumer;
     }
 
     @PreDestroy
     public void destroy() {
-        for(Map.Entry<String, KafkaConsumer<String, String>> entry : consumerMap.entrySet()){
+        for(Map.Entry<String, KafkaConsumer<String, byte[]>> entry : consumerMap.entrySet()){
             entry.getValue().close();
         }
         log.info("Destroy kafka consumer successful.");
@@ -0,0 +1,31 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.kafka.consumer;
+
+import com.arto.core.exception.MqClientException;
+
+/**
+ * 事务消费提交位置时数据库中的位置已被推进(分区已分配给其它消费者并提交)，本次消费随事务回滚
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+public class KafkaOffsetFencedException extends MqClientException {
+
+    public KafkaOffsetFencedException(String message) {
+        super(message);
+    }
+
+    public KafkaOffsetFencedException(String message, Throwable e){
+        super(message,e);
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.kafka.consumer;
+
+import com.arto.event.util.SpringContextHolder;
+import com.arto.kafka.config.KafkaConfigManager;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * 事务消费(exactlyOnce)的分区消费位置存储(表CONSUMER_OFFSET)
+ * 位置在消费方法所在的数据库事务中更新，与业务数据一起提交或回滚；分区分配后从该位置继续消费.
+ * 使用与DataSourceTransactionManager相同的数据源，消费方法中的数据库操作也必须使用该数据源.
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+public class KafkaOffsetRepository {
+
+    private static volatile KafkaOffsetRepository instance;
+
+    private final NamedParameterJdbcTemplate npJdbcTemplate;
+
+    /** 消费组 */
+    private final String groupId;
+
+    public KafkaOffsetRepository(NamedParameterJdbcTemplate npJdbcTemplate, String groupId) {
+        this.npJdbcTemplate = npJdbcTemplate;
+        this.groupId = groupId;
+    }
+
+    public static KafkaOffsetRepository getInstance() {
+        if (instance == null) {
+            synchronized (KafkaOffsetRepository.class) {
+                if (instance == null) {
+                    // 暂时依赖Spring获取，与事务管理器使用同一个数据源
+                    DataSourceTransactionManager transactionManager
+                            = SpringContextHolder.getBean(DataSourceTransactionManager.class);
+                    instance = new KafkaOffsetRepository(
+                            new NamedParameterJdbcTemplate(transactionManager.getDataSource())
+                            , KafkaConfigManager.getString("kafka.group.id", "pergesa-msg"));
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 查询分区的消费位置
+     *
+     * @param partition
+     * @return 下一条待消费的位置，未记录时返回null
+     */
+    public Long find(TopicPartition partition) {
+        String sql = "SELECT NEXT_OFFSET FROM CONSUMER_OFFSET WHERE GROUP_ID = :groupId"
+                + " AND TOPIC = :topic AND PARTITION_ID = :partition";
+        List<Long> offsets = npJdbcTemplate.queryForList(sql, buildParams(partition), Long.class);
+        if (offsets.isEmpty() || offsets.get(0) == null || offsets.get(0) < 0) {
+            return null;
+        }
+        return offsets.get(0);
+    }
+
+    /**
+     * 分区首次分配时插入位置记录(位置为-1)，事务中只需更新
+     *
+     * @param partition
+     */
+    public void init(TopicPartition partition) {
+        String sql = "INSERT INTO CONSUMER_OFFSET(GROUP_ID, TOPIC, PARTITION_ID, NEXT_OFFSET, GMT_MODIFIED)"
+                + " VALUES (:groupId, :topic, :partition, -1, :gmtModified)";
+        MapSqlParameterSource params = buildParams(partition);
+        params.addValue("gmtModified", new Timestamp(System.currentTimeMillis()));
+        try {
+            npJdbcTemplate.update(sql, params);
+        } catch (DataIntegrityViolationException e) {
+            // 已存在
+        }
+    }
+
+    /**
+     * 更新分区的消费位置，在消费事务中调用.
+     * 只在数据库中的位置未超过本次消费的第一条消息时更新(初始值-1同样满足，Topic压缩后位置不连续也满足)，
+     * 位置已被推进说明分区已分配给其它消费者并提交过，抛出异常使本次消费随事务回滚
+     *
+     * @param partition
+     * @param offset 本次消费的第一条消息位置
+     * @param nextOffset 下一条待消费的位置
+     * @throws KafkaOffsetFencedException 数据库中的位置已超过offset
+     */
+    public void save(TopicPartition partition, long offset, long nextOffset) {
+        String sql = "UPDATE CONSUMER_OFFSET SET NEXT_OFFSET = :nextOffset, GMT_MODIFIED = :gmtModified"
+                + " WHERE GROUP_ID = :groupId AND TOPIC = :topic AND PARTITION_ID = :partition"
+                + " AND NEXT_OFFSET <= :offset";
+        MapSqlParameterSource params = buildParams(partition);
+        params.addValue("offset", offset);
+        params.addValue("nextOffset", nextOffset);
+        params.addValue("gmtModified", new Timestamp(System.currentTimeMillis()));
+        if (npJdbcTemplate.update(sql, params) > 0) {
+            return;
+        }
+        // 未更新：记录不存在(分配时未能初始化，如数据库暂不可用)时插入，已存在说明位置已被推进
+        sql = "INSERT INTO CONSUMER_OFFSET(GROUP_ID, TOPIC, PARTITION_ID, NEXT_OFFSET, GMT_MODIFIED)"
+                + " VALUES (:groupId, :topic, :partition, :nextOffset, :gmtModified)";
+        try {
+            npJdbcTemplate.update(sql, params);
+        } catch (DataIntegrityViolationException e) {
+            throw new KafkaOffsetFencedException("Stored offset has moved past " + offset + ", rollback. partition:"
+                    + partition, e);
+        }
+    }
+
+    private MapSqlParameterSource buildParams(TopicPartition partition) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue("groupId", groupId);
+        params.addValue("topic", partition.topic());
+        params.addValue("partition", partition.partition());
+        return params;
+    }
+}
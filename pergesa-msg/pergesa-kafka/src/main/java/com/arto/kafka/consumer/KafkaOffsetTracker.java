@@ -0,0 +1,276 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.kafka.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 消费标识跟踪器，一个消费者对应一个.
+ * 记录每个分区已连续处理完成的最大位置，由拉取线程按间隔或数量将所有分区合并提交.
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+public class KafkaOffsetTracker {
+
+    /** 各分区的处理进度 */
+    private final ConcurrentMap<TopicPartition, PartitionOffsets> partitions
+            = new ConcurrentHashMap<TopicPartition, PartitionOffsets>();
+
+    /** 上次提交后新处理完成的消息数 */
+    private final AtomicInteger uncommitted = new AtomicInteger();
+
+    /** 提交间隔(毫秒) */
+    private final long commitInterval;
+
+    /** 达到该数量时立即提交 */
+    private final int commitCount;
+
+    /** 上次提交时间(只由拉取线程读写) */
+    private long lastCommitTime = System.currentTimeMillis();
+
+    public KafkaOffsetTracker(long commitInterval, int commitCount) {
+        this.commitInterval = commitInterval;
+        this.commitCount = Math.max(commitCount, 1);
+    }
+
+    /**
+     * 登记拉取到的消息，拉取线程调用
+     *
+     * @param partition
+     * @param records
+     */
+    public void register(TopicPartition partition, List<? extends ConsumerRecord<?, ?>> records) {
+        PartitionOffsets offsets = partitions.get(partition);
+        if (offsets == null) {
+            offsets = new PartitionOffsets();
+            PartitionOffsets old = partitions.putIfAbsent(partition, offsets);
+            if (old != null) {
+                offsets = old;
+            }
+        }
+        offsets.register(records);
+    }
+
+    /**
+     * 标记消息处理完成，处理线程调用
+     *
+     * @param partition
+     * @param offset
+     * @return 是否需要唤醒拉取线程(首条待提交时重新计算poll等待时间，达到数量时立即提交)
+     */
+    public boolean complete(TopicPartition partition, long offset) {
+        PartitionOffsets offsets = partitions.get(partition);
+        if (offsets == null) {
+            // 分区已被回收
+            return false;
+        }
+        offsets.complete(offset);
+        int count = uncommitted.incrementAndGet();
+        return count == 1 || count == commitCount;
+    }
+
+    /**
+     * 是否应该提交
+     *
+     * @param now
+     * @return
+     */
+    public boolean shouldCommit(long now) {
+        int count = uncommitted.get();
+        return count > 0 && (count >= commitCount || now - lastCommitTime >= commitInterval);
+    }
+
+    /**
+     * 距离下次定时提交的时间，无待提交数据时返回defaultValue
+     *
+     * @param now
+     * @param defaultValue
+     * @return
+     */
+    public long nextCommitDelay(long now, long defaultValue) {
+        if (uncommitted.get() == 0) {
+            return defaultValue;
+        }
+        return Math.max(0, Math.min(defaultValue, lastCommitTime + commitInterval - now));
+    }
+
+    /**
+     * 收集所有分区待提交的消费标识，拉取线程调用
+     *
+     * @return
+     */
+    public Map<TopicPartition, OffsetAndMetadata> collect() {
+        uncommitted.set(0);
+        lastCommitTime = System.currentTimeMillis();
+        Map<TopicPartition, OffsetAndMetadata> result = new HashMap<TopicPartition, OffsetAndMetadata>();
+        for (Map.Entry<TopicPartition, PartitionOffsets> entry : partitions.entrySet()) {
+            long offset = entry.getValue().collect();
+            if (offset >= 0) {
+                result.put(entry.getKey(), new OffsetAndMetadata(offset));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 提交失败，下次重新提交
+     *
+     * @param offsets
+     */
+    public void rollback(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        for (Map.Entry<TopicPartition, OffsetAndMetadata> entry : offsets.entrySet()) {
+            PartitionOffsets partition = partitions.get(entry.getKey());
+            if (partition != null) {
+                partition.rollback(entry.getValue().offset());
+            }
+        }
+        uncommitted.incrementAndGet();
+    }
+
+    /**
+     * 移除分区中指定位置及之后未完成的消息，分区回退重新拉取时调用，重新拉取后再登记
+     *
+     * @param partition
+     * @param offset
+     * @return 移除的消息数
+     */
+    public int release(TopicPartition partition, long offset) {
+        PartitionOffsets offsets = partitions.get(partition);
+        return offsets == null ? 0 : offsets.release(offset);
+    }
+
+    /**
+     * 移除被回收的分区
+     *
+     * @param revoked
+     */
+    public void remove(Collection<TopicPartition> revoked) {
+        for (TopicPartition partition : revoked) {
+            partitions.remove(partition);
+        }
+    }
+
+    /**
+     * 处理中(已拉取未完成)的消息数
+     *
+     * @return
+     */
+    public int getInFlightCount() {
+        int count = 0;
+        for (PartitionOffsets offsets : partitions.values()) {
+            count += offsets.inFlightCount();
+        }
+        return count;
+    }
+
+    /**
+     * 指定分区处理中(已拉取未完成)的消息数
+     *
+     * @param targets
+     * @return
+     */
+    public int getInFlightCount(Collection<TopicPartition> targets) {
+        int count = 0;
+        for (TopicPartition partition : targets) {
+            PartitionOffsets offsets = partitions.get(partition);
+            if (offsets != null) {
+                count += offsets.inFlightCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 单个分区的处理进度
+     */
+    private static class PartitionOffsets {
+
+        /** 已登记、未连续完成的位置(按拉取顺序) */
+        private final ArrayDeque<Long> inFlight = new ArrayDeque<Long>();
+
+        /** 乱序完成的位置 */
+        private final Set<Long> done = new HashSet<Long>();
+
+        /** 可提交的位置(下一条待消费的位置) */
+        private long committable = -1;
+
+        /** 已提交的位置 */
+        private long committed = -1;
+
+        synchronized void register(List<? extends ConsumerRecord<?, ?>> records) {
+            for (ConsumerRecord<?, ?> record : records) {
+                inFlight.addLast(record.offset());
+            }
+        }
+
+        synchronized void complete(long offset) {
+            Long head = inFlight.peekFirst();
+            if (head == null || offset < head) {
+                // 分区重新分配前的旧消息
+                return;
+            }
+            if (head != offset) {
+                done.add(offset);
+                return;
+            }
+            // 按顺序完成的直接推进，再吸收之前乱序完成的
+            inFlight.pollFirst();
+            committable = offset + 1;
+            while ((head = inFlight.peekFirst()) != null && done.remove(head)) {
+                inFlight.pollFirst();
+                committable = head + 1;
+            }
+        }
+
+        synchronized int release(long offset) {
+            int count = 0;
+            // 同一分区按拉取顺序登记，位置递增
+            while (!inFlight.isEmpty() && inFlight.peekLast() >= offset) {
+                inFlight.pollLast();
+                count++;
+            }
+            Iterator<Long> iterator = done.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next() >= offset) {
+                    iterator.remove();
+                }
+            }
+            return count;
+        }
+
+        synchronized long collect() {
+            if (committable > committed) {
+                committed = committable;
+                return committable;
+            }
+            return -1;
+        }
+
+        synchronized void rollback(long offset) {
+            if (committed == offset) {
+                committed = -1;
+            }
+        }
+
+        synchronized int inFlightCount() {
+            return inFlight.size();
+        }
+    }
+}
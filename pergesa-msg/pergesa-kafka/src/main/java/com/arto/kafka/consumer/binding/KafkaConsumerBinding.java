@@ -12,8 +12,13 @@
  */
 package com.arto.kafka.consumer.binding;
 
+import com.arto.core.consumer.MessageDeserializePlan;
+import com.arto.core.consumer.MqBatchListener;
 import com.arto.core.consumer.MqConsumer;
 import com.arto.core.consumer.MqListener;
+import com.arto.core.consumer.dedup.DedupManager;
+import com.arto.core.consumer.dedup.DedupStore;
+import com.arto.core.exception.MqClientException;
 import com.arto.event.util.SpringContextHolder;
 import com.arto.event.util.SpringThreadPoolUtil;
 import com.arto.kafka.consumer.KafkaConsumerThread;
@@ -24,9 +29,7 @@ import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.common.TopicPartition;
 
-import java.lang.ref.WeakReference;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -57,7 +60,10 @@ public class KafkaConsumerBinding implements MqConsumer {
     public KafkaConsumerBinding(KafkaConsumerConfig config) {
         this.config = config;
         this.consumer = SpringContextHolder.getBean("kafkaMessageConsumer");
-        consumer.subscribe(this, rebalanceListener);
+        if (config.hasReceiver()) {
+            // 未设置监听器时推迟到receive/receiveBatch订阅
+            consumer.subscribe(this, rebalanceListener);
+        }
     }
 
     @Override
@@ -77,14 +83,30 @@ public class KafkaConsumerBinding implements MqConsumer {
         consumer.subscribe(this, rebalanceListener);
     }
 
+    @Override
+    public void receiveBatch(int maxBatch, MqBatchListener listener) {
+        if (config.hasReceiver()) {
+            throw new MqClientException("Consumer already subscribed, build it without listener before receiveBatch. config:" + config);
+        }
+        config.setBatch(true);
+        config.setMaxBatch(maxBatch);
+        config.setBatchListener(listener);
+        config.setDeserializePlan(MessageDeserializePlan.create(config));
+        consumer.subscribe(this, rebalanceListener);
+    }
+
     /**
      * 开启消费线程
      *
      * @param consumerWrapper
      * @param topicQueue
      */
-    public void start(final KafkaConsumerWrapper<String, String> consumerWrapper
-            , final LinkedBlockingQueue<List<ConsumerRecord<String, String>>> topicQueue) {
+    public void start(final KafkaConsumerWrapper<String, byte[]> consumerWrapper
+            , final LinkedBlockingQueue<List<ConsumerRecord<String, byte[]>>> topicQueue) {
+        if (config.isExactlyOnce()) {
+            // 事务消费，分区分配后从数据库中的消费位置继续消费
+            consumerWrapper.enableStoredOffsets(config.getDestination());
+        }
         if (localThread == null) {
             localThread = new ConsumerWithTopicThread(consumerWrapper, topicQueue);
             new Thread(localThread, "ConsumerWithTopicThread_" + config.getDestination()).start();
@@ -110,37 +132,28 @@ public class KafkaConsumerBinding implements MqConsumer {
         return config;
     }
 
-    private void commitOffsetImmediately(){
-        if (localThread != null) {
-            localThread.commitOffsetImmediately();
-        }
-    }
-
     /**
      * Topic消息处理线程
      */
     private class ConsumerWithTopicThread implements Runnable {
 
         /** Kafka消费者包装类 */
-        private KafkaConsumerWrapper<String, String> consumerWrapper;
+        private KafkaConsumerWrapper<String, byte[]> consumerWrapper;
 
         /** Topic拉取的消息(整个Topic) */
-        private LinkedBlockingQueue<List<ConsumerRecord<String, String>>> topicQueue;
+        private LinkedBlockingQueue<List<ConsumerRecord<String, byte[]>>> topicQueue;
 
         /** 消息处理线程池 */
         private ExecutorService executor;
 
-        /** 消息处理线程列表 */
-        private List<WeakReference<KafkaConsumerThread>> threadList;
-
         /**
          * Topic消息的处理线程
          *
          * @param consumerWrapper
          * @param topicQueue
          */
-        ConsumerWithTopicThread(final KafkaConsumerWrapper<String, String> consumerWrapper
-                , final LinkedBlockingQueue<List<ConsumerRecord<String, String>>> topicQueue) {
+        ConsumerWithTopicThread(final KafkaConsumerWrapper<String, byte[]> consumerWrapper
+                , final LinkedBlockingQueue<List<ConsumerRecord<String, byte[]>>> topicQueue) {
             this.consumerWrapper = consumerWrapper;
             this.topicQueue = topicQueue;
 //            executor = new ThreadPoolExecutor(config.getNumThreads(), config.getNumThreads(),
@@ -149,19 +162,20 @@ public class KafkaConsumerBinding implements MqConsumer {
 //                    new ThreadPoolExecutor.CallerRunsPolicy());
             executor = SpringThreadPoolUtil.getNewPool(config.getDestination(), config.getNumThreads(), config.getNumThreads()
                     , 100, null).getThreadPoolExecutor();
-            threadList = new LinkedList<WeakReference<KafkaConsumerThread>>();
         }
 
         @Override
         public void run() {
             while (!closeFlag.get()) {
-                List<ConsumerRecord<String, String>> records;
+                List<ConsumerRecord<String, byte[]>> records;
                 try {
                     // 获取拉取到的消息
                     records = topicQueue.poll(200, TimeUnit.MILLISECONDS);
                     if (records != null) {
-                        // 将消息按分区消息
-                        executor.submit(createConsumerThread(records));
+                        // 将消息按分区消费，开启keyOrdered时同一分区再按Key分片并行消费
+                        for (KafkaConsumerThread thread : createConsumerThreads(records)) {
+                            executor.submit(thread);
+                        }
                     }
 
                 } catch (InterruptedException e) {
@@ -172,18 +186,6 @@ public class KafkaConsumerBinding implements MqConsumer {
             }
         }
 
-        /**
-         * 立即提交消费标识
-         */
-        void commitOffsetImmediately(){
-            for (WeakReference<KafkaConsumerThread> weakReference : threadList) {
-                KafkaConsumerThread thread = weakReference.get();
-                if (thread != null) {
-                    thread.commitOffsetImmediately();
-                }
-            }
-        }
-
         /**
          * 销毁线程池
          */
@@ -192,10 +194,9 @@ public class KafkaConsumerBinding implements MqConsumer {
 //            executor.shutdown();
 //        }
 
-        private KafkaConsumerThread createConsumerThread(List<ConsumerRecord<String, String>> records){
-            KafkaConsumerThread thread = new KafkaConsumerThread(consumerWrapper, config, records);
-            threadList.add(new WeakReference<KafkaConsumerThread>(thread));
-            return thread;
+        private List<KafkaConsumerThread> createConsumerThreads(List<ConsumerRecord<String, byte[]>> records){
+            // 消费标识由消费者的KafkaOffsetTracker统一跟踪，无需保留处理线程
+            return KafkaConsumerThread.create(consumerWrapper, config, records);
         }
 
     }
@@ -204,13 +205,17 @@ public class KafkaConsumerBinding implements MqConsumer {
 
         @Override
         public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
-            commitOffsetImmediately();
-            log.info("Before rebalance, commit offset once. topic:" + config.getDestination());
+            // 已处理的消费标识由KafkaConsumerWrapper在回调前同步提交
+            log.info("Before rebalance, offset committed. topic:" + config.getDestination() + ", revoked:" + partitions);
         }
 
         @Override
         public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
-
+            // 新分配的分区可能已由其它实例消费过，本地去重状态不可信，下次检测前从持久化存储重新预热
+            DedupStore store = DedupManager.getStore(config);
+            if (store != null) {
+                store.reload();
+            }
         }
 
     }
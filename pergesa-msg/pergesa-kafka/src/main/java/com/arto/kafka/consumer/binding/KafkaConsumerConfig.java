@@ -27,9 +27,15 @@ import lombok.ToString;
 @ToString(callSuper = true)
 public class KafkaConsumerConfig extends ConsumerConfig {
 
-    /** 批量提交消费标识大小 */
+    /** 批量提交消费标识大小(已不使用，消费标识按kafka.consumer.commit.interval/count合并提交) */
     private int batchSize = 5;
 
+    /** 分区内按Key并行消费(同一Key保持顺序，并行度为numThreads) */
+    private boolean keyOrdered = false;
+
+    /** 事务消费(消费方法与消费位置在同一数据库事务中提交，开启后keyOrdered不生效) */
+    private boolean exactlyOnce = false;
+
     public KafkaConsumerConfig(String destination) {
         this.setType(MqTypeEnum.KAFKA);
         this.setDestination(destination);
@@ -12,19 +12,19 @@
  */
 package com.arto.kafka.consumer.strategy;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
+import com.arto.core.codec.MessageCodecFactory;
 import com.arto.core.common.MessageRecord;
 import com.arto.core.common.MqTypeEnum;
+import com.arto.core.consumer.dlq.DeadLetterCallback;
+import com.arto.core.consumer.dlq.DeadLetterRecord;
+import com.arto.core.consumer.retry.ConsumeRetryTask;
+import com.arto.core.consumer.retry.RetryPolicy;
+import com.arto.core.consumer.retry.RetryScheduler;
 import com.arto.core.consumer.strategy.AbstractConsumerStrategy;
-import com.arto.core.exception.MqClientException;
 import com.arto.event.bootstrap.Event;
-import com.arto.event.common.Destroyable;
 import com.arto.event.serialization.JsonSerializer;
 import com.arto.event.service.PersistentEventService;
 import com.arto.event.util.SpringContextHolder;
-import com.arto.event.util.SpringDestroyableUtil;
-import com.arto.event.util.ThreadUtil;
 import com.arto.kafka.common.Constants;
 import com.arto.kafka.consumer.binding.KafkaConsumerConfig;
 import com.arto.kafka.event.KafkaConsumeEvent;
@@ -32,112 +32,220 @@ import com.google.common.base.Strings;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.ArrayList;
+import java.util.List;
 
+import static com.arto.kafka.util.KafkaUtil.buildDeadLetter;
 import static com.arto.kafka.util.KafkaUtil.buildMessageId;
 
 /**
  * 默认消费模式，适合重要消息
- * (单条消息处理完成后消费标识同步提交，为了避免阻塞后续消息，消息处理出错 > 3次后该消息入库，等待调度任务重试处理)
+ * (消息处理出错后转入重试调度器按退避时间重试，分区继续处理后续消息，提交位置停留在最小的未完成消息；
+ *  出错 >= 3次后该消息写入死信Topic(开启时)或入库，等待调度任务重试处理)
  *
  * Created by xiong.j on 2017/1/20.
  */
 @Slf4j
-class KafkaConsumerDefaultStrategy extends AbstractConsumerStrategy implements KafkaConsumerStrategy, Destroyable {
+class KafkaConsumerDefaultStrategy extends AbstractConsumerStrategy implements KafkaConsumerStrategy {
 
     private final PersistentEventService service;
 
-    /** 消息拉取线程关闭Flag */
-    private final AtomicBoolean closeFlag = new AtomicBoolean(false);
-
     /** 序列化类 */
     private final JsonSerializer serializer;
 
     KafkaConsumerDefaultStrategy(){
         this.service = SpringContextHolder.getBean("persistentEventService");
-        // 注册勾子
-        SpringDestroyableUtil.add("kafkaConsumerDefaultStrategy", this);
         serializer = new JsonSerializer();
     }
 
     @Override
-    public void onMessage(final KafkaConsumerConfig config, final ConsumerRecord<String, String> record) {
-        tryConsume(config, record);
+    public boolean onMessage(final KafkaConsumerConfig config, final ConsumerRecord<String, byte[]> record
+            , final KafkaRetryCallback callback) {
+        return tryConsume(config, record, callback);
     }
 
-    /**
-     * 销毁
-     */
     @Override
-    public void destroy() {
-        closeFlag.set(true);
-        log.info("Destroy kafkaConsumerDefaultStrategy successful.");
+    public List<ConsumerRecord<String, byte[]>> onMessages(final KafkaConsumerConfig config
+            , final List<ConsumerRecord<String, byte[]>> records, final KafkaRetryCallback callback) {
+        List<ConsumerRecord<String, byte[]>> deferred = new ArrayList<ConsumerRecord<String, byte[]>>();
+        // 整批消费，失败的消息再逐条重试，超过三次持久化
+        for (ConsumerRecord<String, byte[]> record : onMessages(config, records, KafkaRecordAccessor.INSTANCE)) {
+            if (!tryConsume(config, record, callback)) {
+                deferred.add(record);
+            }
+        }
+        return deferred;
     }
 
     @SuppressWarnings("unchecked")
-    private void tryConsume(final KafkaConsumerConfig config, final ConsumerRecord<String, String> record) {
+    private boolean tryConsume(final KafkaConsumerConfig config, final ConsumerRecord<String, byte[]> record
+            , final KafkaRetryCallback callback) {
         MessageRecord message = null;
+        // 按消息Id检测重复消费，重复时不再反序列化
+        if (isDuplicate(config, buildMessageId(record.partition(), record.offset()))) {
+            log.info("Duplicate message, discard this record, topic:" + record.topic() + ", partition:" + record.partition()
+                    + ", offset:" + record.offset());
+            return true;
+        }
+        Throwable error;
+        int attempts;
         try {
             // 反序列化消息
             message = deserializerMessage(config, record.value());
             // 生成消息ID
             message.setMessageId(buildMessageId(record.partition(), record.offset()));
+            error = consume(config, record, message);
+            if (error == null) {
+                return true;
+            }
+            attempts = 1;
         } catch (Throwable e) {
             log.warn("Deserializer record failed, record:" + record, e);
-            // 持久化消息，以便重试
-            infiniteRetry(record, message);
+            // 不再重试消费，直接进入死信或持久化
+            error = e;
+            attempts = 0;
         }
 
-        // 如果消费出错，重试消费3次，超过三次持久化后由调度任务再重试
-        for (int i = 1; i <= 3; i++) {
-            try {
-                // 重复消费检测
-                if (!checkRedeliver(config, message)) {
-                    // 消费消息
-                    onMessage(config, message);
-                } else {
-                    log.info("Check redeliver is true, discard this message:" + message);
-                }
-                break;
-            } catch (Throwable e) {
-                log.warn("Receive message failed, waiting for retry. record:" + record, e);
-                if (i == 3) {
-                    // 持久化消息，以便重试
-                    infiniteRetry(record, message);
-                } else {
-                    // 消息处理错误，暂停处理一小会
-                    ThreadUtil.sleep(5000, log);
-                }
-            }
+        // 如果消费出错，转入重试调度器重试，超过次数后进入死信或持久化后由调度任务再重试，分区继续处理后续消息
+        MessageRetryTask task = new MessageRetryTask(config, record, message, attempts, error, callback);
+        if (config.isKeyOrdered()) {
+            // 同一Key的消息需要保证顺序，在当前线程重试
+            task.startInline();
+        } else {
+            task.start();
         }
+        return false;
     }
 
-    private void infiniteRetry(final ConsumerRecord<String, String> record
-            , MessageRecord message) {
-        boolean failed = true;
-        // 转换为事件
-        Event event = buildEvent(record, message);
-        // 无限重试直到持久化成功
-        while (!closeFlag.get()){
-            try {
-                service.persist(event, serializer, Constants.K_CONSUME_EVENT_BEAN);
-                failed = false;
-                break;
-            } catch (Throwable e) {
-                log.warn("Persist message failed, waiting for retry. record:" + record, e);
+    /**
+     * @return 消费出错时返回异常，成功返回null
+     */
+    @SuppressWarnings("unchecked")
+    private Throwable consume(final KafkaConsumerConfig config, final ConsumerRecord<String, byte[]> record
+            , final MessageRecord message) {
+        try {
+            // 重复消费检测
+            if (!checkRedeliver(config, message)) {
+                // 消费消息
+                onMessage(config, message);
+            } else {
+                log.info("Check redeliver is true, discard this message:" + message);
             }
-            // 持久化消息错误，暂停处理一小会
-            ThreadUtil.sleep(5000, log);
+            return null;
+        } catch (Throwable e) {
+            log.warn("Receive message failed, waiting for retry. record:" + record, e);
+            return e;
         }
-        if (failed) {
-            throw new MqClientException("Persist message failed when stop server.");
-        } else {
+    }
+
+    private boolean persist(final ConsumerRecord<String, byte[]> record, MessageRecord message) {
+        try {
+            service.persist(buildEvent(record, message), serializer, Constants.K_CONSUME_EVENT_BEAN);
             log.warn("Persisted message to db waiting for retry. record:" + record);
+            return true;
+        } catch (Throwable e) {
+            log.warn("Persist message failed, waiting for retry. record:" + record, e);
+            return false;
+        }
+    }
+
+    /**
+     * 消息重试任务，超过次数后写入死信，未开启死信或死信写入失败时持久化，持久化失败时继续重试直到成功
+     */
+    private class MessageRetryTask extends ConsumeRetryTask implements DeadLetterCallback {
+
+        private final KafkaConsumerConfig config;
+
+        private final ConsumerRecord<String, byte[]> record;
+
+        private final MessageRecord message;
+
+        private final KafkaRetryCallback callback;
+
+        /** 实际消费次数 */
+        private int consumed;
+
+        /** 最后一次失败的异常 */
+        private Throwable error;
+
+        /** 是否尝试死信 */
+        private volatile boolean deadLetter = true;
+
+        /** 已放入死信队列，由死信回调结束处理(死信发送线程可能先于重试线程回调) */
+        private volatile boolean deadLettered = false;
+
+        MessageRetryTask(KafkaConsumerConfig config, ConsumerRecord<String, byte[]> record, MessageRecord message
+                , int consumed, Throwable error, KafkaRetryCallback callback) {
+            // 反序列化失败的消息不再重试消费
+            super(RetryScheduler.getInstance(), RetryPolicy.of(config.getDestination())
+                    , consumed == 0 ? Integer.MAX_VALUE : consumed);
+            this.config = config;
+            this.record = record;
+            this.message = message;
+            this.consumed = consumed;
+            this.error = error;
+            this.callback = callback;
+        }
+
+        @Override
+        protected boolean consume() {
+            consumed++;
+            error = KafkaConsumerDefaultStrategy.this.consume(config, record, message);
+            return error == null;
+        }
+
+        @Override
+        protected boolean giveUp() {
+            if (deadLetter) {
+                // 放入死信队列前设置，避免死信回调先于返回执行
+                deadLettered = true;
+                if (deadLetter(buildDeadLetter(record, error, consumed), this)) {
+                    return true;
+                }
+                deadLettered = false;
+            }
+            // 持久化消息，以便重试
+            if (persist(record, message)) {
+                countPersisted(config);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        protected void onResolved() {
+            if (!deadLettered) {
+                callback.onResolved(record);
+            }
+        }
+
+        @Override
+        protected void onRetry() {
+            countRetry(config);
+        }
+
+        @Override
+        public void onShutdown() {
+            // 不提交位置，重启后重新消费
+            log.warn("Retry canceled when stop server, waiting for redelivery. record:" + record);
+        }
+
+        @Override
+        public void onSent(DeadLetterRecord deadLetter) {
+            callback.onResolved(record);
+        }
+
+        @Override
+        public void onFailed(DeadLetterRecord deadLetter, Throwable t) {
+            // 死信写入失败，改为持久化
+            this.deadLetter = false;
+            this.deadLettered = false;
+            start();
         }
     }
 
     @SuppressWarnings("unchecked")
-    private Event buildEvent(final ConsumerRecord<String, String> record, MessageRecord message){
+    static Event buildEvent(final ConsumerRecord<String, byte[]> record, MessageRecord message){
         // 生成事件
         KafkaConsumeEvent event = new KafkaConsumeEvent();
         // 事件分组
@@ -153,21 +261,22 @@ class KafkaConsumerDefaultStrategy extends AbstractConsumerStrategy implements K
         // 是否持久化
         event.setPersistent(true);
         if (message == null) {
-            JSONObject jsonObject = JSON.parseObject(record.value());
+            // 只按原始类型解析一次，消息内容为JSON对象
+            MessageRecord rawMessage = MessageCodecFactory.decodeRaw(record.value());
             String messageId = buildMessageId(record.partition(), record.offset());
-            if (!Strings.isNullOrEmpty(jsonObject.getString("businessId"))) {
+            if (!Strings.isNullOrEmpty(rawMessage.getBusinessId())) {
                 // 消息自带业务流水号
-                event.setBusinessId(jsonObject.getString("businessId"));
+                event.setBusinessId(rawMessage.getBusinessId());
                 // 消息自带业务类型
-                event.setBusinessType(jsonObject.getString("businessType"));
+                event.setBusinessType(rawMessage.getBusinessType());
             } else {
                 // 业务流水号为消息ID
                 event.setBusinessId(messageId);
             }
             // 设置消息Id
             event.setMessageId(messageId);
-            // 消息解析出错时消息设为json对象
-            event.setPayload(jsonObject);
+            // 消息解析出错时消息内容保留为JSON对象
+            event.setPayload(rawMessage);
         } else {
             // 设置消息Id
             event.setMessageId(message.getMessageId());
@@ -13,15 +13,20 @@
 package com.arto.kafka.consumer.strategy;
 
 import com.arto.core.common.MessageRecord;
+import com.arto.core.consumer.dlq.DeadLetterRouter;
 import com.arto.core.consumer.strategy.AbstractConsumerStrategy;
 import com.arto.kafka.consumer.binding.KafkaConsumerConfig;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 
+import java.util.Collections;
+import java.util.List;
+
+import static com.arto.kafka.util.KafkaUtil.buildDeadLetter;
 import static com.arto.kafka.util.KafkaUtil.buildMessageId;
 
 /**
- * 低优先级消费模式，消息出错直接丢弃，适合容忍消息丢失的非重要消息
+ * 低优先级消费模式，消息出错直接丢弃(开启死信时写入死信Topic)，适合容忍消息丢失的非重要消息
  *
  * Created by xiong.j on 2017/1/20.
  */
@@ -29,13 +34,31 @@ import static com.arto.kafka.util.KafkaUtil.buildMessageId;
 class KafkaConsumerLowPriorityStrategy extends AbstractConsumerStrategy implements KafkaConsumerStrategy {
 
     @Override
-    public void onMessage(final KafkaConsumerConfig config, final ConsumerRecord<String, String> record) {
+    public boolean onMessage(final KafkaConsumerConfig config, final ConsumerRecord<String, byte[]> record
+            , final KafkaRetryCallback callback) {
         tryConsume(config, record);
+        return true;
+    }
+
+    @Override
+    public List<ConsumerRecord<String, byte[]>> onMessages(final KafkaConsumerConfig config
+            , final List<ConsumerRecord<String, byte[]>> records, final KafkaRetryCallback callback) {
+        // 整批消费，失败的消息再逐条处理，出错丢弃
+        for (ConsumerRecord<String, byte[]> record : onMessages(config, records, KafkaRecordAccessor.INSTANCE)) {
+            tryConsume(config, record);
+        }
+        return Collections.emptyList();
     }
 
     @SuppressWarnings("unchecked")
-    private void tryConsume(final KafkaConsumerConfig config, final ConsumerRecord<String, String> record) {
+    private void tryConsume(final KafkaConsumerConfig config, final ConsumerRecord<String, byte[]> record) {
         try {
+            // 按消息Id检测重复消费，重复时不再反序列化
+            if (isDuplicate(config, buildMessageId(record.partition(), record.offset()))) {
+                log.info("Duplicate message, discard this record, topic:" + record.topic() + ", partition:" + record.partition()
+                    + ", offset:" + record.offset());
+                return;
+            }
             // 反序列化消息
             MessageRecord message = deserializerMessage(config, record.value());
             // 生成消息ID
@@ -49,6 +72,10 @@ class KafkaConsumerLowPriorityStrategy extends AbstractConsumerStrategy implemen
             }
         } catch (Throwable e) {
             log.warn("Receive message failed. record:" + record, e);
+            // 开启死信时写入死信Topic，不等待结果
+            if (DeadLetterRouter.isEnabled(record.topic())) {
+                deadLetter(buildDeadLetter(record, e, 1), null);
+            }
         }
     }
 
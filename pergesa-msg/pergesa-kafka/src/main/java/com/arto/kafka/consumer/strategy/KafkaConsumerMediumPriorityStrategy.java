@@ -13,16 +13,24 @@
 package com.arto.kafka.consumer.strategy;
 
 import com.arto.core.common.MessageRecord;
+import com.arto.core.consumer.dlq.DeadLetterCallback;
+import com.arto.core.consumer.dlq.DeadLetterRecord;
+import com.arto.core.consumer.retry.ConsumeRetryTask;
+import com.arto.core.consumer.retry.RetryPolicy;
+import com.arto.core.consumer.retry.RetryScheduler;
 import com.arto.core.consumer.strategy.AbstractConsumerStrategy;
-import com.arto.event.util.ThreadUtil;
 import com.arto.kafka.consumer.binding.KafkaConsumerConfig;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.arto.kafka.util.KafkaUtil.buildDeadLetter;
 import static com.arto.kafka.util.KafkaUtil.buildMessageId;
 
 /**
- * 普通消费模式，消息消费失败会重试三次，然后丢弃消息。适合容忍消息丢失的普通消息
+ * 普通消费模式，消息消费失败会在重试调度器中重试三次(默认)，然后写入死信Topic(开启时)或丢弃消息。适合容忍消息丢失的普通消息
  *
  * Created by xiong.j on 2017/1/20.
  */
@@ -30,43 +38,167 @@ import static com.arto.kafka.util.KafkaUtil.buildMessageId;
 class KafkaConsumerMediumPriorityStrategy extends AbstractConsumerStrategy implements KafkaConsumerStrategy {
 
     @Override
-    public void onMessage(final KafkaConsumerConfig config, final ConsumerRecord<String, String> record) {
-        tryConsume(config, record);
+    public boolean onMessage(final KafkaConsumerConfig config, final ConsumerRecord<String, byte[]> record
+            , final KafkaRetryCallback callback) {
+        return tryConsume(config, record, callback);
+    }
+
+    @Override
+    public List<ConsumerRecord<String, byte[]>> onMessages(final KafkaConsumerConfig config
+            , final List<ConsumerRecord<String, byte[]>> records, final KafkaRetryCallback callback) {
+        List<ConsumerRecord<String, byte[]>> deferred = new ArrayList<ConsumerRecord<String, byte[]>>();
+        // 整批消费，失败的消息再逐条重试，超过三次写入死信或丢弃
+        for (ConsumerRecord<String, byte[]> record : onMessages(config, records, KafkaRecordAccessor.INSTANCE)) {
+            if (!tryConsume(config, record, callback)) {
+                deferred.add(record);
+            }
+        }
+        return deferred;
     }
 
     @SuppressWarnings("unchecked")
-    private void tryConsume(final KafkaConsumerConfig config, final ConsumerRecord<String, String> record) {
+    private boolean tryConsume(final KafkaConsumerConfig config, final ConsumerRecord<String, byte[]> record
+            , final KafkaRetryCallback callback) {
         MessageRecord message = null;
+        // 按消息Id检测重复消费，重复时不再反序列化
+        if (isDuplicate(config, buildMessageId(record.partition(), record.offset()))) {
+            log.info("Duplicate message, discard this record, topic:" + record.topic() + ", partition:" + record.partition()
+                    + ", offset:" + record.offset());
+            return true;
+        }
+        Throwable error;
+        int attempts;
         try {
             // 反序列化消息
             message = deserializerMessage(config, record.value());
             // 生成消息ID
             message.setMessageId(buildMessageId(record.partition(), record.offset()));
+            error = consume(config, message);
+            if (error == null) {
+                return true;
+            }
+            attempts = 1;
         } catch (Throwable e) {
-            log.warn("Deserializer record failed, Discard this record:" + record, e);
+            log.warn("Deserializer record failed, record:" + record, e);
+            // 不再重试消费，直接进入死信或丢弃
+            error = e;
+            attempts = 0;
         }
 
-        // 如果消费出错，重试消费3次，超过三次后丢弃
-        for (int i = 1; i <= 3; i++) {
-            try {
-                // 重复消费检测
-                if (!checkRedeliver(config, message)) {
-                    // 消费消息
-                    onMessage(config, message);
-                } else {
-                    log.info("Discard redelivered message:" + message);
-                }
-                break;
-            } catch (Throwable e) {
-                log.warn("Receive message failed, waiting for retry. message:" + message, e);
-                if (i == 3) {
-                    // 持久化消息，以便重试
-                    log.warn("Receive message failed 3 times, Discard message:" + message);
-                } else {
-                    // 消息处理错误，暂停处理一小会
-                    ThreadUtil.sleep(5000, log);
-                }
+        // 如果消费出错，转入重试调度器重试，超过次数后写入死信或丢弃，分区继续处理后续消息
+        MessageRetryTask task = new MessageRetryTask(config, record, message, attempts, error, callback);
+        if (config.isKeyOrdered()) {
+            // 同一Key的消息需要保证顺序，在当前线程重试
+            task.startInline();
+        } else {
+            task.start();
+        }
+        return false;
+    }
+
+    /**
+     * @return 消费出错时返回异常，成功返回null
+     */
+    @SuppressWarnings("unchecked")
+    private Throwable consume(final KafkaConsumerConfig config, final MessageRecord message) {
+        try {
+            // 重复消费检测
+            if (!checkRedeliver(config, message)) {
+                // 消费消息
+                onMessage(config, message);
+            } else {
+                log.info("Discard redelivered message:" + message);
             }
+            return null;
+        } catch (Throwable e) {
+            log.warn("Receive message failed, waiting for retry. message:" + message, e);
+            return e;
+        }
+    }
+
+    /**
+     * 消息重试任务，超过次数后写入死信，未开启死信或死信写入失败时丢弃
+     */
+    private class MessageRetryTask extends ConsumeRetryTask implements DeadLetterCallback {
+
+        private final KafkaConsumerConfig config;
+
+        private final ConsumerRecord<String, byte[]> record;
+
+        private final MessageRecord message;
+
+        private final KafkaRetryCallback callback;
+
+        /** 实际消费次数 */
+        private int consumed;
+
+        /** 最后一次失败的异常 */
+        private Throwable error;
+
+        /** 已放入死信队列，由死信回调结束处理(死信发送线程可能先于重试线程回调) */
+        private volatile boolean deadLettered = false;
+
+        MessageRetryTask(KafkaConsumerConfig config, ConsumerRecord<String, byte[]> record, MessageRecord message
+                , int consumed, Throwable error, KafkaRetryCallback callback) {
+            // 反序列化失败的消息不再重试消费
+            super(RetryScheduler.getInstance(), RetryPolicy.of(config.getDestination())
+                    , consumed == 0 ? Integer.MAX_VALUE : consumed);
+            this.config = config;
+            this.record = record;
+            this.message = message;
+            this.consumed = consumed;
+            this.error = error;
+            this.callback = callback;
+        }
+
+        @Override
+        protected boolean consume() {
+            consumed++;
+            error = KafkaConsumerMediumPriorityStrategy.this.consume(config, message);
+            return error == null;
+        }
+
+        @Override
+        protected boolean giveUp() {
+            // 放入死信队列前设置，避免死信回调先于返回执行
+            deadLettered = true;
+            if (deadLetter(buildDeadLetter(record, error, consumed), this)) {
+                return true;
+            }
+            deadLettered = false;
+            log.warn("Receive message failed " + consumed + " times, Discard record:" + record);
+            countDiscarded(config);
+            return true;
+        }
+
+        @Override
+        protected void onResolved() {
+            if (!deadLettered) {
+                callback.onResolved(record);
+            }
+        }
+
+        @Override
+        protected void onRetry() {
+            countRetry(config);
+        }
+
+        @Override
+        public void onShutdown() {
+            // 不提交位置，重启后重新消费
+            log.warn("Retry canceled when stop server, waiting for redelivery. record:" + record);
+        }
+
+        @Override
+        public void onSent(DeadLetterRecord deadLetter) {
+            callback.onResolved(record);
+        }
+
+        @Override
+        public void onFailed(DeadLetterRecord deadLetter, Throwable t) {
+            log.warn("Send dead letter failed, Discard record:" + record, t);
+            countDiscarded(config);
+            callback.onResolved(record);
         }
     }
 
@@ -15,6 +15,8 @@ package com.arto.kafka.consumer.strategy;
 import com.arto.kafka.consumer.binding.KafkaConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 
+import java.util.List;
+
 /**
  * Kafka消费策略接口
  *
@@ -27,7 +29,21 @@ public interface KafkaConsumerStrategy {
      *
      * @param config
      * @param record
+     * @param callback 消息转入重试调度器后处理结束时回调
+     * @return 已处理结束返回true，转入重试调度器时返回false(提交位置停留在该消息之前，直到回调)
+     */
+    boolean onMessage(final KafkaConsumerConfig config, final ConsumerRecord<String, byte[]> record
+            , final KafkaRetryCallback callback);
+
+    /**
+     * 批量消费消息，失败的消息按单条消息的方式重试
+     *
+     * @param config
+     * @param records
+     * @param callback 消息转入重试调度器后处理结束时回调
+     * @return 转入重试调度器的消息
      */
-    void onMessage(final KafkaConsumerConfig config, final ConsumerRecord<String, String> record);
+    List<ConsumerRecord<String, byte[]>> onMessages(final KafkaConsumerConfig config
+            , final List<ConsumerRecord<String, byte[]>> records, final KafkaRetryCallback callback);
 
 }
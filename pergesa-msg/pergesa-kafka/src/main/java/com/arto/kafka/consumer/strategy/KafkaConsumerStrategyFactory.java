@@ -12,7 +12,11 @@
  */
 package com.arto.kafka.consumer.strategy;
 
+import com.arto.core.common.MqTypeEnum;
+import com.arto.core.consumer.dlq.DeadLetterRouter;
 import com.arto.event.bootstrap.EventBusFactory;
+import com.arto.kafka.consumer.binding.KafkaConsumerConfig;
+import com.arto.kafka.dlq.KafkaDeadLetterSender;
 
 import java.lang.ref.SoftReference;
 import java.util.concurrent.ConcurrentHashMap;
@@ -30,6 +34,11 @@ public class KafkaConsumerStrategyFactory {
     private final ConcurrentMap<Integer, SoftReference<KafkaConsumerStrategy>> strategyMap
             = new ConcurrentHashMap<Integer, SoftReference<KafkaConsumerStrategy>>(3);
 
+    private KafkaConsumerStrategyFactory() {
+        // 注册Kafka死信发送器
+        DeadLetterRouter.register(MqTypeEnum.KAFKA.getMemo(), new KafkaDeadLetterSender());
+    }
+
     public static KafkaConsumerStrategyFactory getInstance(){
         if (null == instance) {
             synchronized (EventBusFactory.class) {
@@ -41,6 +50,29 @@ public class KafkaConsumerStrategyFactory {
         return instance;
     }
 
+    /** 事务消费策略 */
+    private volatile KafkaConsumerStrategy transactionalStrategy;
+
+    /**
+     * 根据消费配置生成消费策略，开启事务消费时使用事务消费策略，否则按消费优先级
+     *
+     * @param config
+     * @return
+     */
+    public KafkaConsumerStrategy getStrategy(final KafkaConsumerConfig config) {
+        if (!config.isExactlyOnce()) {
+            return getStrategy(config.getPriority());
+        }
+        if (transactionalStrategy == null) {
+            synchronized (this) {
+                if (transactionalStrategy == null) {
+                    transactionalStrategy = new KafkaConsumerTransactionalStrategy();
+                }
+            }
+        }
+        return transactionalStrategy;
+    }
+
     /**
      * 根据消费优先级生成不同的消费策略
      *
@@ -0,0 +1,217 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.kafka.consumer.strategy;
+
+import com.arto.core.common.MessageRecord;
+import com.arto.core.consumer.retry.RetryPolicy;
+import com.arto.core.consumer.retry.RetryScheduler;
+import com.arto.core.consumer.strategy.AbstractConsumerStrategy;
+import com.arto.core.exception.MqClientException;
+import com.arto.event.serialization.JsonSerializer;
+import com.arto.event.service.PersistentEventService;
+import com.arto.event.util.SpringContextHolder;
+import com.arto.event.util.ThreadUtil;
+import com.arto.kafka.common.Constants;
+import com.arto.kafka.consumer.KafkaOffsetFencedException;
+import com.arto.kafka.consumer.KafkaOffsetRepository;
+import com.arto.kafka.consumer.binding.KafkaConsumerConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.arto.kafka.util.KafkaUtil.buildDeadLetter;
+import static com.arto.kafka.util.KafkaUtil.buildMessageId;
+
+/**
+ * 事务消费模式(@Consumer(exactlyOnce = true))
+ * 消费方法与分区消费位置在同一数据库事务中提交，位置以数据库为准，分区分配后从该位置继续消费，不依赖去重.
+ * 出错后在当前线程按退避时间重试，保持分区顺序；超过次数后按优先级处理，与消费位置在同一事务中提交：
+ * 重要消息入库等待调度任务重试，其它消息写入死信Topic(开启时)或丢弃.
+ * 数据库中的位置已被其它消费者推进时本次消费随事务回滚，不再重试，该消息视为已由其它消费者处理.
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+@Slf4j
+class KafkaConsumerTransactionalStrategy extends AbstractConsumerStrategy implements KafkaConsumerStrategy {
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final KafkaOffsetRepository repository;
+
+    private final PersistentEventService service;
+
+    /** 序列化类 */
+    private final JsonSerializer serializer;
+
+    KafkaConsumerTransactionalStrategy() {
+        // 暂时依赖Spring获取，消费方法中的数据库操作需使用同一个事务管理器
+        this(new TransactionTemplate(SpringContextHolder.getBean(DataSourceTransactionManager.class))
+                , KafkaOffsetRepository.getInstance()
+                , SpringContextHolder.<PersistentEventService>getBean("persistentEventService"));
+    }
+
+    KafkaConsumerTransactionalStrategy(TransactionTemplate transactionTemplate, KafkaOffsetRepository repository
+            , PersistentEventService service) {
+        this.transactionTemplate = transactionTemplate;
+        this.repository = repository;
+        this.service = service;
+        this.serializer = new JsonSerializer();
+    }
+
+    @Override
+    public boolean onMessage(final KafkaConsumerConfig config, final ConsumerRecord<String, byte[]> record
+            , final KafkaRetryCallback callback) {
+        MessageRecord message;
+        try {
+            // 反序列化消息
+            message = deserializerMessage(config, record.value());
+            // 生成消息ID
+            message.setMessageId(buildMessageId(record.partition(), record.offset()));
+        } catch (Throwable e) {
+            log.warn("Deserializer record failed, record:" + record, e);
+            // 不再重试消费
+            giveUp(config, record, null, e, 0);
+            return true;
+        }
+
+        RetryPolicy policy = RetryPolicy.of(config.getDestination());
+        for (int attempts = 1; ; attempts++) {
+            try {
+                consume(config, record, message);
+                return true;
+            } catch (KafkaOffsetFencedException e) {
+                log.warn("Offset fenced, skip this record:" + record, e);
+                return true;
+            } catch (Throwable e) {
+                if (attempts >= policy.getMaxAttempts()) {
+                    log.warn("Receive message failed, attempts:" + attempts + ", record:" + record, e);
+                    giveUp(config, record, message, e, attempts);
+                    return true;
+                }
+                log.warn("Receive message failed, waiting for retry. record:" + record, e);
+                await(record, policy.nextDelay(attempts));
+                countRetry(config);
+            }
+        }
+    }
+
+    @Override
+    public List<ConsumerRecord<String, byte[]>> onMessages(final KafkaConsumerConfig config
+            , final List<ConsumerRecord<String, byte[]>> records, final KafkaRetryCallback callback) {
+        final List<MessageRecord> messages = new ArrayList<MessageRecord>(records.size());
+        try {
+            for (ConsumerRecord<String, byte[]> record : records) {
+                MessageRecord message = deserializerMessage(config, record.value());
+                message.setMessageId(buildMessageId(record.partition(), record.offset()));
+                messages.add(message);
+            }
+            // 整批与最后一条消息的位置在同一事务中提交
+            final ConsumerRecord<String, byte[]> last = records.get(records.size() - 1);
+            transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    consumeAll(config, messages);
+                    saveOffset(records.get(0), last);
+                }
+            });
+        } catch (Throwable e) {
+            // 整批已回滚，逐条在各自的事务中处理
+            log.warn("Consume batch failed, retry them alone. size:" + records.size(), e);
+            for (ConsumerRecord<String, byte[]> record : records) {
+                onMessage(config, record, callback);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * 消费消息并提交消费位置，出错时整个事务回滚
+     */
+    @SuppressWarnings("unchecked")
+    private void consume(final KafkaConsumerConfig config, final ConsumerRecord<String, byte[]> record
+            , final MessageRecord message) {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                onMessage(config, message);
+                saveOffset(record);
+            }
+        });
+    }
+
+    /**
+     * 超过重试次数，按优先级持久化或丢弃，与消费位置在同一事务中提交，提交失败时继续重试直到成功
+     */
+    private void giveUp(final KafkaConsumerConfig config, final ConsumerRecord<String, byte[]> record
+            , final MessageRecord message, final Throwable error, final int consumed) {
+        final boolean persist = config.getPriority() == 1;
+        for (int attempts = 1; ; attempts++) {
+            try {
+                transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                    @Override
+                    protected void doInTransactionWithoutResult(TransactionStatus status) {
+                        if (persist) {
+                            // 持久化消息，以便调度任务重试
+                            service.persist(KafkaConsumerDefaultStrategy.buildEvent(record, message), serializer
+                                    , Constants.K_CONSUME_EVENT_BEAN);
+                        }
+                        saveOffset(record);
+                    }
+                });
+                break;
+            } catch (KafkaOffsetFencedException e) {
+                log.warn("Offset fenced, skip this record:" + record, e);
+                return;
+            } catch (Throwable e) {
+                log.warn("Commit failed message offset failed, waiting for retry. record:" + record, e);
+                await(record, 100L << Math.min(attempts, 6));
+            }
+        }
+
+        if (persist) {
+            log.warn("Persisted message to db waiting for retry. record:" + record);
+            countPersisted(config);
+        } else {
+            // 位置已提交，死信写入不保证成功
+            if (!deadLetter(buildDeadLetter(record, error, consumed), null)) {
+                log.warn("Retry failed, discard this message. record:" + record, error);
+            }
+            countDiscarded(config);
+        }
+    }
+
+    private void saveOffset(ConsumerRecord<String, byte[]> record) {
+        saveOffset(record, record);
+    }
+
+    private void saveOffset(ConsumerRecord<String, byte[]> first, ConsumerRecord<String, byte[]> last) {
+        // 保存下一条待消费的位置
+        repository.save(new TopicPartition(last.topic(), last.partition()), first.offset(), last.offset() + 1);
+    }
+
+    private void await(ConsumerRecord<String, byte[]> record, long delay) {
+        if (RetryScheduler.getInstance().isClosed()) {
+            // 不提交位置，重启后从数据库中的位置重新消费
+            throw new MqClientException("Retry canceled when stop server, waiting for redelivery. record:" + record);
+        }
+        ThreadUtil.sleep(delay, log);
+    }
+}
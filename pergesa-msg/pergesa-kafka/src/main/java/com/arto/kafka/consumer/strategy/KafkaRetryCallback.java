@@ -0,0 +1,28 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.kafka.consumer.strategy;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+/**
+ * 转入重试调度器的消息处理结束(消费成功、持久化或丢弃)时的回调
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+public interface KafkaRetryCallback {
+
+    /**
+     * @param record 处理结束的消息
+     */
+    void onResolved(ConsumerRecord<String, byte[]> record);
+}
@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.kafka.dlq;
+
+import com.arto.core.consumer.dlq.DeadLetterRecord;
+import com.arto.core.exception.MqClientException;
+import com.arto.event.util.SpringContextHolder;
+import com.arto.kafka.config.KafkaConfigManager;
+import com.arto.kafka.producer.KafkaMessageProducerFactory;
+import com.google.common.util.concurrent.RateLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kafka死信重放工具，按指定速率把死信Topic中的消息重新发送到原Topic
+ * 使用独立的消费组(kafka.dlq.replay.group.id)，重放成功后提交位置，重复执行时从上次位置继续
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+@Slf4j
+public class KafkaDeadLetterReplayer {
+
+    /** 死信Topic */
+    private final String deadLetterTopic;
+
+    /** 连续拉取为空的次数达到该值时认为已重放完 */
+    private final int maxEmptyPolls = 3;
+
+    public KafkaDeadLetterReplayer(String deadLetterTopic) {
+        this.deadLetterTopic = deadLetterTopic;
+    }
+
+    /**
+     * 重放死信
+     *
+     * @param rate 每秒重放条数
+     * @param maxRecords 最多重放条数，小于等于0时重放到死信Topic末尾
+     * @return 重放条数
+     * @throws MqClientException
+     */
+    public int replay(double rate, int maxRecords) throws MqClientException {
+        if (rate <= 0) {
+            throw new MqClientException("Replay rate must be positive:" + rate);
+        }
+        RateLimiter limiter = RateLimiter.create(rate);
+        KafkaConsumer<String, byte[]> consumer = new KafkaConsumer<String, byte[]>(buildProperties());
+        int replayed = 0;
+        try {
+            KafkaProducer<String, byte[]> producer = SpringContextHolder.getBean(KafkaMessageProducerFactory.class).getProducer(1);
+            consumer.subscribe(Collections.singletonList(deadLetterTopic));
+            int emptyPolls = 0;
+            while (emptyPolls < maxEmptyPolls && (maxRecords <= 0 || replayed < maxRecords)) {
+                ConsumerRecords<String, byte[]> records = consumer.poll(1000);
+                if (records.isEmpty()) {
+                    emptyPolls++;
+                    continue;
+                }
+                emptyPolls = 0;
+
+                Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<TopicPartition, OffsetAndMetadata>();
+                List<Future<RecordMetadata>> futures = new ArrayList<Future<RecordMetadata>>(records.count());
+                for (ConsumerRecord<String, byte[]> record : records) {
+                    if (maxRecords > 0 && replayed + futures.size() >= maxRecords) {
+                        break;
+                    }
+                    limiter.acquire();
+                    DeadLetterRecord deadLetter = DeadLetterRecord.decode(record.value());
+                    futures.add(producer.send(new ProducerRecord<String, byte[]>(deadLetter.getDestination()
+                            , deadLetter.getKey(), deadLetter.getPayload())));
+                    offsets.put(new TopicPartition(record.topic(), record.partition())
+                            , new OffsetAndMetadata(record.offset() + 1));
+                }
+                // 全部发送成功后才提交位置，失败时下次从本批开始重放
+                for (Future<RecordMetadata> future : futures) {
+                    future.get(KafkaConfigManager.getInt("kafka.producer.timeout", 10), TimeUnit.SECONDS);
+                }
+                consumer.commitSync(offsets);
+                replayed += futures.size();
+                log.info("Replayed dead letters:" + replayed + ", topic:" + deadLetterTopic);
+            }
+        } catch (MqClientException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new MqClientException("Replay dead letters failed, replayed:" + replayed + ", topic:" + deadLetterTopic, t);
+        } finally {
+            consumer.close();
+        }
+        return replayed;
+    }
+
+    private Properties buildProperties() {
+        Properties props = new Properties();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG
+                , KafkaConfigManager.getString("kafka." + ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "172.18.2.192:9092"));
+        props.put(ConsumerConfig.GROUP_ID_CONFIG
+                , KafkaConfigManager.getString("kafka.dlq.replay.group.id", "pergesa-msg-dlq-replay"));
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        // 首次重放从死信Topic开头开始
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, KafkaConfigManager.getInt("kafka.dlq.replay.batch", 100));
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG
+                , "org.apache.kafka.common.serialization.StringDeserializer");
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG
+                , "org.apache.kafka.common.serialization.ByteArrayDeserializer");
+        return props;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.kafka.dlq;
+
+import com.arto.core.consumer.dlq.DeadLetterRecord;
+import com.arto.core.consumer.dlq.DeadLetterSender;
+import com.arto.event.util.SpringContextHolder;
+import com.arto.kafka.config.KafkaConfigManager;
+import com.arto.kafka.producer.KafkaMessageProducerFactory;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kafka死信发送，以JSON信封(原消息体 + 失败信息)写入死信Topic，默认为"原Topic.DLQ"，保留原消息Key
+ *
+ * Created by xiong.j on 2017/4/30.
+ */
+public class KafkaDeadLetterSender implements DeadLetterSender {
+
+    /** 等待发送结果的超时时间(秒) */
+    private final int timeout = KafkaConfigManager.getInt("kafka.producer.timeout", 10);
+
+    @Override
+    public String getDefaultName(String destination) {
+        return destination + ".DLQ";
+    }
+
+    @Override
+    public Throwable[] send(List<DeadLetterRecord> records) throws Exception {
+        KafkaProducer<String, byte[]> producer;
+        try {
+            // 使用高优先级(acks=all)的生产者
+            producer = SpringContextHolder.getBean(KafkaMessageProducerFactory.class).getProducer(1);
+        } catch (Throwable t) {
+            throw new Exception("Get kafka producer failed.", t);
+        }
+
+        // 先全部提交到发送缓冲区，再逐条等待结果
+        Throwable[] results = new Throwable[records.size()];
+        List<Future<RecordMetadata>> futures = new ArrayList<Future<RecordMetadata>>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            DeadLetterRecord record = records.get(i);
+            try {
+                futures.add(producer.send(new ProducerRecord<String, byte[]>(record.getDeadLetterDestination()
+                        , record.getKey(), record.encode())));
+            } catch (Throwable t) {
+                futures.add(null);
+                results[i] = t;
+            }
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            if (futures.get(i) == null) {
+                continue;
+            }
+            try {
+                futures.get(i).get(timeout, TimeUnit.SECONDS);
+            } catch (Throwable t) {
+                results[i] = t;
+            }
+        }
+        return results;
+    }
+}
@@ -12,6 +12,8 @@
  */
 package com.arto.kafka.listener;
 
+import com.arto.core.exception.CircuitBreakerOpenException;
+import com.arto.core.producer.breaker.SendCircuitBreakerManager;
 import com.arto.event.bootstrap.EventListener;
 import com.arto.event.service.EventAdviceService;
 import com.arto.kafka.common.Constants;
@@ -22,6 +24,8 @@ import com.google.common.eventbus.Subscribe;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Collections;
+
 /**
  * 消息发送事件
  *
@@ -40,6 +44,12 @@ public class KafkaProduceEventListener implements EventListener<KafkaProduceEven
     @AllowConcurrentEvents
     @Override
     public void listen(KafkaProduceEvent event) {
+        // 调度任务恢复的重试消息受全局重试预算限制
+        boolean retry = SendCircuitBreakerManager.isRetry(event);
+        if (retry && !SendCircuitBreakerManager.getRetryBudget().tryAcquire()) {
+            service.park(Collections.singletonList(event), SendCircuitBreakerManager.getParkSeconds());
+            return;
+        }
         try {
             // 前处理
             service.before(event);
@@ -47,9 +57,16 @@ public class KafkaProduceEventListener implements EventListener<KafkaProduceEven
             producer.send(event);
             // 后处理
             service.after(event);
+        } catch (CircuitBreakerOpenException e) {
+            // 熔断中未发送，延后处理且不计入重试次数
+            service.park(Collections.singletonList(event), SendCircuitBreakerManager.getParkSeconds());
         } catch (Throwable e) {
             // 失败处理
             service.fail(event, e);
+        } finally {
+            if (retry) {
+                SendCircuitBreakerManager.getRetryBudget().release();
+            }
         }
     }
 
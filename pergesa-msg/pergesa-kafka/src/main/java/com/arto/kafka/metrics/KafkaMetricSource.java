@@ -0,0 +1,53 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.kafka.metrics;
+
+import com.arto.core.metrics.MetricName;
+import com.arto.core.metrics.MetricSource;
+import org.apache.kafka.common.Metric;
+
+import java.util.Map;
+
+/**
+ * 将KafkaProducer/KafkaConsumer自带的指标(metrics())桥接到MqMetrics，
+ * 指标名为"前缀_分组_名称"，Kafka的标签原样保留
+ *
+ * Created by xiong.j on 2017/4/20.
+ */
+public class KafkaMetricSource implements MetricSource {
+
+    private final String prefix;
+
+    /** 客户端的指标集合(Kafka返回的是只读视图，新增的指标也能读到) */
+    private final Map<org.apache.kafka.common.MetricName, ? extends Metric> kafkaMetrics;
+
+    public KafkaMetricSource(String prefix, Map<org.apache.kafka.common.MetricName, ? extends Metric> kafkaMetrics) {
+        this.prefix = prefix;
+        this.kafkaMetrics = kafkaMetrics;
+    }
+
+    @Override
+    public void collect(Map<MetricName, Double> metrics) {
+        for (Map.Entry<org.apache.kafka.common.MetricName, ? extends Metric> entry : kafkaMetrics.entrySet()) {
+            org.apache.kafka.common.MetricName kafkaName = entry.getKey();
+            String[] labels = new String[kafkaName.tags().size() * 2];
+            int i = 0;
+            for (Map.Entry<String, String> tag : kafkaName.tags().entrySet()) {
+                labels[i++] = tag.getKey();
+                labels[i++] = tag.getValue();
+            }
+            metrics.put(new MetricName(prefix + "_" + kafkaName.group() + "_" + kafkaName.name(), labels)
+                    , entry.getValue().value());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.kafka.metrics;
+
+import com.arto.core.producer.limit.ThrottleSource;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+
+import java.util.Map;
+
+/**
+ * 读取KafkaProducer的produce-throttle-time-avg指标(Broker配额限流时间)，供自适应限流使用
+ *
+ * Created by xiong.j on 2017/4/28.
+ */
+public class KafkaThrottleSource implements ThrottleSource {
+
+    private static final String GROUP = "producer-metrics";
+
+    private static final String NAME = "produce-throttle-time-avg";
+
+    private final Map<MetricName, ? extends Metric> kafkaMetrics;
+
+    /** 限流指标，首次读取时查找 */
+    private volatile Metric throttleMetric;
+
+    public KafkaThrottleSource(Map<MetricName, ? extends Metric> kafkaMetrics) {
+        this.kafkaMetrics = kafkaMetrics;
+    }
+
+    @Override
+    public double getThrottleTimeMs() {
+        Metric metric = throttleMetric;
+        if (metric == null) {
+            for (Map.Entry<MetricName, ? extends Metric> entry : kafkaMetrics.entrySet()) {
+                if (GROUP.equals(entry.getKey().group()) && NAME.equals(entry.getKey().name())) {
+                    metric = entry.getValue();
+                    throttleMetric = metric;
+                    break;
+                }
+            }
+        }
+        if (metric == null) {
+            return 0;
+        }
+        double value = metric.value();
+        // 没有样本时为NaN
+        return Double.isNaN(value) || Double.isInfinite(value) ? 0 : value;
+    }
+}
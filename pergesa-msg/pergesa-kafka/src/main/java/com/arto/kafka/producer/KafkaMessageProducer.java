@@ -12,13 +12,20 @@
  */
 package com.arto.kafka.producer;
 
+import com.arto.core.codec.MessageCodecFactory;
+import com.arto.core.common.MessageRecord;
+import com.arto.core.common.MqTypeEnum;
 import com.arto.core.exception.MqClientException;
-import com.arto.event.util.StringUtil;
+import com.arto.core.metrics.MqMetrics;
+import com.arto.core.producer.breaker.SendCircuitBreakerManager;
+import com.arto.core.producer.limit.SendRateLimiterManager;
 import com.arto.kafka.common.KafkaMessageRecord;
 import com.arto.kafka.util.KafkaUtil;
 import com.arto.kafka.config.KafkaConfigManager;
 import com.arto.kafka.event.KafkaProduceEvent;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -56,37 +63,108 @@ public class KafkaMessageProducer {
      * @throws MqClientException
      */
     public void send(final KafkaProduceEvent event) throws MqClientException {
-        Future future = null;
-        ProducerRecord<String, String> producerRecord = null;
-
+        checkSend(event);
+        acquire(event);
+        long start = System.nanoTime();
         try {
-            // 序列化消息
-            String payload = StringUtil.toJsonString(event.getPayload());
-            if (event.getPartition() == -1) {
-                // 没有设置分区
-                if (Strings.isNullOrEmpty(event.getKey())) {
-                    // 没有设置Hash主键
-                    producerRecord = new ProducerRecord<String, String>(event.getDestination(), payload);
-                } else {
-                    producerRecord = new ProducerRecord<String, String>(event.getDestination(), event.getKey(), payload);
-                }
-            } else {
-                producerRecord = new ProducerRecord<String, String>(event.getDestination(), event.getPartition(), event.getKey(), payload);
-            }
-
+            ProducerRecord<String, byte[]> producerRecord = buildRecord(event);
             if (event.getPriority() != 3 && event.getCallback() == null) {
                 // 同步发送
                 synSend(event, producerRecord);
+                recordSend(event, start, null);
             } else {
                 // 异步发送
-                asynSend(event, producerRecord);
+                asynSend(event, producerRecord, start);
             }
         } catch (Throwable e) {
+            recordSend(event, start, e);
             throw new MqClientException("Kafka send message failed: " + event, e);
         }
     }
 
-    private RecordMetadata synSend(final KafkaProduceEvent event, final ProducerRecord<String, String> producerRecord) throws Throwable {
+    /**
+     * 提交消息到发送缓冲区，不等待发送结果(用于批量发送)
+     *
+     * @param event
+     * @return
+     * @throws MqClientException
+     */
+    public Future<RecordMetadata> submit(final KafkaProduceEvent event) throws MqClientException {
+        checkSend(event);
+        acquire(event);
+        final long start = System.nanoTime();
+        try {
+            return factory.getProducer(event.getPriority()).send(buildRecord(event), new Callback() {
+                @Override
+                public void onCompletion(RecordMetadata metadata, Exception exception) {
+                    recordSend(event, start, exception);
+                }
+            });
+        } catch (Throwable e) {
+            recordSend(event, start, e);
+            throw new MqClientException("Kafka send message failed: " + event, e);
+        }
+    }
+
+    /**
+     * 异步发送消息，返回的Future在Kafka确认后完成，结果为消息Id(分区+offset)
+     *
+     * @param event
+     * @return
+     * @throws MqClientException
+     */
+    public ListenableFuture<String> sendAsync(final KafkaProduceEvent event) throws MqClientException {
+        final SettableFuture<String> future = SettableFuture.create();
+        checkSend(event);
+        acquire(event);
+        final long start = System.nanoTime();
+        try {
+            factory.getProducer(event.getPriority()).send(buildRecord(event), new Callback() {
+                @Override
+                public void onCompletion(RecordMetadata metadata, Exception exception) {
+                    recordSend(event, start, exception);
+                    if (exception != null) {
+                        future.setException(new MqClientException("Kafka send message failed: " + event, exception));
+                        return;
+                    }
+                    String messageId = KafkaUtil.buildMessageId(metadata.partition(), metadata.offset());
+                    if (event.getPayload() instanceof MessageRecord) {
+                        ((MessageRecord) event.getPayload()).setMessageId(messageId);
+                    }
+                    if (event.getCallback() != null) {
+                        try {
+                            event.getCallback().onCompletion(event);
+                        } catch (Throwable t) {
+                            log.warn("Message callback failed. event:" + event, t);
+                        }
+                    }
+                    future.set(messageId);
+                }
+            });
+        } catch (Throwable e) {
+            recordSend(event, start, e);
+            throw new MqClientException("Kafka send message failed: " + event, e);
+        }
+        return future;
+    }
+
+    private ProducerRecord<String, byte[]> buildRecord(final KafkaProduceEvent event) {
+        // 序列化消息
+        byte[] payload = MessageCodecFactory.encode(event.getPayload());
+        if (event.getPartition() == -1) {
+            // 没有设置分区
+            if (Strings.isNullOrEmpty(event.getKey())) {
+                // 没有设置Hash主键
+                return new ProducerRecord<String, byte[]>(event.getDestination(), payload);
+            } else {
+                return new ProducerRecord<String, byte[]>(event.getDestination(), event.getKey(), payload);
+            }
+        } else {
+            return new ProducerRecord<String, byte[]>(event.getDestination(), event.getPartition(), event.getKey(), payload);
+        }
+    }
+
+    private RecordMetadata synSend(final KafkaProduceEvent event, final ProducerRecord<String, byte[]> producerRecord) throws Throwable {
         // 同步发送
         Future future = factory.getProducer(event.getPriority()).send(producerRecord);
         RecordMetadata metadata = (RecordMetadata) future.get(timeout, TimeUnit.SECONDS);
@@ -95,7 +173,8 @@ public class KafkaMessageProducer {
     }
 
     @SuppressWarnings("unchecked")
-    private Future asynSend(final KafkaProduceEvent event, final ProducerRecord<String, String> producerRecord) throws Throwable {
+    private Future asynSend(final KafkaProduceEvent event, final ProducerRecord<String, byte[]> producerRecord
+            , final long start) throws Throwable {
         Future future;
         // 异步发送
         if (event.getCallback() != null) {
@@ -103,6 +182,7 @@ public class KafkaMessageProducer {
             future = factory.getProducer(event.getPriority()).send(producerRecord, new Callback() {
                 @Override
                 public void onCompletion(RecordMetadata metadata, Exception exception) {
+                    recordSend(event, start, exception);
                     // 设置MessageId
                     KafkaMessageRecord kafkaMessageRecord = (KafkaMessageRecord)event.getPayload();
                     kafkaMessageRecord.setMessageId(KafkaUtil.buildMessageId(metadata.partition(), metadata.offset()));
@@ -111,9 +191,30 @@ public class KafkaMessageProducer {
             });
         } else {
             // 无回调
-            future = factory.getProducer(event.getPriority()).send(producerRecord, null);
+            future = factory.getProducer(event.getPriority()).send(producerRecord, new Callback() {
+                @Override
+                public void onCompletion(RecordMetadata metadata, Exception exception) {
+                    recordSend(event, start, exception);
+                }
+            });
         }
         log.debug("Kafka Asynchronously send to topic:" + event.getDestination() + ", message:" + event.getPayload());
         return future;
     }
+
+    private void checkSend(final KafkaProduceEvent event) {
+        // 熔断中直接失败，不等待发送超时
+        SendCircuitBreakerManager.checkSend(MqTypeEnum.KAFKA.getMemo(), event.getDestination());
+    }
+
+    private void acquire(final KafkaProduceEvent event) {
+        // 按目的地和优先级限流，超过速率时阻塞调用线程
+        SendRateLimiterManager.acquire(MqTypeEnum.KAFKA.getMemo(), event.getDestination(), event.getPriority());
+    }
+
+    private void recordSend(final KafkaProduceEvent event, long start, Throwable error) {
+        MqMetrics.recordSend(MqTypeEnum.KAFKA.getMemo(), event.getDestination(), event.getPriority(), start, error);
+        SendRateLimiterManager.onSend(MqTypeEnum.KAFKA.getMemo(), event.getDestination(), event.getPriority(), start, error);
+        SendCircuitBreakerManager.onSend(MqTypeEnum.KAFKA.getMemo(), event.getDestination(), start, error);
+    }
 }
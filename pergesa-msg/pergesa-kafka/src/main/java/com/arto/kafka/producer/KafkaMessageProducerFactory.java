@@ -12,8 +12,13 @@
  */
 package com.arto.kafka.producer;
 
+import com.arto.core.common.MqTypeEnum;
+import com.arto.core.metrics.MqMetrics;
+import com.arto.core.producer.limit.SendRateLimiterManager;
 import com.arto.kafka.common.KafkaAcksEnum;
 import com.arto.kafka.config.KafkaConfigManager;
+import com.arto.kafka.metrics.KafkaMetricSource;
+import com.arto.kafka.metrics.KafkaThrottleSource;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
@@ -55,7 +60,7 @@ public class KafkaMessageProducerFactory {
     @Value("${kafka.value.serializer:org.apache.kafka.common.serialization.StringSerializer}")
     private String valueSerializer;*/
 
-    private Map<Integer, KafkaProducer<String, String>> producerMap = new ConcurrentHashMap<Integer, KafkaProducer<String, String>>(3);
+    private Map<Integer, KafkaProducer<String, byte[]>> producerMap = new ConcurrentHashMap<Integer, KafkaProducer<String, byte[]>>(3);
 
     /**
      * 根据优先级获取生产者
@@ -64,7 +69,7 @@ public class KafkaMessageProducerFactory {
      * @return
      * @throws Exception
      */
-    public KafkaProducer<String, String> getProducer(final Integer priority) throws Throwable {
+    public KafkaProducer<String, byte[]> getProducer(final Integer priority) throws Throwable {
         if (producerMap.containsKey(priority)) {
             return producerMap.get(priority);
         } else {
@@ -74,7 +79,7 @@ public class KafkaMessageProducerFactory {
 
     @PreDestroy
     public void destroy() {
-        for(Map.Entry<Integer, KafkaProducer<String, String>> entry : producerMap.entrySet()){
+        for(Map.Entry<Integer, KafkaProducer<String, byte[]>> entry : producerMap.entrySet()){
             entry.getValue().close();
         }
         log.info("Destroy kafka producer successful.");
@@ -89,7 +94,7 @@ public class KafkaMessageProducerFactory {
     protected void prepareEnvironments(final Integer priority, final Properties props) {
     }
 
-    private synchronized KafkaProducer<String, String> createProducer(final Integer priority) throws Throwable {
+    private synchronized KafkaProducer<String, byte[]> createProducer(final Integer priority) throws Throwable {
         if (producerMap.containsKey(priority)) {
             return producerMap.get(priority);
         }
@@ -111,13 +116,17 @@ public class KafkaMessageProducerFactory {
         props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG
                 , KafkaConfigManager.getString(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG
                 , "org.apache.kafka.common.serialization.StringSerializer"));
+        // 消息体由MessageCodec编码(mq.codec)
         props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG
-                , KafkaConfigManager.getString(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG
-                , "org.apache.kafka.common.serialization.StringSerializer"));
+                , "org.apache.kafka.common.serialization.ByteArraySerializer");
 
         prepareEnvironments(priority, props);
-        KafkaProducer<String, String> producer = new KafkaProducer<String, String>(props);
+        KafkaProducer<String, byte[]> producer = new KafkaProducer<String, byte[]>(props);
         producerMap.put(priority, producer);
+        // 导出Kafka生产者自带的指标
+        MqMetrics.register("kafka-producer-" + priority, new KafkaMetricSource("kafka_producer", producer.metrics()));
+        // Broker限流时间用于自适应限流
+        SendRateLimiterManager.registerThrottleSource(MqTypeEnum.KAFKA.getMemo(), new KafkaThrottleSource(producer.metrics()));
         log.info("Create kafka producer successful. config:" + props);
         return producer;
     }
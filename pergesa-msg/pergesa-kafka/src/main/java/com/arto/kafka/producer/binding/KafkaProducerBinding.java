@@ -13,13 +13,10 @@
 package com.arto.kafka.producer.binding;
 
 import com.alibaba.fastjson.serializer.PropertyFilter;
-import com.arto.core.bootstrap.MqClient;
-import com.arto.core.common.DataPipeline;
 import com.arto.core.common.MessageRecord;
-import com.arto.core.common.MqTypeEnum;
-import com.arto.core.event.MqEvent;
+import com.arto.core.config.MqConfigManager;
 import com.arto.core.exception.MqClientException;
-import com.arto.core.intercepter.TxMessageContextHolder;
+import com.arto.core.intercepter.TxMessageSynchronization;
 import com.arto.core.producer.MqProducer;
 import com.arto.event.bootstrap.EventBusFactory;
 import com.arto.event.serialization.JsonSerializer;
@@ -30,9 +27,12 @@ import com.arto.kafka.common.Constants;
 import com.arto.kafka.common.KafkaMessageRecord;
 import com.arto.kafka.config.KafkaConfigManager;
 import com.arto.kafka.event.KafkaProduceEvent;
+import com.arto.kafka.producer.KafkaMessageProducer;
+import com.google.common.util.concurrent.ListenableFuture;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -41,10 +41,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * Created by xiong.j on 2017/1/12.
  */
 @Slf4j
-public class KafkaProducerBinding implements MqProducer {
+public class KafkaProducerBinding<T> implements MqProducer<T> {
 
     private static final AtomicBoolean closeFlag = new AtomicBoolean(false);
 
+    /** 事务消息发送器 */
+    private static final KafkaTxMessageSender txMessageSender = new KafkaTxMessageSender();
+
     /** Kafka生产者配置 */
     private final KafkaProducerConfig config;
 
@@ -57,9 +60,15 @@ public class KafkaProducerBinding implements MqProducer {
     /** 序列化类 */
     private final JsonSerializer serializer;
 
+    /** 事务消息延迟到事务提交前批量持久化 */
+    private final boolean deferredPersist;
+
+    /** 异步发送时使用的生产者 */
+    private volatile KafkaMessageProducer producer;
+
     static {
-        // 注册事务消息发送线程
-        new Thread(new KafkaTxMessageSendThread(), "KafkaTxMessageSendThread").start();
+        // 启动事务消息发送通道
+        txMessageSender.start();
     }
 
     public KafkaProducerBinding(KafkaProducerConfig config) {
@@ -70,6 +79,8 @@ public class KafkaProducerBinding implements MqProducer {
         maxSize = KafkaConfigManager.getInt("kafka.message.maxsize", 1048576);
         // 持久化时序列化实现
         serializer = new JsonSerializer(new KafkaProduceEventPropertyFilter(), -1);
+        // 默认关闭，开启后同一事务中的消息在提交前一次批量插入
+        deferredPersist = MqConfigManager.getBoolean("mq.tx.persist.deferred", false);
     }
 
     /**
@@ -80,7 +91,7 @@ public class KafkaProducerBinding implements MqProducer {
      */
     @Override
     @SuppressWarnings("unchecked")
-    public void send(Object message) throws MqClientException {
+    public void send(T message) throws MqClientException {
         innerSend(new MessageRecord(message), false);
     }
 
@@ -96,6 +107,42 @@ public class KafkaProducerBinding implements MqProducer {
         innerSend(record, config.isTransaction());
     }
 
+    /**
+     * 异步发送消息(简化方法)
+     *
+     * @param message
+     * @return
+     * @throws MqClientException
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public ListenableFuture<String> sendAsync(T message) throws MqClientException {
+        return innerSendAsync(new MessageRecord(message));
+    }
+
+    /**
+     * 异步发送消息，消息不持久化，返回的Future完成时为消息Id
+     *
+     * @param record
+     * @return
+     * @throws MqClientException
+     */
+    @Override
+    public ListenableFuture<String> sendAsync(MessageRecord record) throws MqClientException {
+        return innerSendAsync(record);
+    }
+
+    /**
+     * 批量发送消息，事务消息在同一事务中批量持久化，事务提交后批量发送
+     *
+     * @param records
+     * @throws MqClientException
+     */
+    @Override
+    public void sendBatch(List<MessageRecord<T>> records) throws MqClientException {
+        innerSendBatch(records, config.isTransaction());
+    }
+
     /**
      * 发送非事务消息(开启事务发送后，可使用此方法发送非事务消息)
      *
@@ -128,10 +175,19 @@ public class KafkaProducerBinding implements MqProducer {
             // 转换为事件
             KafkaProduceEvent event = buildEvent(record, isTransaction);
             if (event.isPersistent()) {
-                // 持久化消息直接持久化(模拟客户端两阶段提交)
-                service.persist(event, serializer, Constants.KAFKA_EVENT_BEAN);
-                // 加入线程上下文，等待事务正常结束后加入发送Queue处理(避免定时调度的延迟，调度默认10分钟执行一次)
-                TxMessageContextHolder.setTxMessage(event);
+                TxMessageSynchronization synchronization = TxMessageSynchronization.register();
+                if (deferredPersist && synchronization != null) {
+                    // 延迟持久化，事务提交前与同事务的其它消息一次插入
+                    service.prepare(event, serializer, Constants.KAFKA_EVENT_BEAN);
+                    synchronization.addPendingMessage(event);
+                } else {
+                    // 持久化消息直接持久化(模拟客户端两阶段提交)
+                    service.persist(event, serializer, Constants.KAFKA_EVENT_BEAN);
+                    if (synchronization != null) {
+                        // 加入当前事务，等待事务正常结束后加入发送Queue处理(避免定时调度的延迟，调度默认10分钟执行一次)
+                        synchronization.addMessage(event);
+                    }
+                }
             } else {
                 // 非持久化消息直接发送
                 EventBusFactory.getInstance().post(event);
@@ -141,6 +197,66 @@ public class KafkaProducerBinding implements MqProducer {
         }
     }
 
+    private ListenableFuture<String> innerSendAsync(MessageRecord record) throws MqClientException {
+        if (record == null || record.getMessage() == null) {
+            throw new MqClientException("Message can't be null or blank");
+        }
+
+        try {
+            // 检查消息大小
+            StringUtil.checkSize(record, maxSize);
+            // 转换为事件，直接交给生产者异步发送
+            return getProducer().sendAsync(buildEvent(record, false));
+        } catch (MqClientException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new MqClientException("Send message failed. message:" + record, t);
+        }
+    }
+
+    private void innerSendBatch(List<? extends MessageRecord> records, boolean isTransaction) throws MqClientException {
+        if (records == null || records.isEmpty()) {
+            throw new MqClientException("Messages can't be null or empty");
+        }
+
+        try {
+            List<KafkaProduceEvent> events = new ArrayList<KafkaProduceEvent>(records.size());
+            for (MessageRecord record : records) {
+                if (record == null || record.getMessage() == null) {
+                    throw new MqClientException("Message can't be null or blank");
+                }
+                // 检查消息大小
+                StringUtil.checkSize(record, maxSize);
+                // 转换为事件
+                events.add(buildEvent(record, isTransaction));
+            }
+            if (isTransaction) {
+                TxMessageSynchronization synchronization = TxMessageSynchronization.register();
+                if (deferredPersist && synchronization != null) {
+                    // 延迟持久化，事务提交前一次插入
+                    for (KafkaProduceEvent event : events) {
+                        service.prepare(event, serializer, Constants.KAFKA_EVENT_BEAN);
+                    }
+                    synchronization.addPendingMessages(events);
+                } else {
+                    // 同一事务中批量持久化
+                    service.persist(events, serializer, Constants.KAFKA_EVENT_BEAN);
+                    if (synchronization != null) {
+                        // 一次加入当前事务，事务提交后一起加入发送Queue
+                        synchronization.addMessages(events);
+                    }
+                }
+            } else {
+                // 非持久化消息直接发送
+                for (KafkaProduceEvent event : events) {
+                    EventBusFactory.getInstance().post(event);
+                }
+            }
+        } catch (Throwable t) {
+            throw new MqClientException("Send messages failed. size:" + records.size(), t);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private KafkaProduceEvent buildEvent(MessageRecord record, boolean isTransaction) throws Exception {
         KafkaProduceEvent event = new KafkaProduceEvent();
@@ -167,6 +283,13 @@ public class KafkaProducerBinding implements MqProducer {
         return event;
     }
 
+    private KafkaMessageProducer getProducer() {
+        if (producer == null) {
+            producer = SpringContextHolder.getBean(KafkaMessageProducer.class);
+        }
+        return producer;
+    }
+
     /**
      * 销毁线程
      */
@@ -175,32 +298,7 @@ public class KafkaProducerBinding implements MqProducer {
             synchronized (KafkaProducerBinding.class) {
                 if (!closeFlag.get()) {
                     closeFlag.set(true);
-                }
-            }
-        }
-    }
-
-    /**
-     * 持久化消息存储后，直接扔Queue里在此线程处理
-     */
-    private static class KafkaTxMessageSendThread implements Runnable{
-
-        private final DataPipeline<MqEvent> dataPipeline;
-
-        private KafkaTxMessageSendThread() {
-            dataPipeline = MqClient.getPipeline(MqTypeEnum.KAFKA.getMemo());
-        }
-
-        @Override
-        public void run() {
-            while (!closeFlag.get()) {
-                try {
-                    KafkaProduceEvent event = (KafkaProduceEvent)dataPipeline.poll(300, TimeUnit.MILLISECONDS);
-                    if (event != null) {
-                        EventBusFactory.getInstance().post(event);
-                    }
-                } catch (Throwable t) {
-                    log.warn("Send message failed.", t);
+                    txMessageSender.close();
                 }
             }
         }
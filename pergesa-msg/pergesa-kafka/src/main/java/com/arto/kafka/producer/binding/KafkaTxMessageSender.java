@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.kafka.producer.binding;
+
+import com.arto.core.common.MqTypeEnum;
+import com.arto.core.event.MqEvent;
+import com.arto.core.producer.AbstractTxMessageSender;
+import com.arto.event.util.SpringContextHolder;
+import com.arto.kafka.common.KafkaMessageRecord;
+import com.arto.kafka.config.KafkaConfigManager;
+import com.arto.kafka.event.KafkaProduceEvent;
+import com.arto.kafka.producer.KafkaMessageProducer;
+import com.arto.kafka.util.KafkaUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kafka事务消息发送器，同一批消息先全部提交到发送缓冲区，再统一等待结果
+ *
+ * Created by xiong.j on 2017/3/24.
+ */
+@Slf4j
+class KafkaTxMessageSender extends AbstractTxMessageSender {
+
+    /** 等待发送结果的超时时间(秒) */
+    private final int timeout;
+
+    private volatile KafkaMessageProducer producer;
+
+    KafkaTxMessageSender() {
+        super("KafkaTxMessageSend", MqTypeEnum.KAFKA.getMemo()
+                , KafkaConfigManager.getInt("kafka.producer.tx.lanes", 2)
+                , KafkaConfigManager.getInt("kafka.producer.tx.batchSize", 100));
+        timeout = KafkaConfigManager.getInt("kafka.producer.timeout", 10);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Throwable[] send(String destination, List<MqEvent> events) {
+        Throwable[] results = new Throwable[events.size()];
+        Future<RecordMetadata>[] futures = new Future[events.size()];
+
+        // 全部提交，发送请求可以在同一个网络批次中完成
+        for (int i = 0; i < events.size(); i++) {
+            try {
+                futures[i] = getProducer().submit((KafkaProduceEvent) events.get(i));
+            } catch (Throwable t) {
+                results[i] = t;
+            }
+        }
+
+        // 统一等待结果
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeout);
+        for (int i = 0; i < futures.length; i++) {
+            if (futures[i] == null) {
+                continue;
+            }
+            try {
+                RecordMetadata metadata = futures[i].get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+                onCompletion((KafkaProduceEvent) events.get(i), metadata);
+            } catch (ExecutionException e) {
+                results[i] = e.getCause();
+            } catch (Throwable t) {
+                results[i] = t;
+            }
+        }
+        log.debug("Kafka batch send to topic:" + destination + ", size:" + events.size());
+        return results;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onCompletion(KafkaProduceEvent event, RecordMetadata metadata) {
+        if (event.getCallback() == null) {
+            return;
+        }
+        if (event.getPayload() instanceof KafkaMessageRecord) {
+            // 设置MessageId
+            ((KafkaMessageRecord) event.getPayload()).setMessageId(KafkaUtil.buildMessageId(metadata.partition(), metadata.offset()));
+        }
+        try {
+            event.getCallback().onCompletion(event);
+        } catch (Throwable t) {
+            log.warn("Message callback failed. event:" + event, t);
+        }
+    }
+
+    private KafkaMessageProducer getProducer() {
+        if (producer == null) {
+            producer = SpringContextHolder.getBean(KafkaMessageProducer.class);
+        }
+        return producer;
+    }
+}
@@ -12,8 +12,11 @@
  */
 package com.arto.kafka.util;
 
+import com.arto.core.common.MqTypeEnum;
+import com.arto.core.consumer.dlq.DeadLetterRecord;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 
 /**
  * Created by xiong.j on 2017/1/20.
@@ -35,4 +38,22 @@ public class KafkaUtil {
         sb.append(offset);
         return sb.toString();
     }
+
+    /**
+     * 生成死信，保留原消息体、Key、分区与位置
+     *
+     * @param record 原消息
+     * @param error 最后一次失败的异常
+     * @param attempts 消费次数
+     * @return
+     */
+    public static DeadLetterRecord buildDeadLetter(final ConsumerRecord<String, byte[]> record, final Throwable error
+            , final int attempts) {
+        DeadLetterRecord deadLetter = new DeadLetterRecord(MqTypeEnum.KAFKA.getMemo(), record.topic()
+                , buildMessageId(record.partition(), record.offset()), record.value(), error, attempts);
+        deadLetter.setKey(record.key());
+        deadLetter.setPartition(record.partition());
+        deadLetter.setOffset(record.offset());
+        return deadLetter;
+    }
 }
@@ -1,11 +1,11 @@
-import com.alibaba.fastjson.JSON;
 import com.arto.core.bootstrap.MqClient;
 import com.arto.core.common.MessagePriorityEnum;
 import com.arto.core.common.MessageRecord;
+import com.arto.core.consumer.ConsumerConfig;
+import com.arto.core.consumer.MessageDeserializePlan;
 import com.arto.core.consumer.MqConsumer;
 import com.arto.core.consumer.MqListener;
 import com.arto.core.producer.MqProducer;
-import com.arto.event.util.TypeReferenceUtil;
 import com.arto.kafka.consumer.binding.KafkaConsumerConfig;
 import com.arto.kafka.producer.binding.KafkaProducerConfig;
 import common.ComplexJsonBean;
@@ -45,6 +45,7 @@ public class TestComplexJson /*extends DefaultTestCase*/ {
         }
     }
 
+    @SuppressWarnings("unchecked")
     public static void main(String args[]) throws Exception {
 //        new ClassPathXmlApplicationContext("classpath:pergesa-test.xml");
 //        TestComplexJson t = new TestComplexJson();
@@ -53,21 +54,20 @@ public class TestComplexJson /*extends DefaultTestCase*/ {
 
 
         String jsonStr = "{\"message\":{\"testa\":{\"aa\":\"aaaa\"},\"testc\":{\"a\":{\"aa\":\"aaaa\"},\"b\":{\"bb\":[\"b\",\"b\",\"b\"]}}}}";
-        MessageRecord<ComplexJsonBean<ComplexJsonBean.AA, ComplexJsonBean.BB, ComplexJsonBean.CC<ComplexJsonBean.AA, ComplexJsonBean.BB>>> obj
-                = JSON.parseObject(jsonStr, TypeReferenceUtil.getType(
-                        new MqListener<ComplexJsonBean<ComplexJsonBean.AA, ComplexJsonBean.BB, ComplexJsonBean.CC<ComplexJsonBean.AA, ComplexJsonBean.BB>>>() {
-                            @Override
-                            public void onMessage(MessageRecord<ComplexJsonBean<ComplexJsonBean.AA, ComplexJsonBean.BB, ComplexJsonBean.CC<ComplexJsonBean.AA, ComplexJsonBean.BB>>> record) {
-                                //System.out.println("############ Listener onMessage:" + record);
-                            }
+        ConsumerConfig config = new ConsumerConfig();
+        config.setListener(new MqListener<ComplexJsonBean<ComplexJsonBean.AA, ComplexJsonBean.BB, ComplexJsonBean.CC<ComplexJsonBean.AA, ComplexJsonBean.BB>>>() {
+            @Override
+            public void onMessage(MessageRecord<ComplexJsonBean<ComplexJsonBean.AA, ComplexJsonBean.BB, ComplexJsonBean.CC<ComplexJsonBean.AA, ComplexJsonBean.BB>>> record) {
+                //System.out.println("############ Listener onMessage:" + record);
+            }
 
-                            @Override
-                            public boolean checkRedeliver(MessageRecord<ComplexJsonBean<ComplexJsonBean.AA, ComplexJsonBean.BB, ComplexJsonBean.CC<ComplexJsonBean.AA, ComplexJsonBean.BB>>> record) {
-                                return false;
-                            }
-                        }
-                )
-        );
+            @Override
+            public boolean checkRedeliver(MessageRecord<ComplexJsonBean<ComplexJsonBean.AA, ComplexJsonBean.BB, ComplexJsonBean.CC<ComplexJsonBean.AA, ComplexJsonBean.BB>>> record) {
+                return false;
+            }
+        });
+        MessageRecord<ComplexJsonBean<ComplexJsonBean.AA, ComplexJsonBean.BB, ComplexJsonBean.CC<ComplexJsonBean.AA, ComplexJsonBean.BB>>> obj
+                = MessageDeserializePlan.create(config).deserialize(jsonStr);
 
         System.out.println(obj.getMessage().getTesta().getAa());
         System.out.println(obj.getMessage().getTestc().getB().getBb());
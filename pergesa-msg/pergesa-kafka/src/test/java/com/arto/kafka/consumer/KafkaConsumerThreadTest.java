@@ -0,0 +1,108 @@
+package com.arto.kafka.consumer;
+
+import com.arto.core.exception.MqClientException;
+import com.arto.kafka.consumer.binding.KafkaConsumerConfig;
+import com.arto.kafka.consumer.strategy.KafkaConsumerStrategy;
+import com.arto.kafka.consumer.strategy.KafkaRetryCallback;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created by xiong.j on 2017/4/30.
+ */
+public class KafkaConsumerThreadTest {
+
+    @Test
+    public void testShardKeepsKeyOrder() throws Exception {
+        List<ConsumerRecord<String, byte[]>> records = new ArrayList<ConsumerRecord<String, byte[]>>();
+        for (int i = 0; i < 100; i++) {
+            records.add(new ConsumerRecord<String, byte[]>("test", 0, i, "key" + (i % 10), null));
+        }
+        List<List<ConsumerRecord<String, byte[]>>> shards = KafkaConsumerThread.shard(records, 4);
+        Assert.assertTrue(shards.size() > 1);
+        Assert.assertTrue(shards.size() <= 4);
+
+        int total = 0;
+        Map<String, Integer> keyShard = new HashMap<String, Integer>();
+        for (int s = 0; s < shards.size(); s++) {
+            long last = -1;
+            for (ConsumerRecord<String, byte[]> record : shards.get(s)) {
+                // 同一Key只在一个分片内，且分片内按位置递增
+                Integer old = keyShard.put(record.key(), s);
+                Assert.assertTrue(old == null || old == s);
+                Assert.assertTrue(record.offset() > last);
+                last = record.offset();
+                total++;
+            }
+        }
+        Assert.assertEquals(100, total);
+    }
+
+    @Test
+    public void testShardWithoutKey() throws Exception {
+        List<ConsumerRecord<String, byte[]>> records = new ArrayList<ConsumerRecord<String, byte[]>>();
+        for (int i = 0; i < 10; i++) {
+            records.add(new ConsumerRecord<String, byte[]>("test", 0, i, null, null));
+        }
+        // 无Key的消息保持分区内顺序
+        List<List<ConsumerRecord<String, byte[]>>> shards = KafkaConsumerThread.shard(records, 4);
+        Assert.assertEquals(1, shards.size());
+        Assert.assertEquals(10, shards.get(0).size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRewindOnFailurePartwayThroughBatch() throws Exception {
+        final TopicPartition tp = new TopicPartition("test", 0);
+        List<ConsumerRecord<String, byte[]>> records = new ArrayList<ConsumerRecord<String, byte[]>>();
+        for (int i = 0; i < 5; i++) {
+            records.add(new ConsumerRecord<String, byte[]>("test", 0, 10 + i, null, null));
+        }
+        KafkaConsumerWrapper<String, byte[]> wrapper = Mockito.mock(KafkaConsumerWrapper.class);
+        KafkaConsumerConfig config = new KafkaConsumerConfig();
+        config.setDestination("test");
+        // 第三条消息处理时抛出异常
+        KafkaConsumerStrategy strategy = new KafkaConsumerStrategy() {
+            @Override
+            public boolean onMessage(KafkaConsumerConfig config, ConsumerRecord<String, byte[]> record
+                    , KafkaRetryCallback callback) {
+                if (record.offset() == 12) {
+                    throw new IllegalStateException("consume failed");
+                }
+                return true;
+            }
+
+            @Override
+            public List<ConsumerRecord<String, byte[]>> onMessages(KafkaConsumerConfig config
+                    , List<ConsumerRecord<String, byte[]>> records, KafkaRetryCallback callback) {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        try {
+            new KafkaConsumerThread(wrapper, config, records, strategy).call();
+            Assert.fail();
+        } catch (MqClientException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        // 只标记已处理的前缀，回退到失败的消息后再恢复拉取
+        InOrder inOrder = Mockito.inOrder(wrapper);
+        inOrder.verify(wrapper).markProcessed(tp, 10);
+        inOrder.verify(wrapper).markProcessed(tp, 11);
+        inOrder.verify(wrapper).rewind(tp, 12);
+        inOrder.verify(wrapper).resume(Collections.singleton(tp));
+        Mockito.verify(wrapper, Mockito.times(2)).markProcessed(Matchers.eq(tp), Matchers.anyLong());
+    }
+}
@@ -0,0 +1,136 @@
+package com.arto.kafka.consumer;
+
+import com.arto.event.util.PropertiesResolve;
+import com.arto.event.util.SpringContextHolder;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Created by xiong.j on 2017/4/30.
+ */
+public class KafkaConsumerWrapperTest {
+
+    private final TopicPartition stored = new TopicPartition("stored", 0);
+
+    private final TopicPartition other = new TopicPartition("other", 0);
+
+    private KafkaConsumer<String, byte[]> consumer;
+
+    private KafkaOffsetRepository repository;
+
+    private KafkaConsumerWrapper<String, byte[]> wrapper;
+
+    @BeforeClass
+    public static void setUpConfig() {
+        // 配置只从配置文件读取
+        ConfigurableListableBeanFactory beanFactory = Mockito.mock(ConfigurableListableBeanFactory.class);
+        Mockito.when(beanFactory.getBean(PropertiesResolve.class)).thenReturn(Mockito.mock(PropertiesResolve.class));
+        new SpringContextHolder().postProcessBeanFactory(beanFactory);
+    }
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        consumer = Mockito.mock(KafkaConsumer.class);
+        repository = Mockito.mock(KafkaOffsetRepository.class);
+        setRepository(repository);
+        wrapper = new KafkaConsumerWrapper<String, byte[]>(consumer);
+        wrapper.enableStoredOffsets("stored");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        setRepository(null);
+    }
+
+    @Test
+    public void testSeekStoredOffsetOnAssign() throws Exception {
+        Mockito.when(repository.find(stored)).thenReturn(42L);
+
+        subscribe().onPartitionsAssigned(Arrays.asList(stored, other));
+
+        // 事务消费的Topic从数据库中的位置继续消费，其它Topic按Kafka提交的位置
+        Mockito.verify(consumer).seek(stored, 42L);
+        Mockito.verify(repository, Mockito.never()).find(other);
+        Mockito.verify(consumer, Mockito.never()).pause(Matchers.anyCollectionOf(TopicPartition.class));
+    }
+
+    @Test
+    public void testInitStoredOffsetOnFirstAssign() throws Exception {
+        subscribe().onPartitionsAssigned(Collections.singletonList(stored));
+
+        // 无记录时初始化，按Kafka提交的位置消费
+        Mockito.verify(repository).init(stored);
+        Mockito.verify(consumer, Mockito.never()).seek(Matchers.any(TopicPartition.class), Matchers.anyLong());
+        Mockito.verify(consumer, Mockito.never()).pause(Matchers.anyCollectionOf(TopicPartition.class));
+    }
+
+    @Test
+    public void testPauseAndRetryWhenSeekFailed() throws Exception {
+        Mockito.when(repository.find(stored)).thenThrow(new IllegalStateException("db unavailable")).thenReturn(42L);
+        ReflectionTestUtils.setField(wrapper, "seekRetryInterval", 0L);
+
+        subscribe().onPartitionsAssigned(Collections.singletonList(stored));
+
+        // 未读取到数据库中的位置时暂停拉取，不从Kafka提交的位置消费
+        Mockito.verify(consumer).pause(Collections.singletonList(stored));
+        Mockito.verify(consumer, Mockito.never()).seek(Matchers.any(TopicPartition.class), Matchers.anyLong());
+
+        // 处理线程恢复拉取时保持暂停
+        wrapper.resume(Collections.singletonList(stored));
+        Mockito.verify(consumer).resume(Collections.<TopicPartition>emptyList());
+
+        // 下次拉取前重新读取，定位后恢复拉取
+        Mockito.when(consumer.assignment()).thenReturn(Collections.singleton(stored));
+        wrapper.sequencePoll(1);
+        InOrder inOrder = Mockito.inOrder(consumer);
+        inOrder.verify(consumer).seek(stored, 42L);
+        inOrder.verify(consumer).resume(Collections.singletonList(stored));
+    }
+
+    @Test
+    public void testRetryStopWhenRevoked() throws Exception {
+        Mockito.when(repository.find(stored)).thenThrow(new IllegalStateException("db unavailable"));
+        ReflectionTestUtils.setField(wrapper, "seekRetryInterval", 0L);
+        ConsumerRebalanceListener listener = subscribe();
+        listener.onPartitionsAssigned(Collections.singletonList(stored));
+
+        // 分区回收后不再重新读取
+        listener.onPartitionsRevoked(Collections.singletonList(stored));
+        wrapper.sequencePoll(1);
+        Mockito.verify(repository).find(stored);
+        Mockito.verify(consumer, Mockito.never()).resume(Matchers.anyCollectionOf(TopicPartition.class));
+    }
+
+    /**
+     * 订阅并由拉取线程执行，返回注册到消费者的重分配监听器
+     */
+    private ConsumerRebalanceListener subscribe() {
+        wrapper.subscribe(Arrays.asList("stored", "other"));
+        wrapper.sequencePoll(1);
+        ArgumentCaptor<ConsumerRebalanceListener> captor = ArgumentCaptor.forClass(ConsumerRebalanceListener.class);
+        Mockito.verify(consumer).subscribe(Matchers.anyListOf(String.class), captor.capture());
+        return captor.getValue();
+    }
+
+    private static void setRepository(KafkaOffsetRepository repository) throws Exception {
+        Field field = KafkaOffsetRepository.class.getDeclaredField("instance");
+        field.setAccessible(true);
+        field.set(null, repository);
+    }
+}
@@ -0,0 +1,132 @@
+package com.arto.kafka.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created by xiong.j on 2017/4/30.
+ */
+public class KafkaOffsetTrackerTest {
+
+    private final TopicPartition tp0 = new TopicPartition("test", 0);
+
+    private final TopicPartition tp1 = new TopicPartition("test", 1);
+
+    @Test
+    public void testCoalesceAllPartitions() throws Exception {
+        KafkaOffsetTracker tracker = new KafkaOffsetTracker(60000, 1000);
+        tracker.register(tp0, records(tp0, 0, 5));
+        tracker.register(tp1, records(tp1, 10, 3));
+        for (long i = 0; i < 5; i++) {
+            tracker.complete(tp0, i);
+        }
+        tracker.complete(tp1, 10);
+        Assert.assertEquals(2, tracker.getInFlightCount());
+        // 按分区统计，分区回收前等待处理完成时使用
+        Assert.assertEquals(0, tracker.getInFlightCount(Collections.singleton(tp0)));
+        Assert.assertEquals(2, tracker.getInFlightCount(Collections.singleton(tp1)));
+
+        // 所有分区一次提交
+        Map<TopicPartition, OffsetAndMetadata> offsets = tracker.collect();
+        Assert.assertEquals(2, offsets.size());
+        Assert.assertEquals(5, offsets.get(tp0).offset());
+        Assert.assertEquals(11, offsets.get(tp1).offset());
+        // 没有新进度时不重复提交
+        Assert.assertTrue(tracker.collect().isEmpty());
+    }
+
+    @Test
+    public void testContiguousOnly() throws Exception {
+        KafkaOffsetTracker tracker = new KafkaOffsetTracker(60000, 1000);
+        // 位置不连续(如压缩后的Topic)
+        List<ConsumerRecord<String, byte[]>> records = new ArrayList<ConsumerRecord<String, byte[]>>();
+        records.add(new ConsumerRecord<String, byte[]>("test", 0, 3, null, null));
+        records.add(new ConsumerRecord<String, byte[]>("test", 0, 7, null, null));
+        records.add(new ConsumerRecord<String, byte[]>("test", 0, 8, null, null));
+        tracker.register(tp0, records);
+
+        // 乱序完成，前面未完成时不能提交
+        tracker.complete(tp0, 8);
+        tracker.complete(tp0, 7);
+        Assert.assertTrue(tracker.collect().isEmpty());
+
+        tracker.complete(tp0, 3);
+        Assert.assertEquals(9, tracker.collect().get(tp0).offset());
+        Assert.assertEquals(0, tracker.getInFlightCount());
+    }
+
+    @Test
+    public void testCountAndInterval() throws Exception {
+        KafkaOffsetTracker tracker = new KafkaOffsetTracker(50, 3);
+        tracker.register(tp0, records(tp0, 0, 10));
+        long now = System.currentTimeMillis();
+        Assert.assertFalse(tracker.shouldCommit(now));
+        Assert.assertEquals(1000, tracker.nextCommitDelay(now, 1000));
+
+        // 首条待提交时唤醒拉取线程，按提交间隔重新计算等待时间
+        Assert.assertTrue(tracker.complete(tp0, 0));
+        Assert.assertFalse(tracker.shouldCommit(now));
+        Assert.assertTrue(tracker.nextCommitDelay(now, 1000) <= 50);
+        Assert.assertFalse(tracker.complete(tp0, 1));
+        // 达到数量时通知立即提交
+        Assert.assertTrue(tracker.complete(tp0, 2));
+        Assert.assertTrue(tracker.shouldCommit(now));
+        Assert.assertEquals(3, tracker.collect().get(tp0).offset());
+
+        tracker.complete(tp0, 3);
+        Assert.assertFalse(tracker.shouldCommit(System.currentTimeMillis()));
+        Thread.sleep(60);
+        // 达到间隔时提交
+        Assert.assertTrue(tracker.shouldCommit(System.currentTimeMillis()));
+    }
+
+    @Test
+    public void testRollbackAndRevoke() throws Exception {
+        KafkaOffsetTracker tracker = new KafkaOffsetTracker(60000, 1000);
+        tracker.register(tp0, records(tp0, 0, 2));
+        tracker.complete(tp0, 0);
+        Map<TopicPartition, OffsetAndMetadata> offsets = tracker.collect();
+        // 异步提交失败后重新提交
+        tracker.rollback(offsets);
+        Assert.assertEquals(1, tracker.collect().get(tp0).offset());
+
+        tracker.remove(Collections.singleton(tp0));
+        Assert.assertFalse(tracker.complete(tp0, 1));
+        Assert.assertTrue(tracker.collect().isEmpty());
+    }
+
+    @Test
+    public void testReleaseForRewind() throws Exception {
+        KafkaOffsetTracker tracker = new KafkaOffsetTracker(60000, 1000);
+        tracker.register(tp0, records(tp0, 0, 5));
+        tracker.complete(tp0, 0);
+        tracker.complete(tp0, 1);
+        tracker.complete(tp0, 3);
+        // 位置2处理失败，回退后2及之后的消息不再等待完成
+        Assert.assertEquals(3, tracker.release(tp0, 2));
+        Assert.assertEquals(0, tracker.getInFlightCount());
+        Assert.assertEquals(2, tracker.collect().get(tp0).offset());
+
+        // 重新拉取后再登记，之前乱序完成的3不能被当作已完成
+        tracker.register(tp0, records(tp0, 2, 3));
+        tracker.complete(tp0, 2);
+        Assert.assertEquals(3, tracker.collect().get(tp0).offset());
+        Assert.assertEquals(2, tracker.getInFlightCount());
+    }
+
+    private List<ConsumerRecord<String, byte[]>> records(TopicPartition tp, long from, int size) {
+        List<ConsumerRecord<String, byte[]>> list = new ArrayList<ConsumerRecord<String, byte[]>>();
+        for (int i = 0; i < size; i++) {
+            list.add(new ConsumerRecord<String, byte[]>(tp.topic(), tp.partition(), from + i, null, null));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,212 @@
+package com.arto.kafka.consumer.strategy;
+
+import com.arto.core.codec.JsonMessageCodec;
+import com.arto.core.common.MessageRecord;
+import com.arto.core.consumer.MqBatchListener;
+import com.arto.core.consumer.MqListener;
+import com.arto.event.service.PersistentEventService;
+import com.arto.event.util.PropertiesResolve;
+import com.arto.event.util.SpringContextHolder;
+import com.arto.kafka.consumer.KafkaOffsetFencedException;
+import com.arto.kafka.consumer.KafkaOffsetRepository;
+import com.arto.kafka.consumer.binding.KafkaConsumerConfig;
+import common.TestMessageBean;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Created by xiong.j on 2017/4/30.
+ */
+public class KafkaConsumerTransactionalStrategyTest {
+
+    private final TopicPartition tp = new TopicPartition("test", 0);
+
+    private PlatformTransactionManager transactionManager;
+
+    private KafkaOffsetRepository repository;
+
+    /** 按开始顺序记录的事务 */
+    private final List<SimpleTransactionStatus> statuses = new ArrayList<SimpleTransactionStatus>();
+
+    private KafkaConsumerTransactionalStrategy strategy;
+
+    @BeforeClass
+    public static void setUpConfig() {
+        // 配置只从配置文件读取
+        ConfigurableListableBeanFactory beanFactory = Mockito.mock(ConfigurableListableBeanFactory.class);
+        Mockito.when(beanFactory.getBean(PropertiesResolve.class)).thenReturn(Mockito.mock(PropertiesResolve.class));
+        new SpringContextHolder().postProcessBeanFactory(beanFactory);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        transactionManager = Mockito.mock(PlatformTransactionManager.class);
+        Mockito.when(transactionManager.getTransaction(Matchers.any(TransactionDefinition.class)))
+                .thenAnswer(new Answer<TransactionStatus>() {
+                    @Override
+                    public TransactionStatus answer(InvocationOnMock invocation) throws Throwable {
+                        SimpleTransactionStatus status = new SimpleTransactionStatus();
+                        statuses.add(status);
+                        return status;
+                    }
+                });
+        repository = Mockito.mock(KafkaOffsetRepository.class);
+        strategy = new KafkaConsumerTransactionalStrategy(new TransactionTemplate(transactionManager), repository
+                , Mockito.mock(PersistentEventService.class));
+    }
+
+    @Test
+    public void testConsumeAndSaveOffsetInOneTransaction() throws Exception {
+        TestListener listener = new TestListener();
+        KafkaConsumerConfig config = new KafkaConsumerConfig("tx-commit", listener);
+
+        Assert.assertTrue(strategy.onMessage(config, record(5), Mockito.mock(KafkaRetryCallback.class)));
+
+        // 消费方法与下一条待消费的位置在同一事务中提交
+        Assert.assertEquals(Collections.singletonList("m5"), listener.consumed);
+        Assert.assertEquals(Collections.singletonList(1), listener.transactions);
+        InOrder inOrder = Mockito.inOrder(transactionManager, repository);
+        inOrder.verify(transactionManager).getTransaction(Matchers.any(TransactionDefinition.class));
+        inOrder.verify(repository).save(tp, 5, 6);
+        inOrder.verify(transactionManager).commit(statuses.get(0));
+        Mockito.verify(transactionManager, Mockito.never()).rollback(Matchers.any(TransactionStatus.class));
+    }
+
+    @Test
+    public void testFencedRollbackWithoutRetry() throws Exception {
+        TestListener listener = new TestListener();
+        KafkaConsumerConfig config = new KafkaConsumerConfig("tx-fenced", listener);
+        Mockito.doThrow(new KafkaOffsetFencedException("fenced")).when(repository).save(tp, 5, 6);
+
+        Assert.assertTrue(strategy.onMessage(config, record(5), Mockito.mock(KafkaRetryCallback.class)));
+
+        // 位置已被其它消费者推进，消费方法的数据库操作随事务回滚，不再重试
+        Assert.assertEquals(Collections.singletonList("m5"), listener.consumed);
+        Assert.assertEquals(1, statuses.size());
+        Mockito.verify(transactionManager).rollback(statuses.get(0));
+        Mockito.verify(transactionManager, Mockito.never()).commit(Matchers.any(TransactionStatus.class));
+    }
+
+    @Test
+    public void testBatchFallbackToSingleTransactions() throws Exception {
+        TestBatchListener listener = new TestBatchListener();
+        KafkaConsumerConfig config = new KafkaConsumerConfig("tx-batch");
+        config.setBatch(true);
+        config.setBatchListener(listener);
+        List<ConsumerRecord<String, byte[]>> records = Arrays.asList(record(0), record(1), record(2));
+
+        Assert.assertTrue(strategy.onMessages(config, records, Mockito.mock(KafkaRetryCallback.class)).isEmpty());
+
+        // 整批失败回滚后逐条在各自的事务中消费并提交位置
+        Assert.assertEquals(Arrays.asList(3, 1, 1, 1), listener.batches);
+        Assert.assertEquals(Arrays.asList("m0", "m1", "m2"), listener.consumed);
+        Assert.assertEquals(4, statuses.size());
+        InOrder inOrder = Mockito.inOrder(transactionManager, repository);
+        inOrder.verify(transactionManager).rollback(statuses.get(0));
+        inOrder.verify(repository).save(tp, 0, 1);
+        inOrder.verify(transactionManager).commit(statuses.get(1));
+        inOrder.verify(repository).save(tp, 1, 2);
+        inOrder.verify(transactionManager).commit(statuses.get(2));
+        inOrder.verify(repository).save(tp, 2, 3);
+        inOrder.verify(transactionManager).commit(statuses.get(3));
+        // 整批的位置未保存
+        Mockito.verify(repository, Mockito.never()).save(tp, 0, 3);
+    }
+
+    @Test
+    public void testBatchSaveOffsetFromFirstRecord() throws Exception {
+        TestBatchListener listener = new TestBatchListener();
+        listener.maxBatch = 3;
+        KafkaConsumerConfig config = new KafkaConsumerConfig("tx-batch-commit");
+        config.setBatch(true);
+        config.setBatchListener(listener);
+        List<ConsumerRecord<String, byte[]>> records = Arrays.asList(record(7), record(8), record(9));
+
+        strategy.onMessages(config, records, Mockito.mock(KafkaRetryCallback.class));
+
+        // 整批一个事务，按第一条消息的位置检查、保存最后一条的下一个位置
+        Assert.assertEquals(Collections.singletonList(3), listener.batches);
+        Mockito.verify(repository).save(tp, 7, 10);
+        Mockito.verify(transactionManager).commit(statuses.get(0));
+        Assert.assertEquals(1, statuses.size());
+    }
+
+    private ConsumerRecord<String, byte[]> record(long offset) {
+        TestMessageBean bean = new TestMessageBean();
+        bean.setName("m" + offset);
+        MessageRecord<TestMessageBean> message = new MessageRecord<TestMessageBean>("b" + offset, "t", bean);
+        return new ConsumerRecord<String, byte[]>(tp.topic(), tp.partition(), offset, null
+                , new JsonMessageCodec().encode(message));
+    }
+
+    /**
+     * 记录消费时所在事务的监听器
+     */
+    private class TestListener implements MqListener<TestMessageBean> {
+
+        final List<String> consumed = new ArrayList<String>();
+
+        /** 消费时已开始的事务数 */
+        final List<Integer> transactions = new ArrayList<Integer>();
+
+        @Override
+        public void onMessage(MessageRecord<TestMessageBean> record) {
+            consumed.add(record.getMessage().getName());
+            transactions.add(statuses.size());
+        }
+
+        @Override
+        public boolean checkRedeliver(MessageRecord<TestMessageBean> record) {
+            return false;
+        }
+    }
+
+    /**
+     * 超过指定批次大小时失败的批量监听器
+     */
+    private static class TestBatchListener implements MqBatchListener<TestMessageBean> {
+
+        int maxBatch = 1;
+
+        /** 每次调用onMessages的批次大小 */
+        final List<Integer> batches = new ArrayList<Integer>();
+
+        final List<String> consumed = new ArrayList<String>();
+
+        @Override
+        public void onMessages(List<MessageRecord<TestMessageBean>> messages) {
+            batches.add(messages.size());
+            if (messages.size() > maxBatch) {
+                throw new IllegalStateException("batch failed, size:" + messages.size());
+            }
+            for (MessageRecord<TestMessageBean> message : messages) {
+                consumed.add(message.getMessage().getName());
+            }
+        }
+
+        @Override
+        public List<MessageRecord<TestMessageBean>> filterRedelivered(List<MessageRecord<TestMessageBean>> messages) {
+            return messages;
+        }
+    }
+}
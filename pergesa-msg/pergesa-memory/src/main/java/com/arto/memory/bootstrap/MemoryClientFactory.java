@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.memory.bootstrap;
+
+import com.arto.core.bootstrap.MqFactory;
+import com.arto.core.common.MqTypeEnum;
+import com.arto.core.consumer.ConsumerConfig;
+import com.arto.core.consumer.MqConsumer;
+import com.arto.core.producer.MqProducer;
+import com.arto.core.producer.ProducerConfig;
+import com.arto.memory.broker.MemoryBroker;
+import com.arto.memory.consumer.binding.MemoryConsumerBinding;
+import com.arto.memory.consumer.binding.MemoryConsumerConfig;
+import com.arto.memory.producer.binding.MemoryProducerBinding;
+import com.arto.memory.producer.binding.MemoryProducerConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 进程内消息客户端生产者和消息者工厂类
+ *
+ * Created by xiong.j on 2017/4/26.
+ */
+@Slf4j
+public class MemoryClientFactory implements MqFactory {
+
+    private static final ConcurrentMap<String, MemoryProducerBinding> producerMap = new ConcurrentHashMap<String, MemoryProducerBinding>();
+
+    private static final ConcurrentMap<String, MemoryConsumerBinding> consumerMap = new ConcurrentHashMap<String, MemoryConsumerBinding>();
+
+    private static final Object lockProducer = new Object();
+
+    private static final Object lockConsumer = new Object();
+
+    /**
+     * 根据生产者配置文件生成一个新的生产者
+     *
+     * @param config
+     * @return
+     */
+    @Override
+    public MqProducer buildProducer(ProducerConfig config) {
+        if (producerMap.containsKey(config.getDestination())) {
+            return producerMap.get(config.getDestination());
+        } else {
+            synchronized (lockProducer) {
+                if (producerMap.containsKey(config.getDestination())) {
+                    return producerMap.get(config.getDestination());
+                } else {
+                    // 生成一个新的生产者
+                    MemoryProducerBinding producer = new MemoryProducerBinding((MemoryProducerConfig)config);
+                    producerMap.put(config.getDestination(), producer);
+                    log.info("Binding memory producer on config : " + config);
+                    return producer;
+                }
+            }
+        }
+    }
+
+    /**
+     * 根据消费者配置文件生成一个新的消费者
+     *
+     * @param config
+     * @return
+     */
+    @Override
+    public MqConsumer buildConsumer(ConsumerConfig config) {
+        if (consumerMap.containsKey(config.getDestination())) {
+            return consumerMap.get(config.getDestination());
+        } else {
+            synchronized (lockConsumer) {
+                if (consumerMap.containsKey(config.getDestination())) {
+                    return consumerMap.get(config.getDestination());
+                } else {
+                    // 生成一个新的消费者
+                    MemoryConsumerBinding consumer = new MemoryConsumerBinding((MemoryConsumerConfig)config);
+                    consumerMap.put(config.getDestination(), consumer);
+                    log.info("Binding memory consumer on config : " + config);
+                    return consumer;
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getMqType() {
+        return MqTypeEnum.MEMORY.getMemo();
+    }
+
+    /**
+     * 销毁所有的生产者和消息者
+     */
+    @Override
+    public void destroy() {
+        for(Map.Entry<String, MemoryProducerBinding> entry : producerMap.entrySet()){
+            entry.getValue().close();
+        }
+        producerMap.clear();
+
+        for(Map.Entry<String, MemoryConsumerBinding> entry : consumerMap.entrySet()){
+            entry.getValue().close();
+        }
+        consumerMap.clear();
+
+        // 关闭所有目的地
+        MemoryBroker.getInstance().close();
+    }
+
+    /**
+     * 获取生产者的配置
+     *
+     * @param destination
+     * @return
+     */
+    public MemoryProducerConfig getProducerConfig(String destination){
+        if (producerMap.containsKey(destination)) {
+            return producerMap.get(destination).getConfig();
+        }
+        return null;
+    }
+
+    /**
+     * 获取消费者的配置
+     *
+     * @param destination
+     * @return
+     */
+    public MemoryConsumerConfig getConsumerConfig(String destination){
+        if (consumerMap.containsKey(destination)) {
+            return consumerMap.get(destination).getConfig();
+        }
+        return null;
+    }
+}
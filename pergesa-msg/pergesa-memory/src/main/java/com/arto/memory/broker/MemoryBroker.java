@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.memory.broker;
+
+import com.arto.core.metrics.Gauge;
+import com.arto.core.metrics.MqMetrics;
+import com.arto.memory.config.MemoryConfigManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 进程内消息代理，按目的地维护环形队列，不经过网络
+ *
+ * Created by xiong.j on 2017/4/26.
+ */
+@Slf4j
+public class MemoryBroker {
+
+    private final ConcurrentMap<String, MemoryDestination> destinationMap = new ConcurrentHashMap<String, MemoryDestination>();
+
+    /** 每个目的地的队列大小 */
+    private final int size;
+
+    /** 队列满时发送的等待时间(毫秒) */
+    private final long blockTimeout;
+
+    MemoryBroker(int size, long blockTimeout) {
+        this.size = size;
+        this.blockTimeout = blockTimeout;
+    }
+
+    private static class MemoryBrokerHolder{
+        public static MemoryBroker instance = new MemoryBroker(
+                MemoryConfigManager.getInt("memory.destination.size", 8192)
+                , MemoryConfigManager.getInt("memory.destination.block.timeout", 1000));
+    }
+
+    public static MemoryBroker getInstance(){
+        return MemoryBrokerHolder.instance;
+    }
+
+    /**
+     * 获取目的地，不存在时创建
+     *
+     * @param name
+     * @return
+     */
+    public MemoryDestination getDestination(String name) {
+        MemoryDestination destination = destinationMap.get(name);
+        if (destination == null) {
+            synchronized (destinationMap) {
+                destination = destinationMap.get(name);
+                if (destination == null) {
+                    destination = new MemoryDestination(name, size, blockTimeout);
+                    destinationMap.put(name, destination);
+                    registerMetrics(destination);
+                    log.info("Create memory destination:" + name + ", capacity:" + destination.capacity());
+                }
+            }
+        }
+        return destination;
+    }
+
+    /**
+     * 关闭所有目的地
+     */
+    public void close() {
+        synchronized (destinationMap) {
+            for (Map.Entry<String, MemoryDestination> entry : destinationMap.entrySet()) {
+                if (entry.getValue().size() > 0) {
+                    log.warn("Discard unconsumed messages. destination:" + entry.getKey() + ", size:" + entry.getValue().size());
+                }
+                entry.getValue().close();
+            }
+            destinationMap.clear();
+        }
+    }
+
+    private void registerMetrics(final MemoryDestination destination) {
+        MqMetrics.gauge(new Gauge() {
+            @Override
+            public double getValue() {
+                return destination.size();
+            }
+        }, "memory_destination_depth", "destination", destination.getName());
+        MqMetrics.gauge(new Gauge() {
+            @Override
+            public double getValue() {
+                return destination.getRejectedCount();
+            }
+        }, "memory_destination_rejected_total", "destination", destination.getName());
+    }
+}
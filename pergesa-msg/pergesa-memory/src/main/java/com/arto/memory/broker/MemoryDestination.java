@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.memory.broker;
+
+import com.arto.core.common.DataPipeline;
+import com.arto.core.common.PipelineOverflowEnum;
+import com.arto.core.exception.MqClientException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内目的地，基于环形队列，同一目的地的多个消费线程竞争消费(队列语义)
+ *
+ * Created by xiong.j on 2017/4/26.
+ */
+public class MemoryDestination {
+
+    /** 目的地名称 */
+    private final String name;
+
+    /** 消息队列，满时阻塞等待 */
+    private final DataPipeline<MemoryMessage> pipeline;
+
+    /** 消息ID前缀，区分不同的进程启动 */
+    private final String idPrefix;
+
+    /** 消息位置 */
+    private final AtomicLong offset = new AtomicLong(0);
+
+    private volatile boolean closed = false;
+
+    MemoryDestination(String name, int size, long blockTimeout) {
+        this.name = name;
+        this.pipeline = new DataPipeline<MemoryMessage>(size, PipelineOverflowEnum.BLOCK, blockTimeout, null, null);
+        this.idPrefix = name + ":" + System.currentTimeMillis() + ":";
+    }
+
+    /**
+     * 发送消息，队列满且等待超时后抛出异常
+     *
+     * @param priority
+     * @param body
+     * @return 消息ID
+     * @throws MqClientException
+     */
+    public String send(int priority, byte[] body) throws MqClientException {
+        if (closed) {
+            throw new MqClientException("Destination is closed. destination:" + name);
+        }
+        MemoryMessage message = new MemoryMessage(name, idPrefix + offset.getAndIncrement(), priority, body);
+        if (!pipeline.offer(message)) {
+            throw new MqClientException("Destination is full. destination:" + name + ", capacity:" + pipeline.capacity());
+        }
+        return message.getMessageId();
+    }
+
+    /**
+     * 消费失败的消息重新投递到队尾
+     *
+     * @param message
+     * @return 是否投递成功
+     */
+    public boolean redeliver(MemoryMessage message) {
+        if (closed) {
+            return false;
+        }
+        message.incrementRedelivered();
+        return pipeline.offer(message);
+    }
+
+    /**
+     * 拉取消息
+     *
+     * @param timeout
+     * @param unit
+     * @return 超时返回null
+     * @throws InterruptedException
+     */
+    public MemoryMessage poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return pipeline.poll(timeout, unit);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return pipeline.size();
+    }
+
+    public int capacity() {
+        return pipeline.capacity();
+    }
+
+    public long getRejectedCount() {
+        return pipeline.getRejectedCount();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 关闭目的地，未消费的消息丢弃
+     */
+    void close() {
+        closed = true;
+        pipeline.close();
+    }
+}
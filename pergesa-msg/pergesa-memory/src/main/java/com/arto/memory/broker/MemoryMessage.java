@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.memory.broker;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 进程内消息，消息体为编码后的字节，生产者与消费者不共享消息对象
+ *
+ * Created by xiong.j on 2017/4/26.
+ */
+@Getter
+@ToString(exclude = "body")
+public class MemoryMessage {
+
+    /** 目的地 */
+    private final String destination;
+
+    /** 消息ID */
+    private final String messageId;
+
+    /** 优先级 */
+    private final int priority;
+
+    /** 编码后的消息 */
+    private final byte[] body;
+
+    /** 重新投递次数 */
+    private int redeliveredCount;
+
+    MemoryMessage(String destination, String messageId, int priority, byte[] body) {
+        this.destination = destination;
+        this.messageId = messageId;
+        this.priority = priority;
+        this.body = body;
+    }
+
+    void incrementRedelivered() {
+        redeliveredCount++;
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.memory.common;
+
+import com.arto.memory.event.MemoryConsumeEvent;
+import com.arto.memory.event.MemoryProduceEvent;
+
+/**
+ * Created by xiong.j on 2017/4/26.
+ */
+public interface MemoryConstants {
+
+    /** 消息中间件memory */
+    String MEMORY = "memory";
+
+    /** 消息中间件memory发送消息事件类 */
+    String MEMORY_EVENT_BEAN = MemoryProduceEvent.class.getName();
+
+    /** 消息中间件memory消费消息标识 */
+    String M_CONSUME = "M02";
+
+    /** 消息中间件memory消费消息事件类 */
+    String M_CONSUME_EVENT_BEAN = MemoryConsumeEvent.class.getName();
+}
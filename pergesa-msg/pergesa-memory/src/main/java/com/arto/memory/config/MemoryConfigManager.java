@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.memory.config;
+
+import com.arto.event.config.AbstractConfigManager;
+
+/**
+ * Created by xiong.j on 2017/4/26.
+ */
+public class MemoryConfigManager extends AbstractConfigManager {
+
+    private MemoryConfigManager(){
+        super("pergesa-memory.properties");
+    }
+
+    private static class MemoryConfigHolder{
+        public static MemoryConfigManager instance = new MemoryConfigManager();
+    }
+
+    public static MemoryConfigManager getInstance(){
+        return MemoryConfigManager.MemoryConfigHolder.instance;
+    }
+
+    public static int getInt(String name, int value){
+        return MemoryConfigManager.getInstance().getIntValue(name, value);
+    }
+
+    public static String getString(String name, String value){
+        return MemoryConfigManager.getInstance().getStringValue(name, value);
+    }
+
+    public static boolean getBoolean(String name, boolean value){
+        return MemoryConfigManager.getInstance().getBooleanValue(name, value);
+    }
+}
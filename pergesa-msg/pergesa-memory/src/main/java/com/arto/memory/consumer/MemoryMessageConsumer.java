@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.memory.consumer;
+
+import com.arto.core.exception.MqClientException;
+import com.arto.event.common.Destroyable;
+import com.arto.event.util.SpringDestroyableUtil;
+import com.arto.event.util.SpringThreadPoolUtil;
+import com.arto.memory.broker.MemoryBroker;
+import com.arto.memory.broker.MemoryDestination;
+import com.arto.memory.broker.MemoryMessage;
+import com.arto.memory.consumer.binding.MemoryConsumerBinding;
+import com.arto.memory.consumer.binding.MemoryConsumerConfig;
+import com.arto.memory.consumer.strategy.MemoryConsumerStrategyFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内消息消费者，每个目的地按配置的线程数启动消费线程竞争拉取消息
+ *
+ * Created by xiong.j on 2017/4/26.
+ */
+@Slf4j
+@Component("memoryMessageConsumer")
+public class MemoryMessageConsumer implements Destroyable {
+
+    private final ConcurrentMap<String, Subscription> subscriptionMap = new ConcurrentHashMap<String, Subscription>();
+
+    public MemoryMessageConsumer() {
+        // 注册勾子
+        SpringDestroyableUtil.add("memoryMessageConsumer", this);
+    }
+
+    /**
+     * 订阅目的地并启动消费线程
+     *
+     * @param binding
+     */
+    public synchronized void subscribe(final MemoryConsumerBinding binding) {
+        MemoryConsumerConfig config = binding.getConfig();
+        if (subscriptionMap.containsKey(config.getDestination())) {
+            throw new MqClientException("Duplicated consumer definition. config:" + config);
+        }
+
+        int numThreads = Math.max(config.getNumThreads(), 1);
+        ExecutorService executor = SpringThreadPoolUtil.getNewPool("MemoryConsumer-" + config.getDestination()
+                , numThreads, numThreads, numThreads, null).getThreadPoolExecutor();
+        Subscription subscription = new Subscription(config
+                , MemoryBroker.getInstance().getDestination(config.getDestination()), executor);
+        subscriptionMap.put(config.getDestination(), subscription);
+        for (int i = 0; i < numThreads; i++) {
+            executor.execute(subscription);
+        }
+        log.info("Subscribe memory destination:" + config.getDestination() + ", threads:" + numThreads);
+    }
+
+    /**
+     * 取消订阅，消费线程处理完当前消息后退出，并关闭订阅时创建的线程池
+     *
+     * @param destination
+     */
+    public synchronized void unsubscribe(String destination) {
+        Subscription subscription = subscriptionMap.remove(destination);
+        if (subscription != null) {
+            subscription.close();
+            log.info("Unsubscribe memory destination:" + destination);
+        }
+    }
+
+    /**
+     * 销毁
+     */
+    @Override
+    public void destroy() {
+        for (Map.Entry<String, Subscription> entry : subscriptionMap.entrySet()) {
+            entry.getValue().close();
+        }
+        subscriptionMap.clear();
+        log.info("Destroy memoryMessageConsumer successful.");
+    }
+
+    /**
+     * 消费线程
+     */
+    private static class Subscription implements Runnable {
+
+        private final MemoryConsumerConfig config;
+
+        private final MemoryDestination destination;
+
+        /** 消费线程池 */
+        private final ExecutorService executor;
+
+        private volatile boolean closed = false;
+
+        Subscription(MemoryConsumerConfig config, MemoryDestination destination, ExecutorService executor) {
+            this.config = config;
+            this.destination = destination;
+            this.executor = executor;
+        }
+
+        /**
+         * 停止拉取消息，线程池在消费线程处理完当前消息后关闭
+         */
+        void close() {
+            closed = true;
+            executor.shutdown();
+        }
+
+        @Override
+        public void run() {
+            while (!closed && !destination.isClosed()) {
+                try {
+                    MemoryMessage message = destination.poll(300, TimeUnit.MILLISECONDS);
+                    if (message == null) {
+                        continue;
+                    }
+                    MemoryConsumerStrategyFactory.getInstance().getStrategy(config.getPriority())
+                            .onMessage(config, destination, message);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Throwable t) {
+                    log.error("Consume message failed. destination:" + config.getDestination(), t);
+                }
+            }
+        }
+    }
+}
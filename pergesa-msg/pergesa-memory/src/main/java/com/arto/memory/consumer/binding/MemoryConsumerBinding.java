@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.memory.consumer.binding;
+
+import com.arto.core.consumer.MqBatchListener;
+import com.arto.core.consumer.MqConsumer;
+import com.arto.core.consumer.MqListener;
+import com.arto.core.exception.MqClientException;
+import com.arto.event.util.SpringContextHolder;
+import com.arto.memory.consumer.MemoryMessageConsumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Created by xiong.j on 2017/4/26.
+ */
+@Slf4j
+public class MemoryConsumerBinding implements MqConsumer {
+
+    /** 进程内消费者配置 */
+    private final MemoryConsumerConfig config;
+
+    /** 进程内消费者 */
+    private final MemoryMessageConsumer consumer;
+
+    public MemoryConsumerBinding(MemoryConsumerConfig config) {
+        this.config = config;
+        this.consumer = SpringContextHolder.getBean("memoryMessageConsumer");
+        if (config.hasReceiver()) {
+            // 未设置监听器时推迟到receive订阅
+            consumer.subscribe(this);
+        }
+    }
+
+    @Override
+    @Deprecated
+    public void receive(Class type, MqListener listener) {
+        config.setListener(listener);
+        consumer.subscribe(this);
+    }
+
+    @Override
+    @Deprecated
+    public void receiveWithParallel(Class type, int numThreads, MqListener listener) {
+        config.setListener(listener);
+        config.setNumThreads(numThreads);
+        consumer.subscribe(this);
+    }
+
+    @Override
+    public void receiveBatch(int maxBatch, MqBatchListener listener) {
+        // 进程内消息直接逐条投递，不支持批量消费
+        throw new MqClientException("Memory consumer not support batch receive. config:" + config);
+    }
+
+    /**
+     * 停止消费线程
+     */
+    public void close(){
+        consumer.unsubscribe(config.getDestination());
+    }
+
+    /**
+     * 获取绑定的配置
+     *
+     * @return
+     */
+    public MemoryConsumerConfig getConfig() {
+        return config;
+    }
+
+}
@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.memory.consumer.strategy;
+
+import com.arto.core.codec.MessageCodecFactory;
+import com.arto.core.common.MessageRecord;
+import com.arto.core.common.MqTypeEnum;
+import com.arto.core.consumer.strategy.AbstractConsumerStrategy;
+import com.arto.core.exception.MqClientException;
+import com.arto.event.bootstrap.Event;
+import com.arto.event.common.Destroyable;
+import com.arto.event.serialization.JsonSerializer;
+import com.arto.event.service.PersistentEventService;
+import com.arto.event.util.SpringContextHolder;
+import com.arto.event.util.SpringDestroyableUtil;
+import com.arto.event.util.ThreadUtil;
+import com.arto.memory.broker.MemoryDestination;
+import com.arto.memory.broker.MemoryMessage;
+import com.arto.memory.common.MemoryConstants;
+import com.arto.memory.config.MemoryConfigManager;
+import com.arto.memory.consumer.binding.MemoryConsumerConfig;
+import com.arto.memory.event.MemoryConsumeEvent;
+import com.google.common.base.Strings;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 默认消费模式，适合重要消息
+ * (消息处理出错 > 3次后该消息入库，等待调度任务重试处理，进程退出时队列中未消费的消息会丢失)
+ *
+ * Created by xiong.j on 2017/4/26.
+ */
+@Slf4j
+class MemoryConsumerDefaultStrategy extends AbstractConsumerStrategy implements MemoryConsumerStrategy, Destroyable {
+
+    private final PersistentEventService service;
+
+    /** 消费线程关闭Flag */
+    private final AtomicBoolean closeFlag = new AtomicBoolean(false);
+
+    /** 序列化类 */
+    private final JsonSerializer serializer;
+
+    /** 消费出错时的重试间隔(毫秒) */
+    private final int retryInterval;
+
+    MemoryConsumerDefaultStrategy(){
+        this.service = SpringContextHolder.getBean("persistentEventService");
+        // 注册勾子
+        SpringDestroyableUtil.add("memoryConsumerDefaultStrategy", this);
+        serializer = new JsonSerializer();
+        retryInterval = MemoryConfigManager.getInt("memory.consumer.retry.interval", 1000);
+    }
+
+    @Override
+    public void onMessage(final MemoryConsumerConfig config, final MemoryDestination destination, final MemoryMessage message) {
+        tryConsume(config, message);
+    }
+
+    /**
+     * 销毁
+     */
+    @Override
+    public void destroy() {
+        closeFlag.set(true);
+        log.info("Destroy memoryConsumerDefaultStrategy successful.");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void tryConsume(MemoryConsumerConfig config, MemoryMessage memoryMessage) {
+        MessageRecord message = null;
+        // 按消息Id检测重复消费，重复时不再反序列化
+        if (isDuplicate(config, memoryMessage.getMessageId())) {
+            log.info("Duplicate message, discard this message:" + memoryMessage.getMessageId());
+            return;
+        }
+        try {
+            // 反序列化消息
+            message = deserializerMessage(config, memoryMessage.getBody());
+            // 消息ID
+            message.setMessageId(memoryMessage.getMessageId());
+        } catch (Throwable e) {
+            log.warn("Deserializer record failed, message:" + memoryMessage, e);
+            // 持久化消息，以便重试
+            infiniteRetry(memoryMessage, null);
+            countPersisted(config);
+            return;
+        }
+
+        // 如果消费出错，重试消费3次，超过三次持久化后由调度任务再重试
+        for (int i = 1; i <= 3; i++) {
+            try {
+                // 重复消费检测
+                if (!checkRedeliver(config, message)) {
+                    // 消费消息
+                    onMessage(config, message);
+                } else {
+                    log.info("Check redeliver is true, discard this message:" + message);
+                }
+                break;
+            } catch (Throwable e) {
+                log.warn("Receive message failed, waiting for retry. message:" + memoryMessage, e);
+                if (i == 3) {
+                    // 持久化消息，以便重试
+                    infiniteRetry(memoryMessage, message);
+                    countPersisted(config);
+                } else {
+                    // 消息处理错误，暂停处理一小会
+                    countRetry(config);
+                    ThreadUtil.sleep(retryInterval, log);
+                }
+            }
+        }
+    }
+
+    private void infiniteRetry(final MemoryMessage memoryMessage, MessageRecord message) {
+        boolean failed = true;
+        // 转换为事件
+        Event event = buildEvent(memoryMessage, message);
+        // 无限重试直到持久化成功
+        while (!closeFlag.get()){
+            try {
+                service.persist(event, serializer, MemoryConstants.M_CONSUME_EVENT_BEAN);
+                failed = false;
+                break;
+            } catch (Throwable e) {
+                log.warn("Persist message failed, waiting for retry. message:" + memoryMessage, e);
+            }
+            // 持久化消息错误，暂停处理一小会
+            ThreadUtil.sleep(5000, log);
+        }
+        if (failed) {
+            throw new MqClientException("Persist message failed when stop server.");
+        } else {
+            log.warn("Persisted message to db waiting for retry. message:" + memoryMessage);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Event buildEvent(final MemoryMessage memoryMessage, MessageRecord message) {
+        // 生成事件
+        MemoryConsumeEvent event = new MemoryConsumeEvent();
+        // 事件分组
+        event.setGroup(MemoryConsumeEvent.class);
+        // 默认业务类型
+        event.setBusinessType(MemoryConstants.M_CONSUME);
+        // 消息ID
+        event.setMessageId(memoryMessage.getMessageId());
+        // 消息
+        event.setPayload(message);
+        // 目的地
+        event.setDestination(memoryMessage.getDestination());
+        // 消息类型
+        event.setType(MqTypeEnum.MEMORY.getMemo());
+        // 是否持久化
+        event.setPersistent(true);
+        if (message == null) {
+            // 只按原始类型解析一次，消息内容为JSON对象
+            MessageRecord rawMessage = MessageCodecFactory.decodeRaw(memoryMessage.getBody());
+            if (!Strings.isNullOrEmpty(rawMessage.getBusinessId())) {
+                // 消息自带业务流水号
+                event.setBusinessId(rawMessage.getBusinessId());
+                // 消息自带业务类型
+                event.setBusinessType(rawMessage.getBusinessType());
+            } else {
+                // 业务流水号为消息ID
+                event.setBusinessId(event.getMessageId());
+            }
+            // 消息解析出错时消息内容保留为JSON对象
+            event.setPayload(rawMessage);
+        } else {
+            if (Strings.isNullOrEmpty(message.getBusinessId())) {
+                // 以非事务消息发送时业务流水号为消息ID
+                event.setBusinessId(event.getMessageId());
+            } else {
+                // 消息自带业务流水号
+                event.setBusinessId(message.getBusinessId());
+                // 消息自带业务类型
+                event.setBusinessType(message.getBusinessType());
+            }
+        }
+        return event;
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.memory.consumer.strategy;
+
+import com.arto.core.common.MessageRecord;
+import com.arto.core.consumer.strategy.AbstractConsumerStrategy;
+import com.arto.memory.broker.MemoryDestination;
+import com.arto.memory.broker.MemoryMessage;
+import com.arto.memory.config.MemoryConfigManager;
+import com.arto.memory.consumer.binding.MemoryConsumerConfig;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 普通消费模式，消息消费失败后重新投递到队尾，超过重投次数丢弃消息。适合容忍消息丢失的普通消息
+ *
+ * Created by xiong.j on 2017/4/26.
+ */
+@Slf4j
+class MemoryConsumerMediumPriorityStrategy extends AbstractConsumerStrategy implements MemoryConsumerStrategy {
+
+    /** 最大重投次数 */
+    private final int maxRedelivery;
+
+    MemoryConsumerMediumPriorityStrategy() {
+        maxRedelivery = MemoryConfigManager.getInt("memory.consumer.redelivery.max", 3);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onMessage(final MemoryConsumerConfig config, final MemoryDestination destination, final MemoryMessage memoryMessage) {
+        MessageRecord message;
+        // 按消息Id检测重复消费，重复时不再反序列化
+        if (isDuplicate(config, memoryMessage.getMessageId())) {
+            log.info("Duplicate message, discard this message:" + memoryMessage.getMessageId());
+            return;
+        }
+        try {
+            // 反序列化消息
+            message = deserializerMessage(config, memoryMessage.getBody());
+            // 消息ID
+            message.setMessageId(memoryMessage.getMessageId());
+        } catch (Throwable e) {
+            // 解析失败重投也无法成功
+            log.warn("Deserializer record failed, discard it. message:" + memoryMessage, e);
+            countDiscarded(config);
+            return;
+        }
+
+        try {
+            // 重复消费检测
+            if (!checkRedeliver(config, message)) {
+                // 消费消息
+                onMessage(config, message);
+            } else {
+                log.info("Check redeliver is true, discard this message:" + message);
+            }
+        } catch (Throwable e) {
+            if (memoryMessage.getRedeliveredCount() < maxRedelivery && destination.redeliver(memoryMessage)) {
+                log.warn("Receive message failed, redeliver it. message:" + message, e);
+                countRetry(config);
+            } else {
+                log.error("Receive message failed, discard it. message:" + message, e);
+                countDiscarded(config);
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.memory.consumer.strategy;
+
+import com.arto.memory.broker.MemoryDestination;
+import com.arto.memory.broker.MemoryMessage;
+import com.arto.memory.consumer.binding.MemoryConsumerConfig;
+
+/**
+ * 进程内消费策略接口
+ *
+ * Created by xiong.j on 2017/4/26.
+ */
+public interface MemoryConsumerStrategy {
+
+    /**
+     * 消费消息
+     *
+     * @param config
+     * @param destination 消息所在目的地，用于重新投递
+     * @param message
+     */
+    void onMessage(final MemoryConsumerConfig config, final MemoryDestination destination, final MemoryMessage message);
+
+}
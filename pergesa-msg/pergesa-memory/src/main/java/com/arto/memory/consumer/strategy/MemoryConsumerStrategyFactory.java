@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.memory.consumer.strategy;
+
+import java.lang.ref.SoftReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 消费策略工厂
+ *
+ * Created by xiong.j on 2017/4/26.
+ */
+public class MemoryConsumerStrategyFactory {
+
+    private static volatile MemoryConsumerStrategyFactory instance;
+
+    private final ConcurrentMap<Integer, SoftReference<MemoryConsumerStrategy>> strategyMap
+            = new ConcurrentHashMap<Integer, SoftReference<MemoryConsumerStrategy>>(3);
+
+    public static MemoryConsumerStrategyFactory getInstance(){
+        if (null == instance) {
+            synchronized (MemoryConsumerStrategyFactory.class) {
+                if (null == instance) {
+                    instance = new MemoryConsumerStrategyFactory();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 根据消费优先级生成不同的消费策略
+     *
+     * @param priority
+     * @return
+     */
+    public MemoryConsumerStrategy getStrategy(final int priority){
+        SoftReference<MemoryConsumerStrategy> reference = strategyMap.get(priority);
+        if (reference != null) {
+            MemoryConsumerStrategy strategy = reference.get();
+            if (strategy != null) {
+                return strategy;
+            }
+        }
+        return createStrategy(priority);
+    }
+
+    private synchronized MemoryConsumerStrategy createStrategy(final int priority) {
+        SoftReference<MemoryConsumerStrategy> reference = strategyMap.get(priority);
+        if (reference != null && reference.get() != null) {
+            return reference.get();
+        }
+
+        MemoryConsumerStrategy strategy;
+        switch (priority) {
+            case 1:
+                // 重要消息，重试三次后入库等待重试
+                strategy = new MemoryConsumerDefaultStrategy();
+                break;
+            case 2:
+                // 普通消息，重新投递到队尾，超过次数后丢弃消息
+                strategy = new MemoryConsumerMediumPriorityStrategy();
+                break;
+            case 3:
+                // 不重要消息，出错即丢弃消息
+                strategy = new MemoryConsumerLowPriorityStrategy();
+                break;
+            default:
+                strategy = new MemoryConsumerDefaultStrategy();
+        }
+        strategyMap.put(priority, new SoftReference<MemoryConsumerStrategy>(strategy));
+        return strategy;
+    }
+
+}
@@ -10,38 +10,25 @@
  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
  * specific language governing permissions and limitations under the License.
  */
-package com.arto.core.intercepter;
+package com.arto.memory.event;
 
+import com.arto.core.common.MqTypeEnum;
 import com.arto.core.event.MqEvent;
-import com.arto.event.util.ThreadContextHolder;
-
-import java.util.ArrayList;
-import java.util.List;
+import lombok.ToString;
 
 /**
- * 在线程上下文中缓存未提交的事务消息.
- *
- * Created by xiong.j on 2017/3/3.
+ * Created by xiong.j on 2017/4/26.
  */
-public class TxMessageContextHolder extends ThreadContextHolder {
-
-    @SuppressWarnings("unchecked")
-    public static List<MqEvent> getTxMessages(){
-        return (List)getContext();
-    }
+@ToString(callSuper = true)
+public class MemoryProduceEvent extends MqEvent {
 
-    @SuppressWarnings("unchecked")
-    public static void setTxMessage(MqEvent object){
-        if (getContext() == null) {
-            init();
-        }
-        ((List)getContext()).add(object);
+    public MemoryProduceEvent(){
+        this.setType(MqTypeEnum.MEMORY.getMemo());
+        this.setGroup(MemoryProduceEvent.class);
     }
 
-    private static synchronized void init(){
-        if (getContext() == null) {
-            List<MqEvent> list = new ArrayList<MqEvent>();
-            setContext(list);
-        }
+    public MemoryProduceEvent(String dest){
+        this();
+        this.setDestination(dest);
     }
 }
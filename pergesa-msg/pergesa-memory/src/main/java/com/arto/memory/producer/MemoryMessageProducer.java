@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.memory.producer;
+
+import com.arto.core.codec.MessageCodecFactory;
+import com.arto.core.common.MessagePriorityEnum;
+import com.arto.core.common.MessageRecord;
+import com.arto.core.common.MqTypeEnum;
+import com.arto.core.exception.MqClientException;
+import com.arto.core.metrics.MqMetrics;
+import com.arto.memory.broker.MemoryBroker;
+import com.arto.memory.broker.MemoryDestination;
+import com.arto.memory.event.MemoryProduceEvent;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 进程内消息生产者，消息编码后直接放入目的地队列
+ *
+ * Created by xiong.j on 2017/4/26.
+ */
+@Slf4j
+@Component
+public class MemoryMessageProducer {
+
+    /**
+     * 发送消息，低优先级消息发送失败时只记录日志
+     *
+     * @param event
+     * @throws MqClientException
+     */
+    public void send(final MemoryProduceEvent event) throws MqClientException {
+        try {
+            doSend(event);
+        } catch (MqClientException e) {
+            if (event.getPriority() == MessagePriorityEnum.LOW.getCode()) {
+                log.error("Send message failed. message event=" + event, e);
+            } else {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 异步发送消息，入队即完成，返回的Future结果为消息Id
+     *
+     * @param event
+     * @return
+     */
+    public ListenableFuture<String> sendAsync(final MemoryProduceEvent event) {
+        try {
+            return Futures.immediateFuture(doSend(event));
+        } catch (Throwable e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    /**
+     * 批量发送同一目的地的消息
+     *
+     * @param destination
+     * @param events
+     * @return 与消息一一对应的发送结果，成功为null，失败为异常
+     */
+    public Throwable[] sendBatch(final String destination, final List<MemoryProduceEvent> events) {
+        Throwable[] results = new Throwable[events.size()];
+        for (int i = 0; i < events.size(); i++) {
+            try {
+                doSend(events.get(i));
+            } catch (Throwable t) {
+                results[i] = t;
+            }
+        }
+        return results;
+    }
+
+    private String doSend(final MemoryProduceEvent event) throws MqClientException {
+        long start = System.nanoTime();
+        try {
+            MemoryDestination destination = MemoryBroker.getInstance().getDestination(event.getDestination());
+            String messageId = destination.send(event.getPriority(), MessageCodecFactory.encode(event.getPayload()));
+            if (event.getPayload() instanceof MessageRecord) {
+                ((MessageRecord) event.getPayload()).setMessageId(messageId);
+            }
+            recordSend(event, start, null);
+            return messageId;
+        } catch (MqClientException e) {
+            recordSend(event, start, e);
+            throw e;
+        } catch (Throwable e) {
+            recordSend(event, start, e);
+            throw new MqClientException(e);
+        }
+    }
+
+    private void recordSend(final MemoryProduceEvent event, long start, Throwable error) {
+        MqMetrics.recordSend(MqTypeEnum.MEMORY.getMemo(), event.getDestination(), event.getPriority(), start, error);
+    }
+}
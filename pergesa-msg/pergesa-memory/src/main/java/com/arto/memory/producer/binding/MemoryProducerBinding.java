@@ -0,0 +1,296 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.memory.producer.binding;
+
+import com.arto.core.common.MessageRecord;
+import com.arto.core.config.MqConfigManager;
+import com.arto.core.exception.MqClientException;
+import com.arto.core.intercepter.TxMessageSynchronization;
+import com.arto.core.producer.MqProducer;
+import com.arto.event.serialization.JsonSerializer;
+import com.arto.event.service.PersistentEventService;
+import com.arto.event.util.SpringContextHolder;
+import com.arto.event.util.StringUtil;
+import com.arto.memory.common.MemoryConstants;
+import com.arto.memory.config.MemoryConfigManager;
+import com.arto.memory.event.MemoryProduceEvent;
+import com.arto.memory.producer.MemoryMessageProducer;
+import com.google.common.util.concurrent.ListenableFuture;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 生产者绑定类，一个对象对应一个Topic和一份配置
+ *
+ * Created by xiong.j on 2017/4/26.
+ */
+@Slf4j
+public class MemoryProducerBinding<T> implements MqProducer<T> {
+
+    private static final AtomicBoolean closeFlag = new AtomicBoolean(false);
+
+    /** 事务消息发送器 */
+    private static final MemoryTxMessageSender txMessageSender = new MemoryTxMessageSender();
+
+    /** 进程内生产者配置 */
+    private final MemoryProducerConfig config;
+
+    /** 持久化事件服务 */
+    private final PersistentEventService service;
+
+    /** 消息最大Size*/
+    private final int maxSize;
+
+    /** 序列化类 */
+    private final JsonSerializer serializer;
+
+    /** 事务消息延迟到事务提交前批量持久化 */
+    private final boolean deferredPersist;
+
+    /** 进程内消息生产者 */
+    private volatile MemoryMessageProducer producer;
+
+    static {
+        // 启动事务消息发送通道
+        txMessageSender.start();
+    }
+
+    public MemoryProducerBinding(MemoryProducerConfig config) {
+        this.config = config;
+        // 暂时依赖Spring获取
+        this.service = SpringContextHolder.getBean("persistentEventService");
+        // 默认1M
+        maxSize = MemoryConfigManager.getInt("memory.message.maxsize", 1048576);
+        serializer = new JsonSerializer();
+        // 默认关闭，开启后同一事务中的消息在提交前一次批量插入
+        deferredPersist = MqConfigManager.getBoolean("mq.tx.persist.deferred", false);
+    }
+
+    /**
+     * 发送消息(简化方法，非事务类消息可以使用直接使用此方法发送)
+     *
+     * @param message
+     * @throws MqClientException
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void send(T message) throws MqClientException {
+        innerSend(new MessageRecord(message), false);
+    }
+
+    /**
+     * 发送消息(定制发送，可配置发送参数)
+     * 注:事务消息必须设置"业务凭证流水号"和"业务类型"，以便发送异常时追踪排错
+     *
+     * @param record
+     * @throws MqClientException
+     */
+    @Override
+    public void send(MessageRecord record) throws MqClientException {
+        innerSend(record, config.isTransaction());
+    }
+
+    /**
+     * 异步发送消息(简化方法)
+     *
+     * @param message
+     * @return
+     * @throws MqClientException
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public ListenableFuture<String> sendAsync(T message) throws MqClientException {
+        return innerSendAsync(new MessageRecord(message));
+    }
+
+    /**
+     * 异步发送消息，消息不持久化，返回的Future完成时为消息Id
+     *
+     * @param record
+     * @return
+     * @throws MqClientException
+     */
+    @Override
+    public ListenableFuture<String> sendAsync(MessageRecord record) throws MqClientException {
+        return innerSendAsync(record);
+    }
+
+    /**
+     * 批量发送消息，事务消息在同一事务中批量持久化，事务提交后批量发送
+     *
+     * @param records
+     * @throws MqClientException
+     */
+    @Override
+    public void sendBatch(List<MessageRecord<T>> records) throws MqClientException {
+        innerSendBatch(records, config.isTransaction());
+    }
+
+    /**
+     * 发送非事务消息(开启事务发送后，可使用此方法发送非事务消息)
+     *
+     * @param record
+     * @throws MqClientException
+     */
+    @Override
+    @Deprecated
+    public void sendNonTx(MessageRecord record) throws MqClientException {
+        innerSend(record, false);
+    }
+
+    /**
+     * 获取绑定的配置
+     *
+     * @return
+     */
+    public MemoryProducerConfig getConfig() {
+        return config;
+    }
+
+    private MemoryMessageProducer getProducer() {
+        if (producer == null) {
+            producer = SpringContextHolder.getBean(MemoryMessageProducer.class);
+        }
+        return producer;
+    }
+
+    /**
+     * 销毁线程
+     */
+    public void close() {
+        if (!closeFlag.get()) {
+            synchronized (MemoryProducerBinding.class) {
+                if (!closeFlag.get()) {
+                    closeFlag.set(true);
+                    txMessageSender.close();
+                }
+            }
+        }
+    }
+
+    private void innerSend(MessageRecord record, boolean isTransaction) throws MqClientException {
+        if (record == null || record.getMessage() == null) {
+            throw new MqClientException("Message can't be null or blank");
+        }
+
+        try {
+            // 检查消息大小
+            StringUtil.checkSize(record, maxSize);
+            // 转换为事件
+            MemoryProduceEvent event = buildEvent(record, isTransaction);
+            if (event.isPersistent()) {
+                TxMessageSynchronization synchronization = TxMessageSynchronization.register();
+                if (deferredPersist && synchronization != null) {
+                    // 延迟持久化，事务提交前与同事务的其它消息一次插入
+                    service.prepare(event, serializer, MemoryConstants.MEMORY_EVENT_BEAN);
+                    synchronization.addPendingMessage(event);
+                } else {
+                    // 持久化消息直接持久化(模拟客户端两阶段提交)
+                    service.persist(event, serializer, MemoryConstants.MEMORY_EVENT_BEAN);
+                    if (synchronization != null) {
+                        // 加入当前事务，等待事务正常结束后加入发送Queue处理(避免定时调度的延迟，调度默认10分钟执行一次)
+                        synchronization.addMessage(event);
+                    }
+                }
+            } else {
+                // 非持久化消息直接放入目的地队列(不经过事件总线)
+                getProducer().send(event);
+            }
+        } catch (Throwable t){
+            throw new MqClientException("Send message failed. message:" + record, t);
+        }
+    }
+
+    private ListenableFuture<String> innerSendAsync(MessageRecord record) throws MqClientException {
+        if (record == null || record.getMessage() == null) {
+            throw new MqClientException("Message can't be null or blank");
+        }
+
+        try {
+            // 检查消息大小
+            StringUtil.checkSize(record, maxSize);
+            // 转换为事件，直接交给生产者异步发送
+            return getProducer().sendAsync(buildEvent(record, false));
+        } catch (MqClientException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new MqClientException("Send message failed. message:" + record, t);
+        }
+    }
+
+    private void innerSendBatch(List<? extends MessageRecord> records, boolean isTransaction) throws MqClientException {
+        if (records == null || records.isEmpty()) {
+            throw new MqClientException("Messages can't be null or empty");
+        }
+
+        try {
+            List<MemoryProduceEvent> events = new ArrayList<MemoryProduceEvent>(records.size());
+            for (MessageRecord record : records) {
+                if (record == null || record.getMessage() == null) {
+                    throw new MqClientException("Message can't be null or blank");
+                }
+                // 检查消息大小
+                StringUtil.checkSize(record, maxSize);
+                // 转换为事件
+                events.add(buildEvent(record, isTransaction));
+            }
+            if (isTransaction) {
+                TxMessageSynchronization synchronization = TxMessageSynchronization.register();
+                if (deferredPersist && synchronization != null) {
+                    // 延迟持久化，事务提交前一次插入
+                    for (MemoryProduceEvent event : events) {
+                        service.prepare(event, serializer, MemoryConstants.MEMORY_EVENT_BEAN);
+                    }
+                    synchronization.addPendingMessages(events);
+                } else {
+                    // 同一事务中批量持久化
+                    service.persist(events, serializer, MemoryConstants.MEMORY_EVENT_BEAN);
+                    if (synchronization != null) {
+                        // 一次加入当前事务，事务提交后一起加入发送Queue
+                        synchronization.addMessages(events);
+                    }
+                }
+            } else {
+                // 非持久化消息直接放入目的地队列(不经过事件总线)
+                for (MemoryProduceEvent event : events) {
+                    getProducer().send(event);
+                }
+            }
+        } catch (Throwable t) {
+            throw new MqClientException("Send messages failed. size:" + records.size(), t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private MemoryProduceEvent buildEvent(MessageRecord record, boolean isTransaction){
+        MemoryProduceEvent event = new MemoryProduceEvent();
+        // 业务流水号
+        event.setBusinessId(record.getBusinessId());
+        // 业务类型
+        event.setBusinessType(record.getBusinessType());
+        // 目的地
+        event.setDestination(config.getDestination());
+        // 优先级
+        event.setPriority(config.getPriority().getCode());
+        // 持久化
+        event.setPersistent(isTransaction);
+        // 消息
+        event.setPayload(record);
+        // 回调
+        event.setCallback(config.getCallback());
+        return event;
+    }
+}
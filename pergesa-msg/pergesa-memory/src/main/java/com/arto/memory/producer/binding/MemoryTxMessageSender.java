@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.arto.memory.producer.binding;
+
+import com.arto.core.common.MqTypeEnum;
+import com.arto.core.event.MqEvent;
+import com.arto.core.producer.AbstractTxMessageSender;
+import com.arto.event.util.SpringContextHolder;
+import com.arto.memory.config.MemoryConfigManager;
+import com.arto.memory.event.MemoryProduceEvent;
+import com.arto.memory.producer.MemoryMessageProducer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 进程内事务消息发送器
+ *
+ * Created by xiong.j on 2017/4/26.
+ */
+class MemoryTxMessageSender extends AbstractTxMessageSender {
+
+    private volatile MemoryMessageProducer producer;
+
+    MemoryTxMessageSender() {
+        super("MemoryTxMessageSend", MqTypeEnum.MEMORY.getMemo()
+                , MemoryConfigManager.getInt("memory.producer.tx.lanes", 1)
+                , MemoryConfigManager.getInt("memory.producer.tx.batchSize", 100));
+    }
+
+    @Override
+    protected Throwable[] send(String destination, List<MqEvent> events) {
+        List<MemoryProduceEvent> memoryEvents = new ArrayList<MemoryProduceEvent>(events.size());
+        for (MqEvent event : events) {
+            memoryEvents.add((MemoryProduceEvent) event);
+        }
+        return getProducer().sendBatch(destination, memoryEvents);
+    }
+
+    private MemoryMessageProducer getProducer() {
+        if (producer == null) {
+            producer = SpringContextHolder.getBean(MemoryMessageProducer.class);
+        }
+        return producer;
+    }
+}
@@ -0,0 +1,110 @@
+package com.arto.memory.broker;
+
+import com.arto.core.exception.MqClientException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Created by xiong.j on 2017/4/26.
+ */
+public class MemoryDestinationTest {
+
+    @Test
+    public void testSendAndPoll() throws Exception {
+        MemoryBroker broker = new MemoryBroker(4, 10);
+        MemoryDestination destination = broker.getDestination("test.send");
+        Assert.assertSame(destination, broker.getDestination("test.send"));
+
+        String first = destination.send(1, new byte[]{1});
+        String second = destination.send(2, new byte[]{2});
+        Assert.assertNotEquals(first, second);
+        Assert.assertEquals(2, destination.size());
+
+        MemoryMessage message = destination.poll(10, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(first, message.getMessageId());
+        Assert.assertEquals("test.send", message.getDestination());
+        Assert.assertEquals(1, message.getPriority());
+        Assert.assertEquals(1, message.getBody()[0]);
+        Assert.assertEquals(second, destination.poll(10, TimeUnit.MILLISECONDS).getMessageId());
+        Assert.assertNull(destination.poll(10, TimeUnit.MILLISECONDS));
+        broker.close();
+    }
+
+    @Test
+    public void testFullAndRedeliver() throws Exception {
+        MemoryBroker broker = new MemoryBroker(2, 20);
+        MemoryDestination destination = broker.getDestination("test.full");
+        destination.send(1, new byte[0]);
+        destination.send(1, new byte[0]);
+        try {
+            destination.send(1, new byte[0]);
+            Assert.fail();
+        } catch (MqClientException e) {
+            // 队列满，等待超时后失败
+        }
+        Assert.assertEquals(1, destination.getRejectedCount());
+
+        MemoryMessage message = destination.poll(10, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(destination.redeliver(message));
+        destination.poll(10, TimeUnit.MILLISECONDS);
+        MemoryMessage redelivered = destination.poll(10, TimeUnit.MILLISECONDS);
+        Assert.assertSame(message, redelivered);
+        Assert.assertEquals(1, redelivered.getRedeliveredCount());
+
+        broker.close();
+        Assert.assertTrue(destination.isClosed());
+        Assert.assertFalse(destination.redeliver(message));
+        try {
+            destination.send(1, new byte[0]);
+            Assert.fail();
+        } catch (MqClientException e) {
+            // 已关闭
+        }
+    }
+
+    @Test
+    public void testConcurrentConsumers() throws Exception {
+        MemoryBroker broker = new MemoryBroker(64, 5000);
+        final MemoryDestination destination = broker.getDestination("test.concurrent");
+        final int threads = 3;
+        final int amount = 3000;
+        final AtomicInteger received = new AtomicInteger(0);
+        final Set<String> ids = new HashSet<String>();
+        final CountDownLatch latch = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (received.get() < amount) {
+                            MemoryMessage message = destination.poll(10, TimeUnit.MILLISECONDS);
+                            if (message != null) {
+                                synchronized (ids) {
+                                    ids.add(message.getMessageId());
+                                }
+                                received.incrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }).start();
+        }
+        for (int i = 0; i < amount; i++) {
+            destination.send(3, new byte[]{(byte) i});
+        }
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(amount, received.get());
+        Assert.assertEquals(amount, ids.size());
+        broker.close();
+    }
+}
@@ -0,0 +1,103 @@
+package com.arto.memory.consumer;
+
+import com.arto.core.common.MessageRecord;
+import com.arto.core.consumer.MqListener;
+import com.arto.event.util.PropertiesResolve;
+import com.arto.event.util.SpringContextHolder;
+import com.arto.event.util.SpringThreadPoolUtil;
+import com.arto.memory.consumer.binding.MemoryConsumerBinding;
+import com.arto.memory.consumer.binding.MemoryConsumerConfig;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by xiong.j on 2017/4/30.
+ */
+public class MemoryMessageConsumerTest {
+
+    private static final String DESTINATION = "test.unsubscribe";
+
+    private static DefaultListableBeanFactory beanFactory;
+
+    @BeforeClass
+    public static void setUpContext() {
+        // 线程池需要注册到容器，配置只从配置文件读取
+        beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("propertiesResolve", Mockito.mock(PropertiesResolve.class));
+        beanFactory.registerSingleton("memoryMessageConsumer", new MemoryMessageConsumer());
+        new SpringContextHolder().postProcessBeanFactory(beanFactory);
+    }
+
+    @Test
+    public void testUnsubscribeShutdownPool() throws Exception {
+        MemoryConsumerBinding binding = subscribe(3);
+        ThreadPoolExecutor executor = getPool();
+        Assert.assertFalse(executor.isShutdown());
+        waitActive(executor, 3);
+
+        binding.close();
+        Assert.assertTrue(executor.isShutdown());
+        // 消费线程在拉取超时后退出
+        Assert.assertTrue(executor.awaitTermination(2, TimeUnit.SECONDS));
+        Assert.assertEquals(0, executor.getPoolSize());
+
+        // 重复取消订阅忽略
+        binding.close();
+    }
+
+    @Test
+    public void testResubscribe() throws Exception {
+        MemoryConsumerBinding binding = subscribe(1);
+        ThreadPoolExecutor first = getPool();
+        binding.close();
+        Assert.assertTrue(first.awaitTermination(2, TimeUnit.SECONDS));
+
+        // 取消订阅后可以重新订阅，使用新的线程池
+        binding = subscribe(2);
+        ThreadPoolExecutor second = getPool();
+        Assert.assertNotSame(first, second);
+        waitActive(second, 2);
+        binding.close();
+        Assert.assertTrue(second.awaitTermination(2, TimeUnit.SECONDS));
+    }
+
+    private MemoryConsumerBinding subscribe(int numThreads) {
+        MemoryConsumerConfig config = new MemoryConsumerConfig(DESTINATION);
+        config.setNumThreads(numThreads);
+        config.setListener(new TestListener());
+        return new MemoryConsumerBinding(config);
+    }
+
+    private ThreadPoolExecutor getPool() {
+        ThreadPoolTaskExecutor pool = beanFactory.getBean(
+                SpringThreadPoolUtil.getPoolName("MemoryConsumer-" + DESTINATION), ThreadPoolTaskExecutor.class);
+        return pool.getThreadPoolExecutor();
+    }
+
+    private void waitActive(ThreadPoolExecutor executor, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (executor.getActiveCount() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(expected, executor.getActiveCount());
+    }
+
+    private static class TestListener implements MqListener<String> {
+
+        @Override
+        public void onMessage(MessageRecord<String> record) {
+        }
+
+        @Override
+        public boolean checkRedeliver(MessageRecord<String> record) {
+            return false;
+        }
+    }
+}
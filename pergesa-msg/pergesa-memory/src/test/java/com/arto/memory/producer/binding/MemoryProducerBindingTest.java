@@ -0,0 +1,235 @@
+package com.arto.memory.producer.binding;
+
+import com.arto.core.bootstrap.MqClient;
+import com.arto.core.common.DataPipeline;
+import com.arto.core.common.MessageRecord;
+import com.arto.core.common.MqTypeEnum;
+import com.arto.core.event.MqEvent;
+import com.arto.core.event.MqEventPipeline;
+import com.arto.event.bootstrap.Event;
+import com.arto.event.bootstrap.EventContext;
+import com.arto.event.serialization.Serializer;
+import com.arto.event.service.PersistentEventService;
+import com.arto.event.storage.EventInfo;
+import com.arto.event.util.PropertiesResolve;
+import com.arto.event.util.SpringContextHolder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created by xiong.j on 2017/4/30.
+ */
+public class MemoryProducerBindingTest {
+
+    private static final String TYPE = MqTypeEnum.MEMORY.getMemo();
+
+    private static ConfigurableListableBeanFactory beanFactory;
+
+    /** 每次persistPrepared插入的业务流水号 */
+    private final List<List<String>> persisted = new ArrayList<List<String>>();
+
+    private MemoryProducerBinding<String> binding;
+
+    private MqEventPipeline pipeline;
+
+    private MqEventPipeline original;
+
+    private TransactionTemplate required;
+
+    private TransactionTemplate requiresNew;
+
+    @BeforeClass
+    public static void setUpConfig() {
+        // 配置只从配置文件读取
+        beanFactory = Mockito.mock(ConfigurableListableBeanFactory.class);
+        Mockito.when(beanFactory.getBean(PropertiesResolve.class)).thenReturn(Mockito.mock(PropertiesResolve.class));
+        new SpringContextHolder().postProcessBeanFactory(beanFactory);
+    }
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        PersistentEventService service = Mockito.mock(PersistentEventService.class);
+        Mockito.when(service.prepare(Matchers.any(Event.class), Matchers.any(Serializer.class), Matchers.anyString()))
+                .thenAnswer(new Answer<EventInfo>() {
+                    @Override
+                    public EventInfo answer(InvocationOnMock invocation) throws Throwable {
+                        Event event = (Event) invocation.getArguments()[0];
+                        EventInfo eventInfo = new EventInfo();
+                        eventInfo.setBusinessId(event.getBusinessId());
+                        event.setEventContext(new EventContext(eventInfo));
+                        return eventInfo;
+                    }
+                });
+        Mockito.doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                List<String> businessIds = new ArrayList<String>();
+                for (EventInfo eventInfo : (List<EventInfo>) invocation.getArguments()[0]) {
+                    businessIds.add(eventInfo.getBusinessId());
+                }
+                persisted.add(businessIds);
+                return null;
+            }
+        }).when(service).persistPrepared(Matchers.anyListOf(EventInfo.class));
+        Mockito.when(beanFactory.getBean("persistentEventService")).thenReturn(service);
+
+        MemoryProducerConfig config = new MemoryProducerConfig("test.tx");
+        config.setTransaction(true);
+        binding = new MemoryProducerBinding<String>(config);
+        ReflectionTestUtils.setField(binding, "deferredPersist", true);
+
+        // 事务提交后加入的发送管道替换为测试管道(事务消息发送器仍使用原管道)
+        DataPipeline<MqEvent>[] lanes = new DataPipeline[]{new DataPipeline<MqEvent>(16)
+                , new DataPipeline<MqEvent>(16), new DataPipeline<MqEvent>(16)};
+        pipeline = new MqEventPipeline(lanes, new int[]{1, 1, 1});
+        original = pipelines().put(TYPE, pipeline);
+
+        TestTransactionManager transactionManager = new TestTransactionManager();
+        required = new TransactionTemplate(transactionManager);
+        requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pipelines().put(TYPE, original);
+    }
+
+    @Test
+    public void testRequiresNewKeepsOuterMessages() throws Exception {
+        required.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                binding.send(record("outer"));
+                requiresNew.execute(new TransactionCallbackWithoutResult() {
+                    @Override
+                    protected void doInTransactionWithoutResult(TransactionStatus status) {
+                        binding.send(record("inner"));
+                    }
+                });
+                // 新事务只插入、发送自己的消息，外层的消息仍等待外层提交
+                Assert.assertEquals(Collections.singletonList(Collections.singletonList("inner")), persisted);
+                Assert.assertEquals(Collections.singletonList("inner"), drain());
+                binding.sendBatch(Arrays.asList(record("outer-1"), record("outer-2")));
+            }
+        });
+
+        Assert.assertEquals(Arrays.asList(Collections.singletonList("inner")
+                , Arrays.asList("outer", "outer-1", "outer-2")), persisted);
+        Assert.assertEquals(Arrays.asList("outer", "outer-1", "outer-2"), drain());
+    }
+
+    @Test
+    public void testOuterRollbackAfterRequiresNew() throws Exception {
+        required.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                binding.sendBatch(Arrays.asList(record("outer-1"), record("outer-2")));
+                requiresNew.execute(new TransactionCallbackWithoutResult() {
+                    @Override
+                    protected void doInTransactionWithoutResult(TransactionStatus status) {
+                        binding.send(record("inner"));
+                    }
+                });
+                status.setRollbackOnly();
+            }
+        });
+
+        // 外层回滚，外层的记录不会随新事务插入，也不会发送
+        Assert.assertEquals(Collections.singletonList(Collections.singletonList("inner")), persisted);
+        Assert.assertEquals(Collections.singletonList("inner"), drain());
+    }
+
+    private MessageRecord<String> record(String businessId) {
+        return new MessageRecord<String>(businessId, "t", "message-" + businessId);
+    }
+
+    private List<String> drain() {
+        List<MqEvent> events = new ArrayList<MqEvent>();
+        pipeline.drainTo(events, 100);
+        List<String> businessIds = new ArrayList<String>(events.size());
+        for (MqEvent event : events) {
+            businessIds.add(event.getBusinessId());
+        }
+        return businessIds;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, MqEventPipeline> pipelines() throws Exception {
+        Field field = MqClient.class.getDeclaredField("pipelineMap");
+        field.setAccessible(true);
+        return (Map<String, MqEventPipeline>) field.get(null);
+    }
+
+    /**
+     * 只记录当前事务的事务管理器，按Spring的方式挂起、恢复事务同步
+     */
+    private static class TestTransactionManager extends AbstractPlatformTransactionManager {
+
+        /** 当前线程中的活动事务 */
+        private final ThreadLocal<Object> current = new ThreadLocal<Object>();
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected boolean isExistingTransaction(Object transaction) {
+            return current.get() != null;
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            current.set(transaction);
+        }
+
+        @Override
+        protected Object doSuspend(Object transaction) {
+            Object suspended = current.get();
+            current.remove();
+            return suspended;
+        }
+
+        @Override
+        protected void doResume(Object transaction, Object suspendedResources) {
+            current.set(suspendedResources);
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doCleanupAfterCompletion(Object transaction) {
+            current.remove();
+        }
+    }
+}
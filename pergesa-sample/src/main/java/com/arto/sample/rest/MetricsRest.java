@@ -0,0 +1,26 @@
+package com.arto.sample.rest;
+
+import com.arto.core.metrics.MqMetrics;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.io.StringWriter;
+
+/**
+ * 以Prometheus文本格式输出消息客户端指标，供Prometheus抓取
+ *
+ * Created by xiong.j on 2017/4/20.
+ */
+@Controller
+public class MetricsRest {
+
+    @RequestMapping(value = "/metrics", method = RequestMethod.GET, produces = "text/plain; version=0.0.4; charset=utf-8")
+    @ResponseBody
+    public String metrics() throws Exception {
+        StringWriter writer = new StringWriter();
+        MqMetrics.writePrometheus(writer);
+        return writer.toString();
+    }
+}
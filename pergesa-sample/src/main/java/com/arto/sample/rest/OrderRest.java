@@ -1,9 +1,8 @@
 package com.arto.sample.rest;
 
 import com.arto.core.bootstrap.MqClient;
-import com.arto.core.common.DataPipeline;
 import com.arto.core.common.MqTypeEnum;
-import com.arto.core.event.MqEvent;
+import com.arto.core.event.MqEventPipeline;
 import com.arto.sample.domain.OrderDO;
 import com.arto.sample.service.OrderService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -53,7 +52,7 @@ public class OrderRest {
             orderService.addOrder(orderDO);
         }
 
-        DataPipeline<MqEvent> pipeline = MqClient.getPipeline(MqTypeEnum.KAFKA.getMemo());
+        MqEventPipeline pipeline = MqClient.getPipeline(MqTypeEnum.KAFKA.getMemo());
         while (true){
             if (pipeline.size() == 0) {
                 break;